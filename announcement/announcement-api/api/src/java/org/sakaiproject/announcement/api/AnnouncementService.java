@@ -31,6 +31,7 @@ import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.IdUsedException;
 import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.javax.Filter;
+import org.sakaiproject.javax.PagingPosition;
 import org.sakaiproject.message.api.MessageService;
 
 /**
@@ -203,4 +204,15 @@ public interface AnnouncementService extends MessageService
 	public List getMessages(String channelReference, Filter filter, boolean ascending, boolean merged) throws IdUnusedException, PermissionException, NullPointerException;
 
 	public Map<String, List<AnnouncementMessage>> getViewableAnnouncementsForCurrentUser(Integer maxAgeInDays);
+
+	/**
+	 * Return the announcements the current user can see in all their sites, newest first.
+	 * 
+	 * @param maxAgeInDays
+	 *        Only announcements from the last this many days, or null for all.
+	 * @param pager
+	 *        An optional range of announcements to return.
+	 * @return a list of AnnouncementMessage objects (may be empty).
+	 */
+	public List<AnnouncementMessage> getViewableAnnouncementsForCurrentUser(Integer maxAgeInDays, PagingPosition pager);
 }
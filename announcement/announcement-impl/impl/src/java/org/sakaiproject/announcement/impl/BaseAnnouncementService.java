@@ -115,8 +115,8 @@ public abstract class BaseAnnouncementService extends BaseMessage implements Ann
 		EntityTransferrer
 {
 	/** private constants definitions */
-	private final static String SAKAI_ANNOUNCEMENT_TOOL_ID = "sakai.announcements";
-	private static final String PORTLET_CONFIG_PARM_MERGED_CHANNELS = "mergedAnnouncementChannels";
+	protected final static String SAKAI_ANNOUNCEMENT_TOOL_ID = "sakai.announcements";
+	protected static final String PORTLET_CONFIG_PARM_MERGED_CHANNELS = "mergedAnnouncementChannels";
 
 	
 	/** Messages, for the http access. */
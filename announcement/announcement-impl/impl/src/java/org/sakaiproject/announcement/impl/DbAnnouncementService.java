@@ -24,8 +24,13 @@ package org.sakaiproject.announcement.impl;
 // import
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
@@ -33,6 +38,7 @@ import java.util.Stack;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import org.apache.commons.lang3.StringUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -49,6 +55,10 @@ import org.sakaiproject.message.api.Message;
 import org.sakaiproject.message.api.MessageChannel;
 import org.sakaiproject.message.api.MessageChannelEdit;
 import org.sakaiproject.message.api.MessageEdit;
+import org.sakaiproject.message.api.MessageHeader;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.site.api.ToolConfiguration;
 import org.sakaiproject.time.api.Time;
 import org.sakaiproject.util.BaseDbDoubleStorage;
 import org.sakaiproject.util.DoubleStorageUser;
@@ -73,6 +83,21 @@ public class DbAnnouncementService extends BaseAnnouncementService
 	/** The name of the db table holding announcement messages. */
 	protected String m_rTableName = "ANNOUNCEMENT_MESSAGE";
 
+	/** The name of the db table holding the announcement feed index. */
+	protected String m_fTableName = "ANNOUNCEMENT_FEED";
+
+	/** The feed index audience of announcements for the whole site, rather than some of its groups. */
+	protected static final String FEED_SITE_AUDIENCE = "*";
+
+	/** The channel id of the feed index row claimed by the server filling the index. */
+	protected static final String FEED_CONVERSION_CHANNEL = "!convertToFeedIndex";
+
+	/** If true, the feed index table is there to be kept up to date. */
+	protected boolean m_feedTable = false;
+
+	/** If true, the announcements for a user's sites are read from the feed index. */
+	protected boolean m_feedIndex = true;
+
 	/** If true, we do our locks in the remote database, otherwise we do them here. */
 	protected boolean m_locksInDb = true;
 
@@ -195,6 +220,36 @@ public class DbAnnouncementService extends BaseAnnouncementService
 				convertToPubView();
 			}
 
+			// the feed index is kept up to date whenever its table is there, and filled if it is empty
+			List<String> feedCount = sqlService.dbRead("select count(1) from " + m_fTableName);
+			m_feedTable = !feedCount.isEmpty();
+			m_feedIndex = m_feedTable && m_serverConfigurationService.getBoolean("announcement.feed.index.enabled", true);
+			if (!m_feedTable)
+			{
+				log.warn("init(): no table {}, announcement feeds will be read site by site", m_fTableName);
+			}
+			else if ("0".equals(feedCount.get(0)))
+			{
+				// of the servers starting on an empty index, only the one that claims it fills it
+				Object[] marker = new Object[] { FEED_CONVERSION_CHANNEL,
+						StringUtils.left(m_serverConfigurationService.getServerId(), 36), FEED_SITE_AUDIENCE };
+				if (sqlService.dbWriteFailQuiet(null, "insert into " + m_fTableName + " (CHANNEL_ID, MESSAGE_ID, AUDIENCE) values (?, ?, ?)", marker))
+				{
+					if (convertToFeedIndex())
+					{
+						sqlService.dbWrite("delete from " + m_fTableName + " where CHANNEL_ID = ?", new Object[] { FEED_CONVERSION_CHANNEL });
+					}
+					else
+					{
+						log.warn("init(): the feed index was not filled, delete its {} row to try again on the next start", FEED_CONVERSION_CHANNEL);
+					}
+				}
+				else
+				{
+					log.info("init(): the feed index is being filled by another server");
+				}
+			}
+			log.info("init(): feed index: {}", m_feedIndex);
 		}
 		catch (Throwable t)
 		{
@@ -233,6 +288,7 @@ public class DbAnnouncementService extends BaseAnnouncementService
 		{
 			super(m_cTableName, "CHANNEL_ID", m_rTableName, "MESSAGE_ID", "CHANNEL_ID", "MESSAGE_DATE", "OWNER", "DRAFT",
 					"PUBVIEW", FIELDS, m_locksInDb, "channel", "message", user, sqlService);
+			setCompactXml(m_serverConfigurationService.getBoolean("announcement.storage.compact", false));
 
 		} // DbStorage
 
@@ -276,6 +332,7 @@ public class DbAnnouncementService extends BaseAnnouncementService
 		public void removeChannel(MessageChannelEdit edit)
 		{
 			super.removeContainer(edit);
+			unindexChannel(edit.getReference());
 		}
 
 		public List getChannelIdsMatching(String root)
@@ -313,6 +370,7 @@ public class DbAnnouncementService extends BaseAnnouncementService
 		public void commitMessage(MessageChannel channel, MessageEdit edit)
 		{
 			super.commitResource(channel, edit);
+			indexMessage(null, channel.getReference(), edit);
 		}
 
 		public void cancelMessage(MessageChannel channel, MessageEdit edit)
@@ -323,6 +381,7 @@ public class DbAnnouncementService extends BaseAnnouncementService
 		public void removeMessage(MessageChannel channel, MessageEdit edit)
 		{
 			super.removeResource(channel, edit);
+			unindexMessage(null, channel.getReference(), edit.getId());
 		}
 
 		public int getCount(MessageChannel channel)
@@ -345,6 +404,65 @@ public class DbAnnouncementService extends BaseAnnouncementService
 			return super.getResources(channel, afterDate, limitedToLatest, draftsForId, pubViewOnly);
 		}
 
+		/**
+		 * Read the messages selected by a feed index query, paging in the database if it can.
+		 * 
+		 * @param sql
+		 *        The query, selecting the channel id and xml of each message, newest first.
+		 * @param fields
+		 *        The query's bind variables.
+		 * @param channels
+		 *        The channels the query selects from, by reference.
+		 * @param pager
+		 *        An optional range of messages to return.
+		 * @return The messages, newest first.
+		 */
+		public List<Message> getFeedMessages(String sql, Object[] fields, final Map<String, MessageChannel> channels, PagingPosition pager)
+		{
+			boolean pagedInSql = false;
+			if (pager != null)
+			{
+				String limitedSql = doubleStorageSql.addLimitToQuery(sql, pager.getFirst() - 1, pager.getLast() - 1);
+				if (limitedSql != null)
+				{
+					pagedInSql = true;
+					sql = limitedSql;
+				}
+				else
+				{
+					// TOP is a count, not zero based like LIMIT
+					String topSql = doubleStorageSql.addTopToQuery(sql, pager.getLast());
+					if (topSql != null)
+					{
+						sql = topSql;
+					}
+				}
+			}
+
+			List<Message> rv = m_sql.dbRead(sql, fields, new SqlReader()
+			{
+				public Object readSqlResultRecord(ResultSet result)
+				{
+					try
+					{
+						MessageChannel channel = channels.get(result.getString(1));
+						return channel == null ? null : readResource(channel, result.getString(2));
+					}
+					catch (SQLException ignore)
+					{
+						return null;
+					}
+				}
+			});
+
+			if (pager != null && !pagedInSql)
+			{
+				pager.validate(rv.size());
+				rv = rv.subList(pager.getFirst() - 1, pager.getLast());
+			}
+			return rv;
+		}
+
 	} // DbStorage
 
 	/**
@@ -605,23 +723,360 @@ public class DbAnnouncementService extends BaseAnnouncementService
 		}
 	}
 
+	/**
+	 * Bring a message's feed index entries up to date: one for the site, or one for each of its groups, unless it is a draft.
+	 * 
+	 * @param connection
+	 *        The connection to use, or null for any.
+	 * @param channelRef
+	 *        The message's channel reference.
+	 * @param msg
+	 *        The message.
+	 */
+	protected void indexMessage(Connection connection, String channelRef, Message msg)
+	{
+		if (!m_feedTable) return;
+
+		unindexMessage(connection, channelRef, msg.getId());
+		if (msg.getHeader().getDraft()) return;
+
+		Long release = null;
+		Long retract = null;
+		try
+		{
+			release = msg.getProperties().getInstantProperty(RELEASE_DATE).toEpochMilli();
+		}
+		catch (Exception e)
+		{
+			// Just not using/set Release Date
+		}
+		try
+		{
+			retract = msg.getProperties().getInstantProperty(RETRACT_DATE).toEpochMilli();
+		}
+		catch (Exception e)
+		{
+			// Just not using/set Retract Date
+		}
+
+		Collection<String> audiences = Collections.singletonList(FEED_SITE_AUDIENCE);
+		if (msg.getHeader().getAccess() == MessageHeader.MessageAccess.GROUPED)
+		{
+			audiences = msg.getHeader().getGroups();
+		}
+
+		String insert = "insert into " + m_fTableName
+				+ " (CHANNEL_ID, MESSAGE_ID, AUDIENCE, RELEASE_DATE, RETRACT_DATE) values (?, ?, ?, ?, ?)";
+		for (String audience : audiences)
+		{
+			Object fields[] = new Object[5];
+			fields[0] = channelRef;
+			fields[1] = msg.getId();
+			fields[2] = audience;
+			fields[3] = release;
+			fields[4] = retract;
+			if (!sqlService.dbWrite(connection, insert, fields))
+			{
+				log.warn("indexMessage: channel: {} message: {} audience: {} not indexed", channelRef, msg.getId(), audience);
+			}
+		}
+	}
+
+	/**
+	 * Remove a message's feed index entries.
+	 * 
+	 * @param connection
+	 *        The connection to use, or null for any.
+	 * @param channelRef
+	 *        The message's channel reference.
+	 * @param messageId
+	 *        The message id.
+	 */
+	protected void unindexMessage(Connection connection, String channelRef, String messageId)
+	{
+		if (!m_feedTable) return;
+
+		sqlService.dbWrite(connection, "delete from " + m_fTableName + " where CHANNEL_ID = ? and MESSAGE_ID = ?",
+				new Object[] { channelRef, messageId });
+	}
+
+	/**
+	 * Remove the feed index entries of all of a channel's messages.
+	 * 
+	 * @param channelRef
+	 *        The channel reference.
+	 */
+	protected void unindexChannel(String channelRef)
+	{
+		if (!m_feedTable) return;
+
+		sqlService.dbWrite("delete from " + m_fTableName + " where CHANNEL_ID = ?", new Object[] { channelRef });
+	}
+
+	/**
+	 * fill in the feed index from the messages already stored
+	 * 
+	 * @return true if the index was filled, false if it was left as it was.
+	 */
+	protected boolean convertToFeedIndex()
+	{
+		log.info("convertToFeedIndex");
+
+		boolean done = false;
+		try
+		{
+			// get a connection
+			final Connection connection = sqlService.borrowConnection();
+			boolean wasCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+
+			// read all the message records that can be in the feed
+			String sql = "select CHANNEL_ID, MESSAGE_ID, XML from " + m_rTableName + " where DRAFT = '0'";
+			sqlService.dbRead(connection, sql, null, new SqlReader()
+			{
+				private int count = 0;
+
+				public Object readSqlResultRecord(ResultSet result)
+				{
+					String channelId = null;
+					String messageId = null;
+					try
+					{
+						channelId = result.getString(1);
+						messageId = result.getString(2);
+						String xml = result.getString(3);
+
+						// read the xml
+						Document doc = Xml.readDocumentFromString(xml);
+						if (doc == null)
+						{
+							log.warn("convertToFeedIndex(): channel: {} message: {} XML not readable", channelId, messageId);
+							return null;
+						}
+
+						// verify the root element
+						Element root = doc.getDocumentElement();
+						if (!root.getTagName().equals("message"))
+						{
+							log.warn("convertToFeedIndex(): channel: {} message: {} XML root element not message: {}", channelId, messageId, root.getTagName());
+							return null;
+						}
+						indexMessage(connection, channelId, new BaseMessageEdit(null, root));
+
+						count++;
+						if (count % 100 == 0)
+						{
+							log.info("convertToFeedIndex: {}", count);
+						}
+						return null;
+					}
+					catch (Exception e)
+					{
+						log.warn("convertToFeedIndex(): channel: {} message: {} not indexed: {}", channelId, messageId, e.toString());
+						return null;
+					}
+				}
+			});
+
+			connection.commit();
+			connection.setAutoCommit(wasCommit);
+			sqlService.returnConnection(connection);
+			done = true;
+		}
+		catch (Exception e)
+		{
+			log.warn("convertToFeedIndex: failed: ", e);
+		}
+
+		log.info("convertToFeedIndex: done");
+		return done;
+	}
+
+	/**
+	 * The current user's view of the announcement channels of their sites, for reading from the feed index.
+	 */
+	protected class FeedAudience
+	{
+		/** The channels the user can read, by reference. */
+		protected Map<String, MessageChannel> channels = new LinkedHashMap<>();
+
+		/** The channels in which the user sees the announcements of every group. */
+		protected List<String> allGroups = new ArrayList<>();
+
+		/** The groups the user can read announcements in, in the other channels. */
+		protected Collection<String> groups = new ArrayList<>();
+
+		/** The sites whose announcements tool merges in other channels, which the feed index can't answer for. */
+		protected List<String> unindexed = new ArrayList<>();
+	}
+
+	/**
+	 * Work out which of the sites' channels the current user can read, and which of their announcements they can see.
+	 * 
+	 * @param sites
+	 *        The user's sites.
+	 * @return The user's view of the sites' channels.
+	 */
+	protected FeedAudience feedAudience(List<Site> sites)
+	{
+		FeedAudience audience = new FeedAudience();
+		String userId = m_sessionManager.getCurrentSessionUserId();
+		boolean superUser = m_securityService.isSuperUser();
+
+		// the groups of all the sites are checked together
+		Collection<String> groupRefs = new ArrayList<>();
+		for (Site site : sites)
+		{
+			ToolConfiguration tc = site.getToolForCommonId(SAKAI_ANNOUNCEMENT_TOOL_ID);
+			if (tc != null && StringUtils.isNotBlank(tc.getPlacementConfig().getProperty(PORTLET_CONFIG_PARM_MERGED_CHANNELS)))
+			{
+				audience.unindexed.add(site.getId());
+				continue;
+			}
+
+			String channelRef = channelReference(site.getId(), SiteService.MAIN_CONTAINER);
+			if (!allowGetChannel(channelRef)) continue;
+			MessageChannel channel = findChannel(channelRef);
+			if (channel == null) continue;
+			audience.channels.put(channelRef, channel);
+
+			// as filterGroupAccess() does
+			if (superUser || m_securityService.unlock(userId, eventId(SECURE_ALL_GROUPS), site.getReference()))
+			{
+				audience.allGroups.add(channelRef);
+			}
+			else
+			{
+				site.getGroups().forEach(group -> groupRefs.add(group.getReference()));
+			}
+		}
+
+		if (!groupRefs.isEmpty())
+		{
+			audience.groups = m_authzGroupService.getAuthzGroupsIsAllowed(userId, eventId(SECURE_READ), groupRefs);
+		}
+
+		return audience;
+	}
+
+	/**
+	 * Read the announcements the user can see from the feed index, in one query across all their channels.
+	 * 
+	 * @param audience
+	 *        The user's view of their channels.
+	 * @param afterDate
+	 *        Only announcements after this, or null for all.
+	 * @param pager
+	 *        An optional range of announcements to return.
+	 * @return The announcements, newest first.
+	 */
+	protected List<Message> readFeed(FeedAudience audience, Time afterDate, PagingPosition pager)
+	{
+		if (audience.channels.isEmpty()) return new ArrayList<>();
+
+		List<Object> fields = new ArrayList<>();
+		String sql = feedSql(audience, afterDate, Instant.now().toEpochMilli(), fields);
+		return ((DbStorage) m_storage).getFeedMessages(sql, fields.toArray(), audience.channels, pager);
+	}
+
+	/**
+	 * Form the feed index query for the announcements the user can see.
+	 * 
+	 * @param audience
+	 *        The user's view of their channels, with at least one channel.
+	 * @param afterDate
+	 *        Only announcements after this, or null for all.
+	 * @param now
+	 *        The time to check release and retract dates against.
+	 * @param fields
+	 *        Filled with the query's bind variables.
+	 * @return The query, selecting the channel id and xml of each message, newest first.
+	 */
+	protected String feedSql(FeedAudience audience, Time afterDate, long now, List<Object> fields)
+	{
+		StringBuilder sql = new StringBuilder();
+		sql.append("select M.CHANNEL_ID, M.XML from " + m_rTableName + " M where M.CHANNEL_ID in (");
+		appendBindVariables(sql, fields, audience.channels.keySet());
+		sql.append(") and M.DRAFT = '0'");
+		if (afterDate != null)
+		{
+			sql.append(" and M.MESSAGE_DATE > ?");
+			fields.add(afterDate);
+		}
+
+		// released, not yet retracted, and for the site or one of the user's groups
+		sql.append(" and exists (select 1 from " + m_fTableName + " F where F.CHANNEL_ID = M.CHANNEL_ID and F.MESSAGE_ID = M.MESSAGE_ID");
+		sql.append(" and (F.RELEASE_DATE is null or F.RELEASE_DATE <= ?) and (F.RETRACT_DATE is null or F.RETRACT_DATE >= ?)");
+		fields.add(now);
+		fields.add(now);
+		sql.append(" and (F.AUDIENCE = ?");
+		fields.add(FEED_SITE_AUDIENCE);
+		if (!audience.allGroups.isEmpty())
+		{
+			sql.append(" or F.CHANNEL_ID in (");
+			appendBindVariables(sql, fields, audience.allGroups);
+			sql.append(")");
+		}
+		if (!audience.groups.isEmpty())
+		{
+			sql.append(" or F.AUDIENCE in (");
+			appendBindVariables(sql, fields, audience.groups);
+			sql.append(")");
+		}
+		sql.append(")) order by M.MESSAGE_DATE desc, M.MESSAGE_ORDER desc");
+
+		return sql.toString();
+	}
+
+	private void appendBindVariables(StringBuilder sql, List<Object> fields, Collection<String> values)
+	{
+		sql.append(String.join(", ", Collections.nCopies(values.size(), "?")));
+		fields.addAll(values);
+	}
+
+	private Time afterDate(Integer maxAgeInDays)
+	{
+		if (maxAgeInDays == null) return null;
+		long now = Instant.now().toEpochMilli();
+		return m_timeService.newTime(now - (maxAgeInDays * 24 * 60 * 60 * 1000L));
+	}
+
+	/**
+	 * Read the announcements the user can see from a site's channel, and those merged into it, oldest first.
+	 */
+	private List<AnnouncementMessage> getViewableAnnouncements(String siteId, Integer maxAgeInDays) throws Exception
+	{
+		String channelRef = channelReference(siteId, SiteService.MAIN_CONTAINER);
+		ViewableFilter viewableFilter = new ViewableFilter(null, null, Integer.MAX_VALUE, this);
+		Time afterDate = afterDate(maxAgeInDays);
+		if (afterDate != null) {
+			viewableFilter.setFilter(new MessageSelectionFilter(afterDate, null, false));
+		}
+		return (List<AnnouncementMessage>) getMessages(channelRef, viewableFilter, true, true);
+	}
+
 	public Map<String, List<AnnouncementMessage>> getViewableAnnouncementsForCurrentUser(Integer maxAgeInDays) {
 
 		Map<String, List<AnnouncementMessage>> allAnnouncements = new HashMap<>();
 
 		// First grab all the current user's sites
-		m_siteService.getUserSites().forEach(site -> {
+		List<Site> sites = m_siteService.getUserSites();
+		List<String> unindexed = new ArrayList<>();
+		if (m_feedIndex) {
+			FeedAudience audience = feedAudience(sites);
+			audience.channels.values().forEach(channel -> allAnnouncements.put(channel.getContext(), new ArrayList<>()));
+			for (Message msg : readFeed(audience, afterDate(maxAgeInDays), null)) {
+				allAnnouncements.get(m_entityManager.newReference(msg.getReference()).getContext()).add((AnnouncementMessage) msg);
+			}
+			allAnnouncements.values().forEach(Collections::reverse);
+			unindexed.addAll(audience.unindexed);
+		} else {
+			sites.forEach(site -> unindexed.add(site.getId()));
+		}
 
-			String siteId = site.getId();
-			String channelRef = channelReference(siteId, "main");
+		unindexed.forEach(siteId -> {
 			try {
-				ViewableFilter viewableFilter = new ViewableFilter(null, null, Integer.MAX_VALUE, this);
-				if (maxAgeInDays != null) {
-					long now = Instant.now().toEpochMilli();
-					Time afterDate = m_timeService.newTime(now - (maxAgeInDays * 24 * 60 * 60 * 1000));
-					viewableFilter.setFilter(new MessageSelectionFilter(afterDate, null, false));
-				}
-				allAnnouncements.put(site.getId(), (List<AnnouncementMessage>) getMessages(channelRef, viewableFilter, true, true));
+				allAnnouncements.put(siteId, getViewableAnnouncements(siteId, maxAgeInDays));
 			} catch (Exception e) {
 				log.warn("Failed to add announcements from site {}", siteId, e);
 			}
@@ -629,4 +1084,46 @@ public class DbAnnouncementService extends BaseAnnouncementService
 
 		return	allAnnouncements;
 	}
+
+	public List<AnnouncementMessage> getViewableAnnouncementsForCurrentUser(Integer maxAgeInDays, PagingPosition pager) {
+
+		List<Site> sites = m_siteService.getUserSites();
+		List<AnnouncementMessage> rv = new ArrayList<>();
+		List<String> unindexed = new ArrayList<>();
+		if (m_feedIndex) {
+			FeedAudience audience = feedAudience(sites);
+			unindexed.addAll(audience.unindexed);
+
+			// if other sites' announcements are to be merged in, read enough to fill the page from the start
+			PagingPosition feedPager = pager;
+			if (pager != null && !unindexed.isEmpty()) {
+				feedPager = new PagingPosition(1, pager.getLast());
+			}
+			readFeed(audience, afterDate(maxAgeInDays), feedPager).forEach(msg -> rv.add((AnnouncementMessage) msg));
+			if (unindexed.isEmpty()) return rv;
+		} else {
+			sites.forEach(site -> unindexed.add(site.getId()));
+		}
+
+		unindexed.forEach(siteId -> {
+			try {
+				rv.addAll(getViewableAnnouncements(siteId, maxAgeInDays));
+			} catch (Exception e) {
+				log.warn("Failed to add announcements from site {}", siteId, e);
+			}
+		});
+
+		// newest first, without the duplicates merged channels can bring in
+		Map<String, AnnouncementMessage> byReference = new LinkedHashMap<>();
+		rv.forEach(msg -> byReference.putIfAbsent(msg.getReference(), msg));
+		List<AnnouncementMessage> merged = new ArrayList<>(byReference.values());
+		Collections.sort(merged);
+		Collections.reverse(merged);
+
+		if (pager != null) {
+			pager.validate(merged.size());
+			merged = merged.subList(pager.getFirst() - 1, pager.getLast());
+		}
+		return merged;
+	}
 }
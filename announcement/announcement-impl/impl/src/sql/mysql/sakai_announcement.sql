@@ -60,3 +60,18 @@ CREATE INDEX ANNOUNCEMENT_MESSAGE_CDD ON ANNOUNCEMENT_MESSAGE
 	MESSAGE_ORDER,
 	DRAFT
 );
+
+-- ---------------------------------------------------------------------------
+-- ANNOUNCEMENT_FEED
+-- ---------------------------------------------------------------------------
+
+CREATE TABLE ANNOUNCEMENT_FEED (
+       CHANNEL_ID           VARCHAR(255) NOT NULL,
+       MESSAGE_ID           VARCHAR(36) NOT NULL,
+       AUDIENCE             VARCHAR(255) NOT NULL,
+       RELEASE_DATE         BIGINT NULL,
+       RETRACT_DATE         BIGINT NULL
+);
+
+ALTER TABLE ANNOUNCEMENT_FEED
+       ADD ( PRIMARY KEY (CHANNEL_ID, MESSAGE_ID, AUDIENCE) ) ;
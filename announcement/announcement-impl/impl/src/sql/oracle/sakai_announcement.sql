@@ -65,3 +65,18 @@ CREATE INDEX ANNOUNCEMENT_MESSAGE_CDD ON ANNOUNCEMENT_MESSAGE
 	MESSAGE_ORDER,
 	DRAFT
 );
+
+-- ---------------------------------------------------------------------------
+-- ANNOUNCEMENT_FEED
+-- ---------------------------------------------------------------------------
+
+CREATE TABLE ANNOUNCEMENT_FEED (
+       CHANNEL_ID           VARCHAR2(255) NOT NULL,
+       MESSAGE_ID           VARCHAR2(36) NOT NULL,
+       AUDIENCE             VARCHAR2(255) NOT NULL,
+       RELEASE_DATE         NUMBER NULL,
+       RETRACT_DATE         NUMBER NULL
+);
+
+ALTER TABLE ANNOUNCEMENT_FEED
+       ADD ( PRIMARY KEY (CHANNEL_ID, MESSAGE_ID, AUDIENCE) ) ;
@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.announcement.impl;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.message.api.MessageChannel;
+import org.sakaiproject.time.api.Time;
+
+/**
+ * Runs the feed index query against the HSQLDB schema.
+ */
+public class FeedSqlTest {
+
+    private static final String SITE_A = "/announcement/channel/siteA/main";
+    private static final String SITE_B = "/announcement/channel/siteB/main";
+    private static final String GROUP_1 = "/site/siteA/group/group1";
+    private static final String GROUP_2 = "/site/siteA/group/group2";
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private Connection connection;
+    private DbAnnouncementService service;
+    private DbAnnouncementService.FeedAudience audience;
+
+    @Before
+    public void setUp() throws Exception {
+
+        connection = DriverManager.getConnection("jdbc:hsqldb:mem:feed" + System.nanoTime(), "sa", "");
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("hsqldb/sakai_announcement.sql");
+                Statement statement = connection.createStatement()) {
+            String ddl = Arrays.stream(new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n"))
+                .filter(line -> !line.trim().startsWith("--"))
+                .collect(Collectors.joining("\n"));
+            for (String sql : ddl.split(";")) {
+                if (!sql.trim().isEmpty()) statement.execute(sql);
+            }
+        }
+
+        service = new DbAnnouncementService();
+        audience = service.new FeedAudience();
+        audience.channels.put(SITE_A, mock(MessageChannel.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void siteMessages() throws Exception {
+
+        message(SITE_A, "m1", 1, false, "*", null, null);
+        message(SITE_A, "m2", 2, false, "*", null, null);
+        message(SITE_A, "draft", 3, true, "*", null, null);
+        message(SITE_B, "other", 4, false, "*", null, null);
+
+        assertEquals(Arrays.asList("m2", "m1"), readFeed(null));
+    }
+
+    @Test
+    public void groupMessages() throws Exception {
+
+        message(SITE_A, "site", 1, false, "*", null, null);
+        message(SITE_A, "g1", 2, false, GROUP_1, null, null);
+        message(SITE_A, "g2", 3, false, GROUP_2, null, null);
+
+        assertEquals(Arrays.asList("site"), readFeed(null));
+
+        audience.groups = Arrays.asList(GROUP_1);
+        assertEquals(Arrays.asList("g1", "site"), readFeed(null));
+
+        audience.groups = new ArrayList<>();
+        audience.allGroups.add(SITE_A);
+        assertEquals(Arrays.asList("g2", "g1", "site"), readFeed(null));
+    }
+
+    @Test
+    public void messageInSeveralGroupsIsReadOnce() throws Exception {
+
+        message(SITE_A, "g12", 1, false, GROUP_1, null, null);
+        index(SITE_A, "g12", GROUP_2, null, null);
+
+        audience.groups = Arrays.asList(GROUP_1, GROUP_2);
+        assertEquals(Arrays.asList("g12"), readFeed(null));
+    }
+
+    @Test
+    public void releaseAndRetractDates() throws Exception {
+
+        message(SITE_A, "released", 1, false, "*", NOW - DAY, null);
+        message(SITE_A, "unreleased", 2, false, "*", NOW + DAY, null);
+        message(SITE_A, "retracted", 3, false, "*", null, NOW - DAY);
+        message(SITE_A, "retracting", 4, false, "*", NOW - DAY, NOW + DAY);
+
+        assertEquals(Arrays.asList("retracting", "released"), readFeed(null));
+    }
+
+    @Test
+    public void afterDate() throws Exception {
+
+        message(SITE_A, "old", -10, false, "*", null, null);
+        message(SITE_A, "new", -1, false, "*", null, null);
+
+        Time afterDate = mock(Time.class);
+        when(afterDate.getTime()).thenReturn(NOW - 5 * DAY);
+        assertEquals(Arrays.asList("new"), readFeed(afterDate));
+    }
+
+    private List<String> readFeed(Time afterDate) throws Exception {
+
+        List<Object> fields = new ArrayList<>();
+        String sql = service.feedSql(audience, afterDate, NOW, fields);
+
+        List<String> rv = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < fields.size(); i++) {
+                Object field = fields.get(i);
+                statement.setObject(i + 1, field instanceof Time ? new Timestamp(((Time) field).getTime()) : field);
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    rv.add(result.getString(2));
+                }
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Store a message, with its id as its xml so the query's results can be told apart, dated some days from now.
+     */
+    private void message(String channel, String id, int days, boolean draft, String audience, Long release, Long retract) throws Exception {
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "insert into ANNOUNCEMENT_MESSAGE (CHANNEL_ID, MESSAGE_ID, DRAFT, PUBVIEW, OWNER, MESSAGE_DATE, XML, MESSAGE_ORDER) values (?, ?, ?, '0', 'owner', ?, ?, 0)")) {
+            statement.setString(1, channel);
+            statement.setString(2, id);
+            statement.setString(3, draft ? "1" : "0");
+            statement.setTimestamp(4, new Timestamp(NOW + days * DAY));
+            statement.setString(5, id);
+            statement.executeUpdate();
+        }
+        if (!draft) {
+            index(channel, id, audience, release, retract);
+        }
+    }
+
+    private void index(String channel, String id, String audience, Long release, Long retract) throws Exception {
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "insert into ANNOUNCEMENT_FEED (CHANNEL_ID, MESSAGE_ID, AUDIENCE, RELEASE_DATE, RETRACT_DATE) values (?, ?, ?, ?, ?)")) {
+            statement.setString(1, channel);
+            statement.setString(2, id);
+            statement.setString(3, audience);
+            if (release == null) statement.setNull(4, Types.BIGINT); else statement.setLong(4, release);
+            if (retract == null) statement.setNull(5, Types.BIGINT); else statement.setLong(5, retract);
+            statement.executeUpdate();
+        }
+    }
+}
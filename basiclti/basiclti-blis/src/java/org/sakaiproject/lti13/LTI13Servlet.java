@@ -46,23 +46,23 @@ import java.security.KeyPairGenerator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.UnsupportedJwtException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeMap;
 
 import lombok.extern.slf4j.Slf4j;
 import org.json.simple.JSONArray;
 import org.sakaiproject.authz.api.AuthzGroupService;
 import org.sakaiproject.authz.api.Member;
-import org.sakaiproject.authz.api.Role;
 import org.sakaiproject.basiclti.util.LegacyShaUtil;
 import static org.sakaiproject.basiclti.util.SakaiBLTIUtil.getInt;
 import static org.sakaiproject.basiclti.util.SakaiBLTIUtil.getLongKey;
@@ -75,6 +75,8 @@ import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.lti.api.LTIService;
 import org.sakaiproject.lti13.LineItemUtil;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.SimpleConfiguration;
 
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
@@ -123,6 +125,7 @@ public class LTI13Servlet extends HttpServlet {
 	private static final String APPLICATION_JSON = "application/json; charset=utf-8";
 	private static final String APPLICATION_JWT = "application/jwt";
 	private static final String ERROR_DETAIL = "X-Sakai-LTI13-Error-Detail";
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
 	protected static LTIService ltiService = null;
 
 	// Used for signing and checking tokens
@@ -132,6 +135,15 @@ public class LTI13Servlet extends HttpServlet {
     private CacheManager cacheManager;
     private Cache cache;
 
+	// Site memberships for the Names and Role Provisioning service, by site id
+	private org.sakaiproject.memory.api.Cache<String, MembershipSnapshot> snapshotCache;
+
+	// Checked access tokens, and where and to which column scores were recently posted
+	private org.sakaiproject.memory.api.Cache<String, SakaiAccessToken> tokenCache;
+	private org.sakaiproject.memory.api.Cache<String, ScorePlacement> placementCache;
+	private org.sakaiproject.memory.api.Cache<String, org.sakaiproject.grading.api.Assignment> columnCache;
+	private ScoreBatcher scoreBatcher;
+
 	private static final String CACHE_NAME = LTI13Servlet.class.getName() + "_cache";
 	private static final String CACHE_PUBLIC = "key::public";
 	private static final String CACHE_PRIVATE = "key::private";
@@ -145,6 +157,17 @@ public class LTI13Servlet extends HttpServlet {
 
         cacheManager = (CacheManager) ComponentManager.get("org.sakaiproject.ignite.SakaiCacheManager");
         cache = cacheManager.getCache(CACHE_NAME);
+		MemoryService memoryService = ComponentManager.get(MemoryService.class);
+		snapshotCache = memoryService.getCache(LTI13Servlet.class.getName() + "_snapshots");
+
+		// Tokens last an hour, placements and columns are kept long enough for a tool to post a class's scores
+		int scoreCacheSeconds = ServerConfigurationService.getInt("lti.advantage.score.cache.seconds", 60);
+		tokenCache = memoryService.createCache(LTI13Servlet.class.getName() + "_tokens", new SimpleConfiguration(10000, 3600, 0));
+		placementCache = memoryService.createCache(LTI13Servlet.class.getName() + "_placements", new SimpleConfiguration(1000, scoreCacheSeconds, 0));
+		columnCache = memoryService.createCache(LTI13Servlet.class.getName() + "_columns", new SimpleConfiguration(1000, scoreCacheSeconds, 0));
+		scoreBatcher = new ScoreBatcher(SakaiBLTIUtil::handleGradebookLTI13Batch,
+				ServerConfigurationService.getInt("lti.advantage.score.batch.max", 200),
+				ServerConfigurationService.getInt("lti.advantage.score.report.seconds", 300));
 
 		// Lets try to load from properties
 		if (tokenKeyPair == null) {
@@ -1008,7 +1031,85 @@ public class LTI13Servlet extends HttpServlet {
 			return;
 		}
 
-		// YADA
+		ScorePlacement placement = loadScorePlacement(signed_placement, lineitem_key, sat, response);
+		if (placement == null) {
+			return; // Error already set
+		}
+
+		Site site;
+		try {
+			site = SiteService.getSite(placement.siteId);
+		} catch (IdUnusedException e) {
+			log.error("No site/page associated with content siteId={}", placement.siteId);
+			LTI13Util.return400(response, "Could not load site associated with content");
+			return;
+		}
+
+		userId = SakaiBLTIUtil.parseSubject(userId);
+		if (!checkUserInSite(site, userId)) {
+			log.warn("User {} not found in siteId={}", userId, site.getId());
+			LTI13Util.return400(response, "User does not belong to site");
+			return;
+		}
+
+		// TODO: Check if sat and tool match
+
+		// When lineitem_key is null we are the "default" lineitem associated with the content object
+		// if the content item is associated with an assignment, we talk to the assignment API,
+		// if the content item is not associated with an assignment, we talk to the gradebook API
+		// Scores for a lineitem go to its gradebook column, along with any others posted for it at the same time
+		Object retval;
+		if ( lineitem_key == null ) {
+			retval = SakaiBLTIUtil.handleGradebookLTI13(site, sat.tool_id, placement.content, userId, lineitem_key, scoreObj);
+		} else {
+			String columnKey = site.getId() + "/" + sat.tool_id + "/" + lineitem_key;
+			org.sakaiproject.grading.api.Assignment gradebookColumn = columnCache.get(columnKey);
+			if ( gradebookColumn == null ) {
+				gradebookColumn = LineItemUtil.getColumnByKeyDAO(site.getId(), sat.tool_id, lineitem_key);
+				if ( gradebookColumn == null || gradebookColumn.getName() == null ) {
+					log.error("Could not load column for lineitem_key={}", lineitem_key);
+					LTI13Util.return400(response, "Unable to load column for lineitem_key="+lineitem_key);
+					return;
+				}
+				columnCache.put(columnKey, gradebookColumn);
+			}
+			retval = scoreBatcher.submit(site.getId(), gradebookColumn, userId, scoreObj);
+		}
+		log.debug("handleGradebookLTI13 retval={}",retval);
+		if ( retval instanceof String ) {
+			LTI13Util.return400(response, (String) retval);
+			return;
+		}
+	}
+
+	/**
+	 * Where a score is posted: the site, tool and content for a signed placement, or the site and tool for a site id.
+	 */
+	protected static class ScorePlacement implements java.io.Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final String siteId;
+		final Map<String, Object> tool;
+		final Map<String, Object> content;
+
+		ScorePlacement(String siteId, Map<String, Object> tool, Map<String, Object> content) {
+			this.siteId = siteId;
+			this.tool = tool;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * Check and load where a score is posted. Tools post the scores for a class one after another, so a
+	 * placement that checks out is remembered for a short while rather than loaded for every score.
+	 */
+	protected ScorePlacement loadScorePlacement(String signed_placement, Long lineitem_key, SakaiAccessToken sat, HttpServletResponse response) {
+		String placementKey = sat.tool_id + "/" + signed_placement;
+		ScorePlacement placement = placementCache.get(placementKey);
+		if (placement != null) {
+			return placement;
+		}
+
 		Site site = null;
 		Map<String, Object> tool = null;
 		Map<String, Object> content = null;
@@ -1020,34 +1121,34 @@ public class LTI13Servlet extends HttpServlet {
 			if (content == null) {
 				LTI13Util.return400(response, "Could not load content from signed placement");
 				log.error("Could not load content from signed placement = {}", signed_placement);
-				return;
+				return null;
 			}
 
 			site = loadSiteFromContent(content, signed_placement, response);
 			if (site == null) {
 				LTI13Util.return400(response, "Could not load site associated with content");
 				log.error("Could not load site associated with content={}", content.get(LTIService.LTI_ID));
-				return;
+				return null;
 			}
 
 			tool = loadToolForContent(content, site, sat.tool_id, response);
 			if (tool == null) {
 				log.error("Could not load tool={} associated with content={}", sat.tool_id, content.get(LTIService.LTI_ID));
-				return;
+				return null;
 			}
 
 			assignment_name = (String) content.get(LTIService.LTI_TITLE);
 			if (assignment_name == null || assignment_name.length() < 1) {
 				log.error("Could not determine assignment_name title {}", content.get(LTIService.LTI_ID));
 				LTI13Util.return400(response, "Could not determine assignment_name");
-				return;
+				return null;
 			}
 
 		} else { // SAK-47261 - It is just a site_id
 			if ( lineitem_key == null ) {
 				log.error("lineItem is required in url for site-id style urls={}", signed_placement);
 				LTI13Util.return400(response, "lineItem is required in url for site-id style urls");
-				return;
+				return null;
 			}
 
 			try {
@@ -1055,38 +1156,23 @@ public class LTI13Servlet extends HttpServlet {
 			} catch (IdUnusedException e) {
 				log.error("No site/page associated with content siteId={}", signed_placement);
 				LTI13Util.return400(response, "Could not load site associated with content");
-				return;
+				return null;
 			}
 
 			tool = ltiService.getToolDao(sat.tool_id, site.getId());
 			if (tool == null) {
 				log.error("Could not load tool={}", sat.tool_id);
 				LTI13Util.return400(response, "Missing tool");
-				return;
+				return null;
 			}
 
-			if ( ! checkToolHasPlacements(sat.tool_id, signed_placement, response) ) return;
+			if ( ! checkToolHasPlacements(sat.tool_id, signed_placement, response) ) return null;
 
 		}
 
-		userId = SakaiBLTIUtil.parseSubject(userId);
-		if (!checkUserInSite(site, userId)) {
-			log.warn("User {} not found in siteId={}", userId, site.getId());
-			LTI13Util.return400(response, "User does not belong to site");
-			return;
-		}
-
-		// TODO: Check if sat and tool match
-
-		// When lineitem_key is null we are the "default" lineitem associated with the content object
-		// if the content item is associated with an assignment, we talk to the assignment API,
-		// if the content item is not associated with an assignment, we talk to the gradebook API
-		Object retval = SakaiBLTIUtil.handleGradebookLTI13(site, sat.tool_id, content, userId, lineitem_key, scoreObj);
-		log.debug("handleGradebookLTI13 retval={}",retval);
-		if ( retval instanceof String ) {
-			LTI13Util.return400(response, (String) retval);
-			return;
-		}
+		placement = new ScorePlacement(site.getId(), tool, content);
+		placementCache.put(placementKey, placement);
+		return placement;
 	}
 
 	// Receive a tool configuration
@@ -1354,119 +1440,146 @@ public class LTI13Servlet extends HttpServlet {
 		}
 		*/
 
-		JSONObject context_obj = new JSONObject();
-		context_obj.put("id", site.getId());
-		context_obj.put("title", site.getTitle());
-
-		String maintainRole = site.getMaintainRole();
+		// https://www.imsglobal.org/spec/lti-nrps/v2p0#limit-query-parameter
+		int limit = getInt(request.getParameter("limit"));
+		int page = Math.max(1, getInt(request.getParameter("page")));
+		long since = getLongKey(request.getParameter("since"));
 
- 		response.setContentType(APPLICATION_JSON);
-		PrintWriter out = response.getWriter();
-		out.println("{");
-		out.println(" \"id\" : \"http://TODO.wtf.com/we_eliminated_json_ld_but_forgot_to_remove_this\",");
-		out.println(" \"context\" : ");
-		out.print(JacksonUtil.prettyPrint(context_obj));
-		out.println(",");
-		out.println(" \"members\": [");
+		String roleMapProp = (String) tool.get(LTIService.LTI_ROLEMAP);
+		Map<String, String> roleMap = SakaiBLTIUtil.convertRoleMapPropToMap(roleMapProp);
 
+		MembershipSnapshot snapshot;
 		SakaiBLTIUtil.pushAdvisor();
 		try {
-			boolean success = false;
+			snapshot = getMembershipSnapshot(site);
+		} finally {
+			SakaiBLTIUtil.popAdvisor();
+		}
 
-			List<Map<String, Object>> lm = new ArrayList<>();
+		// Ask for one more than the page to know if there is a next page
+		int offset = limit > 0 ? (page - 1) * limit : 0;
+		List<MembershipSnapshot.Member> members = snapshot.getMembers(since, offset, limit > 0 ? limit + 1 : 0);
+		String url = request.getRequestURL().toString();
+		if (limit > 0 && members.size() > limit) {
+			members = members.subList(0, limit);
+			String next = url + "?limit=" + limit + "&page=" + (page + 1) + (since > 0 ? "&since=" + since : "");
+			response.addHeader("Link", "<" + next + ">; rel=\"next\"");
+		}
+		String differences = url + "?since=" + snapshot.getBuilt() + (limit > 0 ? "&limit=" + limit : "");
+		response.addHeader("Link", "<" + differences + ">; rel=\"differences\"");
 
-			// Get users for each of the members. UserDirectoryService.getUsers will skip any undefined users.
-			Set<Member> members = site.getMembers();
-			Map<String, Member> memberMap = new HashMap<>();
-			List<String> userIds = new ArrayList<>();
-			for (Member member : members) {
-				userIds.add(member.getUserId());
-				memberMap.put(member.getUserId(), member);
+		response.setContentType(APPLICATION_JSON);
+		JsonGenerator json = JSON_FACTORY.createGenerator(response.getWriter());
+		json.writeStartObject();
+		json.writeStringField("id", "http://TODO.wtf.com/we_eliminated_json_ld_but_forgot_to_remove_this");
+		json.writeObjectFieldStart("context");
+		json.writeStringField("id", site.getId());
+		json.writeStringField("title", site.getTitle());
+		json.writeEndObject();
+
+		json.writeArrayFieldStart("members");
+		for (MembershipSnapshot.Member member : members) {
+			json.writeStartObject();
+			json.writeStringField("status", member.deleted ? "Deleted" : "Active");
+			json.writeStringField("lti11_legacy_user_id", member.userId);
+			json.writeStringField("user_id", SakaiBLTIUtil.getSubject(member.userId, site.getId()));   // TODO: Should be subject - LTI13 Quirk
+			json.writeStringField("lis_person_sourcedid", member.eid);
+
+			if (releaseName != 0) {
+				json.writeStringField("name", member.displayName);
+				json.writeStringField("given_name", member.firstName);
+				json.writeStringField("family_name", member.lastName);
+			}
+			if (releaseEmail != 0) {
+				json.writeStringField("email", member.email);
 			}
 
-			List<User> users = UserDirectoryService.getUsers(userIds);
-			boolean first = true;
-
-			String roleMapProp = (String) tool.get(LTIService.LTI_ROLEMAP);
-			Map<String, String> roleMap = SakaiBLTIUtil.convertRoleMapPropToMap(roleMapProp);
-
-			for (User user : users) {
-				JSONObject jo = new JSONObject();
-				jo.put("status", "Active");
-				String lti11_legacy_user_id = user.getId();
-				jo.put("lti11_legacy_user_id", lti11_legacy_user_id);
-				String subject = SakaiBLTIUtil.getSubject(lti11_legacy_user_id, site.getId());
-				jo.put("user_id", subject);   // TODO: Should be subject - LTI13 Quirk
-				jo.put("lis_person_sourcedid", user.getEid());
-
-				if (releaseName != 0) {
-					jo.put("name", user.getDisplayName());
-					jo.put("given_name", user.getFirstName());
-					jo.put("family_name", user.getLastName());
-				}
-				if (releaseEmail != 0) {
-					jo.put("email", user.getEmail());
-				}
-
-				Member member = memberMap.get(user.getId());
-				Map<String, Object> mm = new TreeMap<>();
-				Role role = member.getRole();
-				String ims_user_id = member.getUserId();
-
-				JSONArray roles = new JSONArray();
-
-				// If there is a role mapping, it has precedence over site.update
-				String sakai_role = role.getId();
-				if ( roleMap.containsKey(sakai_role) ) {
-					roles.add(SakaiBLTIUtil.upgradeRoleString(roleMap.get(sakai_role)));
-				} else if (ComponentManager.get(AuthzGroupService.class).isAllowed(ims_user_id, SiteService.SECURE_UPDATE_SITE, "/site/" + site.getId())) {
-					roles.add(LTI13ConstantsUtil.ROLE_INSTRUCTOR);
-				} else {
-					roles.add(LTI13ConstantsUtil.ROLE_LEARNER);
+			// If there is a role mapping, it has precedence over site.update
+			json.writeArrayFieldStart("roles");
+			if ( roleMap.containsKey(member.role) ) {
+				json.writeString(SakaiBLTIUtil.upgradeRoleString(roleMap.get(member.role)));
+			} else if (member.instructor) {
+				json.writeString(LTI13ConstantsUtil.ROLE_INSTRUCTOR);
+			} else {
+				json.writeString(LTI13ConstantsUtil.ROLE_LEARNER);
+			}
+			json.writeEndArray();
+
+			/* SAK-47261 - Scope NRPS to Context, not Resource Link
+			if ( sat.hasScope(SakaiAccessToken.SCOPE_BASICOUTCOME)  && assignment_name != null ) {
+				String placement_secret  = (String) content.get(LTIService.LTI_PLACEMENTSECRET);
+				String placement_id = getPlacementId(signed_placement);
+				String result_sourcedid = SakaiBLTIUtil.getSourceDID(user, placement_id, placement_secret);
+				if ( result_sourcedid != null ) sakai_ext.put("lis_result_sourcedid",result_sourcedid);
+			}
+			*/
+			json.writeObjectFieldStart("sakai_ext");
+			json.writeStringField("sakai_role", member.role);
+			if (member.groups.size() > 0) {
+				json.writeArrayFieldStart("sakai_groups");
+				for (String[] group : member.groups) {
+					json.writeStartObject();
+					json.writeStringField("id", group[0]);
+					json.writeStringField("title", group[1]);
+					json.writeEndObject();
 				}
-				jo.put("roles", roles);
-
-				JSONObject sakai_ext = new JSONObject();
+				json.writeEndArray();
+			}
+			json.writeEndObject();
 
-				/* SAK-47261 - Scope NRPS to Context, not Resource Link
-				if ( sat.hasScope(SakaiAccessToken.SCOPE_BASICOUTCOME)  && assignment_name != null ) {
-					String placement_secret  = (String) content.get(LTIService.LTI_PLACEMENTSECRET);
-					String placement_id = getPlacementId(signed_placement);
-					String result_sourcedid = SakaiBLTIUtil.getSourceDID(user, placement_id, placement_secret);
-					if ( result_sourcedid != null ) sakai_ext.put("lis_result_sourcedid",result_sourcedid);
-				}
-				*/
-				sakai_ext.put("sakai_role", sakai_role);
-
-				Collection groups = site.getGroupsWithMember(ims_user_id);
-
-				if (groups.size() > 0) {
-					JSONArray lgm = new JSONArray();
-					for (Iterator i = groups.iterator();i.hasNext();) {
-						Group group = (Group) i.next();
-						JSONObject groupObj = new JSONObject();
-						groupObj.put("id", group.getId());
-						groupObj.put("title", group.getTitle());
-						lgm.add(groupObj);
-					}
-					sakai_ext.put("sakai_groups", lgm);
-				}
+			json.writeEndObject();
+		}
+		json.writeEndArray();
+		json.writeEndObject();
+		json.flush();
+	}
 
-				jo.put("sakai_ext", sakai_ext);
+	/**
+	 * Get a site's membership for the Names and Role Provisioning service. The snapshot from an earlier
+	 * request is reused until the site is modified or the snapshot is older than
+	 * lti.advantage.nrps.snapshot.seconds, so that paging through a large roster, or several tools
+	 * syncing it, only look the members up once.
+	 */
+	protected MembershipSnapshot getMembershipSnapshot(Site site) {
+		long modified = site.getModifiedDate() == null ? 0 : site.getModifiedDate().getTime();
+		long now = System.currentTimeMillis();
+		long maxAge = ServerConfigurationService.getInt("lti.advantage.nrps.snapshot.seconds", 300) * 1000L;
+		MembershipSnapshot previous = snapshotCache.get(site.getId());
+		if (previous != null && previous.getSiteModified() == modified && now - previous.getBuilt() < maxAge) {
+			return previous;
+		}
+
+		// One query for everyone who can update the site, rather than a check per member
+		Set<String> instructors = ComponentManager.get(AuthzGroupService.class)
+				.getUsersIsAllowed(SiteService.SECURE_UPDATE_SITE, Collections.singleton(site.getReference()));
+
+		// And one pass over the groups, rather than asking for the groups of each member
+		List<Group> siteGroups = new ArrayList<>(site.getGroups());
+		siteGroups.sort(Comparator.comparing(Group::getId));
+		Map<String, List<String[]>> groups = new HashMap<>();
+		for (Group group : siteGroups) {
+			for (Member member : group.getMembers()) {
+				groups.computeIfAbsent(member.getUserId(), k -> new ArrayList<>()).add(new String[] { group.getId(), group.getTitle() });
+			}
+		}
 
-				if (!first) {
-					out.println(",");
-				}
-				first = false;
-				out.print(JacksonUtil.prettyPrint(jo));
+		Map<String, Member> memberMap = new HashMap<>();
+		for (Member member : site.getMembers()) {
+			memberMap.put(member.getUserId(), member);
+		}
 
-			}
-			out.println("");
-			out.println(" ] }");
-		} finally {
-			SakaiBLTIUtil.popAdvisor();
+		// UserDirectoryService.getUsers will skip any undefined users.
+		List<MembershipSnapshot.Member> current = new ArrayList<>();
+		for (User user : UserDirectoryService.getUsers(new ArrayList<>(memberMap.keySet()))) {
+			Member member = memberMap.get(user.getId());
+			current.add(new MembershipSnapshot.Member(user.getId(), user.getEid(), user.getDisplayName(),
+					user.getFirstName(), user.getLastName(), user.getEmail(), member.getRole().getId(),
+					instructors.contains(user.getId()), groups.get(user.getId())));
 		}
 
+		MembershipSnapshot snapshot = MembershipSnapshot.build(modified, current, previous, now);
+		snapshotCache.put(site.getId(), snapshot);
+		return snapshot;
 	}
 
 	protected SakaiAccessToken getSakaiAccessToken(Key publicKey, HttpServletRequest request, HttpServletResponse response) {
@@ -1487,6 +1600,13 @@ public class LTI13Servlet extends HttpServlet {
 		}
 
 		String jws = parts[1];
+
+		// A token is checked once, and remembered until it expires
+		SakaiAccessToken cached = tokenCache.get(jws);
+		if (cached != null && cached.expires > System.currentTimeMillis() / 1000L) {
+			return cached;
+		}
+
 		Claims claims;
 		try {
 			claims = Jwts.parser().setSigningKey(publicKey).parseClaimsJws(jws).getBody();
@@ -1520,6 +1640,7 @@ public class LTI13Servlet extends HttpServlet {
 			return null;
 		}
 
+		tokenCache.put(jws, sat);
 		return sat;
 	}
 
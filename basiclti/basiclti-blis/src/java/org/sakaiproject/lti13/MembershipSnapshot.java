@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2018- Charles R. Severance
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.lti13;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * A site's membership as the Names and Role Provisioning service sends it, with each member's role and
+ * groups worked out once so that the pages of a roster, and the tools asking for it, can share it.
+ *
+ * When a snapshot is replaced, members that are unchanged keep the time they last changed and members
+ * that have left stay on as deleted, so that a tool can ask for only the differences since a snapshot
+ * it has already seen.
+ */
+public class MembershipSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * A member of the site, as of when they last changed.
+	 */
+	public static class Member implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		public final String userId;
+		public final String eid;
+		public final String displayName;
+		public final String firstName;
+		public final String lastName;
+		public final String email;
+		public final String role;
+		public final boolean instructor;
+		/** The id and title of each group the member is in */
+		public final List<String[]> groups;
+		public final boolean deleted;
+		public final long changed;
+
+		public Member(String userId, String eid, String displayName, String firstName, String lastName,
+				String email, String role, boolean instructor, List<String[]> groups) {
+			this(userId, eid, displayName, firstName, lastName, email, role, instructor, groups, false, 0);
+		}
+
+		private Member(String userId, String eid, String displayName, String firstName, String lastName,
+				String email, String role, boolean instructor, List<String[]> groups, boolean deleted, long changed) {
+			this.userId = userId;
+			this.eid = eid;
+			this.displayName = displayName;
+			this.firstName = firstName;
+			this.lastName = lastName;
+			this.email = email;
+			this.role = role;
+			this.instructor = instructor;
+			this.groups = groups == null ? Collections.emptyList() : groups;
+			this.deleted = deleted;
+			this.changed = changed;
+		}
+
+		Member changedAt(long time) {
+			return new Member(userId, eid, displayName, firstName, lastName, email, role, instructor, groups, deleted, time);
+		}
+
+		Member deletedAt(long time) {
+			return new Member(userId, eid, displayName, firstName, lastName, email, role, instructor, groups, true, time);
+		}
+
+		boolean same(Member other) {
+			if (other.deleted != deleted || other.instructor != instructor || other.groups.size() != groups.size()) return false;
+			for (int i = 0; i < groups.size(); i++) {
+				if (!Objects.equals(groups.get(i)[0], other.groups.get(i)[0])
+						|| !Objects.equals(groups.get(i)[1], other.groups.get(i)[1])) return false;
+			}
+			return Objects.equals(userId, other.userId) && Objects.equals(eid, other.eid)
+					&& Objects.equals(displayName, other.displayName) && Objects.equals(firstName, other.firstName)
+					&& Objects.equals(lastName, other.lastName) && Objects.equals(email, other.email)
+					&& Objects.equals(role, other.role);
+		}
+	}
+
+	private final long siteModified;
+	private final long built;
+	private final long since;
+	private final List<Member> members;
+
+	private MembershipSnapshot(long siteModified, long built, long since, List<Member> members) {
+		this.siteModified = siteModified;
+		this.built = built;
+		this.since = since;
+		this.members = members;
+	}
+
+	/**
+	 * Make the snapshot that follows another.
+	 *
+	 * @param siteModified when the site was last modified
+	 * @param current the site's members now
+	 * @param previous the snapshot this one replaces, or null if there is none
+	 * @param now the time now
+	 * @return the new snapshot, with the members sorted by user id
+	 */
+	public static MembershipSnapshot build(long siteModified, List<Member> current, MembershipSnapshot previous, long now) {
+		if (previous == null) {
+			List<Member> members = current.stream()
+					.map(m -> m.changedAt(now))
+					.sorted(Comparator.comparing(m -> m.userId))
+					.collect(Collectors.toList());
+			return new MembershipSnapshot(siteModified, now, now, members);
+		}
+
+		// The differences since the previous snapshot have to be after it
+		long time = Math.max(now, previous.built + 1);
+		Map<String, Member> before = new HashMap<>();
+		for (Member member : previous.members) {
+			before.put(member.userId, member);
+		}
+
+		List<Member> members = new ArrayList<>();
+		for (Member member : current) {
+			Member was = before.remove(member.userId);
+			members.add(member.changedAt(was != null && member.same(was) ? was.changed : time));
+		}
+		for (Member left : before.values()) {
+			members.add(left.deleted ? left : left.deletedAt(time));
+		}
+		members.sort(Comparator.comparing(m -> m.userId));
+		return new MembershipSnapshot(siteModified, time, previous.since, members);
+	}
+
+	/**
+	 * @return when the site was last modified as of this snapshot
+	 */
+	public long getSiteModified() {
+		return siteModified;
+	}
+
+	/**
+	 * @return when this snapshot was built, to ask for the differences since it
+	 */
+	public long getBuilt() {
+		return built;
+	}
+
+	/**
+	 * Get a page of the members, or of the differences since an earlier snapshot.
+	 *
+	 * @param since when the earlier snapshot was built, or 0 for all of the current members. If the
+	 * differences go back further than this snapshot knows about, all of the current members are returned.
+	 * @param offset the first member of the page
+	 * @param limit the most members on the page, or 0 for all of them
+	 * @return the members on the page
+	 */
+	public List<Member> getMembers(long since, int offset, int limit) {
+		boolean differences = since > 0 && since >= this.since;
+		List<Member> matching = members.stream()
+				.filter(m -> differences ? m.changed > since : !m.deleted)
+				.collect(Collectors.toList());
+		if (offset >= matching.size()) return Collections.emptyList();
+		int end = limit > 0 ? Math.min(matching.size(), offset + limit) : matching.size();
+		return matching.subList(offset, end);
+	}
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2018- Charles R. Severance
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.lti13;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.grading.api.Assignment;
+import org.tsugi.ags2.objects.Score;
+
+/**
+ * Coalesces the scores posted at the same time for a gradebook column, so that a tool posting the
+ * scores for a whole class is written to the gradebook in a few batches rather than a transaction
+ * per score.
+ *
+ * The first score posted for a column is written straight away. Scores posted for the column while
+ * it is being written queue up, and the first of those requests writes everything queued as the next
+ * batch, so a score posted on its own is not held back waiting for others. Every request still waits
+ * for its own score to be written, and gets its own result.
+ */
+@Slf4j
+public class ScoreBatcher {
+
+	/**
+	 * Writes a batch of scores to a gradebook column.
+	 */
+	public interface Writer {
+		/**
+		 * @param siteId the site
+		 * @param column the gradebook column
+		 * @param scores the latest score for each user, by user id
+		 * @return Boolean.TRUE or an error message for each user, by user id
+		 */
+		Map<String, Object> write(String siteId, Assignment column, Map<String, Score> scores);
+	}
+
+	private static class Pending {
+		final String userId;
+		final Score score;
+		// Completed with the result once the score is written, or with null when it is this request's turn to write
+		final CompletableFuture<Object> turn = new CompletableFuture<>();
+		volatile Object result;
+
+		Pending(String userId, Score score) {
+			this.userId = userId;
+			this.score = score;
+		}
+
+		void finish(Object result) {
+			if (this.result != null) return;
+			this.result = result;
+			turn.complete(result);
+		}
+	}
+
+	private static class Line {
+		final String siteId;
+		final Assignment column;
+		final List<Pending> waiting = new ArrayList<>();
+		boolean writing;
+		boolean closed;
+
+		Line(String siteId, Assignment column) {
+			this.siteId = siteId;
+			this.column = column;
+		}
+	}
+
+	private final Writer writer;
+	private final int maxBatch;
+	private final long reportMillis;
+	private final Map<String, Line> lines = new ConcurrentHashMap<>();
+
+	// Counts since the last report
+	private long reportStart = System.currentTimeMillis();
+	private long scores;
+	private long batches;
+	private long latencyNanos;
+	private long maxLatencyNanos;
+
+	/**
+	 * @param writer writes the batches
+	 * @param maxBatch the most scores to write in one batch
+	 * @param reportSeconds how often to log the throughput and latency of the scores written, or 0 not to
+	 */
+	public ScoreBatcher(Writer writer, int maxBatch, int reportSeconds) {
+		this.writer = writer;
+		this.maxBatch = Math.max(1, maxBatch);
+		this.reportMillis = reportSeconds * 1000L;
+	}
+
+	/**
+	 * Write a score, with any others posted for the same column at the same time.
+	 *
+	 * @param siteId the site
+	 * @param column the gradebook column
+	 * @param userId the user the score is for
+	 * @param score the score
+	 * @return Boolean.TRUE if the score was written, otherwise Boolean.FALSE or an error message
+	 */
+	public Object submit(String siteId, Assignment column, String userId, Score score) {
+		long start = System.nanoTime();
+		String key = siteId + "/" + column.getId();
+		Pending pending = new Pending(userId, score);
+		Line line = join(key, siteId, column, pending);
+
+		Object result = await(pending.turn);
+		if (result == null) {
+			write(key, line);
+			result = pending.result;
+		}
+		record(start);
+		return result;
+	}
+
+	/**
+	 * @return the number of scores waiting to be written to a column
+	 */
+	int queued(String siteId, Long columnId) {
+		Line line = lines.get(siteId + "/" + columnId);
+		if (line == null) return 0;
+		synchronized (line) {
+			return line.waiting.size();
+		}
+	}
+
+	private Line join(String key, String siteId, Assignment column, Pending pending) {
+		while (true) {
+			Line line = lines.computeIfAbsent(key, k -> new Line(siteId, column));
+			synchronized (line) {
+				// Replaced by a new line for the column as we joined
+				if (line.closed) continue;
+
+				line.waiting.add(pending);
+				if (!line.writing) {
+					line.writing = true;
+					pending.turn.complete(null);
+				}
+				return line;
+			}
+		}
+	}
+
+	private void write(String key, Line line) {
+		List<Pending> batch;
+		synchronized (line) {
+			List<Pending> next = line.waiting.subList(0, Math.min(line.waiting.size(), maxBatch));
+			batch = new ArrayList<>(next);
+			next.clear();
+		}
+
+		try {
+			// The last score posted for a user is the one that counts
+			Map<String, Score> latest = new LinkedHashMap<>();
+			for (Pending pending : batch) {
+				latest.put(pending.userId, pending.score);
+			}
+
+			Map<String, Object> results;
+			try {
+				results = writer.write(line.siteId, line.column, latest);
+			} catch (RuntimeException e) {
+				log.warn("Could not store {} scores for site={} column={}: {}", latest.size(), line.siteId, line.column.getId(), e.toString());
+				results = Collections.emptyMap();
+			}
+
+			for (Pending pending : batch) {
+				Object result = results.get(pending.userId);
+				pending.finish(result != null ? result : "Grade failure siteId=" + line.siteId);
+			}
+		} finally {
+			// Hand over to the first of the scores that queued up meanwhile
+			synchronized (line) {
+				for (Pending pending : batch) {
+					pending.finish("Grade failure siteId=" + line.siteId);
+				}
+				if (line.waiting.isEmpty()) {
+					line.writing = false;
+					line.closed = true;
+					lines.remove(key, line);
+				} else {
+					line.waiting.get(0).turn.complete(null);
+				}
+			}
+		}
+
+		synchronized (this) {
+			batches++;
+		}
+	}
+
+	// Waits even if interrupted, as a request that is handed the next batch has to write it
+	private static Object await(CompletableFuture<Object> turn) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return turn.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					// Never completed exceptionally
+					throw new IllegalStateException(e);
+				}
+			}
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized void record(long start) {
+		long latency = System.nanoTime() - start;
+		scores++;
+		latencyNanos += latency;
+		maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+
+		long now = System.currentTimeMillis();
+		if (reportMillis <= 0 || now - reportStart < reportMillis) return;
+
+		long elapsed = Math.max(1, now - reportStart);
+		log.info("LTI score ingestion: {} scores in {} batches over {}s, {} scores/s, mean latency {}ms, max latency {}ms",
+				scores, batches, elapsed / 1000, scores * 1000 / elapsed,
+				TimeUnit.NANOSECONDS.toMillis(latencyNanos / scores), TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos));
+		reportStart = now;
+		scores = 0;
+		batches = 0;
+		latencyNanos = 0;
+		maxLatencyNanos = 0;
+	}
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2018- Charles R. Severance
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.lti13;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MembershipSnapshotTest {
+
+	private MembershipSnapshot.Member member(String userId, String role) {
+		return new MembershipSnapshot.Member(userId, userId + "-eid", userId, userId, userId, userId + "@example.com",
+				role, "maintain".equals(role), Collections.singletonList(new String[] { "group1", "Group 1" }));
+	}
+
+	private List<String> ids(List<MembershipSnapshot.Member> members) {
+		return members.stream().map(m -> m.deleted ? m.userId + " deleted" : m.userId).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testPages() {
+		MembershipSnapshot snapshot = MembershipSnapshot.build(1L, Arrays.asList(
+				member("c", "access"), member("a", "maintain"), member("b", "access")), null, 1000L);
+
+		assertThat(ids(snapshot.getMembers(0, 0, 0)), contains("a", "b", "c"));
+		assertThat(ids(snapshot.getMembers(0, 0, 2)), contains("a", "b"));
+		assertThat(ids(snapshot.getMembers(0, 2, 2)), contains("c"));
+		assertThat(snapshot.getMembers(0, 4, 2), empty());
+	}
+
+	@Test
+	public void testDifferences() {
+		MembershipSnapshot first = MembershipSnapshot.build(1L, Arrays.asList(
+				member("a", "maintain"), member("b", "access"), member("c", "access")), null, 1000L);
+		MembershipSnapshot second = MembershipSnapshot.build(2L, Arrays.asList(
+				member("a", "maintain"), member("b", "maintain"), member("d", "access")), first, 1000L);
+
+		assertThat(second.getBuilt(), greaterThan(first.getBuilt()));
+		assertThat(ids(second.getMembers(first.getBuilt(), 0, 0)), contains("b", "c deleted", "d"));
+		assertThat(second.getMembers(second.getBuilt(), 0, 0), empty());
+		assertThat(ids(second.getMembers(0, 0, 0)), contains("a", "b", "d"));
+
+		// Further back than the snapshots go is everyone
+		assertThat(ids(second.getMembers(first.getBuilt() - 1, 0, 0)), contains("a", "b", "d"));
+	}
+}
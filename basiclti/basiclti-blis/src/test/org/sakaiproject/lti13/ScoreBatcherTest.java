@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2018- Charles R. Severance
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.lti13;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.sakaiproject.grading.api.Assignment;
+import org.tsugi.ags2.objects.Score;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ScoreBatcherTest {
+
+	private Score score(double given) {
+		Score score = new Score();
+		score.scoreGiven = given;
+		return score;
+	}
+
+	private Assignment column() {
+		Assignment column = new Assignment();
+		column.setId(1L);
+		column.setName("Quiz");
+		return column;
+	}
+
+	// Post a score and wait for it to queue up behind the others
+	private void queue(ExecutorService executor, ScoreBatcher batcher, List<Future<Object>> queued, String userId, double given)
+			throws InterruptedException {
+		int before = batcher.queued("site", 1L);
+		queued.add(executor.submit(() -> batcher.submit("site", column(), userId, score(given))));
+		while (batcher.queued("site", 1L) == before) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testScoreOnItsOwn() {
+		List<Map<String, Score>> batches = new ArrayList<>();
+		ScoreBatcher batcher = new ScoreBatcher((siteId, column, scores) -> {
+			batches.add(scores);
+			Map<String, Object> results = new HashMap<>();
+			scores.keySet().forEach(u -> results.put(u, Boolean.TRUE));
+			return results;
+		}, 10, 0);
+
+		assertThat(batcher.submit("site", column(), "user1", score(1)), is(Boolean.TRUE));
+		assertThat(batcher.submit("site", column(), "user2", score(2)), is(Boolean.TRUE));
+		assertThat(batches, hasSize(2));
+		assertThat(batcher.queued("site", 1L), is(0));
+	}
+
+	@Test
+	public void testScoresPostedTogetherAreBatched() throws Exception {
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Map<String, Score>> batches = new ArrayList<>();
+		ScoreBatcher batcher = new ScoreBatcher((siteId, column, scores) -> {
+			synchronized (batches) {
+				batches.add(scores);
+			}
+			writing.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			Map<String, Object> results = new HashMap<>();
+			scores.keySet().forEach(u -> results.put(u, u.equals("bad") ? "Grade failure" : Boolean.TRUE));
+			return results;
+		}, 10, 0);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<Object> first = executor.submit(() -> batcher.submit("site", column(), "user1", score(1)));
+			writing.await(10, TimeUnit.SECONDS);
+
+			List<Future<Object>> queued = new ArrayList<>();
+			queue(executor, batcher, queued, "user2", 2);
+			queue(executor, batcher, queued, "bad", 3);
+			queue(executor, batcher, queued, "user2", 4);
+			release.countDown();
+
+			assertThat(first.get(10, TimeUnit.SECONDS), is(Boolean.TRUE));
+			assertThat(queued.get(0).get(10, TimeUnit.SECONDS), is(Boolean.TRUE));
+			assertThat(queued.get(1).get(10, TimeUnit.SECONDS), is("Grade failure"));
+			assertThat(queued.get(2).get(10, TimeUnit.SECONDS), is(Boolean.TRUE));
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// The three queued up are written together, with the last score for user2
+		assertThat(batches, hasSize(2));
+		assertThat(batches.get(1).keySet(), contains("user2", "bad"));
+		assertThat(batches.get(1).get("user2").scoreGiven, is(4.0));
+	}
+}
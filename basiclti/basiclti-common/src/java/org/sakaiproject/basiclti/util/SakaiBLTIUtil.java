@@ -18,17 +18,20 @@
  */
 package org.sakaiproject.basiclti.util;
 
+import java.math.RoundingMode;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.security.Key;
 import java.security.KeyPair;
+import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
@@ -74,6 +77,8 @@ import org.sakaiproject.grading.api.AssessmentNotFoundException;
 // import org.sakaiproject.assignment.api.model.Assignment        // We call this an "assignment"
 import org.sakaiproject.grading.api.CommentDefinition;
 import org.sakaiproject.grading.api.ConflictingAssignmentNameException;
+import org.sakaiproject.grading.api.GradeDefinition;
+import org.sakaiproject.grading.api.GradeType;
 import org.sakaiproject.grading.api.GradingService;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.ToolConfiguration;
@@ -2434,7 +2439,30 @@ public class SakaiBLTIUtil {
 		}
 
 		try {
-			// Indicate "who" is setting this grade - needs to be a real user account
+			// Store scores for several students in a gradebook column together, with the gradebook user already set.
+	// Each grade definition sets every field of a grade, so carry over the students the gradebook has excused
+	static void storeScores(GradingService g, String siteId, org.sakaiproject.grading.api.Assignment gradebookColumn,
+			Map<String, Score> scores, Locale locale) {
+
+		Set<String> excused = g.getGradesForStudentsForItem(siteId, gradebookColumn.getId(), new ArrayList<>(scores.keySet()))
+				.stream()
+				.filter(GradeDefinition::isExcused)
+				.map(GradeDefinition::getStudentUid)
+				.collect(Collectors.toSet());
+
+		List<GradeDefinition> gradeDefs = new ArrayList<>();
+		for (Map.Entry<String, Score> entry : scores.entrySet()) {
+			GradeDefinition gradeDef = new GradeDefinition();
+			gradeDef.setStudentUid(entry.getKey());
+			gradeDef.setGrade(getGradeString(gradebookColumn, entry.getValue(), locale));
+			gradeDef.setGradeComment(entry.getValue().comment);
+			gradeDef.setExcused(excused.contains(entry.getKey()));
+			gradeDefs.add(gradeDef);
+		}
+		g.saveGradesAndComments(siteId, gradebookColumn.getId(), gradeDefs, "External Outcome");
+	}
+
+	// Indicate "who" is setting this grade - needs to be a real user account
 			String gb_user_id = ServerConfigurationService.getString(
 					"lti.outcomes.userid", "admin");
 			String gb_user_eid = ServerConfigurationService.getString(
@@ -2529,11 +2557,7 @@ public class SakaiBLTIUtil {
 		}
 
 		// Send the grades to the gradebook
-		Double scoreGiven = scoreObj.scoreGiven;
-		String comment = scoreObj.comment;
 		if ( scoreObj.scoreMaximum == null ) scoreObj.scoreMaximum = lineItem.scoreMaximum != null ? lineItem.scoreMaximum : 100D;
-		Double scoreMaximum = scoreObj.scoreMaximum;
-		log.debug("scoreGiven={} scoreMaximum={} userId={} comment={}", scoreGiven, scoreMaximum, userId, comment);
 
 		// Look up the gradebook column so we can find the max points
 		GradingService g = (GradingService) ComponentManager
@@ -2544,13 +2568,104 @@ public class SakaiBLTIUtil {
 		Session sess = SessionManager.getCurrentSession();
 
 		try {
-			// Indicate "who" is setting this grade - needs to be a real user account
-			String gb_user_id = ServerConfigurationService.getString(
-					"lti.outcomes.userid", "admin");
-			String gb_user_eid = ServerConfigurationService.getString(
-					"lti.outcomes.usereid", gb_user_id);
-			sess.setUserId(gb_user_id);
-			sess.setUserEid(gb_user_eid);
+			setGradebookUser(sess);
+			return storeScore(g, siteId, gradebookColumn, userId, scoreObj);
+		} finally {
+			sess.invalidate(); // Make sure to leave no traces
+		}
+	}
+
+	/**
+	 * Store the scores for several users in one gradebook column, as a batch where the gradebook takes
+	 * its grades in points, and one at a time where it doesn't or the batch is refused.
+	 *
+	 * @param siteId the site, which is the gradebook
+	 * @param gradebookColumn the column
+	 * @param scores the score for each user, by user id
+	 * @return Boolean.TRUE or an error message for each user, by user id
+	 */
+	public static Map<String, Object> handleGradebookLTI13Batch(String siteId, org.sakaiproject.grading.api.Assignment gradebookColumn,
+			Map<String, Score> scores) {
+
+		GradingService g = (GradingService) ComponentManager
+				.get("org.sakaiproject.grading.api.GradingService");
+		Map<String, Object> results = new HashMap<>();
+		Session sess = SessionManager.getCurrentSession();
+
+		try {
+			setGradebookUser(sess);
+			if ( scores.size() > 1 && g.getGradeEntryType(siteId) == GradeType.POINTS ) {
+				// The gradebook parses grades in the locale of the user it is acting for
+				Locale locale = new ResourceLoader().getLocale();
+				try {
+					storeScores(g, siteId, gradebookColumn, scores, locale);
+					log.info("Stored {} scores site={} title={}", scores.size(), siteId, gradebookColumn.getName());
+					for (String userId : scores.keySet()) {
+						results.put(userId, Boolean.TRUE);
+					}
+					return results;
+				} catch (RuntimeException e) {
+					// None of the batch is saved, so store them one at a time to find the ones at fault
+					log.warn("Could not store {} scores together site={} title={}, storing them one at a time: {}",
+							scores.size(), siteId, gradebookColumn.getName(), e.toString());
+				}
+			}
+
+			for (Map.Entry<String, Score> entry : scores.entrySet()) {
+				results.put(entry.getKey(), storeScore(g, siteId, gradebookColumn, entry.getKey(), entry.getValue()));
+			}
+			return results;
+		} finally {
+			sess.invalidate(); // Make sure to leave no traces
+		}
+	}
+
+	// Indicate "who" is setting this grade - needs to be a real user account
+	private static void setGradebookUser(Session sess) {
+		String gb_user_id = ServerConfigurationService.getString(
+				"lti.outcomes.userid", "admin");
+		String gb_user_eid = ServerConfigurationService.getString(
+				"lti.outcomes.usereid", gb_user_id);
+		sess.setUserId(gb_user_id);
+		sess.setUserEid(gb_user_eid);
+	}
+
+	// The points for a score in a gradebook column, scaled from the score's maximum to the column's,
+	// or null if the score is to be cleared
+	private static Double getScorePoints(org.sakaiproject.grading.api.Assignment gradebookColumn, Score scoreObj) {
+		Double scoreGiven = scoreObj.scoreGiven;
+		if (scoreGiven == null) return null;
+		Double scoreMaximum = scoreObj.scoreMaximum != null ? scoreObj.scoreMaximum : 100D;
+		Double gradebookColumnPoints = gradebookColumn.getPoints();
+		if ( gradebookColumnPoints.equals(scoreMaximum) ) {
+			return scoreGiven;
+		}
+		return (scoreGiven / scoreMaximum) * gradebookColumnPoints;
+	}
+
+	// The points for a score in a gradebook column as the gradebook accepts a grade: with at most two
+	// decimal places, and the decimal separator of the locale it parses grades in. Null if the score is
+	// to be cleared
+	static String getGradeString(org.sakaiproject.grading.api.Assignment gradebookColumn, Score scoreObj, Locale locale) {
+		Double points = getScorePoints(gradebookColumn, scoreObj);
+		if (points == null) return null;
+		NumberFormat format = NumberFormat.getInstance(locale);
+		format.setGroupingUsed(false);
+		format.setMaximumFractionDigits(2);
+		format.setRoundingMode(RoundingMode.HALF_UP);
+		return format.format(points);
+	}
+
+	// Store one score in a gradebook column, with the gradebook user already set
+	private static Object storeScore(GradingService g, String siteId, org.sakaiproject.grading.api.Assignment gradebookColumn,
+			String userId, Score scoreObj) {
+
+		String title = gradebookColumn.getName();
+		Double scoreGiven = scoreObj.scoreGiven;
+		String comment = scoreObj.comment;
+		log.debug("scoreGiven={} scoreMaximum={} userId={} comment={}", scoreGiven, scoreObj.scoreMaximum, userId, comment);
+
+		try {
 			if (scoreGiven == null) {
 				g.setAssignmentScoreString(siteId, gradebookColumn.getId(), userId, null, "External Outcome");
 				// Since LTI 13 uses update semantics on grade delete, we accept the comment if it is there
@@ -2562,14 +2677,8 @@ public class SakaiBLTIUtil {
 				log.info("Delete Score site={} title={} userId={}", siteId, title, userId);
 				return Boolean.TRUE;
 			} else {
-				Double gradebookColumnPoints = gradebookColumn.getPoints();
-				Double assignedGrade = null;
-				if ( scoreMaximum == null || gradebookColumnPoints.equals(scoreMaximum) ) {
-					assignedGrade = scoreGiven;
-				} else {
-					assignedGrade = (scoreGiven / scoreMaximum) * gradebookColumnPoints;
-				}
-				g.setAssignmentScoreString(siteId, gradebookColumn.getId(), userId, assignedGrade.toString(), "External Outcome");
+				String assignedGrade = getGradeString(gradebookColumn, scoreObj, new ResourceLoader().getLocale());
+				g.setAssignmentScoreString(siteId, gradebookColumn.getId(), userId, assignedGrade, "External Outcome");
 				if ( StringUtils.isBlank(comment) ) {
 					g.deleteAssignmentScoreComment(siteId, gradebookColumn.getId(), userId);
 				} else {
@@ -2579,10 +2688,7 @@ public class SakaiBLTIUtil {
 				return Boolean.TRUE;
 			}
 		} catch (NumberFormatException | AssessmentNotFoundException e) {
-			retval = "Grade failure " + e.getMessage() + " siteId=" + siteId;
 			log.warn("handleGradebook Grade failure in site: {}, error: {}", siteId, e);
-		} finally {
-			sess.invalidate(); // Make sure to leave no traces
 		}
 		return Boolean.FALSE;
 	}
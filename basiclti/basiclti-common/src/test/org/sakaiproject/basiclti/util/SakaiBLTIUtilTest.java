@@ -23,17 +23,30 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Arrays;
 
 import org.json.simple.JSONObject;
+import org.mockito.ArgumentCaptor;
 
 import org.sakaiproject.lti.api.LTIService;
 import org.sakaiproject.basiclti.util.SakaiBLTIUtil;
+import org.sakaiproject.grading.api.Assignment;
+import org.sakaiproject.grading.api.GradeDefinition;
+import org.sakaiproject.grading.api.GradingService;
+import org.tsugi.ags2.objects.Score;
 import org.tsugi.basiclti.BasicLTIUtil;
 import org.tsugi.basiclti.BasicLTIConstants;
 import org.tsugi.lti13.LTI13ConstantsUtil;
@@ -530,6 +543,72 @@ public class SakaiBLTIUtilTest {
 		assertTrue(retval.size() == 0);
 	}
 
-}
+	private Score score(Double given, Double maximum) {
+		Score score = new Score();
+		score.scoreGiven = given;
+		score.scoreMaximum = maximum;
+		return score;
+	}
+
+	// Grades have to pass the gradebook's check of at most two decimal places, in its locale
+	@Test
+	public void testGradeString() {
+		Assignment column = new Assignment();
+		column.setPoints(10D);
+
+		// Scaled from the score's maximum to the column's
+		assertEquals("7.78", SakaiBLTIUtil.getGradeString(column, score(7D, 9D), Locale.US));
+		assertEquals("7,78", SakaiBLTIUtil.getGradeString(column, score(7D, 9D), Locale.GERMANY));
+		assertEquals("8.5", SakaiBLTIUtil.getGradeString(column, score(8.5D, 10D), Locale.US));
+		assertEquals("8,5", SakaiBLTIUtil.getGradeString(column, score(8.5D, 10D), Locale.GERMANY));
+		assertEquals("10", SakaiBLTIUtil.getGradeString(column, score(100D, null), Locale.US));
+
+		// No grouping separators in large grades
+		column.setPoints(5000D);
+		assertEquals("3333.33", SakaiBLTIUtil.getGradeString(column, score(1D, 1.5D), Locale.US));
+		assertEquals("3333,33", SakaiBLTIUtil.getGradeString(column, score(1D, 1.5D), Locale.GERMANY));
+
+		assertNull(SakaiBLTIUtil.getGradeString(column, score(null, 10D), Locale.US));
+	}
 
+	private GradeDefinition gradeDefinition(String studentUid, String grade, boolean excused) {
+		GradeDefinition gradeDef = new GradeDefinition();
+		gradeDef.setStudentUid(studentUid);
+		gradeDef.setGrade(grade);
+		gradeDef.setExcused(excused);
+		return gradeDef;
+	}
 
+	// A batch sets every field of a grade, so it must not un-excuse a student the gradebook has excused
+	@Test
+	public void testBatchKeepsExcusedStudentsExcused() {
+		Assignment column = new Assignment();
+		column.setId(42L);
+		column.setPoints(10D);
+
+		GradingService g = mock(GradingService.class);
+		when(g.getGradesForStudentsForItem(eq("site"), eq(42L), anyList())).thenReturn(Arrays.asList(
+				gradeDefinition("excused", "3", true),
+				gradeDefinition("graded", "4", false)));
+
+		Map<String, Score> scores = new TreeMap<>();
+		scores.put("excused", score(8D, 10D));
+		scores.put("graded", score(9D, 10D));
+		scores.put("new", score(10D, 10D));
+		SakaiBLTIUtil.storeScores(g, "site", column, scores, Locale.US);
+
+		ArgumentCaptor<List<GradeDefinition>> saved = ArgumentCaptor.forClass(List.class);
+		verify(g).saveGradesAndComments(eq("site"), eq(42L), saved.capture(), eq("External Outcome"));
+		Map<String, GradeDefinition> byStudent = new HashMap<>();
+		for (GradeDefinition gradeDef : saved.getValue()) {
+			byStudent.put(gradeDef.getStudentUid(), gradeDef);
+		}
+		assertEquals(3, byStudent.size());
+		assertTrue(byStudent.get("excused").isExcused());
+		assertEquals("8", byStudent.get("excused").getGrade());
+		assertFalse(byStudent.get("graded").isExcused());
+		assertEquals("9", byStudent.get("graded").getGrade());
+		assertFalse(byStudent.get("new").isExcused());
+	}
+
+}
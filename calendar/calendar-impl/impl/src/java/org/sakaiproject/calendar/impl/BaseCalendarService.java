@@ -24,12 +24,16 @@ package org.sakaiproject.calendar.impl;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -38,7 +42,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 
 import lombok.extern.slf4j.Slf4j;
 
-import net.fortuna.ical4j.data.CalendarOutputter;
+import net.fortuna.ical4j.data.FoldingWriter;
 import net.fortuna.ical4j.model.DateTime;
 import net.fortuna.ical4j.model.Property;
 import net.fortuna.ical4j.model.TimeZoneRegistry;
@@ -48,6 +52,7 @@ import net.fortuna.ical4j.model.parameter.Value;
 import net.fortuna.ical4j.model.property.*;
 import net.fortuna.ical4j.util.MapTimeZoneCache;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import org.w3c.dom.Document;
@@ -136,6 +141,12 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 	public static final String SAKAI = "Sakai";
 	
 	private Cache<String, Calendar> cache = null;
+
+	/** The expanded instances of recurring events. */
+	protected OccurrenceIndex m_occurrenceIndex = null;
+
+	/** The iCal feeds exported, and the text of the events in them. */
+	protected ICalFeedCache m_icalFeedCache = null;
 	
 	/**
 	 * Access this service from the inner classes.
@@ -714,6 +725,23 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 		SimpleConfiguration cacheConfig = new SimpleConfiguration(0);
 		cacheConfig.setStatisticsEnabled(true);
 		cache = this.m_memoryService.createCache("org.sakaiproject.calendar.cache", cacheConfig);
+
+		// index of recurring event instances, generated for a window either side of the range asked for
+		SimpleConfiguration occurrenceConfig = new SimpleConfiguration(m_serverConfigurationService.getInt("calendar.occurrence.index.size", 10000));
+		m_occurrenceIndex = new OccurrenceIndex(this.m_memoryService.createCache("org.sakaiproject.calendar.impl.BaseCalendarService.occurrences", occurrenceConfig),
+				TimeUnit.DAYS.toMillis(m_serverConfigurationService.getInt("calendar.occurrence.index.window.days", 90)));
+
+		// exported iCal feeds, so polling clients can be answered without generating an unchanged feed again
+		if (m_serverConfigurationService.getBoolean("calendar.ical.cache.enabled", true))
+		{
+			int feedCount = m_serverConfigurationService.getInt("calendar.ical.cache.size", 1000);
+			SimpleConfiguration feedConfig = new SimpleConfiguration(feedCount, m_serverConfigurationService.getInt("calendar.ical.cache.ttl", 3600), 0);
+			SimpleConfiguration eventConfig = new SimpleConfiguration(m_serverConfigurationService.getInt("calendar.ical.cache.events.size", 50000));
+			m_icalFeedCache = new ICalFeedCache(this.m_memoryService.createCache("org.sakaiproject.calendar.impl.BaseCalendarService.icalFeeds", feedConfig),
+					this.m_memoryService.createCache("org.sakaiproject.calendar.impl.BaseCalendarService.icalEvents", eventConfig),
+					m_serverConfigurationService.getInt("calendar.ical.cache.max.feed.size", 1024 * 1024),
+					m_serverConfigurationService.getInt("calendar.ical.cache.max.bytes", 64 * 1024 * 1024), feedCount);
+		}
 		System.setProperty("net.fortuna.ical4j.timezone.cache.impl", MapTimeZoneCache.class.getName());
 
 		m_eventTrackingService.addObserver(this);
@@ -2162,10 +2190,31 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 			Event event = (Event) arg;
 			if (EVENT_MODIFY_CALENDAR.equals(event.getEvent())) {
 				cache.remove(event.getResource());
+				if (m_occurrenceIndex != null) m_occurrenceIndex.remove(event.getResource());
+			}
+			if (m_icalFeedCache != null && event.getEvent().startsWith("calendar.") && event.getResource() != null) {
+				String calendarRef = calendarOf(event.getResource());
+				if (calendarRef != null) m_icalFeedCache.calendarChanged(calendarRef);
 			}
 		}
 	}
 
+	/**
+	 * Find the calendar a calendar or calendar event reference is in.
+	 * 
+	 * @param ref
+	 *        The calendar or event reference.
+	 * @return The calendar reference, or null if it's neither.
+	 */
+	protected String calendarOf(String ref)
+	{
+		String[] parts = ref.split(Entity.SEPARATOR);
+		if (parts.length < 5 || !REFERENCE_ROOT.equals(Entity.SEPARATOR + parts[1])) return null;
+		if (!REF_TYPE_CALENDAR.equals(parts[2]) && !REF_TYPE_EVENT.equals(parts[2])) return null;
+
+		return calendarReference(parts[3], parts[4]);
+	}
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Calendar implementation
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -4019,7 +4068,18 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 				{
 					timezone = TimeZone.getTimeZone(timeZoneID);
 				}
-				List instances = m_singleRule.generateInstances(this.getRange(), range, timezone);
+				List instances;
+				if (m_occurrenceIndex != null)
+				{
+					final TimeZone expandIn = timezone;
+					instances = m_occurrenceIndex.getInstances(getReference(), occurrenceStamp(timezone), range,
+							(first, last) -> m_singleRule.generateInstances(this.getRange(),
+									m_timeService.newTimeRange(m_timeService.newTime(first), m_timeService.newTime(last), true, true), expandIn));
+				}
+				else
+				{
+					instances = m_singleRule.generateInstances(this.getRange(), range, timezone);
+				}
 
 				// remove any excluded
 				getExclusionRule().excludeInstances(instances);
@@ -4039,6 +4099,20 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 
 		} // resolve
 
+		/**
+		 * Identify everything the instances of this recurring event depend on, so the occurrence index can tell when its entry is stale.
+		 * 
+		 * @param timezone
+		 *        The time zone the instances are generated in.
+		 * @return The stamp.
+		 */
+		protected String occurrenceStamp(TimeZone timezone)
+		{
+			return m_properties.getProperty(ResourceProperties.PROP_MODIFIED_DATE) + "|" + getRange() + "|" + timezone.getID() + "|"
+					+ m_timeService.getLocalTimeZone().getID() + "|" + m_singleRule.getFrequency() + "|" + m_singleRule.getInterval() + "|"
+					+ m_singleRule.getCount() + "|" + m_singleRule.getUntil();
+		}
+
 		/**
 		 * Get the value of an "extra" event field.
 		 * 
@@ -5197,55 +5271,7 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 		while (itEvent.hasNext())
 		{
 			CalendarEvent event = (CalendarEvent) itEvent.next();
-
-			DateTime icalStartDate = new DateTime(event.getRange().firstTime().getTime());
-			
-			long seconds = event.getRange().duration() / 1000;
-			VEvent icalEvent = new VEvent(icalStartDate, Duration.ofSeconds(seconds), event.getDisplayName() );
-			
-			net.fortuna.ical4j.model.parameter.TzId tzId = new net.fortuna.ical4j.model.parameter.TzId( m_timeService.getLocalTimeZone().getID() );
-			icalEvent.getProperty(Property.DTSTART).getParameters().add(tzId);
-			icalEvent.getProperty(Property.DTSTART).getParameters().add(Value.DATE_TIME);
-			icalEvent.getProperties().add(new Uid(event.getId()));
-			// build the description, adding links to attachments if necessary
-			StringBuffer description = new StringBuffer("");
-			if ( event.getDescription() != null && !event.getDescription().equals("") )
-				description.append(event.getDescription());
-			
-			List attachments = event.getAttachments();
-			if(attachments != null){
-				for (Iterator iter = attachments.iterator(); iter.hasNext();) {
-					Reference attachment = (Reference) iter.next();
-					description.append("\n");
-					description.append(attachment.getUrl());
-					description.append("\n");
-				}
-			}
-			if(description.length() > 0) {
-				//Replace \r with \n
-				icalEvent.getProperties().add(new Description(description.toString().replace('\r', '\n')));
-			}
-
-			if ( event.getLocation() != null && !event.getLocation().equals("") ) {
-				icalEvent.getProperties().add(new Location(event.getLocation().replace('\r', '\n')));
-			}
-
-			try
-			{
-				String organizer = m_userDirectoryService.getUser( event.getCreator() ).getDisplayName();
-				organizer = organizer.replaceAll(" ","%20"); // get rid of illegal URI characters
-				icalEvent.getProperties().add(new Organizer(new URI("CN="+organizer)));
-			}
-			catch (UserNotDefinedException e) {} // ignore
-			catch (URISyntaxException e) {} // ignore
-         
-			StringBuffer comment = new StringBuffer(event.getType());
-			comment.append(" (");
-			comment.append(event.getSiteName());
-			comment.append(")");
-			icalEvent.getProperties().add(new Comment(comment.toString()));
-			
-			ical.getComponents().add( icalEvent );
+			ical.getComponents().add( icalEvent(event) );
 			numEvents++;
 			
 			/* TBD: add to VEvent: recurring schedule, ...
@@ -5255,6 +5281,87 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 		
 		return numEvents;
 	}
+
+	/**
+	 * @param event
+	 *        The event.
+	 * @return The iCal event for the event.
+	 */
+	protected VEvent icalEvent(CalendarEvent event)
+	{
+		DateTime icalStartDate = new DateTime(event.getRange().firstTime().getTime());
+		
+		long seconds = event.getRange().duration() / 1000;
+		VEvent icalEvent = new VEvent(icalStartDate, Duration.ofSeconds(seconds), event.getDisplayName() );
+		
+		net.fortuna.ical4j.model.parameter.TzId tzId = new net.fortuna.ical4j.model.parameter.TzId( m_timeService.getLocalTimeZone().getID() );
+		icalEvent.getProperty(Property.DTSTART).getParameters().add(tzId);
+		icalEvent.getProperty(Property.DTSTART).getParameters().add(Value.DATE_TIME);
+		icalEvent.getProperties().add(new Uid(event.getId()));
+		// build the description, adding links to attachments if necessary
+		StringBuffer description = new StringBuffer("");
+		if ( event.getDescription() != null && !event.getDescription().equals("") )
+			description.append(event.getDescription());
+		
+		List attachments = event.getAttachments();
+		if(attachments != null){
+			for (Iterator iter = attachments.iterator(); iter.hasNext();) {
+				Reference attachment = (Reference) iter.next();
+				description.append("\n");
+				description.append(attachment.getUrl());
+				description.append("\n");
+			}
+		}
+		if(description.length() > 0) {
+			//Replace \r with \n
+			icalEvent.getProperties().add(new Description(description.toString().replace('\r', '\n')));
+		}
+
+		if ( event.getLocation() != null && !event.getLocation().equals("") ) {
+			icalEvent.getProperties().add(new Location(event.getLocation().replace('\r', '\n')));
+		}
+
+		try
+		{
+			String organizer = m_userDirectoryService.getUser( event.getCreator() ).getDisplayName();
+			organizer = organizer.replaceAll(" ","%20"); // get rid of illegal URI characters
+			icalEvent.getProperties().add(new Organizer(new URI("CN="+organizer)));
+		}
+		catch (UserNotDefinedException e) {} // ignore
+		catch (URISyntaxException e) {} // ignore
+         
+		StringBuffer comment = new StringBuffer(event.getType());
+		comment.append(" (");
+		comment.append(event.getSiteName());
+		comment.append(")");
+		icalEvent.getProperties().add(new Comment(comment.toString()));
+
+		return icalEvent;
+	}
+
+	/**
+	 * Get the iCal text of an event, from the cache if the event hasn't changed since it was last written.
+	 * 
+	 * @param event
+	 *        The event.
+	 * @param tzid
+	 *        The id of the time zone the event is shown in.
+	 * @return The iCal text, unfolded.
+	 */
+	protected String icalEventText(CalendarEvent event, String tzid)
+	{
+		if (m_icalFeedCache == null) return icalEvent(event).toString();
+
+		String key = event.getReference() + "|" + event.getProperties().getProperty(ResourceProperties.PROP_MODIFIED_DATE) + "|" + tzid;
+		String text = m_icalFeedCache.getEvent(key);
+		if (text == null)
+		{
+			text = icalEvent(event).toString();
+			m_icalFeedCache.putEvent(key, text);
+		}
+
+		return text;
+	}
 	
 	/* Given a current date via the calendarUtil paramter, returns a TimeRange for the year,
 	  *fromMonthsInput number of months from past to be included
@@ -5381,10 +5488,19 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 		return calendarReferenceList;
 	}
 
-	protected void printICalSchedule(String calendarName, List<String> calRefs, OutputStream os)
+	/**
+	 * Write the iCal feed of some calendars.
+	 * 
+	 * @return false if the feed could not be written out in full, true if it was.
+	 */
+	protected boolean printICalSchedule(String calendarName, List<String> calRefs, OutputStream os)
 //	protected void printICalSchedule(String calRef, OutputStream os) 
 		throws PermissionException
 	{
+		// Get a list of events.
+		CalendarEventVector events = getEvents(calRefs, getICalTimeRange());
+		if (events.isEmpty()) return true;
+
 		// generate iCal text file 
 		net.fortuna.ical4j.model.Calendar ical = new net.fortuna.ical4j.model.Calendar();
 		ical.getProperties().add(new ProdId("-//SakaiProject//iCal4j 1.0//EN"));
@@ -5397,18 +5513,25 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 		TzId tzId = new TzId( m_timeService.getLocalTimeZone().getID() ); 
 		ical.getComponents().add(registry.getTimeZone(tzId.getValue()).getVTimeZone());
 		
-		CalendarOutputter icalOut = new CalendarOutputter();
-		int numEvents = generateICal(ical, calRefs);
-			
+		// write the calendar a component at a time, as CalendarOutputter would, rather than building all of it in memory first
 		try 
 		{
-			if (numEvents > 0) {
-				icalOut.output( ical, os );
+			Writer writer = new FoldingWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), FoldingWriter.REDUCED_FOLD_LENGTH);
+			writer.write("BEGIN:VCALENDAR\r\n");
+			writer.write(ical.getProperties().toString());
+			writer.write(ical.getComponents().toString());
+			for (Iterator i = events.iterator(); i.hasNext();)
+			{
+				writer.write(icalEventText((CalendarEvent) i.next(), tzId.getValue()));
 			}
+			writer.write("END:VCALENDAR\r\n");
+			writer.flush();
+			return true;
 		}
 		catch (Exception e)
 		{
            log.warn(".printICalSchedule(): ", e);
+           return false;
 		}
 	}
 
@@ -5706,6 +5829,10 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 		List<String> referenceList = getCalendarReferences(ref.getContext());
 		Time modDate = m_timeService.newTime(0);
 
+		// what the feed depends on, to tag it with; feeds including external subscriptions change without us seeing it so are not cached
+		boolean cacheable = m_icalFeedCache != null;
+		StringBuilder version = new StringBuilder();
+
 		// update date/time reference
 		for (String curCalRef: referenceList)
 		{
@@ -5727,13 +5854,20 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 			 */
 			if (curCal == null)
 			{	
+				cacheable = false;
 				continue;
 			}
 			Time curModDate = curCal.getModified();
-			if ( curModDate != null && curModDate.after(modDate))
+			long changed = m_icalFeedCache != null ? m_icalFeedCache.lastChanged(curCalRef) : 0;
+			if (curModDate != null && curModDate.getTime() > changed)
+			{
+				changed = curModDate.getTime();
+			}
+			if (changed > modDate.getTime())
 			{
-				modDate = curModDate;
+				modDate = m_timeService.newTime(changed);
 			}
+			version.append(curCalRef).append('@').append(changed).append(';');
 		}
 		res.addHeader("Content-Disposition", "inline; filename=\"" + aliasName + "\"");
 		res.setContentType(ICAL_MIME_TYPE);
@@ -5747,7 +5881,43 @@ public abstract class BaseCalendarService implements CalendarService, DoubleStor
 			}
 		} catch (IdUnusedException e) {
 		}
-		printICalSchedule(calendarName, referenceList, res.getOutputStream());
+
+		if (!cacheable)
+		{
+			printICalSchedule(calendarName, referenceList, res.getOutputStream());
+			return;
+		}
+
+		// the events in the feed also depend on who is asking (grouped events), their time zone, and the day (the exported range moves with it)
+		version.append(m_sessionManager.getCurrentSessionUserId()).append(';').append(m_timeService.getLocalTimeZone().getID()).append(';')
+				.append(calendarName).append(';').append(java.time.LocalDate.now());
+		String etag = "\"" + DigestUtils.sha1Hex(version.toString()) + "\"";
+		res.setHeader("ETag", etag);
+
+		ICalFeedCache.Feed feed = m_icalFeedCache.getFeed(etag);
+		if (feed != null)
+		{
+			String ifNoneMatch = req.getHeader("If-None-Match");
+			long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+			if ((ifNoneMatch != null && ifNoneMatch.contains(etag))
+					|| (ifNoneMatch == null && ifModifiedSince >= 0 && modDate.getTime() / 1000 <= ifModifiedSince / 1000))
+			{
+				res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+			if (feed.getBody() != null)
+			{
+				res.setContentLength(feed.getBody().length);
+				res.getOutputStream().write(feed.getBody());
+				return;
+			}
+		}
+
+		OutputStream capture = m_icalFeedCache.capture(res.getOutputStream());
+		if (printICalSchedule(calendarName, referenceList, capture))
+		{
+			m_icalFeedCache.putFeed(etag, modDate.getTime(), capture);
+		}
 	}
 	
 	protected void handleAccessIcal(HttpServletRequest req, HttpServletResponse res, Reference ref, String calRef)
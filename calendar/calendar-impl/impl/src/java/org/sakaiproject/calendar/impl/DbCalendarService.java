@@ -177,6 +177,7 @@ public class DbCalendarService
 			// TODO: what about owner, draft?
 			super(m_cTableName, "CALENDAR_ID", m_rTableName, "EVENT_ID", "CALENDAR_ID",
 					"EVENT_START", /* owner, draft, pubview */null, null, null, FIELDS, m_locksInDb, "calendar", "event", user, m_sqlService);
+			setCompactXml(m_serverConfigurationService.getBoolean("calendar.storage.compact", false));
 
 		}	// DbStorage
 
@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.calendar.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sakaiproject.memory.api.Cache;
+
+/**
+ * Cache of the iCal feeds exported for calendars, so clients polling a feed that hasn't changed can be told so, or
+ * sent the last copy, without the feed being generated again.
+ * <p>
+ * Feeds are cached by ETag, which the caller makes from everything the feed depends on, including when each of its
+ * calendars last changed. Changes are tracked from the calendar events seen, on this and other servers. Feeds larger
+ * than the maximum size are only remembered so a conditional request can be answered, their body is not kept.
+ * </p>
+ * <p>
+ * The bodies kept are limited to a total number of bytes, and to the number of feeds, the oldest being dropped first.
+ * Changes are tracked for as many calendars as there are feeds, when the oldest are dropped every calendar without a
+ * later change is taken to have changed when they did, so no feed tagged before one of them is matched again.
+ * </p>
+ * <p>
+ * The text of each event is cached too, so that when a feed does change only the events that changed are serialized
+ * again.
+ * </p>
+ */
+public class ICalFeedCache {
+
+	private final Cache<String, Feed> feeds;
+
+	private final Cache<String, String> events;
+
+	private final int maxFeedSize;
+
+	private final long maxBytes;
+
+	private final int maxFeeds;
+
+	/** The size of each feed body kept, oldest first. */
+	private final LinkedHashMap<String, Integer> bodies = new LinkedHashMap<>();
+
+	private long bodyBytes = 0;
+
+	/** When each calendar last had something change, from the events seen since this server started. */
+	private final Map<String, Long> changed = new ConcurrentHashMap<>();
+
+	/** The latest change dropped from those tracked, when calendars without a change tracked last changed. */
+	private volatile long changedFloor = 0;
+
+	/**
+	 * @param maxFeedSize
+	 *        the largest feed, in bytes, to keep the body of.
+	 * @param maxBytes
+	 *        the most bytes of feed bodies to keep.
+	 * @param maxFeeds
+	 *        the most feed bodies to keep, and calendars to track the changes of.
+	 */
+	ICalFeedCache(Cache<String, Feed> feeds, Cache<String, String> events, int maxFeedSize, long maxBytes, int maxFeeds) {
+		this.feeds = feeds;
+		this.events = events;
+		this.maxFeedSize = (int) Math.min(maxFeedSize, maxBytes);
+		this.maxBytes = maxBytes;
+		this.maxFeeds = Math.max(1, maxFeeds);
+	}
+
+	/**
+	 * Note that something in a calendar changed.
+	 *
+	 * @param calendarRef
+	 *        the calendar's reference.
+	 */
+	public void calendarChanged(String calendarRef) {
+		// always later than the floor, so it changes the calendar's ETag
+		changed.put(calendarRef, Math.max(System.currentTimeMillis(), changedFloor + 1));
+		if (changed.size() > maxFeeds) dropOldestChanges();
+	}
+
+	/**
+	 * @param calendarRef
+	 *        the calendar's reference.
+	 * @return When the calendar last changed, or if its changes aren't tracked the latest change no longer tracked, 0 if
+	 *         none.
+	 */
+	public long lastChanged(String calendarRef) {
+		return changed.getOrDefault(calendarRef, changedFloor);
+	}
+
+	/**
+	 * Stop tracking the quarter of the calendars that changed longest ago, raising the floor to the latest of them.
+	 */
+	private synchronized void dropOldestChanges() {
+		if (changed.size() <= maxFeeds) return;
+
+		List<Map.Entry<String, Long>> oldest = new ArrayList<>(changed.entrySet());
+		oldest.sort(Map.Entry.comparingByValue());
+		long floor = changedFloor;
+		for (Map.Entry<String, Long> entry : oldest.subList(0, oldest.size() - maxFeeds * 3 / 4)) {
+			// a calendar changed again meanwhile is kept
+			if (changed.remove(entry.getKey(), entry.getValue())) floor = Math.max(floor, entry.getValue());
+		}
+		changedFloor = floor;
+	}
+
+	/**
+	 * @param etag
+	 *        the feed's ETag.
+	 * @return The feed generated for this ETag, or null if there isn't one.
+	 */
+	public Feed getFeed(String etag) {
+		return feeds.get(etag);
+	}
+
+	/**
+	 * Wrap the stream a feed is written to, keeping a copy of what is written as long as it's no larger than the
+	 * maximum size.
+	 *
+	 * @param out
+	 *        the stream the feed is written to.
+	 * @return The stream to write the feed to, to pass to {@link #putFeed(String, long, OutputStream)} afterwards.
+	 */
+	public OutputStream capture(OutputStream out) {
+		return new Capture(out, maxFeedSize);
+	}
+
+	/**
+	 * Cache a feed written through {@link #capture(OutputStream)}.
+	 *
+	 * @param etag
+	 *        the feed's ETag.
+	 * @param lastModified
+	 *        when the feed's calendars last changed.
+	 * @param capture
+	 *        the stream the feed was written to.
+	 */
+	public void putFeed(String etag, long lastModified, OutputStream capture) {
+		byte[] body = ((Capture) capture).getBody();
+		if (body == null) {
+			feeds.put(etag, new Feed(lastModified, null));
+			return;
+		}
+
+		synchronized (bodies) {
+			Integer replaced = bodies.remove(etag);
+			if (replaced != null) bodyBytes -= replaced;
+			feeds.put(etag, new Feed(lastModified, body));
+			bodies.put(etag, body.length);
+			bodyBytes += body.length;
+
+			// drop the oldest, the feed just put always fits as it's no bigger than the maximum
+			Iterator<Map.Entry<String, Integer>> oldest = bodies.entrySet().iterator();
+			while (bodyBytes > maxBytes || bodies.size() > maxFeeds) {
+				Map.Entry<String, Integer> entry = oldest.next();
+				feeds.remove(entry.getKey());
+				bodyBytes -= entry.getValue();
+				oldest.remove();
+			}
+		}
+	}
+
+	/**
+	 * @param key
+	 *        identifies the event, its version and the time zone it is shown in.
+	 * @return The event's text, or null if it isn't cached.
+	 */
+	public String getEvent(String key) {
+		return events.get(key);
+	}
+
+	/**
+	 * Cache an event's text.
+	 *
+	 * @param key
+	 *        identifies the event, its version and the time zone it is shown in.
+	 * @param text
+	 *        the event's text.
+	 */
+	public void putEvent(String key, String text) {
+		events.put(key, text);
+	}
+
+	/**
+	 * A generated feed.
+	 */
+	public static class Feed {
+		private final long lastModified;
+		private final byte[] body;
+
+		Feed(long lastModified, byte[] body) {
+			this.lastModified = lastModified;
+			this.body = body;
+		}
+
+		/**
+		 * @return When the feed's calendars last changed.
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return The feed, or null if it was too big to keep.
+		 */
+		public byte[] getBody() {
+			return body;
+		}
+	}
+
+	/**
+	 * Passes everything written on, keeping a copy until it gets too big.
+	 */
+	private static class Capture extends FilterOutputStream {
+		private final int max;
+		private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+		Capture(OutputStream out, int max) {
+			super(out);
+			this.max = max;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			if (keep(1)) copy.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			if (keep(len)) copy.write(b, off, len);
+		}
+
+		private boolean keep(int len) {
+			if (copy != null && copy.size() + len > max) copy = null;
+			return copy != null;
+		}
+
+		byte[] getBody() {
+			return copy == null ? null : copy.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.calendar.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.time.api.TimeRange;
+
+/**
+ * Index of the expanded instances of recurring events. Each event's instances are generated for a window around
+ * the range first asked for, so requests for nearby ranges, such as the next month of a month view, are answered
+ * from the index without going through the recurrence rule again.
+ * <p>
+ * Entries are keyed by event reference, so by calendar and event, and hold the window they were generated for
+ * along with a stamp of everything the expansion depends on. An entry whose stamp no longer matches the event, or
+ * whose window doesn't cover the range asked for, is generated again. Exclusions are not part of the index: they
+ * are applied by the caller to the instances returned, so excluding an instance doesn't need the entry rebuilt.
+ * </p>
+ */
+public class OccurrenceIndex {
+
+	/**
+	 * Generates the instances of one event that overlap a window.
+	 */
+	public interface Expander {
+		List<RecurrenceInstance> expand(long first, long last);
+	}
+
+	private final Cache<String, Occurrences> cache;
+
+	private final long window;
+
+	/**
+	 * @param cache
+	 *        holds the entries, by event reference.
+	 * @param window
+	 *        how far either side of the range asked for to generate instances, in milliseconds.
+	 */
+	OccurrenceIndex(Cache<String, Occurrences> cache, long window) {
+		this.cache = cache;
+		this.window = Math.max(0, window);
+	}
+
+	/**
+	 * Find the instances of an event that overlap a range, generating them for a window around the range if the
+	 * index doesn't already have them.
+	 *
+	 * @param eventRef
+	 *        the event's reference.
+	 * @param stamp
+	 *        identifies the version of the event and its recurrence rule the instances are for.
+	 * @param range
+	 *        the range the instances must overlap.
+	 * @param expander
+	 *        generates the event's instances for a window.
+	 * @return The instances that overlap the range, in order, in a new list the caller may change.
+	 */
+	public List<RecurrenceInstance> getInstances(String eventRef, String stamp, TimeRange range, Expander expander) {
+		long first = range.firstTime().getTime();
+		long last = range.lastTime().getTime();
+
+		Occurrences occurrences = cache.get(eventRef);
+		if (occurrences == null || !occurrences.stamp.equals(stamp) || first < occurrences.first || last > occurrences.last) {
+			long windowFirst = first - window;
+			long windowLast = last + window;
+			occurrences = new Occurrences(stamp, windowFirst, windowLast, expander.expand(windowFirst, windowLast));
+			cache.put(eventRef, occurrences);
+		}
+
+		return occurrences.overlapping(range);
+	}
+
+	/**
+	 * Drop an event from the index, when it is changed or removed.
+	 *
+	 * @param eventRef
+	 *        the event's reference.
+	 */
+	public void remove(String eventRef) {
+		cache.remove(eventRef);
+	}
+
+	/**
+	 * The instances of one event generated for a window.
+	 */
+	static class Occurrences {
+		private final String stamp;
+		private final long first;
+		private final long last;
+		private final List<RecurrenceInstance> instances;
+
+		Occurrences(String stamp, long first, long last, List<RecurrenceInstance> instances) {
+			this.stamp = stamp;
+			this.first = first;
+			this.last = last;
+			this.instances = Collections.unmodifiableList(new ArrayList<>(instances));
+		}
+
+		/**
+		 * The instances are in order, and all the same length, so they end in order too: skip those that end before
+		 * the range starts, and stop at the first that starts after it ends.
+		 */
+		List<RecurrenceInstance> overlapping(TimeRange range) {
+			long first = range.firstTime().getTime();
+			long last = range.lastTime().getTime();
+
+			int low = 0;
+			int high = instances.size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (instances.get(mid).getRange().lastTime().getTime() < first) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			List<RecurrenceInstance> rv = new ArrayList<>();
+			for (int i = low; i < instances.size(); i++) {
+				RecurrenceInstance instance = instances.get(i);
+				if (instance.getRange().firstTime().getTime() > last) break;
+				if (range.overlaps(instance.getRange())) rv.add(instance);
+			}
+			return rv;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.calendar.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.sakaiproject.memory.api.Cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test feeds are captured as they are written, and calendar changes are tracked.
+ */
+public class ICalFeedCacheTest {
+
+    @Rule
+    public MockitoRule rule = MockitoJUnit.rule();
+
+    @Mock
+    private Cache<String, ICalFeedCache.Feed> feeds;
+    @Mock
+    private Cache<String, String> events;
+
+    private ICalFeedCache feedCache;
+
+    @Before
+    public void setUp() {
+        Map<String, ICalFeedCache.Feed> entries = new HashMap<>();
+        when(feeds.get(anyString())).thenAnswer(i -> entries.get(i.getArgument(0)));
+        doAnswer(i -> entries.put(i.getArgument(0), i.getArgument(1))).when(feeds).put(anyString(), any());
+        when(feeds.remove(anyString())).thenAnswer(i -> entries.remove(i.getArgument(0)) != null);
+
+        feedCache = new ICalFeedCache(feeds, events, 16, 40, 3);
+    }
+
+    @Test
+    public void testSmallFeedIsKept() throws Exception {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        OutputStream capture = feedCache.capture(response);
+        byte[] body = "BEGIN:VCALENDAR".getBytes(StandardCharsets.UTF_8);
+        capture.write(body);
+        feedCache.putFeed("\"tag\"", 1000L, capture);
+
+        assertArrayEquals(body, response.toByteArray());
+        assertArrayEquals(body, feedCache.getFeed("\"tag\"").getBody());
+        assertEquals(1000L, feedCache.getFeed("\"tag\"").getLastModified());
+    }
+
+    @Test
+    public void testLargeFeedIsStreamedButNotKept() throws Exception {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        OutputStream capture = feedCache.capture(response);
+        capture.write("BEGIN:VCALENDAR\r\n".getBytes(StandardCharsets.UTF_8));
+        capture.write('X');
+        feedCache.putFeed("\"tag\"", 1000L, capture);
+
+        assertEquals(18, response.size());
+        assertNull(feedCache.getFeed("\"tag\"").getBody());
+    }
+
+    @Test
+    public void testOldestBodiesDroppedOverTheByteLimit() throws Exception {
+        putFeed("\"one\"", 15);
+        putFeed("\"two\"", 15);
+        putFeed("\"three\"", 15);
+
+        assertNull(feedCache.getFeed("\"one\""));
+        assertNotNull(feedCache.getFeed("\"two\""));
+        assertNotNull(feedCache.getFeed("\"three\""));
+    }
+
+    @Test
+    public void testOldestBodiesDroppedOverTheFeedLimit() throws Exception {
+        for (int i = 1; i <= 4; i++) {
+            putFeed("\"" + i + "\"", 1);
+        }
+
+        assertNull(feedCache.getFeed("\"1\""));
+        for (int i = 2; i <= 4; i++) {
+            assertNotNull(feedCache.getFeed("\"" + i + "\""));
+        }
+    }
+
+    @Test
+    public void testCalendarChanges() {
+        assertEquals(0L, feedCache.lastChanged("/calendar/calendar/site/main"));
+        feedCache.calendarChanged("/calendar/calendar/site/main");
+        assertTrue(feedCache.lastChanged("/calendar/calendar/site/main") > 0);
+        assertEquals(0L, feedCache.lastChanged("/calendar/calendar/other/main"));
+    }
+
+    @Test
+    public void testOldestChangesDropped() {
+        feedCache.calendarChanged("/calendar/calendar/one/main");
+        long one = feedCache.lastChanged("/calendar/calendar/one/main");
+        long unchanged = feedCache.lastChanged("/calendar/calendar/other/main");
+
+        for (int i = 0; i < 3; i++) {
+            feedCache.calendarChanged("/calendar/calendar/site" + i + "/main");
+        }
+
+        // no longer tracked, but neither it nor a calendar never changed goes back to a time a feed was tagged with
+        long dropped = feedCache.lastChanged("/calendar/calendar/one/main");
+        assertTrue(dropped >= one);
+        assertNotEquals(unchanged, feedCache.lastChanged("/calendar/calendar/other/main"));
+
+        // and a change after that is later still
+        feedCache.calendarChanged("/calendar/calendar/one/main");
+        assertTrue(feedCache.lastChanged("/calendar/calendar/one/main") > dropped);
+    }
+
+    private void putFeed(String etag, int size) throws Exception {
+        OutputStream capture = feedCache.capture(new ByteArrayOutputStream());
+        capture.write(new byte[size]);
+        feedCache.putFeed(etag, 1000L, capture);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.calendar.impl;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.time.api.TimeRange;
+import org.sakaiproject.time.api.UserTimeService;
+import org.sakaiproject.time.impl.BasicTimeService;
+import org.sakaiproject.time.impl.UserLocaleServiceImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the occurrence index answers nearby ranges without expanding the event again.
+ */
+public class OccurrenceIndexTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public MockitoRule rule = MockitoJUnit.rule();
+
+    @Mock
+    private Cache<String, OccurrenceIndex.Occurrences> cache;
+    @Mock
+    private UserTimeService userTimeService;
+    @Mock
+    private UserLocaleServiceImpl userLocaleService;
+
+    private BasicTimeService timeService;
+    private OccurrenceIndex index;
+    private int expansions;
+
+    @Before
+    public void setUp() {
+        timeService = new BasicTimeService();
+        timeService.setUserTimeService(userTimeService);
+        timeService.setUserLocaleService(userLocaleService);
+        timeService.init();
+        when(userTimeService.getLocalTimeZone()).thenReturn(TimeZone.getTimeZone(ZoneOffset.UTC));
+        when(userLocaleService.getLocalLocale()).thenReturn("en");
+
+        Map<String, OccurrenceIndex.Occurrences> entries = new HashMap<>();
+        when(cache.get(anyString())).thenAnswer(i -> entries.get(i.getArgument(0)));
+        doAnswer(i -> entries.put(i.getArgument(0), i.getArgument(1))).when(cache).put(anyString(), any());
+        doAnswer(i -> entries.remove(i.getArgument(0))).when(cache).remove(anyString());
+
+        index = new OccurrenceIndex(cache, 30 * DAY);
+    }
+
+    /** An hour long event every day from the epoch, numbered from 1. */
+    private List<RecurrenceInstance> daily(long first, long last) {
+        expansions++;
+        List<RecurrenceInstance> rv = new ArrayList<>();
+        for (int day = 0; day * DAY <= last; day++) {
+            TimeRange range = timeService.newTimeRange(timeService.newTime(day * DAY), timeService.newTime(day * DAY + HOUR), true, false);
+            if (range.lastTime().getTime() >= first) rv.add(new RecurrenceInstance(range, day + 1));
+        }
+        return rv;
+    }
+
+    private TimeRange days(int from, int to) {
+        return timeService.newTimeRange(timeService.newTime(from * DAY), timeService.newTime(to * DAY), true, false);
+    }
+
+    @Test
+    public void testNearbyRangesUseTheIndex() {
+        List<RecurrenceInstance> week = index.getInstances("/calendar/event/site/main/e1", "v1", days(100, 107), this::daily);
+        assertEquals(7, week.size());
+        assertEquals(Integer.valueOf(101), week.get(0).getSequence());
+        assertEquals(Integer.valueOf(107), week.get(6).getSequence());
+
+        List<RecurrenceInstance> next = index.getInstances("/calendar/event/site/main/e1", "v1", days(107, 114), this::daily);
+        assertEquals(7, next.size());
+        assertEquals(Integer.valueOf(108), next.get(0).getSequence());
+        assertEquals(1, expansions);
+    }
+
+    @Test
+    public void testStaleOrOutsideEntriesAreExpandedAgain() {
+        index.getInstances("/calendar/event/site/main/e1", "v1", days(100, 107), this::daily);
+
+        // changed event
+        index.getInstances("/calendar/event/site/main/e1", "v2", days(100, 107), this::daily);
+        assertEquals(2, expansions);
+
+        // outside the window
+        List<RecurrenceInstance> later = index.getInstances("/calendar/event/site/main/e1", "v2", days(200, 201), this::daily);
+        assertEquals(1, later.size());
+        assertEquals(3, expansions);
+
+        // removed
+        index.remove("/calendar/event/site/main/e1");
+        index.getInstances("/calendar/event/site/main/e1", "v2", days(200, 201), this::daily);
+        assertEquals(4, expansions);
+    }
+}
@@ -29,6 +29,7 @@ import org.sakaiproject.entitybroker.EntityView;
 import org.sakaiproject.entitybroker.entityprovider.annotations.EntityCustomAction;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.ActionsExecutable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.AutoRegisterEntityProvider;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.ConcurrentBatchable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Describeable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Outputable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Sampleable;
@@ -56,7 +57,7 @@ import org.sakaiproject.util.CalendarUtil;
  */
 public class CalendarEventEntityProvider extends AbstractEntityProvider
 		implements AutoRegisterEntityProvider, Describeable,
-		ActionsExecutable, Outputable, Sampleable {
+		ActionsExecutable, Outputable, Sampleable, ConcurrentBatchable {
 
 	String ENTITY_PREFIX = "calendar";
 	
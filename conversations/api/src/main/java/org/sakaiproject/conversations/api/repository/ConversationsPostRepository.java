@@ -31,6 +31,7 @@ public interface ConversationsPostRepository extends SpringCrudRepository<Conver
     List<ConversationsPost> findBySiteId(String siteId);
     Long countByParentPostId(String parentPostId);
     List<ConversationsPost> findByParentThreadId(String parentThreadId);
+    List<ConversationsPost> findByTopicIdAndParentThreadIdIsNotNull(String topicId);
     Integer deleteByTopicId(String topicId);
     Integer lockByTopicId(Boolean locked, String topicId);
     Integer lockByParentPostId(Boolean locked, String parentPostId);
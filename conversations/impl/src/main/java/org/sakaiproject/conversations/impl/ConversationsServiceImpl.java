@@ -1154,8 +1154,12 @@ public class ConversationsServiceImpl implements ConversationsService, Observer
             posts.addAll(threads);
 
             if (topic.getType() == TopicType.DISCUSSION) {
+                // Load the replies for every thread in the topic with one query, rather than one per thread
+                Map<String, List<ConversationsPost>> repliesByThread = postRepository.findByTopicIdAndParentThreadIdIsNotNull(topicId)
+                    .stream().collect(Collectors.groupingBy(ConversationsPost::getParentThreadId));
+
                 for (ConversationsPost t : threads) {
-                    List<ConversationsPost> threadPosts = postRepository.findByParentThreadId(t.getId())
+                    List<ConversationsPost> threadPosts = repliesByThread.getOrDefault(t.getId(), Collections.emptyList())
                         .stream().filter(p -> canUserViewPost(p, currentUserId)).collect(Collectors.toList());
 
                     if (requestedPostId != null && threadPosts.stream().anyMatch(p -> p.getId().equals(requestedPostId))) {
@@ -1168,8 +1172,8 @@ public class ConversationsServiceImpl implements ConversationsService, Observer
                 requestedThreadId = requestedPostId;
             }
 
-            // Grab all the stati for this user and post, in one.
-            Map<String, PostStatus> postStati = postStatusRepository.findByUserId(currentUserId)
+            // Grab all the stati for this user and topic, in one.
+            Map<String, PostStatus> postStati = postStatusRepository.findByTopicIdAndUserId(topicId, currentUserId)
                 .stream().collect(Collectors.toMap(s -> s.getPostId(), s -> s));
 
             Settings settings = getSettingsForSite(siteId);
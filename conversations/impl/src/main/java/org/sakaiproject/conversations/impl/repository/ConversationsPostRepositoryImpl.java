@@ -125,6 +125,21 @@ public class ConversationsPostRepositoryImpl extends SpringCrudRepositoryImpl<Co
         return session.createQuery(query).list();
     }
 
+    @Transactional(readOnly = true)
+    public List<ConversationsPost> findByTopicIdAndParentThreadIdIsNotNull(String topicId) {
+
+        Session session = sessionFactory.getCurrentSession();
+
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaQuery<ConversationsPost> query = cb.createQuery(ConversationsPost.class);
+        Root<ConversationsPost> post = query.from(ConversationsPost.class);
+        query.where(cb.and(cb.equal(post.get("topicId"), topicId),
+                            cb.isNotNull(post.get("parentThreadId"))))
+                                .orderBy(cb.asc(post.get("metadata").get("created")));
+
+        return session.createQuery(query).list();
+    }
+
     @Transactional
     public Integer deleteByTopicId(String topicId) {
 
@@ -227,6 +227,16 @@ public class DavServlet extends HttpServlet
 	 */
 	private static final int INFINITY = 3; // To limit tree browsing a bit
 
+	/**
+	 * The number of levels listed by a PROPFIND with Depth: infinity.
+	 */
+	protected int infinityDepth = INFINITY;
+
+	/**
+	 * The most members listed by a PROPFIND with Depth: infinity, levels below are not listed once this is reached.
+	 */
+	protected int infinityMaxMembers = 10000;
+
 	/**
 	 * PROPFIND - Specify a property mask.
 	 */
@@ -645,6 +655,10 @@ public class DavServlet extends HttpServlet
 		// Check cookie configuration
 		useCookies = ServerConfigurationService.getBoolean("webdav.cookies", false);
 
+		// Limit how much of a tree a PROPFIND with Depth: infinity lists
+		infinityDepth = ServerConfigurationService.getInt("webdav.propfind.infinity.depth", INFINITY);
+		infinityMaxMembers = ServerConfigurationService.getInt("webdav.propfind.infinity.max", 10000);
+
 		nonDavUserAgent = ServerConfigurationService.getStrings("webdav.nonDavUserAgent");
 		if (nonDavUserAgent == null) {
 		    nonDavUserAgent = new String[] {  "Mozilla", "Opera", "BlackBerry" };
@@ -1465,6 +1479,25 @@ public class DavServlet extends HttpServlet
 		}
 	}
 
+	/**
+	 * A resource to list in a PROPFIND, with the member entity it was read as, and its info, when it is below the requested resource.
+	 */
+	private static class PropfindMember
+	{
+		final String path;
+
+		final ContentEntity entity;
+
+		final ResourceInfoSAKAI info;
+
+		PropfindMember(String path, ContentEntity entity, ResourceInfoSAKAI info)
+		{
+			this.path = path;
+			this.entity = entity;
+			this.info = info;
+		}
+	}
+
 	public class ResourceInfoSAKAI
 	{
 		private String path;
@@ -1518,26 +1551,15 @@ public class DavServlet extends HttpServlet
 
 				if (!collection)
 				{
-					mbr = contentHostingService.getResource(adjustId(path));
 					// Props for a file is OK from above
-					length = ((ContentResource) mbr).getContentLength();
-					MIMEType = ((ContentResource) mbr).getContentType();
-					eTag = ((ContentResource) mbr).getId();
+					mbr = contentHostingService.getResource(adjustId(path));
 				}
 				else
 				{
 					mbr = contentHostingService.getCollection(adjustId(path));
 					props = mbr.getProperties();
-					eTag = our_path;
 				}
-				modificationDate = props.getTimeProperty(ResourceProperties.PROP_MODIFIED_DATE).getTime();
-				eTag = modificationDate + "+" + eTag;
-				// SAK-26593 if you don't clean the eTag you may send invalid XML to client
-				// SAK-29338 Cyberduck started to see our md5 etag as an AWS s3-like checksum so let's add a prefix
-				eTag = "sakai-" + MD5Encoder.encode(md5Helper.digest(eTag.getBytes()));
-				if (log.isDebugEnabled()) log.debug("Path=" + path + " eTag=" + eTag);
-				creationDate = props.getTimeProperty(ResourceProperties.PROP_CREATION_DATE).getTime();
-				resourceLink = mbr.getUrl();
+				readEntity(our_path, mbr, props);
 
 			}
 			catch (PermissionException e)
@@ -1561,12 +1583,88 @@ public class DavServlet extends HttpServlet
 				log.warn("ResourceInfoSAKAI - Type Exception " + path);
 			}
 
+			setDates();
+		}
+
+		/**
+		 * Make the info from a member already read from its collection, the caller checks it can be read. As when looking the member up by
+		 * its path, it does not exist if it has no collection property.
+		 */
+		public ResourceInfoSAKAI(String our_path, ContentEntity mbr)
+		{
+			path = our_path;
+			exists = false;
+			collection = false;
+			try
+			{
+				ResourceProperties props = mbr.getProperties();
+
+				collection = props.getBooleanProperty(ResourceProperties.PROP_IS_COLLECTION);
+				// As fixDirPathSAKAI would
+				if (collection && !path.endsWith("/")) path = path + "/";
+
+				resourceName = props.getProperty(ResourceProperties.PROP_DISPLAY_NAME);
+				displayName = props.getPropertyFormatted(ResourceProperties.PROP_DISPLAY_NAME);
+				exists = true;
+
+				readEntity(our_path, mbr, props);
+			}
+			catch (EntityPropertyNotDefinedException e)
+			{
+				log.warn("ResourceInfoSAKAI - This resource is empty" + path);
+			}
+			catch (EntityPropertyTypeException e)
+			{
+				log.warn("ResourceInfoSAKAI - EntityPropertyType Exception " + path);
+			}
+
+			setDates();
+		}
+
+		/**
+		 * Read the size, type, dates, link and eTag of a resource or collection that exists.
+		 */
+		private void readEntity(String our_path, Entity mbr, ResourceProperties props) throws EntityPropertyNotDefinedException,
+				EntityPropertyTypeException
+		{
+			if (!collection)
+			{
+				length = ((ContentResource) mbr).getContentLength();
+				MIMEType = ((ContentResource) mbr).getContentType();
+				eTag = mbr.getId();
+			}
+			else
+			{
+				eTag = our_path;
+			}
+			modificationDate = props.getTimeProperty(ResourceProperties.PROP_MODIFIED_DATE).getTime();
+			eTag = makeETag(modificationDate, eTag);
+			if (log.isDebugEnabled()) log.debug("Path=" + path + " eTag=" + eTag);
+			creationDate = props.getTimeProperty(ResourceProperties.PROP_CREATION_DATE).getTime();
+			resourceLink = mbr.getUrl();
+		}
+
+		private void setDates()
+		{
 			httpDate = getHttpDate(modificationDate);
 			if (creationDate == 0) creationDate = modificationDate;
 			date = modificationDate;
 		}
 	}
 
+	private String makeETag(long modificationDate, String tag)
+	{
+		String eTag = modificationDate + "+" + tag;
+		// SAK-26593 if you don't clean the eTag you may send invalid XML to client
+		// SAK-29338 Cyberduck started to see our md5 etag as an AWS s3-like checksum so let's add a prefix
+		byte[] digest;
+		synchronized (md5Helper)
+		{
+			digest = md5Helper.digest(eTag.getBytes());
+		}
+		return "sakai-" + MD5Encoder.encode(digest);
+	}
+
 	public DirContextSAKAI getResourcesSAKAI()
 	{
 		return new DirContextSAKAI();
@@ -2244,45 +2342,71 @@ public class DavServlet extends HttpServlet
 		}
 		else
 		{
-			// The stack always contains the object of the current level
-			Stack<String> stack = new Stack<String>();
-			stack.push(path);
+			boolean infinite = depth == INFINITY;
+			if (infinite) depth = infinityDepth;
+			int listed = 0;
+			boolean full = false;
+
+			// The stack always contains the object of the current level. The members of a collection and their
+			// properties are read with the collection, so members are not looked up one at a time.
+			Stack<PropfindMember> stack = new Stack<PropfindMember>();
+			stack.push(new PropfindMember(path, null, null));
 
 			// Stack of the objects one level below
-			Stack<String> stackBelow = new Stack<String>();
+			Stack<PropfindMember> stackBelow = new Stack<PropfindMember>();
 
 			while ((!stack.isEmpty()) && (depth >= 0))
 			{
 
-				String currentPath = (String) stack.pop();
+				PropfindMember current = stack.pop();
+				String currentPath = current.path;
+				ContentCollection collection = null;
 
-				try
+				if (current.entity == null)
 				{
-					// if (log.isDebugEnabled()) log.debug("Lookup currentPath="+currentPath);
-					resources.lookup(currentPath);
+					// The requested resource itself, which has been looked up
+					parseProperties(req, resources, generatedXML, currentPath, type, properties);
+					if (resources.isCollection) collection = resources.collection;
 				}
-				catch (NamingException e)
+				else
 				{
-					continue;
+					writeProperties(req, generatedXML, currentPath, current.info, type, properties);
+					if (current.info.collection && current.entity instanceof ContentCollection) collection = (ContentCollection) current.entity;
 				}
 
-				parseProperties(req, resources, generatedXML, currentPath, type, properties);
-
-				if ((resources.isCollection) && (depth > 0))
+				if ((collection != null) && (depth > 0) && !full)
 				{
 
-					Iterator<ContentEntity> it = resources.list(currentPath);
-					while (it.hasNext())
+					for (ContentEntity mbr : collection.getMemberResources())
 					{
-						Entity mbr = it.next();
+						if (infinite && listed >= infinityMaxMembers)
+						{
+							// The members already listed are still sent, but no more are listed
+							log.info("PROPFIND of {} stopped listing at {} members", path, listed);
+							full = true;
+							break;
+						}
+
+						// The same permission check as looking the member up
+						boolean readable = mbr.isCollection() ? contentHostingService.allowGetCollection(mbr.getId())
+								: contentHostingService.allowGetResource(mbr.getId());
+						if (!readable) continue;
+
 						String resourceName = getResourceNameSAKAI(mbr);
 
 						String newPath = currentPath;
 						if (!(newPath.endsWith("/"))) newPath += "/";
 						newPath += resourceName;
+						if (newPath.startsWith("/attachments")) continue;
 						if (!(newPath.toLowerCase().indexOf("/protected") >= 0 && !contentHostingService.allowAddCollection(newPath)))
-						stackBelow.push(newPath);
-						// if (log.isDebugEnabled()) log.debug("SAKAI found resource " + newPath);
+						{
+							// Members whose properties can't be read are left out, as they are when looked up
+							ResourceInfoSAKAI info = new ResourceInfoSAKAI(newPath, mbr);
+							if (!info.exists) continue;
+
+							stackBelow.push(new PropfindMember(newPath, mbr, info));
+							listed++;
+						}
 					}
 
 					// Displaying the lock-null resources present in that
@@ -2308,9 +2432,9 @@ public class DavServlet extends HttpServlet
 					depth--;
 					stack = stackBelow;
 
-					stackBelow = new Stack<String>();
+					stackBelow = new Stack<PropfindMember>();
 				}
-				// if (log.isDebugEnabled()) log.debug("SAKAIDAV.propfind() " + generatedXML.toString());
+				// Stream each response out as it is written
 				generatedXML.sendData();
 			}
 		}
@@ -4305,8 +4429,26 @@ public class DavServlet extends HttpServlet
 		// (the "toUpperCase()" avoids problems on Windows systems)
 		if (path.toUpperCase().startsWith("/WEB-INF") || path.toUpperCase().startsWith("/META-INF")) return;
 
-		ResourceInfoSAKAI resourceInfo = new ResourceInfoSAKAI(path, resources);
+		writeProperties(req, generatedXML, path, new ResourceInfoSAKAI(path, resources), type, propertiesVector);
+	}
 
+	/**
+	 * Propfind helper method. Writes the properties of a resource that has been looked up.
+	 * 
+	 * @param generatedXML
+	 *        XML response to the Propfind request
+	 * @param path
+	 *        Path of the current resource
+	 * @param resourceInfo
+	 *        The resource
+	 * @param type
+	 *        Propfind type
+	 * @param propertiesVector
+	 *        If the propfind type is find properties by name, then this Vector contains those properties
+	 */
+	private void writeProperties(HttpServletRequest req, XMLWriter generatedXML, String path, ResourceInfoSAKAI resourceInfo, int type,
+			Vector<String> propertiesVector)
+	{
 		generatedXML.writeElement("D", "response", XMLWriter.OPENING);
 		String status = new String("HTTP/1.1 " + SakaidavStatus.SC_OK + " " + SakaidavStatus.getStatusText(SakaidavStatus.SC_OK));
 
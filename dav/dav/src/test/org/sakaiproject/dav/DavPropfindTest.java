@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.dav;
+
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sakaiproject.content.api.ContentCollection;
+import org.sakaiproject.content.api.ContentEntity;
+import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.entity.api.EntityPropertyNotDefinedException;
+import org.sakaiproject.entity.api.ResourceProperties;
+import org.sakaiproject.exception.IdUnusedException;
+import org.sakaiproject.time.api.Time;
+import org.sakaiproject.user.api.UserDirectoryService;
+
+/**
+ * Lists a tree of three folders of three files each with PROPFIND.
+ */
+public class DavPropfindTest {
+    private static final String ROOT = "/public/tree/";
+
+    private ContentHostingService contentHostingService;
+    private DavServlet davServlet;
+
+    private final Map<String, ResourceProperties> properties = new HashMap<>();
+    private final Map<String, ContentCollection> collections = new HashMap<>();
+
+    @Before
+    public void beforeEach() throws Exception {
+        contentHostingService = mock(ContentHostingService.class);
+        when(contentHostingService.isShortRefs()).thenReturn(false);
+        when(contentHostingService.allowGetCollection(anyString())).thenReturn(true);
+        when(contentHostingService.allowGetResource(anyString())).thenReturn(true);
+        when(contentHostingService.getProperties(anyString())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            if (!properties.containsKey(id)) throw new IdUnusedException(id);
+            return properties.get(id);
+        });
+        when(contentHostingService.getCollection(anyString())).thenAnswer(invocation -> collections.get(invocation.getArgument(0)));
+
+        List<ContentEntity> folders = new ArrayList<>();
+        for (String folder : new String[] {"one", "two", "three"}) {
+            List<ContentEntity> files = new ArrayList<>();
+            for (String file : new String[] {"a", "b", "c"}) {
+                files.add(resource(ROOT + folder + "/" + file + ".txt"));
+            }
+            folders.add(collection(ROOT + folder + "/", files));
+        }
+        collection(ROOT, folders);
+
+        DavServlet.md5Helper = MessageDigest.getInstance("MD5");
+        davServlet = new DavServlet();
+        davServlet.setContentHostingService(contentHostingService);
+        davServlet.setUserDirectoryService(mock(UserDirectoryService.class));
+    }
+
+    @Test
+    public void testInfinityListsWholeTreeUnderTheLimit() throws Exception {
+        String xml = propfind("infinity");
+
+        Assert.assertEquals(13, count(xml, "<D:response>"));
+        Assert.assertTrue(xml.contains("/dav/public/tree/three/c.txt"));
+    }
+
+    @Test
+    public void testInfinityStopsListingAtTheLimit() throws Exception {
+        davServlet.infinityMaxMembers = 5;
+        String xml = propfind("infinity");
+
+        // the tree, its three folders and two files, once the limit is reached no more files are listed
+        Assert.assertEquals(6, count(xml, "<D:response>"));
+        Assert.assertEquals(3, count(xml, "<D:collection/>"));
+        Assert.assertTrue(xml.contains("</D:multistatus>"));
+    }
+
+    @Test
+    public void testInfinityDepth() throws Exception {
+        davServlet.infinityDepth = 1;
+        String xml = propfind("infinity");
+
+        Assert.assertEquals(4, count(xml, "<D:response>"));
+        Assert.assertFalse(xml.contains(".txt"));
+    }
+
+    @Test
+    public void testDepthOneIsNotLimited() throws Exception {
+        davServlet.infinityMaxMembers = 2;
+        String xml = propfind("1");
+
+        Assert.assertEquals(4, count(xml, "<D:response>"));
+    }
+
+    @Test
+    public void testMembersWithoutPropertiesAreLeftOut() throws Exception {
+        ResourceProperties props = properties.get(ROOT + "two/b.txt");
+        when(props.getBooleanProperty(ResourceProperties.PROP_IS_COLLECTION)).thenThrow(new EntityPropertyNotDefinedException());
+        String xml = propfind("infinity");
+
+        Assert.assertEquals(12, count(xml, "<D:response>"));
+        Assert.assertFalse(xml.contains("/dav/public/tree/two/b.txt"));
+    }
+
+    private String propfind(String depth) throws Exception {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getPathInfo()).thenReturn(ROOT);
+        when(req.getHeader("Depth")).thenReturn(depth);
+        when(req.getContextPath()).thenReturn("/dav");
+
+        StringWriter out = new StringWriter();
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        when(resp.getWriter()).thenReturn(new PrintWriter(out));
+
+        davServlet.doPropfind(req, resp);
+        return out.toString();
+    }
+
+    private int count(String xml, String text) {
+        int count = 0;
+        for (int i = xml.indexOf(text); i >= 0; i = xml.indexOf(text, i + text.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    private ContentCollection collection(String id, List<ContentEntity> members) throws Exception {
+        ContentCollection collection = mock(ContentCollection.class);
+        ResourceProperties props = properties(id, true);
+        when(collection.getId()).thenReturn(id);
+        when(collection.isCollection()).thenReturn(true);
+        when(collection.getProperties()).thenReturn(props);
+        when(collection.getUrl()).thenReturn("http://localhost/access/content" + id);
+        when(collection.getMemberResources()).thenReturn(members);
+        collections.put(id, collection);
+        return collection;
+    }
+
+    private ContentResource resource(String id) throws Exception {
+        ContentResource resource = mock(ContentResource.class);
+        ResourceProperties props = properties(id, false);
+        when(resource.getId()).thenReturn(id);
+        when(resource.isCollection()).thenReturn(false);
+        when(resource.getProperties()).thenReturn(props);
+        when(resource.getUrl()).thenReturn("http://localhost/access/content" + id);
+        when(resource.getContentLength()).thenReturn(10L);
+        when(resource.getContentType()).thenReturn("text/plain");
+        return resource;
+    }
+
+    private ResourceProperties properties(String id, boolean collection) throws Exception {
+        String name = id.substring(id.lastIndexOf('/', id.length() - 2) + 1).replace("/", "");
+        Time time = mock(Time.class);
+        when(time.getTime()).thenReturn(1_700_000_000_000L);
+
+        ResourceProperties props = mock(ResourceProperties.class);
+        when(props.getBooleanProperty(ResourceProperties.PROP_IS_COLLECTION)).thenReturn(collection);
+        when(props.getProperty(ResourceProperties.PROP_DISPLAY_NAME)).thenReturn(name);
+        when(props.getPropertyFormatted(ResourceProperties.PROP_DISPLAY_NAME)).thenReturn(name);
+        when(props.getTimeProperty(anyString())).thenReturn(time);
+        properties.put(id, props);
+        return props;
+    }
+}
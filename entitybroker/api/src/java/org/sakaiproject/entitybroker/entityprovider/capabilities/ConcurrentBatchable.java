@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.entitybroker.entityprovider.capabilities;
+
+import org.sakaiproject.entitybroker.entityprovider.EntityProvider;
+
+/**
+ * Indicates that GET references to this entity provider in a batch can be processed at the same time
+ * as the other references in the batch, on a batch thread rather than the request thread,
+ * when concurrent batches are enabled (entitybroker.batch.concurrent)<br/>
+ * The batch thread is given the Sakai session, tool session and request of the batch request,
+ * but nothing else which is bound to the request thread, such as an open Hibernate session or transaction,
+ * so only implement this if the provider opens its own (e.g. by calling transactional services)
+ * and does not hand back lazily loaded data, the same goes for any entities it redirects to<br/>
+ * References to any other provider are processed one after the other on the request thread
+ */
+public interface ConcurrentBatchable extends EntityProvider {
+
+}
@@ -54,6 +54,7 @@ import org.sakaiproject.entitybroker.entityprovider.annotations.EntityCustomActi
 import org.sakaiproject.entitybroker.entityprovider.annotations.EntityParameters;
 import org.sakaiproject.entitybroker.entityprovider.annotations.EntityURLRedirect;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.ActionsExecutable;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.ConcurrentBatchable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.DepthLimitable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.RESTful;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Redirectable;
@@ -95,7 +96,7 @@ import org.sakaiproject.util.comparator.AlphaNumericComparator;
 @Slf4j
 @Setter
 public class SiteEntityProvider extends AbstractEntityProvider implements CoreEntityProvider,
-        RESTful, ActionsExecutable, Redirectable, RequestStorable, DepthLimitable {
+        RESTful, ActionsExecutable, Redirectable, RequestStorable, DepthLimitable, ConcurrentBatchable {
 
     @Getter
     private int maxDepth = 7;
@@ -34,6 +34,7 @@ import org.sakaiproject.entitybroker.EntityReference;
 import org.sakaiproject.entitybroker.EntityView;
 import org.sakaiproject.entitybroker.entityprovider.CoreEntityProvider;
 import org.sakaiproject.entitybroker.entityprovider.annotations.EntityCustomAction;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.ConcurrentBatchable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Describeable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.RESTful;
 import org.sakaiproject.entitybroker.entityprovider.extension.ActionReturn;
@@ -62,7 +63,7 @@ import org.sakaiproject.user.api.UserPermissionException;
  */
 @Slf4j
 @Setter
-public class UserEntityProvider extends AbstractEntityProvider implements CoreEntityProvider, RESTful, Describeable {
+public class UserEntityProvider extends AbstractEntityProvider implements CoreEntityProvider, RESTful, Describeable, ConcurrentBatchable {
 
     private static final String ID_PREFIX = "id=";
 
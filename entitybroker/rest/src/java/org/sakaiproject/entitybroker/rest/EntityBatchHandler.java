@@ -24,10 +24,19 @@ import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
@@ -36,8 +45,10 @@ import javax.servlet.http.HttpServletResponse;
 import org.azeckoski.reflectutils.ArrayUtils;
 import org.azeckoski.reflectutils.map.ArrayOrderedMap;
 import org.sakaiproject.entitybroker.EntityBrokerManager;
+import org.sakaiproject.entitybroker.EntityReference;
 import org.sakaiproject.entitybroker.EntityView;
 import org.sakaiproject.entitybroker.entityprovider.EntityProvider;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.ConcurrentBatchable;
 import org.sakaiproject.entitybroker.entityprovider.extension.Formats;
 import org.sakaiproject.entitybroker.exception.EntityException;
 import org.sakaiproject.entitybroker.providers.EntityRequestHandler;
@@ -51,6 +62,7 @@ import org.sakaiproject.entitybroker.util.http.HttpRESTUtils.Method;
 import org.sakaiproject.entitybroker.util.http.HttpResponse;
 import org.sakaiproject.entitybroker.util.http.URLData;
 import org.sakaiproject.entitybroker.util.request.RequestUtils;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -67,6 +79,18 @@ public class EntityBatchHandler {
 
     public static final String CONFIG_BATCH_ENABLE = "entitybroker.batch.enable";
     public static final boolean CONFIG_BATCH_DEFAULT = false;
+    /**
+     * Set to true to process the references in GET batches at the same time,
+     * only references to {@link ConcurrentBatchable} providers and external URLs are processed on the batch threads,
+     * other batches are always processed in order as the references may depend on each other
+     */
+    public static final String CONFIG_BATCH_CONCURRENT = "entitybroker.batch.concurrent";
+    public static final boolean CONFIG_BATCH_CONCURRENT_DEFAULT = false;
+    /**
+     * The most references to process at the same time across all concurrent batches
+     */
+    public static final String CONFIG_BATCH_THREADS = "entitybroker.batch.threads";
+    public static final int CONFIG_BATCH_THREADS_DEFAULT = 8;
 
     private static final String HEADER_BATCH_STATUS = "batchStatus";
     private static final String HEADER_BATCH_ERRORS = "batchErrors";
@@ -76,6 +100,17 @@ public class EntityBatchHandler {
     private static final String HEADER_BATCH_KEYS = "batchKeys";
     private static final String HEADER_BATCH_METHOD = "batchMethod";
     private static final String UNREFERENCED_PARAMS = "NoRefs";
+    /**
+     * The sakai thread locals which are passed on to the threads processing the references
+     */
+    private static final String[] CONTEXT_NAMES = {
+        "org.sakaiproject.api.kernel.session.current",
+        "org.sakaiproject.api.kernel.session.current.tool",
+        "org.sakaiproject.util.RequestFilter.http_request",
+        "org.sakaiproject.util.RequestFilter.http_session",
+        "org.sakaiproject.util.RequestFilter.remote_user",
+        "org.sakaiproject.util.RequestFilter.context"
+    };
     /**
      * This is the name of the parameter which is used to pass along the reference URLs to be batch processed
      */
@@ -104,6 +139,7 @@ public class EntityBatchHandler {
     }
 
     private EntityProvider batchEP = null;
+    private ThreadPoolExecutor executor = null;
 
     public void init() {
         // register the batch EP handler
@@ -123,6 +159,21 @@ public class EntityBatchHandler {
                 }
             };
             this.entityBrokerManager.getEntityProviderManager().registerEntityProvider(batchEP);
+            if (this.externalIntegrationProvider.getConfigurationSetting(CONFIG_BATCH_CONCURRENT, CONFIG_BATCH_CONCURRENT_DEFAULT)) {
+                int threads = Math.max(1, this.externalIntegrationProvider.getConfigurationSetting(CONFIG_BATCH_THREADS, CONFIG_BATCH_THREADS_DEFAULT));
+                // when all the threads are busy the batch request thread processes the reference itself
+                executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, 
+                        new LinkedBlockingQueue<Runnable>(threads * 4), new ThreadFactory() {
+                            private final AtomicInteger count = new AtomicInteger();
+                            public Thread newThread(Runnable r) {
+                                Thread thread = new Thread(r, "entitybroker-batch-" + count.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        }, new ThreadPoolExecutor.CallerRunsPolicy());
+                executor.allowCoreThreadTimeOut(true);
+                log.info("EntityBatchHandler: processing GET batch references concurrently with " + threads + " threads");
+            }
         } else {
             // batch provider is disabled so do not show the docs for it - this empty on purpose
         }
@@ -130,6 +181,10 @@ public class EntityBatchHandler {
 
     public void destroy() {
         log.info("EntityBatchHandler: destroy()");
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
         if (batchEP != null) {
             try {
                 this.entityBrokerManager.getEntityProviderManager().unregisterEntityProvider(batchEP);
@@ -217,12 +272,9 @@ public class EntityBatchHandler {
         // decode the params into a set of reference params
         Map<String, Map<String, String[]>> referencedParams = extractReferenceParams(req, method, refs);
 
-        // loop through all references
+        // loop through all references, working out what each will do
         HashSet<String> processedRefsAndURLs = new HashSet<String>(); // holds all refs which we processed in this batch
-        HashMap<String, String> dataMap = new ArrayOrderedMap<String, String>(); // the returned content data from each ref
-        Map<String, ResponseBase> results = new ArrayOrderedMap<String, ResponseBase>(); // the results of all valid refs
-        boolean successOverall = false; // true if all ok or partial ok, false if exception occurs or all fail
-        boolean failure = false;
+        List<BatchCall> calls = new ArrayList<BatchCall>(); // the calls to make, in the order of the refs
         for (int i = 0; i < refs.length; i++) {
             String refKey = "ref" + i;
             String reference = refs[i];
@@ -255,11 +307,8 @@ public class EntityBatchHandler {
                         HttpServletResponse.SC_BAD_REQUEST);
             }
 
-            // in case there are external ones we will reuse this httpclient
-            HttpClientWrapper clientWrapper = null;
-
-            // object will hold the results of this reference request
-            ResponseBase result = null;
+            // object will make the request for this reference
+            BatchCall call;
 
             // parse the entityURL, should hopefully not cause a failure
             URLData ud = new URLData(entityURL);
@@ -277,14 +326,18 @@ public class EntityBatchHandler {
                 }
 
                 boolean success = false;
+                boolean concurrent = false;
+                ResponseError error = null;
                 try {
                     // parse the entityURL to verify it
-                    entityBrokerManager.parseReference(ud.pathInfo);
+                    EntityReference ref = entityBrokerManager.parseReference(ud.pathInfo);
+                    concurrent = entityBrokerManager.getEntityProviderManager()
+                            .getProviderByPrefixAndCapability(ref.getPrefix(), ConcurrentBatchable.class) != null;
                     success = true;
                 } catch (IllegalArgumentException e) {
                     String errorMessage = "Failure parsing direct entityURL ("+entityURL+") from reference ("+reference+") from path ("+ud.pathInfo+"): " + e.getMessage() + ":" + e.getCause();
                     log.warn("EntityBatchHandler: " + errorMessage);
-                    result = new ResponseError(reference, entityURL, errorMessage);
+                    error = new ResponseError(reference, entityURL, errorMessage);
                 }
 
                 if (success) {
@@ -311,7 +364,9 @@ public class EntityBatchHandler {
                         continue; // skip
                     }
 
-                    result = generateInternalResult(refKey, reference, entityURL, req, res, method, referencedParams);
+                    call = new InternalCall(refKey, reference, entityURL, req, res, method, referencedParams, concurrent);
+                } else {
+                    call = new FailedCall(refKey, error);
                 }
 
             } else {
@@ -319,26 +374,43 @@ public class EntityBatchHandler {
 
                 // http utils requires full URLs
                 entityURL = makeFullExternalURL(req, entityURL);
-
-                // set the client wrapper with cookies so we can reuse it for efficiency
-                if (clientWrapper == null) {
-                    clientWrapper = HttpRESTUtils.makeReusableHttpClient(false, 0, req.getCookies());
-                }
-                result = generateExternalResult(refKey, reference, entityURL, method, referencedParams, clientWrapper);
+                call = new ExternalCall(refKey, reference, entityURL, method, referencedParams, req.getCookies());
             }
 
+            // store the processed ref and url so we do not do them again
+            processedRefsAndURLs.add(reference);
+            processedRefsAndURLs.add(entityURL);
+            calls.add(call);
+        }
+
+        // make the calls, GETs at the same time if configured to
+        runCalls(calls, method);
+
+        // compile the results in the order of the refs
+        HashMap<String, String> dataMap = new ArrayOrderedMap<String, String>(); // the returned content data from each ref
+        Map<String, ResponseBase> results = new ArrayOrderedMap<String, ResponseBase>(); // the results of all valid refs
+        boolean successOverall = false; // true if all ok or partial ok, false if exception occurs or all fail
+        boolean failure = false;
+        for (BatchCall call : calls) {
+            ResponseBase result = call.result;
+
             // special handling for null result (should really not happen unless there was a logic error)
             if (result == null) {
                 successOverall = false;
                 failure = true;
                 throw new IllegalStateException("Somehow the result is null, this should never happen, fatal error");
             }
+            result.time = call.time;
 
             if (result instanceof ResponseError) {
                 // looks like a failure occurred, keep going though
                 successOverall = false;
                 failure = true;
             } else {
+                // all cookies go into the main response
+                for (Cookie cookie : call.getCookies()) {
+                    res.addCookie(cookie);
+                }
                 // all ok, process data
                 int status = result.getStatus();
                 if (status >= 200 && status < 300) {
@@ -351,15 +423,12 @@ public class EntityBatchHandler {
                 } else {
                     // process the content and see if it matches the expected result, if not we have to dump it in escaped
                     String content = ((ResponseResult)result).content;
-                    String dataKey = checkContent(format, content, refKey, dataMap);
+                    String dataKey = checkContent(format, content, call.refKey, dataMap);
                     ((ResponseResult)result).setDataKey(dataKey);
                 }
             }
 
-            // store the processed ref and url so we do not do them again
-            processedRefsAndURLs.add(reference);
-            processedRefsAndURLs.add(entityURL);
-            results.put(refKey, result); // use an artificial key
+            results.put(call.refKey, result); // use an artificial key
         }
 
         // determine overall status
@@ -485,14 +554,12 @@ public class EntityBatchHandler {
 
 
     /**
-     * Processing internal (EB) requests
-     * @return the result from the request (may be an error)
+     * Makes the request for an internal (EB) reference,
+     * this has to be done on the thread handling the batch request as it reads from the request
+     * @return the request to pass to the entity request handler
      */
-    private ResponseBase generateInternalResult(String refKey, String reference, String entityURL, HttpServletRequest req, 
-            HttpServletResponse res, Method method, Map<String, Map<String, String[]>> referencedParams) {
-        ResponseBase result = null;
-        ResponseError error = null;
-
+    private EntityHttpServletRequest makeInternalRequest(String refKey, String entityURL, HttpServletRequest req, 
+            Method method, Map<String, Map<String, String[]>> referencedParams) {
         /* WARNING: This is important to understand why this was done as is
          * First of all, forget the servlet forwarding, it is hopeless.
          * Why you ask? This is why, tomcat 5 has issues with calling forward using a set of custom
@@ -529,7 +596,17 @@ public class EntityBatchHandler {
             entityRequest.removeParameter(REFS_PARAM_NAME); // make sure this is not passed along
         }
         entityRequest.setUseRealDispatcher(false); // we do not want to actually have the container handle forwarding
-        EntityHttpServletResponse entityResponse = new EntityHttpServletResponse(res);
+        return entityRequest;
+    }
+
+    /**
+     * Processing internal (EB) requests
+     * @return the result from the request (may be an error)
+     */
+    private ResponseBase generateInternalResult(String reference, String entityURL, 
+            EntityHttpServletRequest entityRequest, EntityHttpServletResponse entityResponse) {
+        ResponseBase result = null;
+        ResponseError error = null;
 
         boolean redirected = false;
         do {
@@ -585,11 +662,6 @@ public class EntityBatchHandler {
         // create the result object to encode and place into the final response
         if (error == null && entityResponse != null) {
             // all ok, create the result for the response object
-            // all cookies go into the main response
-            Cookie[] cookies = entityResponse.getCookies();
-            for (Cookie cookie : cookies) {
-                res.addCookie(cookie);
-            }
             // status codes are compiled
             int status = entityResponse.getStatus();
             // create the result (with raw content)
@@ -667,6 +739,221 @@ public class EntityBatchHandler {
         return result;
     }
 
+    /**
+     * Makes the calls for the references in a batch,
+     * GET calls which can run on a batch thread are made at the same time when concurrent batches are enabled,
+     * all other calls are made one after the other in order on the request thread as they may depend on it or on each other
+     */
+    private void runCalls(List<BatchCall> calls, Method method) {
+        List<BatchCall> concurrentCalls = new ArrayList<BatchCall>();
+        if (executor != null && Method.GET.equals(method)) {
+            for (BatchCall call : calls) {
+                if (call.isConcurrent()) {
+                    concurrentCalls.add(call);
+                }
+            }
+        }
+        if (concurrentCalls.size() < 2) {
+            for (BatchCall call : calls) {
+                call.run();
+            }
+            return;
+        }
+
+        // the sakai context for the calls is the context of the batch request
+        Map<String, Object> context = getThreadContext();
+        List<Future<?>> futures = new ArrayList<Future<?>>(concurrentCalls.size());
+        for (BatchCall call : concurrentCalls) {
+            futures.add(executor.submit(new ContextCall(call, context)));
+        }
+        // the rest are made on this thread while the batch threads work
+        for (BatchCall call : calls) {
+            if (! call.isConcurrent()) {
+                call.run();
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EntityException("Interrupted while waiting for batch references to be processed", 
+                        EntityRequestHandler.SLASH_BATCH, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException("Failure processing batch reference: " + cause, cause);
+            }
+        }
+    }
+
+    /**
+     * @return the sakai thread context (session, request, etc.) of the current thread,
+     * empty if the thread local manager is not available
+     */
+    private Map<String, Object> getThreadContext() {
+        Map<String, Object> context = new HashMap<String, Object>();
+        ThreadLocalManager threadLocalManager = externalIntegrationProvider.findService(ThreadLocalManager.class);
+        if (threadLocalManager != null) {
+            for (String name : CONTEXT_NAMES) {
+                Object value = threadLocalManager.get(name);
+                if (value != null) {
+                    context.put(name, value);
+                }
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Runs a call on a batch thread with the sakai context of the batch request
+     */
+    private class ContextCall implements Runnable {
+        private final BatchCall call;
+        private final Map<String, Object> context;
+        private final Thread caller = Thread.currentThread();
+        public ContextCall(BatchCall call, Map<String, Object> context) {
+            this.call = call;
+            this.context = context;
+        }
+        public void run() {
+            // the call may run on the batch request thread if the batch threads are all busy
+            if (Thread.currentThread() == caller || context.isEmpty()) {
+                call.run();
+                return;
+            }
+            ThreadLocalManager threadLocalManager = externalIntegrationProvider.findService(ThreadLocalManager.class);
+            try {
+                for (Entry<String, Object> entry : context.entrySet()) {
+                    threadLocalManager.set(entry.getKey(), entry.getValue());
+                }
+                call.run();
+            } finally {
+                threadLocalManager.clear();
+            }
+        }
+    }
+
+    /**
+     * A call for one reference in a batch, holds the result once it has run,
+     * a failure of the call is its result so it does not stop the other calls in the batch
+     */
+    private abstract class BatchCall implements Runnable {
+        public final String refKey;
+        protected final String reference;
+        protected final String entityURL;
+        public ResponseBase result;
+        public long time;
+        public BatchCall(String refKey, String reference, String entityURL) {
+            this.refKey = refKey;
+            this.reference = reference;
+            this.entityURL = entityURL;
+        }
+        public void run() {
+            long start = System.currentTimeMillis();
+            try {
+                result = call();
+            } catch (RuntimeException e) {
+                String errorMessage = "Failure attempting to process reference ("+reference+") for url ("+entityURL+"): " + e.getMessage() + ":" + e;
+                log.warn("EntityBatchHandler: " + errorMessage);
+                result = new ResponseError(reference, entityURL, errorMessage);
+            }
+            time = System.currentTimeMillis() - start;
+        }
+        protected abstract ResponseBase call();
+        /**
+         * @return true if the call can be made on a batch thread
+         */
+        public boolean isConcurrent() {
+            return false;
+        }
+        /**
+         * @return the cookies to add to the batch response
+         */
+        public Cookie[] getCookies() {
+            return new Cookie[0];
+        }
+    }
+
+    /**
+     * A reference which failed before it could be called
+     */
+    private class FailedCall extends BatchCall {
+        private final ResponseError error;
+        public FailedCall(String refKey, ResponseError error) {
+            super(refKey, error.reference, error.entityURL);
+            this.error = error;
+        }
+        protected ResponseBase call() {
+            return error;
+        }
+        @Override
+        public boolean isConcurrent() {
+            return true;
+        }
+    }
+
+    /**
+     * A call to an internal (EB) reference,
+     * the request and response are made up front from the batch request
+     */
+    private class InternalCall extends BatchCall {
+        private final EntityHttpServletRequest entityRequest;
+        private final EntityHttpServletResponse entityResponse;
+        private final boolean concurrent;
+        public InternalCall(String refKey, String reference, String entityURL, HttpServletRequest req, 
+                HttpServletResponse res, Method method, Map<String, Map<String, String[]>> referencedParams, boolean concurrent) {
+            super(refKey, reference, entityURL);
+            this.entityRequest = makeInternalRequest(refKey, entityURL, req, method, referencedParams);
+            this.entityResponse = new EntityHttpServletResponse(res);
+            this.concurrent = concurrent;
+        }
+        protected ResponseBase call() {
+            return generateInternalResult(reference, entityURL, entityRequest, entityResponse);
+        }
+        @Override
+        public Cookie[] getCookies() {
+            return entityResponse.getCookies();
+        }
+        /**
+         * Only if the provider said it can do without the request thread
+         */
+        @Override
+        public boolean isConcurrent() {
+            return concurrent;
+        }
+    }
+
+    /**
+     * A call to an external (non-EB) URL
+     */
+    private class ExternalCall extends BatchCall {
+        private final Method method;
+        private final Map<String, Map<String, String[]>> referencedParams;
+        private final Cookie[] cookies;
+        public ExternalCall(String refKey, String reference, String entityURL, Method method, 
+                Map<String, Map<String, String[]>> referencedParams, Cookie[] cookies) {
+            super(refKey, reference, entityURL);
+            this.method = method;
+            this.referencedParams = referencedParams;
+            this.cookies = cookies;
+        }
+        protected ResponseBase call() {
+            // the client wrapper carries the cookies from the batch request
+            HttpClientWrapper clientWrapper = HttpRESTUtils.makeReusableHttpClient(false, 0, cookies);
+            return generateExternalResult(refKey, reference, entityURL, method, referencedParams, clientWrapper);
+        }
+        /**
+         * The URL is requested over its own connection so this does not need the request thread
+         */
+        @Override
+        public boolean isConcurrent() {
+            return true;
+        }
+    }
+
     /**
      * Creates a full URL so that the request can be sent
      * @param req the request
@@ -844,6 +1131,13 @@ public class EntityBatchHandler {
         public boolean isFailure() {
             return failure;
         }
+        /**
+         * The time taken to process the reference (in ms)
+         */
+        public long time;
+        public long getTime() {
+            return time;
+        }
     }
 
     /**
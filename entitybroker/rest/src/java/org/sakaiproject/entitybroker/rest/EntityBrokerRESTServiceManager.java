@@ -177,6 +177,7 @@ public class EntityBrokerRESTServiceManager {
         this.entityRequestHandler = null;
         this.entityBatchHandler.destroy();
         this.entityBatchHandler = null;
+        this.entityEncodingManager.destroy();
         this.entityEncodingManager = null;
         this.entityDescriptionManager.destroy();
         this.entityDescriptionManager = null;
@@ -28,6 +28,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.azeckoski.reflectutils.ArrayUtils;
 import org.azeckoski.reflectutils.ClassFields;
@@ -57,6 +59,7 @@ import org.sakaiproject.entitybroker.entityprovider.capabilities.Outputable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Resolvable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Updateable;
 import org.sakaiproject.entitybroker.entityprovider.extension.CustomAction;
+import org.sakaiproject.entitybroker.entityprovider.extension.EntityProviderListener;
 import org.sakaiproject.entitybroker.entityprovider.extension.Formats;
 import org.sakaiproject.entitybroker.entityprovider.extension.URLRedirect;
 import org.sakaiproject.entitybroker.providers.EntityPropertiesService;
@@ -130,6 +133,34 @@ public class EntityDescriptionManager {
     }
 
     private EntityProvider describeEP = null;
+    private EntityProviderListener<EntityProvider> describeListener = null;
+
+    /**
+     * The generated descriptions, these are built by reflecting over the providers and entities
+     * so they are kept until a provider is registered, only descriptions using the fake id are kept
+     */
+    private final Map<String, Description> descriptions = new ConcurrentHashMap<String, Description>();
+
+    /**
+     * A generated description and the prefixes which were registered when it was generated
+     */
+    private static class Description {
+        final Set<String> prefixes;
+        final String output;
+        Description(Set<String> prefixes, String output) {
+            this.prefixes = prefixes;
+            this.output = output;
+        }
+    }
+
+    /**
+     * @return the key for a description in the descriptions cache
+     */
+    private String makeDescriptionKey(String prefix, String format, Locale locale) {
+        // everything other than XML is described as HTML
+        return prefix + ":" + (Formats.XML.equals(format) ? Formats.XML : Formats.HTML) + ":" + locale;
+    }
+
     public void init() {
         log.info("EntityDescriptionManager: init()");
         // register the describe prefixes to load up descriptions
@@ -145,10 +176,31 @@ public class EntityDescriptionManager {
             }
         };
         entityProviderManager.registerEntityProvider(describeEP);
+        // descriptions change whenever a provider is registered
+        describeListener = new EntityProviderListener<EntityProvider>() {
+            public String getPrefixFilter() {
+                return null;
+            }
+            public Class<EntityProvider> getCapabilityFilter() {
+                return null;
+            }
+            public void run(EntityProvider provider) {
+                descriptions.clear();
+            }
+        };
+        entityProviderManager.registerListener(describeListener, false);
     }
 
     public void destroy() {
         log.info("EntityDescriptionManager: destroy()");
+        if (describeListener != null) {
+            try {
+                entityProviderManager.unregisterListener(describeListener);
+            } catch (RuntimeException e) {
+                log.warn("EntityDescriptionManager: Unable to unregister the describe listener: " + e);
+            }
+        }
+        descriptions.clear();
         // NOTE: do not try to unregister describe
 //        if (describeEP != null) {
 //            try {
@@ -204,6 +256,13 @@ public class EntityDescriptionManager {
         if (locale == null) {
             locale = entityProperties.getLocale();
         }
+        // the description of all entities is kept until the registered prefixes change
+        Set<String> registered = new HashSet<String>(entityProviderManager.getRegisteredPrefixes());
+        String key = makeDescriptionKey(SLASH_DESCRIBE, format, locale);
+        Description description = descriptions.get(key);
+        if (description != null && description.prefixes.equals(registered)) {
+            return description.output;
+        }
         Map<String, List<Class<? extends EntityProvider>>> map = entityProviderManager.getRegisteredEntityCapabilities();
         // take out the "describe" EP if it is in there
         map.remove(DESCRIBE);
@@ -250,6 +309,7 @@ public class EntityDescriptionManager {
             sb.append(XHTML_FOOTER);
             output = sb.toString();
         }
+        descriptions.put(key, new Description(registered, output));
         return output;
     }
 
@@ -284,6 +344,15 @@ public class EntityDescriptionManager {
         if (entityProviderManager.getProviderByPrefix(prefix) == null) {
             throw new IllegalArgumentException("Invalid prefix ("+prefix+"), entity with that prefix does not exist");
         }
+        // only the descriptions for the fake id are kept as any id could be requested
+        String key = null;
+        if (FAKE_ID.equals(id)) {
+            key = makeDescriptionKey(prefix, format, locale);
+            Description description = descriptions.get(key);
+            if (description != null) {
+                return description.output;
+            }
+        }
         StringBuilder sb = new StringBuilder(250);
         if (Formats.XML.equals(format)) {
             sb.append(XML_HEADER);
@@ -295,7 +364,11 @@ public class EntityDescriptionManager {
             describeEntity(sb, prefix, id, format, true, null, locale);
             sb.append(XHTML_FOOTER);
         }
-        return sb.toString();
+        String output = sb.toString();
+        if (key != null) {
+            descriptions.put(key, new Description(null, output));
+        }
+        return output;
     }
 
     /**
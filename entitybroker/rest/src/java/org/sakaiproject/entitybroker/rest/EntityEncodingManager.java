@@ -20,10 +20,13 @@
 
 package org.sakaiproject.entitybroker.rest;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -31,6 +34,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -49,6 +54,7 @@ import org.azeckoski.reflectutils.transcoders.XMLTranscoder;
 import org.sakaiproject.entitybroker.EntityBrokerManager;
 import org.sakaiproject.entitybroker.EntityReference;
 import org.sakaiproject.entitybroker.EntityView;
+import org.sakaiproject.entitybroker.entityprovider.EntityProvider;
 import org.sakaiproject.entitybroker.entityprovider.EntityProviderManager;
 import org.sakaiproject.entitybroker.entityprovider.annotations.EntityFieldRequired;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Createable;
@@ -61,6 +67,7 @@ import org.sakaiproject.entitybroker.entityprovider.capabilities.OutputSerializa
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Outputable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Updateable;
 import org.sakaiproject.entitybroker.entityprovider.extension.EntityData;
+import org.sakaiproject.entitybroker.entityprovider.extension.EntityProviderListener;
 import org.sakaiproject.entitybroker.entityprovider.extension.Formats;
 import org.sakaiproject.entitybroker.entityprovider.search.Search;
 import org.sakaiproject.entitybroker.exception.EntityEncodingException;
@@ -108,6 +115,10 @@ public class EntityEncodingManager {
     "</head>\n" +
     "<body>\n";
     protected static final String XHTML_FOOTER = "</body>\n</html>\n";
+    /**
+     * Large JSON and XML collections are written out as they are encoded once they pass this many chars
+     */
+    protected static final int STREAM_THRESHOLD = 32 * 1024;
 
 
     protected EntityEncodingManager() { }
@@ -117,6 +128,39 @@ public class EntityEncodingManager {
         super();
         this.entityProviderManager = entityProviderManager;
         this.entityBrokerManager = entityBrokerManager;
+        init();
+    }
+
+    /**
+     * Clears the entity class info whenever a provider is registered,
+     * this releases the classes of providers which have been reloaded
+     */
+    private EntityProviderListener<EntityProvider> classInfoListener = null;
+
+    public void init() {
+        classInfoListener = new EntityProviderListener<EntityProvider>() {
+            public String getPrefixFilter() {
+                return null;
+            }
+            public Class<EntityProvider> getCapabilityFilter() {
+                return null;
+            }
+            public void run(EntityProvider provider) {
+                entityClassInfo.clear();
+            }
+        };
+        entityProviderManager.registerListener(classInfoListener, false);
+    }
+
+    public void destroy() {
+        if (classInfoListener != null) {
+            try {
+                entityProviderManager.unregisterListener(classInfoListener);
+            } catch (RuntimeException e) {
+                log.warn("EntityEncodingManager: Unable to unregister the entity class info listener: " + e);
+            }
+        }
+        entityClassInfo.clear();
     }
 
     private EntityProviderManager entityProviderManager;
@@ -447,93 +491,114 @@ public class EntityEncodingManager {
             replacementEncoding = "<div style=\"font-weight:bold;color:red;\">"+msg+"</div>";
         }
 
-        String encoded = null;
-        if (EntityView.VIEW_LIST.equals(view.getViewKey()) 
-                || ref.getId() == null) {
-            // encoding a collection of entities
-            StringBuilder sb = new StringBuilder(40);
-
-            // make header
-            if (Formats.HTML.equals(format) 
-                    || Formats.FORM.equals(format)) {
-                sb.append("<h1>"+ref.getPrefix() + COLLECTION + "</h1>\n");
-            } else if (Formats.JSON.equals(format) || Formats.JSONP.equals(format)) {
-                sb.append("{\""+ENTITY_PREFIX+"\": \""+ref.getPrefix() + "\", \"" + ref.getPrefix() + COLLECTION + "\": [\n");
-            } else if (Formats.XML.equals(format)) {
-                sb.append("<" + ref.getPrefix() + COLLECTION + " " + ENTITY_PREFIX + "=\"" + ref.getPrefix() + "\">\n");
-            } else { // general case
-                sb.append(ref.getPrefix() + COLLECTION + "\n");
+        // the HTML headers and footers and the JSONP callback go around the encoded data
+        String header = "";
+        String footer = "";
+        if (Formats.FORM.equals(format)) {
+            String title = view.getViewKey() + ":" + ref;
+            header = XML_HEADER + XHTML_HEADER.replace("{title}", title);
+            footer = XHTML_FOOTER;
+        } else if (Formats.XML.equals(format)) {
+            header = XML_HEADER;
+        } else if (Formats.JSONP.equals(format)) {
+            String callback = JSON_DEFAULT_CALLBACK;
+            if (params != null && params.containsKey(JSON_CALLBACK_PARAM)) {
+                callback = sanitizeJsonCallback(params.get(JSON_CALLBACK_PARAM));
             }
+            header = callback + "(";
+            footer = ")";
+        }
 
-            int encodedEntities = 0;
-            if (replacementEncoding != null) {
-                sb.append(replacementEncoding);
-            } else {
-                // loop through and encode items
-                for (EntityData entity : entities) {
-                    try {
-                        String encode = encodeEntity(ref.getPrefix(), format, entity, view);
-                        if (encode.length() > 3) {
-                            if ((Formats.JSON.equals(format) || Formats.JSONP.equals(format)) 
-                                    && encodedEntities > 0) {
-                                sb.append(",");
+        // large JSON and XML collections are streamed out as they are encoded, once past the threshold
+        Writer writer = null;
+        boolean streamable = Formats.JSON.equals(format) || Formats.JSONP.equals(format) || Formats.XML.equals(format);
+        StringBuilder sb = new StringBuilder(40);
+        try {
+            sb.append(header);
+            if (EntityView.VIEW_LIST.equals(view.getViewKey()) 
+                    || ref.getId() == null) {
+                // encoding a collection of entities
+
+                // make header
+                if (Formats.HTML.equals(format) 
+                        || Formats.FORM.equals(format)) {
+                    sb.append("<h1>"+ref.getPrefix() + COLLECTION + "</h1>\n");
+                } else if (Formats.JSON.equals(format) || Formats.JSONP.equals(format)) {
+                    sb.append("{\""+ENTITY_PREFIX+"\": \""+ref.getPrefix() + "\", \"" + ref.getPrefix() + COLLECTION + "\": [\n");
+                } else if (Formats.XML.equals(format)) {
+                    sb.append("<" + ref.getPrefix() + COLLECTION + " " + ENTITY_PREFIX + "=\"" + ref.getPrefix() + "\">\n");
+                } else { // general case
+                    sb.append(ref.getPrefix() + COLLECTION + "\n");
+                }
+
+                int encodedEntities = 0;
+                if (replacementEncoding != null) {
+                    sb.append(replacementEncoding);
+                } else {
+                    // loop through and encode items
+                    for (EntityData entity : entities) {
+                        try {
+                            String encode = encodeEntity(ref.getPrefix(), format, entity, view);
+                            if (encode.length() > 3) {
+                                if ((Formats.JSON.equals(format) || Formats.JSONP.equals(format)) 
+                                        && encodedEntities > 0) {
+                                    sb.append(",");
+                                }
+                                sb.append(encode);
+                                encodedEntities++;
+                            }
+                        } catch (RuntimeException e) {
+                            throw new EntityEncodingException("Failure during internal output encoding of entity set on entity: " + ref, ref.toString(), e);
+                        }
+                        if (streamable && sb.length() > STREAM_THRESHOLD) {
+                            if (writer == null) {
+                                writer = new BufferedWriter(new OutputStreamWriter(output, Formats.UTF_8));
                             }
-                            sb.append(encode);
-                            encodedEntities++;
+                            writer.append(sb);
+                            sb.setLength(0);
                         }
-                    } catch (RuntimeException e) {
-                        throw new EntityEncodingException("Failure during internal output encoding of entity set on entity: " + ref, ref.toString(), e);
                     }
                 }
-            }
 
-            // make footer
-            if (Formats.HTML.equals(format)
-                    || Formats.FORM.equals(format)) {
-                sb.append("\n<b>Collection size:</b> "+encodedEntities+"\n");
-            } else if (Formats.JSON.equals(format) || Formats.JSONP.equals(format)) {
-                sb.append("\n]}");
-            } else if (Formats.XML.equals(format)) {
-                sb.append("</" + ref.getPrefix() + COLLECTION + ">");
-            } else { // general case
-                sb.append("\nSize: " + encodedEntities + "\n");
-            }
-            encoded = sb.toString();
-        } else {
-            // encoding a single entity
-            EntityData toEncode = entities.get(0);
-            if (replacementEncoding != null) {
-                encoded = replacementEncoding;
+                // make footer
+                if (Formats.HTML.equals(format)
+                        || Formats.FORM.equals(format)) {
+                    sb.append("\n<b>Collection size:</b> "+encodedEntities+"\n");
+                } else if (Formats.JSON.equals(format) || Formats.JSONP.equals(format)) {
+                    sb.append("\n]}");
+                } else if (Formats.XML.equals(format)) {
+                    sb.append("</" + ref.getPrefix() + COLLECTION + ">");
+                } else { // general case
+                    sb.append("\nSize: " + encodedEntities + "\n");
+                }
             } else {
-                if (toEncode == null) {
-                    throw new EntityEncodingException("Failed to encode data for entity (" + ref 
-                            + "), entity object to encode could not be found (null object in list)", ref.toString());
+                // encoding a single entity
+                EntityData toEncode = entities.get(0);
+                if (replacementEncoding != null) {
+                    sb.append(replacementEncoding);
                 } else {
-                    try {
-                        encoded = encodeEntity(ref.getPrefix(), format, toEncode, view);
-                    } catch (RuntimeException e) {
-                        throw new EntityEncodingException("Failure during internal output encoding of entity: " + ref, ref.toString(), e);
+                    if (toEncode == null) {
+                        throw new EntityEncodingException("Failed to encode data for entity (" + ref 
+                                + "), entity object to encode could not be found (null object in list)", ref.toString());
+                    } else {
+                        try {
+                            sb.append( encodeEntity(ref.getPrefix(), format, toEncode, view) );
+                        } catch (RuntimeException e) {
+                            throw new EntityEncodingException("Failure during internal output encoding of entity: " + ref, ref.toString(), e);
+                        }
                     }
                 }
             }
-        }
-        // add the HTML headers and footers
-        if (Formats.FORM.equals(format)) {
-            String title = view.getViewKey() + ":" + ref;
-            encoded = XML_HEADER + XHTML_HEADER.replace("{title}", title) + encoded + XHTML_FOOTER;
-        } else if (Formats.XML.equals(format)) {
-            encoded = XML_HEADER + encoded;
-        } else if (Formats.JSONP.equals(format)) {
-            String callback = JSON_DEFAULT_CALLBACK;
-            if (params != null && params.containsKey(JSON_CALLBACK_PARAM)) {
-                callback = sanitizeJsonCallback(params.get(JSON_CALLBACK_PARAM));
+            sb.append(footer);
+
+            // put the encoded data into the stream
+            if (writer == null) {
+                byte[] b = sb.toString().getBytes(Formats.UTF_8);
+                output.write(b);
+            } else {
+                writer.append(sb);
+                writer.flush(); // do not close this as it would close the output
             }
-            encoded = callback + "(" + encoded + ")";
-        }
-        // put the encoded data into the stream
-        try {
-            byte[] b = encoded.getBytes(Formats.UTF_8);
-            output.write(b);
         } catch (UnsupportedEncodingException e) {
             throw new EntityEncodingException("Failed to encode UTF-8: " + ref, ref.toString(), e);
         } catch (IOException e) {
@@ -682,13 +747,13 @@ public class EntityEncodingManager {
                     sb.append("  <form name='"+formName+"-edit' action='"+formAction+"' style='margin:0px;' method='post'>\n");
                     sb.append("    <table border='1'>\n");
                     // get all the read and write fields from this object
-                    ClassFields<?> cf = ReflectUtils.getInstance().analyzeClass(entityClass);
+                    EntityClassInfo classInfo = getEntityClassInfo(entityClass);
                     Map<String, Object> fieldValues = ReflectUtils.getInstance().getObjectValues(entity);
-                    Map<String, Class<?>> readTypes = cf.getFieldTypes(FieldsFilter.SERIALIZABLE);
-                    Map<String, Class<?>> writeTypes = cf.getFieldTypes(FieldsFilter.WRITEABLE);
-                    HashSet<String> requiredFieldNames = new HashSet<String>(cf.getFieldNamesWithAnnotation(EntityFieldRequired.class));
+                    Map<String, Class<?>> readTypes = classInfo.getReadTypes();
+                    Map<String, Class<?>> writeTypes = new HashMap<String, Class<?>>(classInfo.getWriteTypes());
+                    Set<String> requiredFieldNames = classInfo.getRequiredFieldNames();
                     // make sure no one tries to write the id field when not creating entities
-                    String idFieldName = EntityDataUtils.getEntityIdField(entityClass);
+                    String idFieldName = classInfo.getIdFieldName();
                     if (idFieldName != null && ! EntityView.VIEW_NEW.equals(viewKey)) {
                         writeTypes.remove(idFieldName);
                     }
@@ -765,7 +830,7 @@ public class EntityEncodingManager {
                     // no meta data except properties if there are any
                     entityProps.putAll( entityData.getEntityProperties() );
                 } else {
-                    if (ConstructorUtils.isClassBean(entityData.getData().getClass())) {
+                    if (getEntityClassInfo(entityData.getData().getClass()).isBean()) {
                         // encode the bean directly if it is one
                         toEncode = entityData.getData();
                         // add in the extra props
@@ -802,6 +867,96 @@ public class EntityEncodingManager {
         return contextUrl + BATCH_PREFIX + contextUrl + view.getEntityURL(viewKey, null);
     }
 
+    /**
+     * The class info for the entity classes which have been encoded
+     */
+    private final Map<Class<?>, EntityClassInfo> entityClassInfo = new ConcurrentHashMap<Class<?>, EntityClassInfo>();
+
+    /**
+     * Get the class info for an entity class, this is only worked out once for each class
+     * @param type the class of an entity being encoded
+     * @return the class info for the class
+     */
+    protected EntityClassInfo getEntityClassInfo(Class<?> type) {
+        EntityClassInfo info = entityClassInfo.get(type);
+        if (info == null) {
+            info = new EntityClassInfo(type);
+            entityClassInfo.put(type, info);
+        }
+        return info;
+    }
+
+    /**
+     * Holds the two things EB itself works out by reflecting over an entity class when encoding it:
+     * whether the class is encoded directly as a bean, and the field types, required fields and id field
+     * used for FORM output. The property values for JSON, JSONP and XML are read by the reflectutils
+     * transcoders, which do their own class analysis and do not use this.
+     */
+    protected static class EntityClassInfo {
+        private final Class<?> type;
+        private final boolean bean;
+        private volatile boolean fieldsAnalyzed = false;
+        private Map<String, Class<?>> readTypes;
+        private Map<String, Class<?>> writeTypes;
+        private Set<String> requiredFieldNames;
+        private String idFieldName;
+        public EntityClassInfo(Class<?> type) {
+            this.type = type;
+            this.bean = ConstructorUtils.isClassBean(type);
+        }
+        /**
+         * @return true if entities of this class are encoded directly as beans
+         */
+        public boolean isBean() {
+            return bean;
+        }
+        /**
+         * The fields are only needed for FORM encoding so they are found when first needed
+         */
+        private void analyzeFields() {
+            if (! fieldsAnalyzed) {
+                synchronized (this) {
+                    if (! fieldsAnalyzed) {
+                        ClassFields<?> cf = ReflectUtils.getInstance().analyzeClass(type);
+                        readTypes = Collections.unmodifiableMap(new HashMap<String, Class<?>>(cf.getFieldTypes(FieldsFilter.SERIALIZABLE)));
+                        writeTypes = Collections.unmodifiableMap(new HashMap<String, Class<?>>(cf.getFieldTypes(FieldsFilter.WRITEABLE)));
+                        requiredFieldNames = Collections.unmodifiableSet(new HashSet<String>(cf.getFieldNamesWithAnnotation(EntityFieldRequired.class)));
+                        idFieldName = EntityDataUtils.getEntityIdField(type);
+                        fieldsAnalyzed = true;
+                    }
+                }
+            }
+        }
+        /**
+         * @return the types of the readable (serializable) fields by name
+         */
+        public Map<String, Class<?>> getReadTypes() {
+            analyzeFields();
+            return readTypes;
+        }
+        /**
+         * @return the types of the writeable fields by name
+         */
+        public Map<String, Class<?>> getWriteTypes() {
+            analyzeFields();
+            return writeTypes;
+        }
+        /**
+         * @return the names of the fields which must be set
+         */
+        public Set<String> getRequiredFieldNames() {
+            analyzeFields();
+            return requiredFieldNames;
+        }
+        /**
+         * @return the name of the entity id field OR null if there is not one
+         */
+        public String getIdFieldName() {
+            analyzeFields();
+            return idFieldName;
+        }
+    }
+
     protected static final String DATA_KEY = Transcoder.DATA_KEY;
 
     private Map<String, Transcoder> transcoders;
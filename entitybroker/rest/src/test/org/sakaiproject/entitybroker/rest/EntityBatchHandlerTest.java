@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.entitybroker.rest;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.mockito.Mockito;
+import org.sakaiproject.entity.api.ResourceProperties;
+import org.sakaiproject.entitybroker.DeveloperHelperService;
+import org.sakaiproject.entitybroker.EntityReference;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.ConcurrentBatchable;
+import org.sakaiproject.entitybroker.mocks.ResolvableEntityProviderMock;
+import org.sakaiproject.entitybroker.mocks.data.MyEntity;
+import org.sakaiproject.entitybroker.mocks.data.TestData;
+import org.sakaiproject.entitybroker.providers.UserEntityProvider;
+import org.sakaiproject.entitybroker.util.external.ExternalIntegrationProviderMock;
+import org.sakaiproject.entitybroker.util.http.EntityHttpServletRequest;
+import org.sakaiproject.entitybroker.util.http.EntityHttpServletResponse;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+
+/**
+ * Testing the batch handler with concurrent batches turned on
+ */
+public class EntityBatchHandlerTest extends TestCase {
+
+    private static final String DIRECT_PREFIX = "/direct";
+    private static final String SESSION = "org.sakaiproject.api.kernel.session.current";
+
+    private ServiceTestManager serviceTestManager;
+    private EntityBatchHandler entityBatchHandler;
+    private ThreadLocalManagerStub threadLocalManager = new ThreadLocalManagerStub();
+
+    private int status;
+    private ThreadProvider concurrentProvider;
+    private ThreadProvider requestThreadProvider;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        serviceTestManager = new ServiceTestManager(new TestData());
+
+        concurrentProvider = new ConcurrentThreadProvider("concurrent", new String[] {"c1", "c2", "c3", "fail"});
+        requestThreadProvider = new ThreadProvider("requestThread", new String[] {"r1", "r2"});
+        serviceTestManager.entityBrokerManager.getEntityProviderManager().registerEntityProvider(concurrentProvider);
+        serviceTestManager.entityBrokerManager.getEntityProviderManager().registerEntityProvider(requestThreadProvider);
+
+        entityBatchHandler = new EntityBatchHandler(serviceTestManager.entityBrokerManager,
+                serviceTestManager.entityEncodingManager, new ConcurrentIntegrationProvider());
+        serviceTestManager.entityRequestHandler.setEntityBatchHandler(entityBatchHandler);
+
+        threadLocalManager.set(SESSION, "batch-session");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        entityBatchHandler.destroy();
+        threadLocalManager.clear();
+        super.tearDown();
+    }
+
+    public void testResultsInReferenceOrder() {
+        String content = batch("/concurrent/c3", "/requestThread/r1", "/concurrent/c1", "/concurrent/c2", "/requestThread/r2");
+
+        int last = -1;
+        for (String id : new String[] {"c3", "r1", "c1", "c2", "r2"}) {
+            int index = content.indexOf("\"id\": \"" + id + "\"");
+            assertTrue("missing " + id + " in " + content, index > last);
+            last = index;
+        }
+        assertEquals(HttpServletResponse.SC_OK, status);
+    }
+
+    public void testConcurrentReferencesRunTogether() {
+        // each call waits for the other, so they time out unless they run at the same time
+        concurrentProvider.barrier = new CyclicBarrier(2);
+        String content = batch("/concurrent/c1", "/concurrent/c2");
+
+        assertEquals(content, HttpServletResponse.SC_OK, status);
+        assertFalse(content, content.contains("\"error\""));
+        assertTrue(content.contains("\"id\": \"c1\""));
+        assertTrue(content.contains("\"id\": \"c2\""));
+    }
+
+    public void testUserProviderRunsConcurrently() throws Exception {
+        // each lookup of the current user's site waits for the other, so they time out unless they run at the same time
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final Map<String, Thread> threads = new ConcurrentHashMap<String, Thread>();
+
+        UserDirectoryService userDirectoryService = Mockito.mock(UserDirectoryService.class);
+        Mockito.when(userDirectoryService.getUserByAid(Mockito.anyString())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            threads.put(id, Thread.currentThread());
+            return user(id);
+        });
+        SiteService siteService = Mockito.mock(SiteService.class);
+        Mockito.when(siteService.getUserSiteId("admin")).thenAnswer(invocation -> {
+            barrier.await(5, TimeUnit.SECONDS);
+            return "~admin";
+        });
+        Mockito.when(siteService.getSite("~admin")).thenReturn(Mockito.mock(Site.class));
+        DeveloperHelperService developerHelperService = Mockito.mock(DeveloperHelperService.class);
+        Mockito.when(developerHelperService.getCurrentUserId()).thenReturn("admin");
+        Mockito.when(developerHelperService.getConfigurationSetting("entity.users.viewall", false)).thenReturn(true);
+
+        UserEntityProvider userProvider = new UserEntityProvider();
+        userProvider.setUserDirectoryService(userDirectoryService);
+        userProvider.setSiteService(siteService);
+        userProvider.setDeveloperHelperService(developerHelperService);
+        serviceTestManager.entityBrokerManager.getEntityProviderManager().registerEntityProvider(userProvider);
+
+        String content = batch("/user/u1", "/user/u2");
+
+        assertEquals(content, HttpServletResponse.SC_OK, status);
+        assertFalse(content, content.contains("\"error\""));
+        assertTrue(content.contains("\"id\": \"u1\""));
+        assertTrue(content.contains("\"id\": \"u2\""));
+        assertNotSame(Thread.currentThread(), threads.get("u1"));
+        assertNotSame(Thread.currentThread(), threads.get("u2"));
+    }
+
+    public void testOtherReferencesRunOnTheRequestThread() {
+        batch("/concurrent/c1", "/requestThread/r1", "/concurrent/c2", "/requestThread/r2");
+
+        assertEquals(Thread.currentThread(), requestThreadProvider.threads.get("r1"));
+        assertEquals(Thread.currentThread(), requestThreadProvider.threads.get("r2"));
+        assertNotSame(Thread.currentThread(), concurrentProvider.threads.get("c1"));
+        assertNotSame(Thread.currentThread(), concurrentProvider.threads.get("c2"));
+    }
+
+    public void testContextPropagated() {
+        String content = batch("/concurrent/c1", "/concurrent/c2", "/requestThread/r1");
+
+        assertEquals("batch-session", concurrentProvider.sessions.get("c1"));
+        assertEquals("batch-session", concurrentProvider.sessions.get("c2"));
+        assertEquals("batch-session", requestThreadProvider.sessions.get("r1"));
+        assertTrue(content.contains("\"stuff\": \"batch-session\""));
+
+        // and cleared from the batch threads afterwards
+        assertEquals("batch-session", threadLocalManager.get(SESSION));
+        assertEquals(1, threadLocalManager.threadsHolding(SESSION));
+    }
+
+    public void testFailureIsolated() {
+        String content = batch("/concurrent/c1", "/concurrent/fail", "/concurrent/c2", "/requestThread/r1");
+
+        assertTrue(content.contains("\"id\": \"c1\""));
+        assertTrue(content.contains("\"id\": \"c2\""));
+        assertTrue(content.contains("\"id\": \"r1\""));
+        assertTrue(content.contains("\"error\""));
+        assertTrue(content.contains("\\/concurrent\\/fail"));
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, status);
+    }
+
+    private String batch(String... refs) {
+        StringBuilder sb = new StringBuilder();
+        for (String ref : refs) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(DIRECT_PREFIX).append(ref);
+        }
+        EntityHttpServletRequest req = new EntityHttpServletRequest("GET", DIRECT_PREFIX + "/batch.json",
+                EntityBatchHandler.REFS_PARAM_NAME, sb.toString());
+        EntityHttpServletResponse res = new EntityHttpServletResponse();
+        serviceTestManager.entityRequestHandler.handleEntityAccess(req, res, null);
+        status = res.getStatus();
+        String content = res.getContentAsString();
+        assertNotNull(content);
+        return content;
+    }
+
+    private User user(String id) {
+        ResourceProperties properties = Mockito.mock(ResourceProperties.class);
+        Mockito.when(properties.getPropertyNames()).thenReturn(Collections.<String>emptyIterator());
+        User user = Mockito.mock(User.class);
+        Mockito.when(user.getId()).thenReturn(id);
+        Mockito.when(user.getEid()).thenReturn(id);
+        Mockito.when(user.getProperties()).thenReturn(properties);
+        return user;
+    }
+
+    /**
+     * Records the thread and session each entity is fetched with
+     */
+    private class ThreadProvider extends ResolvableEntityProviderMock {
+        public Map<String, Thread> threads = new ConcurrentHashMap<String, Thread>();
+        public Map<String, Object> sessions = new ConcurrentHashMap<String, Object>();
+        public volatile CyclicBarrier barrier;
+        public ThreadProvider(String prefix, String[] ids) {
+            super(prefix, ids);
+        }
+        @Override
+        public Object getEntity(EntityReference reference) {
+            String id = reference.getId();
+            threads.put(id, Thread.currentThread());
+            Object session = threadLocalManager.get(SESSION);
+            if (session != null) {
+                sessions.put(id, session);
+            }
+            if ("fail".equals(id)) {
+                throw new IllegalStateException("Failed getting " + id);
+            }
+            if (barrier != null) {
+                try {
+                    barrier.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Calls were not made at the same time", e);
+                }
+            }
+            return new MyEntity(id, String.valueOf(session));
+        }
+    }
+
+    private class ConcurrentThreadProvider extends ThreadProvider implements ConcurrentBatchable {
+        public ConcurrentThreadProvider(String prefix, String[] ids) {
+            super(prefix, ids);
+        }
+    }
+
+    private class ConcurrentIntegrationProvider extends ExternalIntegrationProviderMock {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getConfigurationSetting(String settingName, T defaultValue) {
+            if (EntityBatchHandler.CONFIG_BATCH_CONCURRENT.equals(settingName)) {
+                return (T) Boolean.TRUE;
+            }
+            if (EntityBatchHandler.CONFIG_BATCH_THREADS.equals(settingName)) {
+                return (T) Integer.valueOf(4);
+            }
+            return super.getConfigurationSetting(settingName, defaultValue);
+        }
+        @Override
+        public <T> T findService(Class<T> type) {
+            if (ThreadLocalManager.class.equals(type)) {
+                return type.cast(threadLocalManager);
+            }
+            return null;
+        }
+    }
+
+    private static class ThreadLocalManagerStub implements ThreadLocalManager {
+        private final Map<Thread, Map<String, Object>> values = new ConcurrentHashMap<Thread, Map<String, Object>>();
+        public void set(String name, Object value) {
+            Map<String, Object> threadValues = values.get(Thread.currentThread());
+            if (threadValues == null) {
+                threadValues = new HashMap<String, Object>();
+                values.put(Thread.currentThread(), threadValues);
+            }
+            threadValues.put(name, value);
+        }
+        public void clear() {
+            values.remove(Thread.currentThread());
+        }
+        public Object get(String name) {
+            Map<String, Object> threadValues = values.get(Thread.currentThread());
+            return threadValues == null ? null : threadValues.get(name);
+        }
+        public int threadsHolding(String name) {
+            int count = 0;
+            for (Map<String, Object> threadValues : values.values()) {
+                if (threadValues.containsKey(name)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
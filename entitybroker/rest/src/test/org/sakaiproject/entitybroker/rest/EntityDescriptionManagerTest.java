@@ -22,6 +22,7 @@ package org.sakaiproject.entitybroker.rest;
 
 import junit.framework.TestCase;
 
+import org.sakaiproject.entitybroker.entityprovider.EntityProviderManager;
 import org.sakaiproject.entitybroker.entityprovider.extension.Formats;
 import org.sakaiproject.entitybroker.mocks.data.TestData;
 import org.sakaiproject.entitybroker.rest.EntityDescriptionManager;
@@ -34,6 +35,7 @@ import org.sakaiproject.entitybroker.rest.EntityDescriptionManager;
 public class EntityDescriptionManagerTest extends TestCase {
 
    protected EntityDescriptionManager entityDescriptionManager;
+   protected EntityProviderManager entityProviderManager;
    private TestData td;
 
    @Override
@@ -41,7 +43,9 @@ public class EntityDescriptionManagerTest extends TestCase {
       super.setUp();
       // setup things
       td = new TestData();
-      entityDescriptionManager = new ServiceTestManager(td).entityDescriptionManager;
+      ServiceTestManager serviceTestManager = new ServiceTestManager(td);
+      entityDescriptionManager = serviceTestManager.entityDescriptionManager;
+      entityProviderManager = serviceTestManager.entityBrokerManager.getEntityProviderManager();
    }
 
    public void testReplacePrefix() {
@@ -80,6 +84,19 @@ public class EntityDescriptionManagerTest extends TestCase {
       assertTrue(content.contains(TestData.PREFIX8));
    }
 
+   public void testDescribeAllKept() {
+      String content = entityDescriptionManager.makeDescribeAll(Formats.XML, null);
+      assertTrue(content.contains("<prefix>" + TestData.PREFIX5 + "</prefix>"));
+      assertSame(content, entityDescriptionManager.makeDescribeAll(Formats.XML, null));
+      assertNotSame(content, entityDescriptionManager.makeDescribeAll(Formats.HTML, null));
+
+      // the description changes when a provider goes away
+      entityProviderManager.unregisterEntityProviderByPrefix(TestData.PREFIX5);
+      content = entityDescriptionManager.makeDescribeAll(Formats.XML, null);
+      assertFalse(content.contains("<prefix>" + TestData.PREFIX5 + "</prefix>"));
+      assertTrue(content.contains("<prefix>" + TestData.PREFIX4 + "</prefix>"));
+   }
+
    public void testDescribeEntity() {
 
       // test describe single entity space
@@ -357,6 +357,28 @@ public class EntityEncodingManagerTest extends TestCase {
 
     }
 
+    public void testLargeCollectionOutput() {
+        // enough entities that the collection is streamed out
+        ArrayList<EntityData> testEntities = new ArrayList<EntityData>();
+        for (int i = 0; i < 1000; i++) {
+            testEntities.add( new EntityData(TestData.REF4, null, TestData.entity4) );
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        entityEncodingManager.internalOutputFormatter(new EntityReference(TestData.PREFIX4, ""), Formats.JSON, testEntities, null, output, null);
+        String fo = output.toString();
+        assertTrue(fo.length() > EntityEncodingManager.STREAM_THRESHOLD);
+        assertTrue(fo.startsWith("{\"" + EntityEncodingManager.ENTITY_PREFIX + "\": \"" + TestData.PREFIX4 + "\""));
+        assertTrue(fo.endsWith("\n]}"));
+        assertEquals(1000, fo.split("\"" + EntityEncodingManager.ENTITY_REFERENCE + "\"", -1).length - 1);
+
+        // JSONP keeps the callback around the whole collection
+        output = new ByteArrayOutputStream();
+        entityEncodingManager.internalOutputFormatter(new EntityReference(TestData.PREFIX4, ""), Formats.JSONP, testEntities, null, output, null);
+        fo = output.toString();
+        assertTrue(fo.startsWith(EntityEncodingManager.JSON_DEFAULT_CALLBACK + "({"));
+        assertTrue(fo.endsWith("\n]})"));
+    }
+
     // testing the internal encoder
     public void testJSONEncode() {
         String encoded = null;
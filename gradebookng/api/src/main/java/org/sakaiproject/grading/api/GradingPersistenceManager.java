@@ -107,6 +107,7 @@ public interface GradingPersistenceManager {
 
     List<AssignmentGradeRecord> getAllAssignmentGradeRecordsForGradebook(Long gradebookId);
     List<AssignmentGradeRecord> getAllAssignmentGradeRecordsForAssignment(Long assignmentId);
+    List<String> getScoredStudentIdsForAssignment(Long assignmentId);
     AssignmentGradeRecord getAssignmentGradeRecordForAssignmentAndStudent(Long assignmentId, String studentUid);
     AssignmentGradeRecord saveAssignmentGradeRecord(AssignmentGradeRecord record);
     int deleteGradeRecordsForAssignment(GradebookAssignment assignment);
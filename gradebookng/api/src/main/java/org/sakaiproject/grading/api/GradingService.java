@@ -604,6 +604,23 @@ public interface GradingService extends EntityProducer {
     public void saveGradesAndComments(String gradebookUid, Long assignmentId, List<GradeDefinition> gradeDefList)
             throws InvalidGradeException, AssessmentNotFoundException;
 
+    /**
+     * Save the scores and comments for students as {@link #saveGradesAndComments(String, Long, List)} does, for an external
+     * application that is not allowed to grade externally maintained items. Each grade definition sets every field of a grade,
+     * so the caller keeps the excused flag of a student it does not mean to change.
+     *
+     * @param gradebookUid
+     * @param assignmentId
+     * @param gradeDefList
+     * @param clientServiceDescription what is saving the grades, for the log
+     * @throws InvalidGradeException if any of the grades are not valid - none will be saved
+     * @throws SecurityException if the item is externally maintained, or the user does not have access to a student in the list -
+     *             no grades or comments will be saved for any student
+     * @throws AssessmentNotFoundException
+     */
+    public void saveGradesAndComments(String gradebookUid, Long assignmentId, List<GradeDefinition> gradeDefList,
+            String clientServiceDescription) throws InvalidGradeException, AssessmentNotFoundException;
+
     public void saveGradeAndExcuseForStudent(String gradebookUid, Long assignmentId, String studentId, String grade, boolean excuse)
         throws InvalidGradeException, AssessmentNotFoundException;
 
@@ -810,6 +827,33 @@ public interface GradingService extends EntityProducer {
      */
     Map<String, CourseGradeTransferBean> getCourseGradeForStudents(String gradebookUid, List<String> userUuids, Map<String, Double> schema);
 
+    /**
+     * Order students by their score for a gradebook item, so that a grade matrix sorted on the item can be paged without
+     * building it for every student. The scores are ordered by the database. This can only be called by an instructor or TA
+     * that has access, not student.
+     *
+     * @param gradebookUid
+     * @param assignmentId id of the gradebook item
+     * @param studentIds the students to order
+     * @param ascending true for the lowest score first, with the students without a score before any that have one
+     * @return the students, ordered by score, then by student id. Students without a score keep the order they were given in.
+     * @throws AssessmentNotFoundException if there is no gradebook item with that id in the gradebook
+     */
+    List<String> sortStudentsByScore(String gradebookUid, Long assignmentId, List<String> studentIds, boolean ascending);
+
+    /**
+     * Order students by their course grade, so that a grade matrix sorted on the course grade can be paged without building
+     * it for every student. The course grades come from the cached totals, so are only recalculated for students whose
+     * grades changed. This can only be called by an instructor or TA that has access, not student.
+     *
+     * @param gradebookUid
+     * @param studentIds the students to order
+     * @param ascending true for the lowest course grade first
+     * @return the students, ordered by letter grade, with any override taking the place of the mapped grade, then by the
+     *         calculated grade. Students with the same course grade keep the order they were given in.
+     */
+    List<String> sortStudentsByCourseGrade(String gradebookUid, List<String> studentIds, boolean ascending);
+
     /**
      * Get a list of CourseSections that the current user has access to in the given gradebook. This is a combination of sections and groups
      * and is permission filtered.
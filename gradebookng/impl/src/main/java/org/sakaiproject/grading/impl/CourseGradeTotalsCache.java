@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2003-2023 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.grading.impl;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+import org.sakaiproject.grading.api.model.AssignmentGradeRecord;
+import org.sakaiproject.grading.api.model.Category;
+import org.sakaiproject.grading.api.model.Gradebook;
+import org.sakaiproject.grading.api.model.GradebookAssignment;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.VersionedCache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds the calculated course grade totals (points possible, points earned, literal points earned and
+ * extra points earned) per gradebook and student, so that course grades are only recalculated for the
+ * students whose grades, or whose gradebook's items, categories or settings, actually changed.
+ *
+ * Totals are kept in a {@link VersionedCache} under a version per gradebook, and one per student within
+ * that. Callers take the key before they read the grades the totals are calculated from, so totals
+ * calculated from grades that changed meanwhile are only ever put under a version that has been dropped.
+ *
+ * Versions are dropped whenever Hibernate writes a grade record, item, category or gradebook, however
+ * the change was made. The other servers in the cluster drop them once the transaction commits, with a
+ * single message for everything the transaction changed rather than an event per student.
+ */
+@Slf4j
+public class CourseGradeTotalsCache {
+
+    @Autowired private MemoryService memoryService;
+
+    @Autowired
+    @Qualifier("org.sakaiproject.springframework.orm.hibernate.GlobalSessionFactory")
+    private SessionFactory sessionFactory;
+
+    private VersionedCache<double[]> cache;
+
+    public void init() {
+
+        cache = memoryService.getVersionedCache("org.sakaiproject.grading.impl.CourseGradeTotalsCache");
+
+        EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry().getService(EventListenerRegistry.class);
+        GradeChangeListener listener = new GradeChangeListener();
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+    }
+
+    /**
+     * Get the key to read and put a student's totals under. Take it before reading the grades they are calculated from.
+     */
+    public String getKey(Long gradebookId, String studentId) {
+        return cache.getKey(gradebookId.toString(), studentId);
+    }
+
+    public double[] get(String key) {
+        return cache.get(key);
+    }
+
+    public void put(String key, double[] totals) {
+        cache.put(key, totals);
+    }
+
+    public void invalidateStudent(Long gradebookId, String studentId) {
+
+        if (gradebookId == null || studentId == null) return;
+
+        log.debug("Invalidating course grade totals for student {} in gradebook {}", studentId, gradebookId);
+        cache.invalidate(gradebookId.toString(), studentId);
+    }
+
+    public void invalidateGradebook(Long gradebookId) {
+
+        if (gradebookId == null) return;
+
+        log.debug("Invalidating course grade totals for gradebook {}", gradebookId);
+        cache.invalidate(gradebookId.toString());
+    }
+
+    /**
+     * Sees every write Hibernate makes, including those of entities changed without being saved explicitly.
+     */
+    private class GradeChangeListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            entityChanged(event.getEntity());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            entityChanged(event.getEntity());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            entityChanged(event.getEntity());
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return false;
+        }
+
+        private void entityChanged(Object entity) {
+
+            if (entity instanceof AssignmentGradeRecord) {
+                AssignmentGradeRecord record = (AssignmentGradeRecord) entity;
+                if (record.getGradableObject() != null && record.getGradableObject().getGradebook() != null) {
+                    invalidateStudent(record.getGradableObject().getGradebook().getId(), record.getStudentId());
+                }
+            } else if (entity instanceof GradebookAssignment) {
+                Gradebook gradebook = ((GradebookAssignment) entity).getGradebook();
+                if (gradebook != null) {
+                    invalidateGradebook(gradebook.getId());
+                }
+            } else if (entity instanceof Category) {
+                Gradebook gradebook = ((Category) entity).getGradebook();
+                if (gradebook != null) {
+                    invalidateGradebook(gradebook.getId());
+                }
+            } else if (entity instanceof Gradebook) {
+                invalidateGradebook(((Gradebook) entity).getId());
+            }
+        }
+    }
+}
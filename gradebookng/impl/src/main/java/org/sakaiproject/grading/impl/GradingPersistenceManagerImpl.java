@@ -56,6 +56,7 @@ import org.springframework.transaction.annotation.Transactional;
 public class GradingPersistenceManagerImpl implements GradingPersistenceManager {
 
     @Autowired protected AssignmentGradeRecordRepository assignmentGradeRecordRepository;
+    @Autowired protected CourseGradeTotalsCache courseGradeTotalsCache;
     @Autowired protected CategoryRepository categoryRepository;
     @Autowired protected CommentRepository commentRepository;
     @Autowired protected CourseGradeRepository courseGradeRepository;
@@ -336,6 +337,12 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
             .findByGradableObject_IdAndGradableObject_RemovedOrderByPointsEarned(assignmentId, false);
     }
 
+    public List<String> getScoredStudentIdsForAssignment(Long assignmentId) {
+
+        return assignmentGradeRecordRepository
+            .findStudentIdByGradableObject_IdAndPointsEarnedNotNullOrderByPointsEarned(assignmentId);
+    }
+
     public AssignmentGradeRecord getAssignmentGradeRecordForAssignmentAndStudent(Long assignmentId, String studentUid) {
         return assignmentGradeRecordRepository.findByGradableObject_IdAndStudentId(assignmentId, studentUid).orElse(null);
     }
@@ -359,6 +366,11 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     } 
 
     public int deleteGradeRecordsForAssignment(GradebookAssignment assignment) {
+
+        // a bulk delete, which Hibernate doesn't tell the totals cache about
+        if (assignment.getGradebook() != null) {
+            courseGradeTotalsCache.invalidateGradebook(assignment.getGradebook().getId());
+        }
         return assignmentGradeRecordRepository.deleteByGradableObject(assignment);
     }
 
@@ -142,6 +142,7 @@ public class GradingServiceImpl implements GradingService {
     public static final String PROP_ASSIGNMENT_STATS_DISPLAYED = "gradebook.stats.assignments.displayed";
     public static final String PROP_COURSE_GRADE_STATS_DISPLAYED = "gradebook.stats.coursegrade.displayed";
 
+    @Autowired private CourseGradeTotalsCache courseGradeTotalsCache;
     @Autowired private EventTrackingService eventTrackingService;
     @Autowired private EntityManager entityManager;
     @Autowired private GradingAuthz gradingAuthz;
@@ -931,11 +932,32 @@ public class GradingServiceImpl implements GradingService {
         final List<CourseGradeRecord> records = filterAndPopulateCourseGradeRecordsByStudents(courseGrade, unfilteredRecords, studentUids);
 
         final Long gradebookId = courseGrade.getGradebook().getId();
+
+        // Students whose totals haven't changed since they were last calculated don't need
+        // their grade records loaded, or drop scores and category weighting applied, again
+        final List<CourseGradeRecord> uncachedRecords = new ArrayList<>();
+        final Map<String, String> totalsKeys = new HashMap<>();
+        for (CourseGradeRecord cgr : records) {
+            final String key = courseGradeTotalsCache.getKey(gradebookId, cgr.getStudentId());
+            final double[] totals = courseGradeTotalsCache.get(key);
+            if (totals != null) {
+                cgr.initNonpersistentFields(totals[0], totals[1], totals[2], totals[3]);
+            } else {
+                uncachedRecords.add(cgr);
+                totalsKeys.put(cgr.getStudentId(), key);
+            }
+        }
+
+        if (uncachedRecords.isEmpty()) {
+            return records;
+        }
+
         final Gradebook gradebook = getGradebook(gradebookId);
         final List<Category> cates = getCategories(gradebookId);
 
         // get all of the AssignmentGradeRecords here to avoid repeated db calls
-        final Map<String, List<AssignmentGradeRecord>> gradeRecMap = getGradeRecordMapForStudents(gradebookId, studentUids);
+        final Set<String> uncachedStudentUids = uncachedRecords.stream().map(CourseGradeRecord::getStudentId).collect(Collectors.toSet());
+        final Map<String, List<AssignmentGradeRecord>> gradeRecMap = getGradeRecordMapForStudents(gradebookId, uncachedStudentUids);
 
         // get all of the counted assignments
         final List<GradebookAssignment> countedAssigns = getCountedAssignments(gradebookId)
@@ -943,7 +965,7 @@ public class GradingServiceImpl implements GradingService {
         // double totalPointsPossible = getTotalPointsInternal(gradebookId, session);
         // if (log.isDebugEnabled()) log.debug("Total points = " + totalPointsPossible);
 
-        for (CourseGradeRecord cgr : records) {
+        for (CourseGradeRecord cgr : uncachedRecords) {
             // double totalPointsEarned = getTotalPointsEarnedInternal(gradebookId, cgr.getStudentId(), session);
             final List<AssignmentGradeRecord> studentGradeRecs = gradeRecMap.get(cgr.getStudentId());
 
@@ -956,6 +978,8 @@ public class GradingServiceImpl implements GradingService {
             final double totalPointsPossible = getTotalPointsInternal(gradebook, cates, cgr.getStudentId(), studentGradeRecs,
                     countedAssigns, false);
             cgr.initNonpersistentFields(totalPointsPossible, totalPointsEarned, literalTotalPointsEarned, extraPointsEarned);
+            courseGradeTotalsCache.put(totalsKeys.get(cgr.getStudentId()),
+                new double[] { totalPointsPossible, totalPointsEarned, literalTotalPointsEarned, extraPointsEarned });
             log.debug("Points earned = {}", cgr.getPointsEarned());
             log.debug("Points possible = {}", cgr.getTotalPointsPossible());
         }
@@ -2016,6 +2040,26 @@ public class GradingServiceImpl implements GradingService {
         }
     }
 
+    @Override
+    @Transactional
+    public void saveGradesAndComments(final String gradebookUid, final Long gradableObjectId, final List<GradeDefinition> gradeDefList,
+            final String clientServiceDescription) {
+
+        final GradebookAssignment assignment = gradebookUid == null || gradableObjectId == null ? null
+                : getAssignmentWithoutStatsByID(gradebookUid, gradableObjectId);
+        if (assignment != null && assignment.getExternallyMaintained()) {
+            log.error(
+                    "AUTHORIZATION FAILURE: User {} in gradebook {} attempted to grade externally maintained assignment {} from {}",
+                    getUserUid(), gradebookUid, gradableObjectId, clientServiceDescription);
+            throw new GradingSecurityException();
+        }
+
+        saveGradesAndComments(gradebookUid, gradableObjectId, gradeDefList);
+
+        log.debug("{} scores updated in gradebookUid={}, assignmentId={} by userUid={} from client={}",
+                CollectionUtils.size(gradeDefList), gradebookUid, gradableObjectId, getUserUid(), clientServiceDescription);
+    }
+
     @Override
     @Transactional
     public void saveGradesAndComments(final String gradebookUid, final Long gradableObjectId, final List<GradeDefinition> gradeDefList) {
@@ -3311,6 +3355,73 @@ public class GradingServiceImpl implements GradingService {
         return rval;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> sortStudentsByScore(final String gradebookUid, final Long assignmentId, final List<String> studentIds,
+            final boolean ascending) {
+
+        if (!gradingAuthz.isUserAbleToGrade(gradebookUid)) {
+            log.warn("AUTHORIZATION FAILURE: User {} in gradebook {} attempted to sort students by the scores of item {}", getUserUid(),
+                    gradebookUid, assignmentId);
+            throw new GradingSecurityException();
+        }
+
+        if (getAssignmentWithoutStatsByID(gradebookUid, assignmentId) == null) {
+            throw new AssessmentNotFoundException("No gradebook item exists with gradable object id = " + assignmentId);
+        }
+
+        // the records of students who have left the site are ordered too, so leave them out
+        final Set<String> students = new HashSet<>(studentIds);
+        final List<String> scored = gradingPersistenceManager.getScoredStudentIdsForAssignment(assignmentId).stream()
+            .filter(students::contains)
+            .collect(Collectors.toList());
+
+        final Set<String> scoredSet = new HashSet<>(scored);
+        final List<String> unscored = studentIds.stream().filter(s -> !scoredSet.contains(s)).collect(Collectors.toList());
+
+        final List<String> sorted = new ArrayList<>(studentIds.size());
+        if (ascending) {
+            sorted.addAll(unscored);
+            sorted.addAll(scored);
+        } else {
+            Collections.reverse(scored);
+            sorted.addAll(scored);
+            sorted.addAll(unscored);
+        }
+        return sorted;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> sortStudentsByCourseGrade(final String gradebookUid, final List<String> studentIds, final boolean ascending) {
+
+        if (!gradingAuthz.isUserAbleToGrade(gradebookUid)) {
+            log.warn("AUTHORIZATION FAILURE: User {} in gradebook {} attempted to sort students by course grade", getUserUid(), gradebookUid);
+            throw new GradingSecurityException();
+        }
+
+        final Map<String, Double> gradeMap = getGradebook(gradebookUid).getSelectedGradeMapping().getGradeMap();
+        final List<String> ascendingGrades = gradeMap.keySet().stream()
+            .sorted(Comparator.comparing(gradeMap::get, Comparator.nullsFirst(Comparator.naturalOrder())))
+            .collect(Collectors.toList());
+
+        final Map<String, CourseGradeTransferBean> courseGrades = getCourseGradeForStudents(gradebookUid, new ArrayList<>(studentIds));
+
+        final Comparator<String> comparator = Comparator.<String>comparingInt(s -> {
+                final CourseGradeTransferBean cg = courseGrades.get(s);
+                if (cg == null) return -1;
+                return ascendingGrades.indexOf(cg.getDisplayGrade());
+            })
+            .thenComparing(s -> {
+                final CourseGradeTransferBean cg = courseGrades.get(s);
+                return cg == null || cg.getCalculatedGrade() == null ? null : Double.valueOf(cg.getCalculatedGrade());
+            }, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+        final List<String> sorted = new ArrayList<>(studentIds);
+        sorted.sort(ascending ? comparator : comparator.reversed());
+        return sorted;
+    }
+
     @Override
     public List<CourseSection> getViewableSections(final String gradebookUid) {
 
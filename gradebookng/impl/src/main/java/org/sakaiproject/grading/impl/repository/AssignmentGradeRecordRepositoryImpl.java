@@ -69,6 +69,20 @@ public class AssignmentGradeRecordRepositoryImpl extends SpringCrudRepositoryImp
         return session.createQuery(query).list();
     }
 
+    @Transactional(readOnly = true)
+    public List<String> findStudentIdByGradableObject_IdAndPointsEarnedNotNullOrderByPointsEarned(Long gradableObjectId) {
+
+        Session session = sessionFactory.getCurrentSession();
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaQuery<String> query = cb.createQuery(String.class);
+        Root<AssignmentGradeRecord> agr = query.from(AssignmentGradeRecord.class);
+        Join<AssignmentGradeRecord, GradableObject> go = agr.join("gradableObject");
+        query.select(agr.get("studentId"))
+            .where(cb.and(cb.equal(go.get("id"), gradableObjectId), cb.isNotNull(agr.get("pointsEarned"))))
+            .orderBy(cb.asc(agr.get("pointsEarned")), cb.asc(agr.get("studentId")));
+        return session.createQuery(query).list();
+    }
+
     @Transactional(readOnly = true)
     public Optional<AssignmentGradeRecord> findByGradableObject_IdAndStudentId(Long gradableObjectId, String studentId) {
 
@@ -39,14 +39,18 @@ import org.sakaiproject.grading.api.GradebookInformation;
 import org.sakaiproject.grading.api.GradeDefinition;
 import org.sakaiproject.grading.api.GradeType;
 import org.sakaiproject.grading.api.GradingAuthz;
+import org.sakaiproject.grading.api.GradingPersistenceManager;
 import org.sakaiproject.grading.api.GradingSecurityException;
 import org.sakaiproject.grading.api.GradingService;
+import org.sakaiproject.grading.api.model.AssignmentGradeRecord;
 import org.sakaiproject.grading.api.model.CourseGrade;
 import org.sakaiproject.grading.api.model.Gradebook;
+import org.sakaiproject.grading.api.model.GradebookAssignment;
 import org.sakaiproject.grading.api.model.GradingEvent;
 import org.sakaiproject.grading.api.model.LetterGradePercentMapping;
 import org.sakaiproject.grading.api.repository.CourseGradeRepository;
 import org.sakaiproject.grading.api.repository.LetterGradePercentMappingRepository;
+import org.sakaiproject.grading.impl.CourseGradeTotalsCache;
 import org.sakaiproject.grading.impl.GradingServiceImpl;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
@@ -58,6 +62,8 @@ import org.sakaiproject.user.api.UserNotDefinedException;
 import org.sakaiproject.plus.api.PlusService;
 import org.sakaiproject.util.ResourceLoader;
 
+import org.hibernate.SessionFactory;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.AbstractTransactionalJUnit4SpringContextTests;
@@ -79,13 +85,16 @@ import org.junit.runner.RunWith;
 public class GradingServiceTests extends AbstractTransactionalJUnit4SpringContextTests {
 
     @Autowired private CourseGradeRepository courseGradeRepository;
+    @Autowired private CourseGradeTotalsCache courseGradeTotalsCache;
     @Autowired private EntityManager entityManager;
+    @Autowired private GradingPersistenceManager gradingPersistenceManager;
     @Autowired private GradingService gradingService;
     @Autowired private LetterGradePercentMappingRepository letterGradePercentMappingRepository;
     @Autowired private SecurityService securityService;
     @Autowired private SessionManager sessionManager;
     @Autowired private SiteService siteService;
     @Autowired private PlusService plusService;
+    @Autowired private SessionFactory sessionFactory;
     @Autowired private UserDirectoryService userDirectoryService;
 
     private ResourceLoader resourceLoader;
@@ -577,6 +586,94 @@ public class GradingServiceTests extends AbstractTransactionalJUnit4SpringContex
         assertEquals("20.0", grades.get(user1).getCalculatedGrade());
     }
 
+    @Test
+    public void courseGradeTotalsFollowChanges() {
+
+        Gradebook gradebook = createGradebook();
+        Long assId = createAssignment1(gradebook);
+
+        Map<String, Double> gradeMapping = new HashMap<>();
+        gradeMapping.put(user1, 3.0D);
+
+        gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), assId, user1, "3.0", "");
+        assertEquals("20.0", gradingService.getCourseGradeForStudents(gradebook.getUid(), Arrays.asList(user1), gradeMapping).get(user1).getCalculatedGrade());
+
+        // A grade changed on the entity, and written by Hibernate's dirty checking rather than saved
+        AssignmentGradeRecord record = gradingPersistenceManager.getAllAssignmentGradeRecordsForAssignment(assId).get(0);
+        record.setPointsEarned(6.0D);
+        sessionFactory.getCurrentSession().flush();
+        assertEquals("40.0", gradingService.getCourseGradeForStudents(gradebook.getUid(), Arrays.asList(user1), gradeMapping).get(user1).getCalculatedGrade());
+
+        // The item's points changed the same way
+        GradebookAssignment assignment = gradingPersistenceManager.getAssignmentById(assId).get();
+        assignment.setPointsPossible(30D);
+        sessionFactory.getCurrentSession().flush();
+        assertEquals("20.0", gradingService.getCourseGradeForStudents(gradebook.getUid(), Arrays.asList(user1), gradeMapping).get(user1).getCalculatedGrade());
+    }
+
+    @Test
+    public void courseGradeTotalsChangedOnAnotherServer() {
+
+        Gradebook gradebook = createGradebook();
+        Long assId = createAssignment1(gradebook);
+
+        Map<String, Double> gradeMapping = new HashMap<>();
+        gradeMapping.put(user1, 3.0D);
+
+        gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), assId, user1, "3.0", "");
+        assertEquals("20.0", gradingService.getCourseGradeForStudents(gradebook.getUid(), Arrays.asList(user1), gradeMapping).get(user1).getCalculatedGrade());
+
+        // Another server changes the grade, so this one still has the totals from before
+        AssignmentGradeRecord record = gradingPersistenceManager.getAllAssignmentGradeRecordsForAssignment(assId).get(0);
+        sessionFactory.getCurrentSession().createNativeQuery("update GB_GRADE_RECORD_T set POINTS_EARNED = 6 where ID = :id")
+            .setParameter("id", record.getId()).executeUpdate();
+        sessionFactory.getCurrentSession().clear();
+        assertEquals("20.0", gradingService.getCourseGradeForStudents(gradebook.getUid(), Arrays.asList(user1), gradeMapping).get(user1).getCalculatedGrade());
+
+        // until the other server's change reaches the versioned cache
+        courseGradeTotalsCache.invalidateStudent(gradebook.getId(), user1);
+        assertEquals("40.0", gradingService.getCourseGradeForStudents(gradebook.getUid(), Arrays.asList(user1), gradeMapping).get(user1).getCalculatedGrade());
+    }
+
+    @Test
+    public void sortStudentsByScore() {
+
+        Gradebook gradebook = createGradebook();
+        Long assId = createAssignment1(gradebook);
+
+        gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), assId, user1, "10", "");
+        gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), assId, user2, "5", "");
+
+        List<String> students = List.of("user3", user1, user2);
+        assertEquals(List.of("user3", user2, user1), gradingService.sortStudentsByScore(gradebook.getUid(), assId, students, true));
+        assertEquals(List.of(user1, user2, "user3"), gradingService.sortStudentsByScore(gradebook.getUid(), assId, students, false));
+
+        // only the students asked for are returned
+        assertEquals(List.of(user1), gradingService.sortStudentsByScore(gradebook.getUid(), assId, List.of(user1), true));
+
+        assertThrows(AssessmentNotFoundException.class, () -> gradingService.sortStudentsByScore(gradebook.getUid(), assId + 1000, students, true));
+
+        switchToUser2();
+        assertThrows(GradingSecurityException.class, () -> gradingService.sortStudentsByScore(gradebook.getUid(), assId, students, true));
+    }
+
+    @Test
+    public void sortStudentsByCourseGrade() {
+
+        Gradebook gradebook = createGradebook();
+        Long assId = createAssignment1(gradebook);
+
+        gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), assId, user1, "14", "");
+        gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), assId, user2, "3", "");
+
+        List<String> students = List.of(user1, user2);
+        assertEquals(List.of(user2, user1), gradingService.sortStudentsByCourseGrade(gradebook.getUid(), students, true));
+        assertEquals(List.of(user1, user2), gradingService.sortStudentsByCourseGrade(gradebook.getUid(), students, false));
+
+        switchToUser2();
+        assertThrows(GradingSecurityException.class, () -> gradingService.sortStudentsByCourseGrade(gradebook.getUid(), students, true));
+    }
+
     @Test
     public void getGradesWithoutCommentsForStudentsForItems() {
 
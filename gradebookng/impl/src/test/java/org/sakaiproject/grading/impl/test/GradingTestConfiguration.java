@@ -20,6 +20,7 @@ import static org.mockito.Mockito.mock;
 import org.sakaiproject.authz.api.FunctionManager;
 import org.sakaiproject.entity.api.EntityManager;
 import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.plus.api.PlusService;
 import org.sakaiproject.section.api.SectionAwareness;
 import org.sakaiproject.springframework.orm.hibernate.AdditionalHibernateMappings;
@@ -70,4 +71,9 @@ public class GradingTestConfiguration extends SakaiTestConfiguration {
     public EntityManager entityManager() {
         return mock(EntityManager.class);
     }
+
+    @Bean(name = "org.sakaiproject.memory.api.MemoryService")
+    public MemoryService memoryService() {
+        return new org.sakaiproject.memory.mock.MemoryService();
+    }
 }
@@ -952,18 +952,29 @@ public class GradebookNgBusinessService {
 	public HashMap<String, Boolean> buildHasAssociatedRubricMap(final List<Assignment> assignments) {
 
 		HashMap<String, Boolean> map = new HashMap<>();
+
+		// Look up the associations for each tool in one go, rather than one assignment at a time
+		List<String> assignmentIds = new ArrayList<>();
+		List<String> gradebookItemIds = new ArrayList<>();
 		for (Assignment assignment : assignments) {
-			String externalAppName = assignment.getExternalAppName();
 			if (assignment.getExternallyMaintained()) {
 				String assignmentId = AssignmentReferenceReckoner.reckoner().reference(assignment.getExternalId()).reckon().getId();
-				boolean hasAssociatedRubric = StringUtils.equals(externalAppName, AssignmentConstants.TOOL_ID) ? rubricsService.hasAssociatedRubric(externalAppName, assignmentId) : false;
-				map.put(assignmentId, hasAssociatedRubric);
+				if (StringUtils.equals(assignment.getExternalAppName(), AssignmentConstants.TOOL_ID)) {
+					assignmentIds.add(assignmentId);
+				} else {
+					map.put(assignmentId, false);
+				}
 			} else {
-				Long assignmentId = assignment.getId();
-				boolean hasAssociatedRubric = rubricsService.hasAssociatedRubric(RubricsConstants.RBCS_TOOL_GRADEBOOKNG, assignmentId.toString());
-				map.put(assignmentId.toString(), hasAssociatedRubric);
+				gradebookItemIds.add(assignment.getId().toString());
 			}
 		}
+
+		if (!assignmentIds.isEmpty()) {
+			map.putAll(rubricsService.hasAssociatedRubrics(AssignmentConstants.TOOL_ID, assignmentIds));
+		}
+		if (!gradebookItemIds.isEmpty()) {
+			map.putAll(rubricsService.hasAssociatedRubrics(RubricsConstants.RBCS_TOOL_GRADEBOOKNG, gradebookItemIds));
+		}
 		return map;
 	}
 
@@ -1030,6 +1041,86 @@ public class GradebookNgBusinessService {
 		return items;
 	}
 
+	/**
+	 * Build one page of the matrix of assignments and grades for the given users with the specified sort order. The students are
+	 * ordered first, by the grading service when sorting on an assignment or the course grade, and the grades, category scores and
+	 * course grades are then only looked up for the students on the page. Sorting on a category still computes that category's
+	 * scores for every student, as they are not stored.
+	 *
+	 * @param assignments list of assignments
+	 * @param studentUuids student uuids
+	 * @param uiSettings the settings from the UI that wraps up preferences
+	 * @param first index of the first student on the page, in sorted order
+	 * @param count the most students on the page
+	 * @return the sorted matrix entries for the students on the page
+	 */
+	public List<GbStudentGradeInfo> buildGradeMatrixPage(final List<Assignment> assignments,
+			final List<String> studentUuids, final GradebookUiSettings uiSettings, final int first, final int count) throws GbException {
+
+		final GradebookUiSettings settings = (uiSettings != null) ? uiSettings : new GradebookUiSettings();
+
+		final GbStopWatch stopwatch = new GbStopWatch();
+		stopwatch.start();
+		stopwatch.timeWithContext("buildGradeMatrixPage", "buildGradeMatrixPage start", stopwatch.getTime());
+
+		final Gradebook gradebook = this.getGradebook();
+		if (gradebook == null) {
+			return null;
+		}
+
+		final String currentUserUuid = getCurrentUser().getId();
+
+		GbRole role;
+		try {
+			role = this.getUserRole();
+		} catch (final GbAccessDeniedException e) {
+			throw new GbException("Error getting role for current user", e);
+		}
+
+		final Site site = getCurrentSite().orElse(null);
+
+		// students by name or student number, which the grade sorts keep for students with the same grade
+		final List<GbUser> gbStudents = getGbUsersForUiSettings(studentUuids, settings, site);
+		final List<String> orderedUuids = gbStudents.stream().map(GbUser::getUserUuid).collect(Collectors.toList());
+		stopwatch.timeWithContext("buildGradeMatrixPage", "sortUsers", stopwatch.getTime());
+
+		List<String> sortedUuids = orderedUuids;
+		if (settings.getCourseGradeSortOrder() != null) {
+			sortedUuids = this.gradingService.sortStudentsByCourseGrade(gradebook.getUid(), orderedUuids,
+					settings.getCourseGradeSortOrder() == SortDirection.ASCENDING);
+		} else if (settings.getAssignmentSortOrder() != null) {
+			final GbAssignmentGradeSortOrder sortOrder = settings.getAssignmentSortOrder();
+			sortedUuids = this.gradingService.sortStudentsByScore(gradebook.getUid(), sortOrder.getAssignmentId(), orderedUuids,
+					sortOrder.getDirection() == SortDirection.ASCENDING);
+		} else if (settings.getCategorySortOrder() != null) {
+			final long categoryId = settings.getCategorySortOrder().getCategoryId();
+			final List<Assignment> categoryAssignments = assignments.stream()
+				.filter(a -> a.getCategoryId() != null && a.getCategoryId() == categoryId)
+				.collect(Collectors.toList());
+
+			final Map<String, GbStudentGradeInfo> sortMatrix = new LinkedHashMap<>();
+			putAssignmentsAndCategoryItemsInMatrix(sortMatrix, gbStudents, new ArrayList<>(orderedUuids), categoryAssignments, gradebook,
+					currentUserUuid, role, settings);
+			sortedUuids = sortGradeMatrix(sortMatrix, settings).stream().map(GbStudentGradeInfo::getStudentUuid).collect(Collectors.toList());
+		}
+		stopwatch.timeWithContext("buildGradeMatrixPage", "sortStudents", stopwatch.getTime());
+
+		final Map<String, GbUser> studentsByUuid = gbStudents.stream().collect(Collectors.toMap(GbUser::getUserUuid, u -> u));
+		final List<GbUser> pageStudents = sortedUuids.stream().skip(first).limit(count).map(studentsByUuid::get).collect(Collectors.toList());
+		final List<String> pageUuids = pageStudents.stream().map(GbUser::getUserUuid).collect(Collectors.toList());
+
+		// the matrix keeps the order the students are put in
+		final Map<String, GbStudentGradeInfo> matrix = new LinkedHashMap<>();
+
+		putCourseGradesInMatrix(matrix, pageStudents, pageUuids, gradebook, role, isCourseGradeVisible(currentUserUuid), settings);
+		stopwatch.timeWithContext("buildGradeMatrixPage", "putCourseGradesInMatrix", stopwatch.getTime());
+
+		putAssignmentsAndCategoryItemsInMatrix(matrix, pageStudents, pageUuids, assignments, gradebook, currentUserUuid, role, settings);
+		stopwatch.timeWithContext("buildGradeMatrixPage", "putAssignmentsAndCategoryItemsInMatrix", stopwatch.getTime());
+
+		return new ArrayList<>(matrix.values());
+	}
+
 	/**
 	 * Build the matrix of assignments and grades for the Export process
 	 *
@@ -3132,6 +3223,13 @@ public class GradebookNgBusinessService {
 		return  this.serverConfigService.getBoolean("gradebook.coursegrade.showCalculatedGrade", true) ;
 	}
 
+	/**
+	 * The most students to show on a page of the grade table. Rosters larger than this are paged, 0 shows every student.
+	 */
+	public int getStudentsPerPage() {
+		return this.serverConfigService.getInt("gradebookng.studentsPerPage", 500);
+	}
+
 	/**
 	 * Get the date and time formatted via the UserTimeService
 	 * @param dateGraded
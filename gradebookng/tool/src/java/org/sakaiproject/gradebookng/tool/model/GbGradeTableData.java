@@ -48,6 +48,9 @@ public class GbGradeTableData {
 	private Map<String, Boolean> hasAssociatedRubricMap;
 	private boolean isStudentNumberVisible;
 	private boolean isSectionsVisible;
+	private int studentCount;
+	private int firstStudent;
+	private int studentsPerPage;
 
 	public GbGradeTableData(final GradebookNgBusinessService businessService,
 			final GradebookUiSettings settings) {
@@ -76,10 +79,27 @@ public class GbGradeTableData {
 		);
 		stopwatch.time("getGradebookAssignments", stopwatch.getTime());
 
-		grades = businessService.buildGradeMatrix(
-				assignments,
-				settings);
-		stopwatch.time("buildGradeMatrix", stopwatch.getTime());
+		final List<String> students = businessService.getGradeableUsers(settings.getGroupFilter());
+		studentCount = students != null ? students.size() : 0;
+		studentsPerPage = businessService.getStudentsPerPage();
+		if (studentsPerPage > 0 && studentCount > studentsPerPage) {
+			// only build the page of students on show, the last one if the roster has shrunk since the page was chosen
+			final int lastPage = (studentCount - 1) / studentsPerPage;
+			firstStudent = Math.min(settings.getStudentPage(), lastPage) * studentsPerPage;
+			grades = businessService.buildGradeMatrixPage(
+					assignments,
+					students,
+					settings,
+					firstStudent,
+					studentsPerPage);
+			stopwatch.time("buildGradeMatrixPage", stopwatch.getTime());
+		} else {
+			grades = businessService.buildGradeMatrix(
+					assignments,
+					students,
+					settings);
+			stopwatch.time("buildGradeMatrix", stopwatch.getTime());
+		}
 
 		categories = businessService.getGradebookCategories();
 		stopwatch.time("getGradebookCategories", stopwatch.getTime());
@@ -100,4 +120,11 @@ public class GbGradeTableData {
 
 		isSectionsVisible = businessService.isSectionsVisible();
 	}
+
+	/**
+	 * @return true if only a page of the students is in the table, as there are more than fit on one
+	 */
+	public boolean isPaged() {
+		return studentsPerPage > 0 && studentCount > studentsPerPage;
+	}
 }
@@ -48,9 +48,16 @@ public class GradebookUiSettings implements Serializable {
 	 * Stores the selected group/section
 	 */
 	@Getter
-	@Setter
 	private GbGroup groupFilter;
 
+	/**
+	 * The page of students shown in the grade table, when the roster is paged. Back to the first page whenever the students
+	 * are filtered or sorted differently.
+	 */
+	@Getter
+	@Setter
+	private int studentPage;
+
 	/**
 	 * For sorting based on assignment grades
 	 */
@@ -189,6 +196,11 @@ public class GradebookUiSettings implements Serializable {
 		return String.format("rgb(%d,%d,%d)", r, g, b);
 	}
 
+	public void setGroupFilter(final GbGroup groupFilter) {
+		this.groupFilter = groupFilter;
+		this.studentPage = 0;
+	}
+
 	public void setCourseGradeSortOrder(SortDirection direction) {
 		resetSortOrder();
 		this.courseGradeSortOrder = direction;
@@ -216,6 +228,7 @@ public class GradebookUiSettings implements Serializable {
 	}
 
 	private void resetSortOrder() {
+		this.studentPage = 0;
 		this.courseGradeSortOrder = null;
 		this.categorySortOrder = null;
 		this.assignmentSortOrder = null;
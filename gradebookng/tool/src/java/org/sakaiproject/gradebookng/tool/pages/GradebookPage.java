@@ -44,6 +44,7 @@ import org.apache.wicket.model.Model;
 import org.apache.wicket.util.string.StringValue;
 import org.sakaiproject.gradebookng.business.GbRole;
 import org.sakaiproject.gradebookng.business.model.GbGroup;
+import org.sakaiproject.gradebookng.business.util.MessageHelper;
 import org.sakaiproject.gradebookng.business.util.GbStopWatch;
 import org.sakaiproject.gradebookng.tool.actions.DeleteAssignmentAction;
 import org.sakaiproject.gradebookng.tool.actions.EditAssignmentAction;
@@ -317,6 +318,49 @@ public class GradebookPage extends BasePage {
 
 		this.tableArea.add(this.gradeTable);
 
+		// pager for rosters with more students than fit on one page of the table
+		final WebMarkupContainer studentPager = new WebMarkupContainer("studentPager") {
+			@Override
+			public boolean isVisible() {
+				return getGradeTableData().isPaged();
+			}
+		};
+		toolbar.add(studentPager);
+
+		studentPager.add(new GbAjaxLink("previousStudents") {
+			@Override
+			public void onClick(final AjaxRequestTarget target) {
+				final GbGradeTableData data = getGradeTableData();
+				showStudentPage(data.getFirstStudent() / data.getStudentsPerPage() - 1);
+			}
+
+			@Override
+			public boolean isEnabled() {
+				return getGradeTableData().getFirstStudent() > 0;
+			}
+		});
+		studentPager.add(new Label("studentPageSummary", new LoadableDetachableModel<String>() {
+			@Override
+			protected String load() {
+				final GbGradeTableData data = getGradeTableData();
+				return MessageHelper.getString("label.toolbar.studentsummarypaginated", data.getFirstStudent() + 1,
+						Math.min(data.getFirstStudent() + data.getStudentsPerPage(), data.getStudentCount()), data.getStudentCount());
+			}
+		}));
+		studentPager.add(new GbAjaxLink("nextStudents") {
+			@Override
+			public void onClick(final AjaxRequestTarget target) {
+				final GbGradeTableData data = getGradeTableData();
+				showStudentPage(data.getFirstStudent() / data.getStudentsPerPage() + 1);
+			}
+
+			@Override
+			public boolean isEnabled() {
+				final GbGradeTableData data = getGradeTableData();
+				return data.getFirstStudent() + data.getStudentsPerPage() < data.getStudentCount();
+			}
+		});
+
 		final SakaiAjaxButton toggleCategoriesToolbarItem = new SakaiAjaxButton("toggleCategoriesToolbarItem") {
 			@Override
 			protected void onInitialize() {
@@ -493,6 +537,24 @@ public class GradebookPage extends BasePage {
 		stopwatch.time("Gradebook page done", stopwatch.getTime());
 	}
 
+	private GbGradeTableData getGradeTableData() {
+		return (GbGradeTableData) this.gradeTable.getDefaultModelObject();
+	}
+
+	/**
+	 * Show another page of the students in the grade table
+	 *
+	 * @param page the page, from 0
+	 */
+	private void showStudentPage(final int page) {
+		final GradebookUiSettings settings = getUiSettings();
+		settings.setStudentPage(Math.max(0, page));
+		setUiSettings(settings);
+
+		// refresh
+		setResponsePage(GradebookPage.class);
+	}
+
 	/**
 	 * Getters for panels to get at modal windows
 	 *
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.memory.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A {@link VersionedCache} over a {@link Cache} of this server. The paths changed in a transaction are
+ * collected and handed to {@link #publish(List)} once it commits, which does nothing here, as there are
+ * no other servers to tell. A clustered memory service overrides it, and calls {@link #evict(List)}
+ * with the paths the other servers publish.
+ */
+@Slf4j
+public class BasicVersionedCache<V> implements VersionedCache<V> {
+
+    // Keeps version keys apart from the keys callers make by appending to a version
+    private static final String VERSION_PREFIX = "#";
+
+    private final Cache<String, Object> cache;
+
+    // The paths changed in the current transaction
+    private final Object changesResource;
+
+    public BasicVersionedCache(Cache<String, Object> cache) {
+        this.cache = cache;
+        this.changesResource = BasicVersionedCache.class.getName() + ":" + cache.getName();
+    }
+
+    @Override
+    public String getKey(String... path) {
+
+        String version = null;
+        for (String group : path) {
+            String versionKey = versionKey(version, group);
+            Object current = cache.get(versionKey);
+            if (current == null) {
+                current = UUID.randomUUID().toString();
+                cache.put(versionKey, current);
+            }
+            version = current.toString();
+        }
+        return version;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(String key) {
+        return (V) cache.get(key);
+    }
+
+    @Override
+    public void put(String key, V value) {
+        cache.put(key, value);
+    }
+
+    @Override
+    public void invalidate(String... path) {
+
+        if (path.length == 0) return;
+
+        List<String> changed = Arrays.asList(path);
+        drop(changed);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(Collections.singletonList(new ArrayList<>(changed)));
+            return;
+        }
+
+        Set<List<String>> changes = (Set<List<String>>) TransactionSynchronizationManager.getResource(changesResource);
+        if (changes == null) {
+            Set<List<String>> newChanges = new LinkedHashSet<>();
+            changes = newChanges;
+            TransactionSynchronizationManager.bindResource(changesResource, newChanges);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+
+                    TransactionSynchronizationManager.unbindResourceIfPossible(changesResource);
+                    List<List<String>> paths = outermost(newChanges);
+                    paths.forEach(BasicVersionedCache.this::drop);
+                    if (status == STATUS_COMMITTED) {
+                        publish(paths);
+                    }
+                }
+            });
+        }
+        changes.add(changed);
+    }
+
+    /**
+     * Tell the other servers in the cluster that the paths changed. Called once for each committed
+     * transaction, and for each change made outside of one.
+     *
+     * @param paths the changed paths, none of which is below another
+     */
+    protected void publish(List<List<String>> paths) {
+    }
+
+    /**
+     * Drop the paths another server changed.
+     */
+    protected void evict(List<List<String>> paths) {
+
+        log.debug("Dropping {} paths changed on another server in {}", paths.size(), cache.getName());
+        paths.forEach(this::drop);
+    }
+
+    private void drop(List<String> path) {
+
+        // Nothing can be kept below a version that is not there
+        String version = null;
+        for (int i = 0; i < path.size() - 1; i++) {
+            Object current = cache.get(versionKey(version, path.get(i)));
+            if (current == null) return;
+            version = current.toString();
+        }
+        cache.remove(versionKey(version, path.get(path.size() - 1)));
+    }
+
+    private String versionKey(String parentVersion, String group) {
+        return parentVersion == null ? VERSION_PREFIX + group : VERSION_PREFIX + parentVersion + ":" + group;
+    }
+
+    /**
+     * Dropping a path's version orphans every path below it, so leave out the paths below another.
+     */
+    private List<List<String>> outermost(Collection<List<String>> changes) {
+
+        List<List<String>> sorted = new ArrayList<>(changes);
+        sorted.sort(Comparator.comparingInt(List::size));
+
+        List<List<String>> paths = new ArrayList<>();
+        for (List<String> path : sorted) {
+            if (paths.stream().noneMatch(outer -> path.subList(0, outer.size()).equals(outer))) {
+                paths.add(new ArrayList<>(path));
+            }
+        }
+        return paths;
+    }
+}
@@ -236,6 +236,15 @@ public interface MemoryService // CacheManager
      */
     public Cache newCache(String cacheName);
 
+    /**
+     * Get a {@link VersionedCache} over the named cache, see {@link #getCache(String)}. The versioned cache
+     * of a name is shared, so take it once and keep it.
+     *
+     * @param cacheName the name of the cache to keep the versions and values in
+     * @return a versioned cache whose invalidations reach the other servers in the cluster
+     */
+    <V> VersionedCache<V> getVersionedCache(String cacheName);
+
     /**
      * Get a status report of memory cache usage
      * @return A string representing the current status of all caches
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.memory.api;
+
+/**
+ * A cache of values calculated from data that is changed in transactions, kept under a version token
+ * per group of values rather than under keys that have to be found and removed one by one.
+ * <p>
+ * Groups are named by a path, for example a gradebook and then a student within it. Invalidating a
+ * path drops its version, which orphans every value kept under it and under any path below it.
+ * Callers take the key before they read the data the value is calculated from, so a value read while
+ * a change is being made is only ever put under a version that has been dropped.
+ * <p>
+ * A path invalidated in a transaction is dropped when it is invalidated and again once the transaction
+ * completes, as a read in the transaction could cache the change before it is rolled back. Once the
+ * transaction commits, the other servers in the cluster drop the paths it changed too, with a single
+ * message for the transaction rather than an event per change.
+ *
+ * @see MemoryService#getVersionedCache(String)
+ */
+public interface VersionedCache<V> {
+
+    /**
+     * Get the key for the values of a path. Take it before reading the data the values are calculated
+     * from, and append to it to keep several values under the same version.
+     *
+     * @param path the groups the values belong to, outermost first
+     * @return the key to get and put the values under
+     */
+    String getKey(String... path);
+
+    /**
+     * @param key a key from {@link #getKey(String...)}
+     * @return the value put under the key, or null if there is none or its version has been dropped
+     */
+    V get(String key);
+
+    /**
+     * @param key a key from {@link #getKey(String...)}, taken before the value was read
+     * @param value the value
+     */
+    void put(String key, V value);
+
+    /**
+     * Drop the version of a path, so that the values of the path and of every path below it are read again.
+     * This is repeated once the current transaction completes, and on the other servers once it commits.
+     *
+     * @param path the groups whose values changed, outermost first
+     */
+    void invalidate(String... path);
+}
@@ -34,6 +34,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class MemoryService implements org.sakaiproject.memory.api.MemoryService {
 
     ConcurrentHashMap<String, Cache> caches = new ConcurrentHashMap<String, Cache>();
+    ConcurrentHashMap<String, VersionedCache> versionedCaches = new ConcurrentHashMap<String, VersionedCache>();
 
     @Override
     public long getAvailableMemory() {
@@ -110,6 +111,11 @@ public class MemoryService implements org.sakaiproject.memory.api.MemoryService
         return newCache(cacheName, null, null);
     }
 
+    @Override
+    public VersionedCache getVersionedCache(String cacheName) {
+        return versionedCaches.computeIfAbsent(cacheName, name -> new BasicVersionedCache(getCache(name)));
+    }
+
     @Override
     public String getStatus() {
         return caches.toString();
@@ -19,7 +19,27 @@ import java.util.List;
 
 public interface MessagingService {
 
+    /**
+     * Listen for alerts sent to a topic, from any node in the cluster. Listeners must be removed
+     * with {@link #stopListening(String, MessageListener)} when they are no longer needed.
+     *
+     * @param topic The topic, USER#userId for a user's alerts
+     * @param listener The listener to call with each alert
+     */
     public void listen(String topic, MessageListener listener);
+
+    /**
+     * @param topic The topic the listener was registered for
+     * @param listener The listener to remove
+     */
+    public void stopListening(String topic, MessageListener listener);
+
+    /**
+     * Send an alert to the listeners for a topic, on whichever nodes in the cluster they are registered.
+     *
+     * @param topic The topic to send to
+     * @param ba The alert
+     */
     public void send(String topic, BullhornAlert ba);
 
     /**
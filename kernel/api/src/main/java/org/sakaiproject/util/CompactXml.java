@@ -0,0 +1,343 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A compact binary form of the XML documents entities are stored as, for storages that keep an entity's XML in a
+ * text column.
+ * <p>
+ * The document is written as a stream of elements, attributes and text, with each element and attribute name written
+ * once and referred to by number after that, then compressed. It is kept in the same column as the XML it replaces,
+ * Base64 encoded after a prefix no XML starts with, so that rows in either form can be read side by side while a
+ * storage is converted. Reading it gives the same SAX events, or the same DOM, as parsing the XML would, without the
+ * XML having to be parsed.
+ * </p>
+ */
+@Slf4j
+public final class CompactXml
+{
+	/** Starts every document in this form, with the version of the form. */
+	public static final String PREFIX = "SKX1:";
+
+	private static final int END_DOCUMENT = 0;
+	private static final int START_ELEMENT = 1;
+	private static final int END_ELEMENT = 2;
+	private static final int TEXT = 3;
+
+	private CompactXml()
+	{
+	}
+
+	/**
+	 * @param in
+	 *        a stored document.
+	 * @return true if the document is in this form, false if it is XML.
+	 */
+	public static boolean isCompact(String in)
+	{
+		return in != null && in.startsWith(PREFIX);
+	}
+
+	/**
+	 * Write a document in this form.
+	 *
+	 * @param doc
+	 *        the document.
+	 * @return The document in this form, to be stored in place of its XML.
+	 */
+	public static String write(Document doc)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes)))
+		{
+			new Writer(out).element(doc.getDocumentElement());
+			out.writeByte(END_DOCUMENT);
+		}
+		catch (IOException e)
+		{
+			// not from an in memory stream
+			throw new UncheckedIOException(e);
+		}
+		return PREFIX + Base64.getEncoder().encodeToString(bytes.toByteArray());
+	}
+
+	/**
+	 * Send the SAX events parsing the document's XML would to a handler.
+	 *
+	 * @param in
+	 *        the document in this form.
+	 * @param dh
+	 *        the handler.
+	 * @throws SAXException
+	 *         if the handler throws it, or the document is not in this form.
+	 * @throws IOException
+	 *         if the document can't be read.
+	 */
+	public static void process(String in, DefaultHandler dh) throws SAXException, IOException
+	{
+		try (DataInputStream data = open(in))
+		{
+			Reader reader = new Reader(data);
+			Deque<String> open = new ArrayDeque<>();
+
+			dh.startDocument();
+			for (int token = data.readUnsignedByte(); token != END_DOCUMENT; token = data.readUnsignedByte())
+			{
+				switch (token)
+				{
+					case START_ELEMENT:
+						String name = reader.name();
+						AttributesImpl attributes = new AttributesImpl();
+						for (int i = reader.number(); i > 0; i--)
+						{
+							String attribute = reader.name();
+							attributes.addAttribute("", attribute, attribute, "CDATA", reader.string());
+						}
+						open.push(name);
+						dh.startElement("", "", name, attributes);
+						break;
+					case END_ELEMENT:
+						String end = open.pop();
+						dh.endElement("", "", end);
+						break;
+					case TEXT:
+						char[] text = reader.string().toCharArray();
+						dh.characters(text, 0, text.length);
+						break;
+					default:
+						throw new SAXException("Not a compact document, token: " + token);
+				}
+			}
+			dh.endDocument();
+		}
+	}
+
+	/**
+	 * Read a document in this form into a DOM.
+	 *
+	 * @param in
+	 *        the document in this form.
+	 * @return The document, or null if it can't be read.
+	 */
+	public static Document read(String in)
+	{
+		return read(in, null);
+	}
+
+	/**
+	 * Read a document in this form into a DOM.
+	 *
+	 * @param in
+	 *        the document in this form.
+	 * @param id
+	 *        the id of the entity the document is for, to log if it can't be read, or null if not known.
+	 * @return The document, or null if it can't be read.
+	 */
+	public static Document read(String in, String id)
+	{
+		try (DataInputStream data = open(in))
+		{
+			Reader reader = new Reader(data);
+			Document doc = Xml.createDocument();
+			Deque<Node> open = new ArrayDeque<>();
+			open.push(doc);
+
+			for (int token = data.readUnsignedByte(); token != END_DOCUMENT; token = data.readUnsignedByte())
+			{
+				switch (token)
+				{
+					case START_ELEMENT:
+						Element element = doc.createElement(reader.name());
+						for (int i = reader.number(); i > 0; i--)
+						{
+							element.setAttribute(reader.name(), reader.string());
+						}
+						open.peek().appendChild(element);
+						open.push(element);
+						break;
+					case END_ELEMENT:
+						open.pop();
+						break;
+					case TEXT:
+						open.peek().appendChild(doc.createTextNode(reader.string()));
+						break;
+					default:
+						throw new IOException("Not a compact document, token: " + token);
+				}
+			}
+			return doc;
+		}
+		catch (Exception e)
+		{
+			log.warn("Failed to read the compact document for {}: {}", id != null ? id : "an unknown entity", e.toString());
+			return null;
+		}
+	}
+
+	private static DataInputStream open(String in) throws IOException
+	{
+		if (!isCompact(in)) throw new IOException("Not a compact document");
+		byte[] bytes = Base64.getDecoder().decode(in.substring(PREFIX.length()));
+		return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	/**
+	 * Writes names by number once they've been written once.
+	 */
+	private static class Writer
+	{
+		private final DataOutputStream out;
+		private final Map<String, Integer> names = new HashMap<>();
+
+		Writer(DataOutputStream out)
+		{
+			this.out = out;
+		}
+
+		void element(Element element) throws IOException
+		{
+			out.writeByte(START_ELEMENT);
+			name(element.getTagName());
+			NamedNodeMap attributes = element.getAttributes();
+			number(attributes.getLength());
+			for (int i = 0; i < attributes.getLength(); i++)
+			{
+				Node attribute = attributes.item(i);
+				name(attribute.getNodeName());
+				string(attribute.getNodeValue());
+			}
+
+			NodeList children = element.getChildNodes();
+			for (int i = 0; i < children.getLength(); i++)
+			{
+				Node child = children.item(i);
+				if (child.getNodeType() == Node.ELEMENT_NODE)
+				{
+					element((Element) child);
+				}
+				else if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE)
+				{
+					out.writeByte(TEXT);
+					string(child.getNodeValue());
+				}
+			}
+			out.writeByte(END_ELEMENT);
+		}
+
+		void name(String name) throws IOException
+		{
+			Integer number = names.get(name);
+			if (number != null)
+			{
+				number(number);
+				return;
+			}
+
+			// the next number, followed by the name it is for
+			number(names.size());
+			string(name);
+			names.put(name, names.size());
+		}
+
+		void string(String value) throws IOException
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			number(bytes.length);
+			out.write(bytes);
+		}
+
+		void number(int value) throws IOException
+		{
+			while ((value & ~0x7F) != 0)
+			{
+				out.writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte(value);
+		}
+	}
+
+	/**
+	 * Reads what {@link Writer} writes.
+	 */
+	private static class Reader
+	{
+		private final DataInputStream in;
+		private final List<String> names = new ArrayList<>();
+
+		Reader(DataInputStream in)
+		{
+			this.in = in;
+		}
+
+		String name() throws IOException
+		{
+			int number = number();
+			if (number < names.size()) return names.get(number);
+
+			String name = string();
+			names.add(name);
+			return name;
+		}
+
+		String string() throws IOException
+		{
+			byte[] bytes = new byte[number()];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		int number() throws IOException
+		{
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7)
+			{
+				int b = in.readUnsignedByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) return value;
+			}
+			throw new IOException("Malformed number");
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.memory.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Checks {@link BasicVersionedCache} with two servers, each with its own cache, that publish to each other.
+ */
+public class BasicVersionedCacheTest {
+
+    private RecordingCache<Integer> cache;
+    private RecordingCache<Integer> otherServer;
+
+    @Before
+    public void setUp() {
+        cache = new RecordingCache<>("test");
+        otherServer = new RecordingCache<>("test");
+        cache.other = otherServer;
+        otherServer.other = cache;
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testValuesAreKeptUnderTheirVersion() {
+        cache.put(cache.getKey("1", "student") + ":totals", 10);
+        cache.put(cache.getKey("1") + ":totals", 20);
+
+        Assert.assertEquals(10, (int) cache.get(cache.getKey("1", "student") + ":totals"));
+        Assert.assertEquals(20, (int) cache.get(cache.getKey("1") + ":totals"));
+        Assert.assertNull(cache.get(cache.getKey("1", "other") + ":totals"));
+        Assert.assertNull(cache.get(cache.getKey("2", "student") + ":totals"));
+    }
+
+    @Test
+    public void testInvalidatingAPathOrphansThePathsBelowIt() {
+        cache.put(cache.getKey("1", "student"), 10);
+        cache.put(cache.getKey("1", "other"), 11);
+        cache.put(cache.getKey("2", "student"), 12);
+
+        cache.invalidate("1", "student");
+        Assert.assertNull(cache.get(cache.getKey("1", "student")));
+        Assert.assertEquals(11, (int) cache.get(cache.getKey("1", "other")));
+
+        cache.invalidate("1");
+        Assert.assertNull(cache.get(cache.getKey("1", "other")));
+        Assert.assertEquals(12, (int) cache.get(cache.getKey("2", "student")));
+    }
+
+    @Test
+    public void testAKeyTakenBeforeAChangeIsNotReadAfterIt() {
+        String key = cache.getKey("1", "student");
+        cache.invalidate("1", "student");
+        cache.put(key, 10);
+
+        Assert.assertNull(cache.get(cache.getKey("1", "student")));
+    }
+
+    @Test
+    public void testChangesOutsideATransactionArePublishedAtOnce() {
+        otherServer.put(otherServer.getKey("1", "student"), 10);
+
+        cache.invalidate("1", "student");
+
+        Assert.assertEquals(1, cache.published.size());
+        Assert.assertNull(otherServer.get(otherServer.getKey("1", "student")));
+    }
+
+    @Test
+    public void testATransactionIsPublishedOnceItCommits() {
+        otherServer.put(otherServer.getKey("1", "student"), 10);
+        otherServer.put(otherServer.getKey("2", "student"), 11);
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.invalidate("1", "student");
+        cache.invalidate("1", "other");
+        cache.invalidate("1");
+        cache.invalidate("2", "student");
+        cache.invalidate("2", "other");
+
+        // read in the transaction, so it could be from before the change
+        cache.put(cache.getKey("2", "other"), 12);
+        Assert.assertTrue(cache.published.isEmpty());
+        Assert.assertEquals(10, (int) otherServer.get(otherServer.getKey("1", "student")));
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        Assert.assertNull(cache.get(cache.getKey("2", "other")));
+        Assert.assertEquals(1, cache.published.size());
+        Assert.assertEquals(Arrays.asList(Collections.singletonList("1"), Arrays.asList("2", "student"), Arrays.asList("2", "other")), cache.published.get(0));
+        Assert.assertNull(otherServer.get(otherServer.getKey("1", "student")));
+        Assert.assertNull(otherServer.get(otherServer.getKey("2", "student")));
+    }
+
+    @Test
+    public void testARolledBackTransactionIsNotPublished() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.invalidate("1");
+        cache.put(cache.getKey("1"), 10);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        Assert.assertNull(cache.get(cache.getKey("1")));
+        Assert.assertTrue(cache.published.isEmpty());
+    }
+
+    private void complete(int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private static class RecordingCache<V> extends BasicVersionedCache<V> {
+
+        private final List<List<List<String>>> published = new ArrayList<>();
+        private RecordingCache<V> other;
+
+        RecordingCache(String name) {
+            super(new org.sakaiproject.memory.mock.Cache(name));
+        }
+
+        @Override
+        protected void publish(List<List<String>> paths) {
+            published.add(paths);
+            other.evict(paths);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Compares the size of the text stored for a message, and the time to write it and read it back through a DOM and
+ * through SAX, as XML and in {@link CompactXml} form. Not run with the tests; run it by hand, with the kernel api test
+ * classpath, giving the number of rounds to time (default 20000):
+ *
+ * <pre>
+ * mvn -pl kernel/api test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.sakaiproject.util.CompactXmlBenchmark
+ * </pre>
+ */
+public class CompactXmlBenchmark {
+
+    private interface Round {
+        int run() throws Exception;
+    }
+
+    /** Counts the elements, so that reading can't be skipped. */
+    private static class Counter extends DefaultHandler {
+        int elements;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            elements++;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        System.out.printf("%-8s %-8s %10s %12s %12s %12s%n", "body", "form", "chars", "write us", "dom us", "sax us");
+        for (int length : new int[] { 100, 2000, 50000 }) {
+            StringBuilder body = new StringBuilder();
+            while (body.length() < length) body.append("An announcement body, with some words repeated. ");
+            Document doc = CompactXmlTest.message(body.toString());
+
+            // fewer rounds for the long bodies, so each size takes about as long
+            int n = Math.max(100, rounds * 100 / length);
+            measure(length, "xml", doc, n, false);
+            measure(length, "compact", doc, n, true);
+        }
+    }
+
+    private static void measure(int length, String form, Document doc, int rounds, boolean compact) throws Exception {
+        String text = compact ? CompactXml.write(doc) : Xml.writeDocumentToString(doc);
+
+        double write = time(rounds, () -> (compact ? CompactXml.write(doc) : Xml.writeDocumentToString(doc)).length());
+        double dom = time(rounds, () -> Xml.readDocumentFromString(text).getDocumentElement().getAttributes().getLength());
+        double sax = time(rounds, () -> {
+            Counter counter = new Counter();
+            Xml.processString(text, counter);
+            return counter.elements;
+        });
+
+        System.out.printf("%-8d %-8s %10d %12.1f %12.1f %12.1f%n", length, form, text.length(), write, dom, sax);
+    }
+
+    /**
+     * @return the mean time of a round, in microseconds, after as many rounds again to warm up.
+     */
+    private static double time(int rounds, Round round) throws Exception {
+        long sink = 0;
+        for (int i = 0; i < rounds; i++) sink += round.run();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) sink += round.run();
+        long elapsed = System.nanoTime() - start;
+
+        if (sink == 42) System.out.print("");
+        return elapsed / 1000.0 / rounds;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompactXmlTest {
+
+    /** A message as the message services store it, with a few properties. */
+    static Document message(String body) {
+        Document doc = Xml.createDocument();
+        Element message = doc.createElement("message");
+        message.setAttribute("body", body);
+        message.setAttribute("body-html", body);
+        doc.appendChild(message);
+        Element header = doc.createElement("header");
+        header.setAttribute("access", "channel");
+        header.setAttribute("date", "20260101120000000");
+        header.setAttribute("from", "admin");
+        header.setAttribute("id", "d978685c-8730-4975-b3ea-55fdf03e0e5a");
+        header.setAttribute("subject", "Subject é中 & <stuff>");
+        message.appendChild(header);
+        Element properties = doc.createElement("properties");
+        message.appendChild(properties);
+        for (int i = 0; i < 10; i++) {
+            Element property = doc.createElement("property");
+            property.setAttribute("enc", "BASE64");
+            property.setAttribute("name", "property" + i);
+            property.setAttribute("value", "dmFsdWU=");
+            properties.appendChild(property);
+        }
+        Element text = doc.createElement("text");
+        text.appendChild(doc.createTextNode("some text"));
+        message.appendChild(text);
+        return doc;
+    }
+
+    /** Records SAX events as strings. */
+    private static class Recorder extends DefaultHandler {
+        List<String> events = new ArrayList<>();
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            StringBuilder event = new StringBuilder("start " + qName);
+            for (int i = 0; i < attributes.getLength(); i++) {
+                event.append(' ').append(attributes.getQName(i)).append('=').append(attributes.getValue(attributes.getQName(i)));
+            }
+            events.add(event.toString());
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            events.add("end " + qName);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            events.add("text " + new String(ch, start, length));
+        }
+    }
+
+    @Test
+    public void testReadsBackTheSameDocument() {
+        Document doc = message("Qm9keSAyMDA4MDEyNzIwMTM0MTkzMw==");
+        String compact = CompactXml.write(doc);
+
+        assertTrue(CompactXml.isCompact(compact));
+        assertEquals(Xml.writeDocumentToString(doc), Xml.writeDocumentToString(Xml.readDocumentFromString(compact)));
+    }
+
+    @Test
+    public void testGivesTheSameSaxEvents() throws Exception {
+        Document doc = message("Qm9keSAyMDA4MDEyNzIwMTM0MTkzMw==");
+        String xml = Xml.writeDocumentToString(doc);
+
+        Recorder fromXml = new Recorder();
+        Xml.processString(xml, fromXml);
+        Recorder fromCompact = new Recorder();
+        Xml.processString(CompactXml.write(doc), fromCompact);
+
+        assertFalse(CompactXml.isCompact(xml));
+        assertEquals(fromXml.events, fromCompact.events);
+    }
+
+    @Test
+    public void testLongValuesAndSize() {
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 100000) body.append("A long announcement body. ");
+        Document doc = message(body.toString());
+        String compact = CompactXml.write(doc);
+
+        Element message = CompactXml.read(compact).getDocumentElement();
+        assertEquals(body.toString(), message.getAttribute("body"));
+        assertTrue(compact.length() < Xml.writeDocumentToString(doc).length() / 2);
+    }
+
+    @Test
+    public void testCorruptDocument() {
+        String compact = CompactXml.write(message("body"));
+        String corrupt = compact.substring(0, compact.length() / 2);
+
+        assertTrue(CompactXml.isCompact(corrupt));
+        assertNull(CompactXml.read(corrupt, "message1"));
+        assertNull(Xml.readDocumentFromString(corrupt));
+    }
+}
@@ -42,6 +42,8 @@ import org.sakaiproject.component.api.ServerConfigurationService.ConfigData;
 import org.sakaiproject.util.ComponentsLoader;
 import org.sakaiproject.util.SakaiApplicationContext;
 import org.sakaiproject.util.SakaiComponentEvent;
+import org.sakaiproject.util.StartupTimeline;
+import org.sakaiproject.util.StartupWarmups;
 
 /**
  * <p>
@@ -68,6 +70,12 @@ public class SpringCompMgr implements ComponentManager {
 	 */
 	protected final static String SHUTDOWN_ON_ERROR = "sakai.component.shutdownonerror";
 
+	/**
+	 * System property to control if we log how long each component took to start,
+	 * the slowest of them and the critical path through them.
+	 */
+	protected final static String STARTUP_REPORT = "sakai.component.startup.report";
+
 	/**
 	 * The Sakai configuration component package, which must be the last
 	 * defined.
@@ -96,6 +104,9 @@ public class SpringCompMgr implements ComponentManager {
 
 	protected boolean lateRefresh = false;
 
+	/** The component startup times, if we are reporting them. */
+	protected StartupTimeline m_startupTimeline = null;
+
 	/**
 	 * Initialize.
 	 * 
@@ -132,6 +143,10 @@ public class SpringCompMgr implements ComponentManager {
 
 		m_ac = new SakaiApplicationContext();
 		m_ac.setInitialSingletonNames(CONFIGURATION_COMPONENTS);
+		if (Boolean.valueOf(System.getProperty(STARTUP_REPORT, "false"))) {
+			m_startupTimeline = new StartupTimeline();
+			m_ac.setStartupTimeline(m_startupTimeline);
+		}
 
 		List<String> configLocationList = new ArrayList<String>();
 		configLocationList.add(DEFAULT_CONFIGURATION_FILE);
@@ -164,6 +179,9 @@ public class SpringCompMgr implements ComponentManager {
 				m_ac.refresh();
 				m_ac.start();
 				m_ac.publishEvent(new SakaiComponentEvent(this, SakaiComponentEvent.Type.STARTED));
+				if (m_startupTimeline != null) {
+					log.info(m_startupTimeline.report(25));
+				}
 			} catch (Exception e) {
 				if (Boolean.valueOf(System.getProperty(SHUTDOWN_ON_ERROR, "false"))) {
 					log.error(e.getMessage(), e);
@@ -308,6 +326,7 @@ public class SpringCompMgr implements ComponentManager {
 			m_ac.publishEvent(new SakaiComponentEvent(this, SakaiComponentEvent.Type.STOPPING));
 		}
 		m_ac.close();
+		StartupWarmups.shutdown();
 	}
 
 	/**
@@ -37,6 +37,7 @@ import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 public class SakaiApplicationContext extends GenericApplicationContext {
 	private String[] initialSingletonNames;
 	private String[] configLocations;
+	private StartupTimeline startupTimeline;
 
 	public SakaiApplicationContext() {
 		super(new DefaultListableBeanFactory());
@@ -72,6 +73,9 @@ public class SakaiApplicationContext extends GenericApplicationContext {
 	 * dynamically.
 	 */
 	protected void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+		if (startupTimeline != null) {
+			beanFactory.addBeanPostProcessor(startupTimeline);
+		}
 		invokePostProcessorCreators(beanFactory);
 		super.postProcessBeanFactory(beanFactory);
 	}
@@ -110,6 +114,13 @@ public class SakaiApplicationContext extends GenericApplicationContext {
 		this.initialSingletonNames = initialSingletonNames;
 	}
 
+	/**
+	 * @param startupTimeline records the time taken to create each component, or null to not record it
+	 */
+	public void setStartupTimeline(StartupTimeline startupTimeline) {
+		this.startupTimeline = startupTimeline;
+	}
+
 	/**
 	 * @param configLocations file paths of XML bean definition files to load before refresh
 	 */
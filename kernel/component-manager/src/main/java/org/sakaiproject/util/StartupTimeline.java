@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+
+/**
+ * Records how long each component takes to be created and initialized while the component manager starts, and
+ * reports the slowest components and the critical path through them.
+ * <p>
+ * A component's total time includes creating the components it depends on, when they are created on its behalf;
+ * its own time leaves those out. The critical path follows the slowest component and then, at each step, the slowest
+ * of the components created on its behalf.
+ * </p>
+ */
+public class StartupTimeline implements InstantiationAwareBeanPostProcessor {
+	/** All the components timed, in the order they finished. */
+	private final List<Entry> entries = new ArrayList<>();
+
+	/** The components being created on each thread, innermost first. */
+	private final ThreadLocal<Deque<Entry>> creating = ThreadLocal.withInitial(ArrayDeque::new);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+		Deque<Entry> stack = creating.get();
+		stack.push(new Entry(beanName, stack.peek(), System.nanoTime()));
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		// objects made by factory beans are post processed without being instantiated here, so only finish
+		// components we saw start, dropping any in between whose creation failed
+		Deque<Entry> stack = creating.get();
+		if (!contains(stack, beanName)) return bean;
+
+		Entry entry;
+		do {
+			entry = stack.pop();
+		} while (!entry.name.equals(beanName));
+
+		entry.finish(System.nanoTime());
+		synchronized (entries) {
+			entries.add(entry);
+		}
+		return bean;
+	}
+
+	private boolean contains(Deque<Entry> stack, String beanName) {
+		for (Iterator<Entry> i = stack.iterator(); i.hasNext();) {
+			if (i.next().name.equals(beanName)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return The components timed so far, in the order they finished.
+	 */
+	public List<Entry> getEntries() {
+		synchronized (entries) {
+			return new ArrayList<>(entries);
+		}
+	}
+
+	/**
+	 * @return The chain of components from the slowest top level one down through the slowest created on behalf of each.
+	 */
+	public List<Entry> getCriticalPath() {
+		List<Entry> all = getEntries();
+		List<Entry> path = new ArrayList<>();
+		Entry next = slowest(all, null);
+		while (next != null) {
+			path.add(next);
+			next = slowest(all, next);
+		}
+		return path;
+	}
+
+	private Entry slowest(List<Entry> all, Entry parent) {
+		Entry slowest = null;
+		for (Entry entry : all) {
+			if (entry.parent == parent && (slowest == null || entry.getTotalMillis() > slowest.getTotalMillis())) {
+				slowest = entry;
+			}
+		}
+		return slowest;
+	}
+
+	/**
+	 * Describe the timeline for the log.
+	 *
+	 * @param limit
+	 *            how many of the slowest components to list.
+	 * @return The report.
+	 */
+	public String report(int limit) {
+		List<Entry> all = getEntries();
+		long total = 0;
+		for (Entry entry : all) {
+			if (entry.parent == null) total += entry.getTotalMillis();
+		}
+
+		StringBuilder buf = new StringBuilder();
+		buf.append("Component startup: ").append(all.size()).append(" components in ").append(total).append("ms\n");
+
+		buf.append("Slowest components (own time / total time):\n");
+		all.sort(Comparator.comparingLong(Entry::getSelfMillis).reversed());
+		for (Entry entry : all.subList(0, Math.min(limit, all.size()))) {
+			buf.append("  ").append(entry.name).append(": ").append(entry.getSelfMillis()).append("ms / ")
+					.append(entry.getTotalMillis()).append("ms\n");
+		}
+
+		buf.append("Critical path:\n");
+		String indent = "  ";
+		for (Entry entry : getCriticalPath()) {
+			buf.append(indent).append(entry.name).append(": ").append(entry.getTotalMillis()).append("ms\n");
+			indent += "  ";
+		}
+
+		return buf.toString();
+	}
+
+	/**
+	 * The time taken to create and initialize one component.
+	 */
+	public static class Entry {
+		private final String name;
+		private final Entry parent;
+		private final long start;
+		private long total;
+		private long children;
+
+		private Entry(String name, Entry parent, long start) {
+			this.name = name;
+			this.parent = parent;
+			this.start = start;
+		}
+
+		private void finish(long end) {
+			total = end - start;
+			if (parent != null) parent.children += total;
+		}
+
+		/**
+		 * @return The component's bean name.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The name of the component this one was created on behalf of, or null if it was created at the top level.
+		 */
+		public String getParentName() {
+			return parent == null ? null : parent.name;
+		}
+
+		/**
+		 * @return The time taken, including creating the components it depends on, in milliseconds.
+		 */
+		public long getTotalMillis() {
+			return total / 1000000;
+		}
+
+		/**
+		 * @return The time taken by this component alone, in milliseconds.
+		 */
+		public long getSelfMillis() {
+			return (total - children) / 1000000;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the expensive warmups of components, such as filling caches from the database, in the background so they
+ * don't hold up the rest of the component manager starting. Each warmup returns a future that the component waits
+ * on before it first relies on what the warmup does.
+ * <p>
+ * Setting the system property {@value #BACKGROUND} to false runs warmups on the caller's thread instead.
+ * </p>
+ */
+@Slf4j
+public class StartupWarmups {
+	/** System property to control if warmups are run in the background (the default) or inline. */
+	public static final String BACKGROUND = "sakai.component.warmups.background";
+
+	private static final AtomicInteger count = new AtomicInteger();
+
+	private static ExecutorService executor;
+
+	private StartupWarmups() {
+	}
+
+	/**
+	 * Run a warmup.
+	 *
+	 * @param name
+	 *            the name to log the warmup under.
+	 * @param warmup
+	 *            the warmup.
+	 * @return A future completed once the warmup has finished, whether or not it succeeded.
+	 */
+	public static CompletableFuture<Void> submit(String name, Runnable warmup) {
+		Runnable timed = () -> {
+			long start = System.currentTimeMillis();
+			try {
+				warmup.run();
+				log.info("warmup {} finished in {}ms", name, System.currentTimeMillis() - start);
+			} catch (RuntimeException e) {
+				log.warn("warmup {} failed after {}ms: {}", name, System.currentTimeMillis() - start, e.toString());
+			}
+		};
+
+		if (!Boolean.valueOf(System.getProperty(BACKGROUND, "true"))) {
+			timed.run();
+			return CompletableFuture.completedFuture(null);
+		}
+		return CompletableFuture.runAsync(timed, executor());
+	}
+
+	/**
+	 * Stop any warmups still running, called when the component manager closes. Warmups submitted after this start
+	 * new threads, so a component manager started again in the same JVM can still use them.
+	 */
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private static synchronized ExecutorService executor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(2, r -> {
+				Thread thread = new Thread(r, "sakai-startup-warmup-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+}
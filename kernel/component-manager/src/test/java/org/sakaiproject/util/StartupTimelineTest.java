@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Verifies behaviors of {@link StartupTimeline}.
+ */
+public class StartupTimelineTest {
+
+	@Test
+	public void testNestedComponentsAndCriticalPath() throws Exception {
+		StartupTimeline timeline = new StartupTimeline();
+
+		// "a" depends on "b" and "c", "c" being slower; "d" is created on its own afterwards
+		timeline.postProcessBeforeInstantiation(Object.class, "a");
+		timeline.postProcessBeforeInstantiation(Object.class, "b");
+		Thread.sleep(5);
+		timeline.postProcessAfterInitialization(new Object(), "b");
+		timeline.postProcessBeforeInstantiation(Object.class, "c");
+		Thread.sleep(30);
+		timeline.postProcessAfterInitialization(new Object(), "c");
+		timeline.postProcessAfterInitialization(new Object(), "a");
+		timeline.postProcessBeforeInstantiation(Object.class, "d");
+		timeline.postProcessAfterInitialization(new Object(), "d");
+
+		List<StartupTimeline.Entry> entries = timeline.getEntries();
+		Assert.assertEquals(4, entries.size());
+		Assert.assertEquals("a", entries.get(2).getName());
+		Assert.assertNull(entries.get(2).getParentName());
+		Assert.assertEquals("a", entries.get(1).getParentName());
+		Assert.assertTrue(entries.get(2).getTotalMillis() >= 35);
+		Assert.assertTrue(entries.get(2).getSelfMillis() < entries.get(2).getTotalMillis());
+
+		List<StartupTimeline.Entry> path = timeline.getCriticalPath();
+		Assert.assertEquals(2, path.size());
+		Assert.assertEquals("a", path.get(0).getName());
+		Assert.assertEquals("c", path.get(1).getName());
+
+		String report = timeline.report(10);
+		Assert.assertTrue(report.startsWith("Component startup: 4 components"));
+	}
+
+	@Test
+	public void testFailedAndFactoryMadeComponents() throws Exception {
+		StartupTimeline timeline = new StartupTimeline();
+
+		// "b" fails to be created, so is never finished; "product" comes from a factory bean without being instantiated
+		timeline.postProcessBeforeInstantiation(Object.class, "a");
+		timeline.postProcessBeforeInstantiation(Object.class, "b");
+		timeline.postProcessAfterInitialization(new Object(), "product");
+		timeline.postProcessAfterInitialization(new Object(), "a");
+
+		List<StartupTimeline.Entry> entries = timeline.getEntries();
+		Assert.assertEquals(1, entries.size());
+		Assert.assertEquals("a", entries.get(0).getName());
+		Assert.assertNull(entries.get(0).getParentName());
+	}
+}
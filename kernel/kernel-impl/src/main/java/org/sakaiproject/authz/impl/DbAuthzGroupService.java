@@ -39,6 +39,8 @@ import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -67,6 +69,7 @@ import org.sakaiproject.user.api.UserNotDefinedException;
 import org.sakaiproject.util.BaseDbFlatStorage;
 import org.sakaiproject.util.BaseResourceProperties;
 import org.sakaiproject.util.BaseResourcePropertiesEdit;
+import org.sakaiproject.util.StartupWarmups;
 import org.sakaiproject.util.StringUtil;
 
 import lombok.AllArgsConstructor;
@@ -85,9 +88,11 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 	/** To avoide the dreaded ORA-01795 and the like, we need to limit to <1000 the items in each in(?, ?, ...) clause, connecting them with ORs. */
 	protected final static int MAX_IN_CLAUSE = 999;
 	/** All the event functions we know exist on the db. */
-	protected Collection<String> m_functionCache = new HashSet<>();
+	protected Collection<String> m_functionCache = ConcurrentHashMap.newKeySet();
 	/** All the event role names we know exist on the db. */
-	protected Collection m_roleNameCache = new HashSet();
+	protected Collection m_roleNameCache = ConcurrentHashMap.newKeySet();
+	/** Completed once the role and function names have been read into their caches. */
+	protected CompletableFuture<Void> m_namesCached = CompletableFuture.completedFuture(null);
 	/** Table name for realms. */
 	protected String m_realmTableName = "SAKAI_REALM";
 	/** Table name for realm properties. */
@@ -272,9 +277,12 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			super.init();
 			setDbAuthzGroupSql(sqlService().getVendor());
 
-			// pre-cache role and function names
-			cacheRoleNames();
-			cacheFunctionNames();
+			// pre-cache role and function names in the background, until it's done names not yet cached are checked on the db
+			// and only permission checks wait for it, as they rely on the cache to find role keys
+			m_namesCached = StartupWarmups.submit("DbAuthzGroupService role and function names", () -> {
+				cacheRoleNames();
+				cacheFunctionNames();
+			});
 
 			m_realmRoleGRCache = m_memoryService.getCache("org.sakaiproject.authz.impl.DbAuthzGroupService.realmRoleGroupCache");
 			authzUserGroupIdsCache = m_memoryService.getCache("org.sakaiproject.authz.impl.DbAuthzGroupService.authzUserGroupIdsCache");
@@ -363,7 +371,7 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 		name = name.intern();
 
 		// check the cache to see if the role name already exists
-		if (getRealmRoleKey(name) != null) return;
+		if (findRealmRoleKey(name) != null) return;
 
 		// see if we have it in the db
 		String statement = dbAuthzGroupSql.getCountRealmRoleSql();
@@ -400,24 +408,21 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			sqlService().dbWriteFailQuiet(null, statement, fields);
 		}
 
-		synchronized (m_roleNameCache)
-		{
-			//Get realm role Key
-			statement = dbAuthzGroupSql.getSelectRealmRoleKeySql();
-			results = sqlService().dbRead(statement, fields, new SqlReader() {
-				public Object readSqlResultRecord(ResultSet result) {
-					try {
-						String name = result.getString(1);
-						Integer key = result.getInt(2);
-						RealmRole realmRole = new RealmRole(name, key);
-						m_roleNameCache.add(realmRole);
-					}
-					catch (SQLException ignore) {
-					}
-					return null;
+		//Get realm role Key
+		statement = dbAuthzGroupSql.getSelectRealmRoleKeySql();
+		results = sqlService().dbRead(statement, fields, new SqlReader() {
+			public Object readSqlResultRecord(ResultSet result) {
+				try {
+					String name = result.getString(1);
+					Integer key = result.getInt(2);
+					RealmRole realmRole = new RealmRole(name, key);
+					m_roleNameCache.add(realmRole);
 				}
-			});
-		}
+				catch (SQLException ignore) {
+				}
+				return null;
+			}
+		});
 	}
 
 	/**
@@ -460,7 +465,7 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 		if (name == null) return;
 		name = name.intern();
 
-		// check the cache to see if the function name already exists
+		// check the cache to see if the function name already exists, if it's still being filled check the db
 		if (m_functionCache.contains(name)) return;
 
 		// see if we have this on the db
@@ -499,10 +504,7 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 		}
 
 		// cache the existance of the function name
-		synchronized (m_functionCache)
-		{
-			m_functionCache.add(name);
-		}
+		m_functionCache.add(name);
 	}
 
 	/*************************************************************************************************************************************************
@@ -618,6 +620,16 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 	}
 
 	private Integer getRealmRoleKey(String roleName) {
+		Integer key = findRealmRoleKey(roleName);
+		if (key == null && !m_namesCached.isDone()) {
+			// the role may not have been cached yet
+			m_namesCached.join();
+			key = findRealmRoleKey(roleName);
+		}
+		return key;
+	}
+
+	private Integer findRealmRoleKey(String roleName) {
 		Iterator<RealmRole> itr = m_roleNameCache.iterator();
 		while (itr.hasNext()) {
 			RealmRole realmRole = (RealmRole) itr.next();
@@ -51,6 +51,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.email.api.AddressValidationException;
 import org.sakaiproject.email.api.AttachmentSizeException;
 import org.sakaiproject.email.api.Attachment;
@@ -139,6 +140,9 @@ public class BasicEmailService implements EmailService
 
 	protected ServerConfigurationService serverConfigurationService;
 
+	/** The database queued messages are kept in until delivered. */
+	protected SqlService sqlService;
+
 	/** The protocol to use when connecting to the mail server */
 	private String protocol;
 
@@ -212,6 +216,30 @@ public class BasicEmailService implements EmailService
 	/** Configuration: Socket I/O timeout value in milliseconds. Default is infinite timeout. */
 	protected String smtpTimeout = null;
 
+	/** Configuration: hand messages to a queue delivered by background workers, rather than sending on the caller's thread (or not). */
+	protected boolean queueEnabled = false;
+
+	/** Configuration: the number of queue workers, each holding its own SMTP connection. */
+	protected int queueWorkers = 2;
+
+	/** Configuration: the number of times the queue tries to send to a set of recipients before giving up. */
+	protected int queueMaxAttempts = 5;
+
+	/** Configuration: milliseconds before the queue's first retry, doubled for each retry after that. */
+	protected long queueRetryDelay = 30000;
+
+	/** Configuration: milliseconds to wait for the queue to deliver what is due on shutdown. */
+	protected long queueShutdownTimeout = 10000;
+
+	/** Configuration: milliseconds a server's claim on a queued message lasts before another server may deliver it. */
+	protected long queueLease = 600000;
+
+	/** Configuration: to run the ddl of the queue's table on init or not. */
+	protected boolean autoDdl = false;
+
+	/** The outbound queue, when enabled. */
+	protected OutboundMailQueue mailQueue = null;
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Init and Destroy
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -261,6 +289,30 @@ public class BasicEmailService implements EmailService
                     , smtp, smtpPort != null ? (":" + smtpPort) : "", smtpFrom, maxRecipients, testMode
 				    , smtpConnectionTimeout != null ? (" smtpConnectionTimeout: " + smtpConnectionTimeout) : ""
 				    , smtpTimeout != null ? (" smtpTimeout: " + smtpTimeout) : "");
+
+		if (queueEnabled && smtp != null && !testMode)
+		{
+			// queued messages are kept in the database, shared by the cluster, so any server can deliver them
+			DbOutboundMailStore store = null;
+			if (sqlService != null)
+			{
+				if (autoDdl)
+				{
+					sqlService.ddl(this.getClass().getClassLoader(), "sakai_mail_queue");
+				}
+				store = new DbOutboundMailStore(sqlService, serverConfigurationService.getServerId());
+			}
+			Session queueSession = Session.getInstance(createMailSessionProperties());
+			mailQueue = new OutboundMailQueue(queueSession, () -> connectTransport(queueSession), queueWorkers, queueMaxAttempts,
+					queueRetryDelay, oneMessagePerConnection, store, queueLease);
+			mailQueue.start();
+
+			// without a queue messages are sent on the caller's thread
+			if (!mailQueue.isRunning())
+			{
+				mailQueue = null;
+			}
+		}
 	}
 
 	/**
@@ -268,9 +320,25 @@ public class BasicEmailService implements EmailService
 	 */
 	public void destroy()
 	{
+		if (mailQueue != null)
+		{
+			mailQueue.stop(queueShutdownTimeout);
+			mailQueue = null;
+		}
+
 		log.info("destroy()");
 	}
 
+	/**
+	 * Access the outbound queue, for its depth, send rate and failure counts.
+	 *
+	 * @return The outbound queue, or null if messages are sent on the caller's thread.
+	 */
+	public OutboundMailQueue getMailQueue()
+	{
+		return mailQueue;
+	}
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Work interface methods: org.sakai.service.email.EmailService
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -743,7 +811,39 @@ public class BasicEmailService implements EmailService
 		return messageSets;
 	}
 	
+	private Transport connectTransport(Session session) throws MessagingException {
+		Transport transport = session.getTransport(protocol);
+		connect(transport);
+		return transport;
+	}
+
+	private void connect(Transport transport) throws MessagingException {
+		if (smtpUser != null && smtpPassword != null) {
+			transport.connect(smtp,smtpUser,smtpPassword);
+		} else {
+			transport.connect();
+		}
+	}
+
 	private void transportMessage(Session session, List<Address[]> messageSets, Collection<String> headers, MimeMessage msg) {
+		// hand the message to the queue, if we have one
+		if (mailQueue != null)
+		{
+			try
+			{
+				msg.saveChanges();
+				if (mailQueue.add(msg, messageSets))
+				{
+					if (log.isInfoEnabled()) log.info(transportLog("transportMessage: queued", headers, messageSets) + " queue[ " + mailQueue + " ]");
+					return;
+				}
+			}
+			catch (MessagingException e)
+			{
+				log.warn("transportMessage: could not queue, sending now: " + e);
+			}
+		}
+
 		// transport the message
 		long time1 = 0;
 		long time2 = 0;
@@ -764,11 +864,7 @@ public class BasicEmailService implements EmailService
 			msg.saveChanges();
 
 			if (log.isDebugEnabled()) time3 = System.currentTimeMillis();
-			if (smtpUser != null && smtpPassword != null) {
-				transport.connect(smtp,smtpUser,smtpPassword);
-			} else {
-				transport.connect();
-			}
+			connect(transport);
 
 			if (log.isDebugEnabled()) time4 = System.currentTimeMillis();
 
@@ -789,7 +885,7 @@ public class BasicEmailService implements EmailService
 						if (log.isDebugEnabled()) timeExtraClose += (System.currentTimeMillis() - timeTmp);
 
 						if (log.isDebugEnabled()) timeTmp = System.currentTimeMillis();
-						transport.connect();
+						connect(transport);
 						if (log.isDebugEnabled())
 						{
 							timeExtraConnect += (System.currentTimeMillis() - timeTmp);
@@ -820,24 +916,7 @@ public class BasicEmailService implements EmailService
 		// log
 		if (log.isInfoEnabled())
 		{
-			StringBuilder buf = new StringBuilder();
-			buf.append("transportMessage: headers[");
-			for (String header : headers)
-			{
-				buf.append(" ");
-				buf.append(cleanUp(header));
-			}
-			buf.append("]");
-			for (Address[] toAddresses : messageSets)
-			{
-				buf.append(" to[ ");
-				for (int a = 0; a < toAddresses.length; a++)
-				{
-					buf.append(" ");
-					buf.append(toAddresses[a]);
-				}
-				buf.append("]");
-			}
+			StringBuilder buf = new StringBuilder(transportLog("transportMessage:", headers, messageSets));
 
 			if (log.isDebugEnabled())
 			{
@@ -851,6 +930,29 @@ public class BasicEmailService implements EmailService
 		}
 	}
 
+	private String transportLog(String prefix, Collection<String> headers, List<Address[]> messageSets)
+	{
+		StringBuilder buf = new StringBuilder(prefix);
+		buf.append(" headers[");
+		for (String header : headers)
+		{
+			buf.append(" ");
+			buf.append(cleanUp(header));
+		}
+		buf.append("]");
+		for (Address[] toAddresses : messageSets)
+		{
+			buf.append(" to[ ");
+			for (int a = 0; a < toAddresses.length; a++)
+			{
+				buf.append(" ");
+				buf.append(toAddresses[a]);
+			}
+			buf.append("]");
+		}
+		return buf.toString();
+	}
+
 	private Properties createMailSessionProperties()
 	{
 		Properties props = new Properties();
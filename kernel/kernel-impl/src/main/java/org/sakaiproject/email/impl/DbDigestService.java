@@ -158,6 +158,7 @@ public class DbDigestService extends BaseDigestService
 		public DbStorage(SingleStorageUser user)
 		{
 			super(m_tableName, "DIGEST_ID", null, m_locksInDb, "digest", user, sqlService);
+			setCompactXml(serverConfigurationService.getBoolean("digest.storage.compact", false));
 		}
 
 		public boolean check(String id)
@@ -0,0 +1,350 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.email.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.db.api.SqlService;
+
+/**
+ * <p>
+ * DbOutboundMailStore keeps the messages of an {@link OutboundMailQueue} in the SAKAI_MAIL_QUEUE table until they are delivered or given up
+ * on, so that they survive a restart, and can be delivered by any server in the cluster.
+ * </p>
+ * <p>
+ * Each message is claimed by one server at a time, with a lease. The server that queued a message holds it, renewing the lease before each
+ * attempt to deliver it. A message whose lease has run out, because its server went away, is claimed by the next server to look for one,
+ * which only succeeds if the lease is still the one it read, so two servers never claim the same message.
+ * </p>
+ */
+@Slf4j
+public class DbOutboundMailStore
+{
+	private final SqlService sqlService;
+
+	private final String serverId;
+
+	/**
+	 * Construct.
+	 *
+	 * @param sqlService
+	 *        The database the table is in.
+	 * @param serverId
+	 *        The id of this server, which messages are claimed under.
+	 */
+	public DbOutboundMailStore(SqlService sqlService, String serverId)
+	{
+		this.sqlService = sqlService;
+		this.serverId = serverId;
+	}
+
+	/**
+	 * Store a new message, claimed by this server.
+	 *
+	 * @param id
+	 *        The message id.
+	 * @param content
+	 *        The message, as sent.
+	 * @param recipients
+	 *        The recipient sets still to be sent the message.
+	 * @param due
+	 *        When to attempt to deliver it.
+	 * @param leaseUntil
+	 *        When the claim of this server runs out.
+	 */
+	public void insert(String id, byte[] content, String recipients, long due, long leaseUntil) throws SQLException
+	{
+		inTransaction(conn -> {
+			String sql = "INSERT INTO SAKAI_MAIL_QUEUE (MESSAGE_ID, CONTENT, RECIPIENTS, ATTEMPTS, DUE_AT, CLAIMED_BY, LEASE_UNTIL)"
+					+ " VALUES (?, ?, ?, 0, ?, ?, ?)";
+			try (PreparedStatement statement = conn.prepareStatement(sql))
+			{
+				statement.setString(1, id);
+				statement.setBinaryStream(2, new ByteArrayInputStream(content), content.length);
+				statement.setCharacterStream(3, new StringReader(recipients), recipients.length());
+				statement.setLong(4, due);
+				statement.setString(5, serverId);
+				statement.setLong(6, leaseUntil);
+				return statement.executeUpdate();
+			}
+		});
+	}
+
+	/**
+	 * Keep a message claimed by this server for another attempt.
+	 *
+	 * @param recipients
+	 *        The recipient sets still to be sent the message.
+	 * @param attempts
+	 *        The number of attempts made so far.
+	 * @param due
+	 *        When to attempt to deliver it again.
+	 * @param leaseUntil
+	 *        When the claim of this server runs out, which should be after the attempt is due.
+	 */
+	public void reschedule(String id, String recipients, int attempts, long due, long leaseUntil) throws SQLException
+	{
+		inTransaction(conn -> {
+			String sql = "UPDATE SAKAI_MAIL_QUEUE SET RECIPIENTS = ?, ATTEMPTS = ?, DUE_AT = ?, LEASE_UNTIL = ?"
+					+ " WHERE MESSAGE_ID = ? AND CLAIMED_BY = ?";
+			try (PreparedStatement statement = conn.prepareStatement(sql))
+			{
+				statement.setCharacterStream(1, new StringReader(recipients), recipients.length());
+				statement.setInt(2, attempts);
+				statement.setLong(3, due);
+				statement.setLong(4, leaseUntil);
+				statement.setString(5, id);
+				statement.setString(6, serverId);
+				return statement.executeUpdate();
+			}
+		});
+	}
+
+	/**
+	 * Extend the claim of this server on a message, before attempting to deliver it.
+	 *
+	 * @return true if the message is still claimed by this server, false if another has claimed it, or it has gone.
+	 */
+	public boolean renew(String id, long leaseUntil) throws SQLException
+	{
+		int count = inTransaction(conn -> {
+			String sql = "UPDATE SAKAI_MAIL_QUEUE SET LEASE_UNTIL = ? WHERE MESSAGE_ID = ? AND CLAIMED_BY = ?";
+			try (PreparedStatement statement = conn.prepareStatement(sql))
+			{
+				statement.setLong(1, leaseUntil);
+				statement.setString(2, id);
+				statement.setString(3, serverId);
+				return statement.executeUpdate();
+			}
+		});
+		return count == 1;
+	}
+
+	/**
+	 * Remove a message that has been delivered or given up on.
+	 */
+	public void delete(String id) throws SQLException
+	{
+		inTransaction(conn -> {
+			try (PreparedStatement statement = conn.prepareStatement("DELETE FROM SAKAI_MAIL_QUEUE WHERE MESSAGE_ID = ?"))
+			{
+				statement.setString(1, id);
+				return statement.executeUpdate();
+			}
+		});
+	}
+
+	/**
+	 * Claim the messages of other servers whose lease has run out, earliest due first.
+	 *
+	 * @param now
+	 *        The time to compare leases with.
+	 * @param leaseUntil
+	 *        When the claim of this server on the messages it claims runs out.
+	 * @param own
+	 *        If true, also claim the messages still claimed by this server, which it left queued when it last stopped, so only call
+	 *        with true as it starts.
+	 * @param max
+	 *        The most messages to claim.
+	 * @return The messages claimed.
+	 */
+	public List<StoredMail> claim(long now, long leaseUntil, boolean own, int max) throws SQLException
+	{
+		List<String[]> candidates = inTransaction(conn -> {
+			// the messages this server holds are already queued on it while it runs, however long they wait there
+			String sql = "SELECT MESSAGE_ID, LEASE_UNTIL FROM SAKAI_MAIL_QUEUE WHERE LEASE_UNTIL < ?" + (own ? " OR" : " AND NOT")
+					+ " CLAIMED_BY = ? ORDER BY DUE_AT";
+			try (PreparedStatement statement = conn.prepareStatement(sql))
+			{
+				statement.setMaxRows(max);
+				statement.setLong(1, now);
+				statement.setString(2, serverId);
+
+				List<String[]> found = new ArrayList<>();
+				try (ResultSet result = statement.executeQuery())
+				{
+					while (result.next())
+					{
+						found.add(new String[] { result.getString(1), Long.toString(result.getLong(2)) });
+					}
+				}
+				return found;
+			}
+		});
+
+		List<StoredMail> claimed = new ArrayList<>();
+		for (String[] candidate : candidates)
+		{
+			StoredMail mail = claimOne(candidate[0], Long.parseLong(candidate[1]), leaseUntil);
+			if (mail != null) claimed.add(mail);
+		}
+		return claimed;
+	}
+
+	/**
+	 * Claim a message if its lease has not changed since it was read, and read it.
+	 */
+	private StoredMail claimOne(String id, long readLease, long leaseUntil) throws SQLException
+	{
+		return inTransaction(conn -> {
+			String sql = "UPDATE SAKAI_MAIL_QUEUE SET CLAIMED_BY = ?, LEASE_UNTIL = ? WHERE MESSAGE_ID = ? AND LEASE_UNTIL = ?";
+			try (PreparedStatement statement = conn.prepareStatement(sql))
+			{
+				statement.setString(1, serverId);
+				statement.setLong(2, leaseUntil);
+				statement.setString(3, id);
+				statement.setLong(4, readLease);
+				if (statement.executeUpdate() != 1) return null;
+			}
+
+			sql = "SELECT CONTENT, RECIPIENTS, ATTEMPTS, DUE_AT FROM SAKAI_MAIL_QUEUE WHERE MESSAGE_ID = ?";
+			try (PreparedStatement statement = conn.prepareStatement(sql))
+			{
+				statement.setString(1, id);
+				try (ResultSet result = statement.executeQuery())
+				{
+					if (!result.next()) return null;
+					return new StoredMail(id, readBytes(result.getBinaryStream(1)), readString(result.getCharacterStream(2)), result.getInt(3),
+							result.getLong(4));
+				}
+			}
+		});
+	}
+
+	private byte[] readBytes(InputStream in) throws SQLException
+	{
+		if (in == null) return new byte[0];
+
+		try (InputStream stream = in)
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			for (int read = stream.read(buf); read != -1; read = stream.read(buf))
+			{
+				out.write(buf, 0, read);
+			}
+			return out.toByteArray();
+		}
+		catch (IOException e)
+		{
+			throw new SQLException("could not read message content", e);
+		}
+	}
+
+	private String readString(Reader in) throws SQLException
+	{
+		if (in == null) return "";
+
+		try (Reader reader = in)
+		{
+			StringWriter out = new StringWriter();
+			char[] buf = new char[8192];
+			for (int read = reader.read(buf); read != -1; read = reader.read(buf))
+			{
+				out.write(buf, 0, read);
+			}
+			return out.toString();
+		}
+		catch (IOException e)
+		{
+			throw new SQLException("could not read message recipients", e);
+		}
+	}
+
+	/**
+	 * Run some statements on a connection of our own, and commit them.
+	 */
+	private <T> T inTransaction(Work<T> work) throws SQLException
+	{
+		Connection conn = sqlService.borrowConnection();
+		boolean wasCommit = conn.getAutoCommit();
+		try
+		{
+			conn.setAutoCommit(false);
+			T result = work.run(conn);
+			conn.commit();
+			return result;
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			try
+			{
+				conn.rollback();
+			}
+			catch (SQLException r)
+			{
+				log.warn("inTransaction(): could not roll back: {}", r.toString());
+			}
+			throw e;
+		}
+		finally
+		{
+			try
+			{
+				conn.setAutoCommit(wasCommit);
+			}
+			catch (SQLException e)
+			{
+				log.warn("inTransaction(): could not restore auto commit: {}", e.toString());
+			}
+			sqlService.returnConnection(conn);
+		}
+	}
+
+	private interface Work<T>
+	{
+		T run(Connection conn) throws SQLException;
+	}
+
+	/**
+	 * A stored message claimed by this server.
+	 */
+	public static class StoredMail
+	{
+		public final String id;
+
+		public final byte[] content;
+
+		public final String recipients;
+
+		public final int attempts;
+
+		public final long due;
+
+		private StoredMail(String id, byte[] content, String recipients, int attempts, long due)
+		{
+			this.id = id;
+			this.content = content;
+			this.recipients = recipients;
+			this.attempts = attempts;
+			this.due = due;
+		}
+	}
+}
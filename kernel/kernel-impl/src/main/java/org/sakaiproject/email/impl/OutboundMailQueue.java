@@ -0,0 +1,639 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.email.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * OutboundMailQueue takes messages off the sender's thread and delivers them from a small pool of workers, each of which keeps its SMTP
+ * connection open across messages. All the recipient sets of one message are delivered together by one worker; sets that fail to send are
+ * retried with an increasing delay until the maximum number of attempts is reached.
+ * </p>
+ * <p>
+ * Given a store, each queued message is written to the database before {@link #add} returns, claimed by this server, and removed once it
+ * has been delivered or given up on. Messages still queued when the queue is stopped are delivered once this server starts again, and the
+ * messages of a server that goes away are claimed by the others once its lease on them has run out, which they look for every so often.
+ * Recipients a message was being sent to as its server went down may be sent it twice.
+ * Without a store the queue is held in memory only, and those messages are lost.
+ * </p>
+ */
+@Slf4j
+public class OutboundMailQueue
+{
+	/** How long a worker waits for a message before checking whether it should stop. */
+	private static final long POLL_MILLIS = 1000;
+
+	/** How long a worker keeps an unused connection open. */
+	private static final long IDLE_MILLIS = 30000;
+
+	/** How often to look for messages the other servers have left, whose lease has run out. */
+	private static final long CLAIM_MILLIS = 60000;
+
+	/** How many messages per worker to hold on this server before looking for more to claim. */
+	private static final int CLAIM_PER_WORKER = 10;
+
+	/**
+	 * Opens a connected transport on the queue's session.
+	 */
+	public interface TransportConnector
+	{
+		Transport connect() throws MessagingException;
+	}
+
+	private final DelayQueue<OutboundMail> queue = new DelayQueue<>();
+
+	private final Session session;
+
+	private final TransportConnector connector;
+
+	private final DbOutboundMailStore store;
+
+	private final long lease;
+
+	private final int workers;
+
+	private final int maxAttempts;
+
+	private final long retryDelay;
+
+	private final boolean oneMessagePerConnection;
+
+	private final LongAdder sent = new LongAdder();
+
+	private final LongAdder retried = new LongAdder();
+
+	private final LongAdder failed = new LongAdder();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private ExecutorService executor;
+
+	private ScheduledExecutorService claimer;
+
+	private volatile boolean running = false;
+
+	private long started;
+
+	/**
+	 * Construct a queue held in memory only.
+	 *
+	 * @see #OutboundMailQueue(Session, TransportConnector, int, int, long, boolean, DbOutboundMailStore, long)
+	 */
+	public OutboundMailQueue(Session session, TransportConnector connector, int workers, int maxAttempts, long retryDelay,
+			boolean oneMessagePerConnection)
+	{
+		this(session, connector, workers, maxAttempts, retryDelay, oneMessagePerConnection, null, 0);
+	}
+
+	/**
+	 * Construct.
+	 *
+	 * @param session
+	 *        The mail session queued messages are copied into and transports are opened on.
+	 * @param connector
+	 *        Opens a connected transport.
+	 * @param workers
+	 *        The number of workers, and so of concurrent SMTP connections.
+	 * @param maxAttempts
+	 *        The number of times to try sending to a set of recipients before giving up.
+	 * @param retryDelay
+	 *        The delay in milliseconds before the first retry, doubled for each one after.
+	 * @param oneMessagePerConnection
+	 *        If true, close the connection after each send rather than reusing it.
+	 * @param store
+	 *        Where queued messages are kept until they are delivered, or null to hold them in memory only.
+	 * @param lease
+	 *        How long in milliseconds this server's claim on a message lasts, without being renewed, before another server may claim it.
+	 */
+	public OutboundMailQueue(Session session, TransportConnector connector, int workers, int maxAttempts, long retryDelay,
+			boolean oneMessagePerConnection, DbOutboundMailStore store, long lease)
+	{
+		this.session = session;
+		this.connector = connector;
+		this.store = store;
+		this.lease = Math.max(1000, lease);
+		this.workers = Math.max(1, workers);
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.retryDelay = Math.max(0, retryDelay);
+		this.oneMessagePerConnection = oneMessagePerConnection;
+	}
+
+	/**
+	 * Queue the stored messages this server left queued when it last stopped, and those the other servers have left, and start the workers.
+	 * If the store can't be read the queue is not started, so nothing is queued.
+	 */
+	public void start()
+	{
+		if (store != null)
+		{
+			try
+			{
+				claim(true);
+			}
+			catch (SQLException e)
+			{
+				log.warn("start(): could not read the stored messages, not starting: {}", e.toString());
+				return;
+			}
+		}
+
+		running = true;
+		started = System.currentTimeMillis();
+
+		AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(workers, r -> {
+			Thread thread = new Thread(r, "sakai-mail-queue-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 0; i < workers; i++)
+		{
+			executor.execute(new Worker());
+		}
+
+		if (store != null)
+		{
+			claimer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "sakai-mail-queue-claim");
+				thread.setDaemon(true);
+				return thread;
+			});
+			claimer.scheduleWithFixedDelay(() -> {
+				try
+				{
+					claim(false);
+				}
+				catch (SQLException | RuntimeException e)
+				{
+					log.warn("claim: could not look for stored messages to deliver: {}", e.toString());
+				}
+			}, CLAIM_MILLIS, CLAIM_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		log.info("start(): workers: {} maxAttempts: {} retryDelay: {}ms stored: {} queued: {}", workers, maxAttempts, retryDelay, store != null,
+				queue.size());
+	}
+
+	/**
+	 * Stop taking messages, and give the workers up to the timeout to deliver what is already due.
+	 *
+	 * @param timeout
+	 *        How long to wait for the workers, in milliseconds.
+	 */
+	public void stop(long timeout)
+	{
+		running = false;
+		if (claimer != null) claimer.shutdownNow();
+		if (executor == null) return;
+
+		executor.shutdown();
+		try
+		{
+			if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS))
+			{
+				executor.shutdownNow();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+
+		if (!queue.isEmpty())
+		{
+			if (store != null)
+			{
+				log.info("stop(): {} queued messages left stored, for this server to deliver on start, or another once their lease runs out",
+						queue.size());
+			}
+			else
+			{
+				log.warn("stop(): {} queued messages were not delivered", queue.size());
+			}
+		}
+		log.info("stop(): {}", this);
+	}
+
+	/**
+	 * Queue a message for delivery. The message is copied, and stored if the queue has a store, so the caller is free to change it, or remove
+	 * its attachment files, once this returns.
+	 *
+	 * @param msg
+	 *        The message, with its changes saved.
+	 * @param recipientSets
+	 *        The recipients, each set of which is sent the message in one SMTP transaction.
+	 * @return true if the message was queued, false if the queue is not running or the message could not be copied or stored, in which case
+	 *         the caller should send it itself.
+	 */
+	public boolean add(MimeMessage msg, List<Address[]> recipientSets)
+	{
+		if (!running) return false;
+
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			msg.writeTo(out);
+			byte[] content = out.toByteArray();
+			MimeMessage copy = new MimeMessage(session, new ByteArrayInputStream(content));
+
+			List<Address[]> sets = new ArrayList<>(recipientSets);
+			String id = null;
+			if (store != null)
+			{
+				id = UUID.randomUUID().toString();
+				long now = System.currentTimeMillis();
+				store.insert(id, content, formatRecipients(sets), now, now + lease);
+			}
+
+			queue.add(new OutboundMail(id, copy, sets, 0));
+			return true;
+		}
+		catch (IOException | MessagingException | SQLException e)
+		{
+			log.warn("add(): could not queue message: {}", e.toString());
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if the queue has been started, and not stopped, so is taking messages.
+	 */
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * @return The number of messages waiting on this server to be sent or retried, including those being sent right now.
+	 */
+	public int getQueueDepth()
+	{
+		return queue.size() + inFlight.get();
+	}
+
+	/**
+	 * @return The number of recipient sets sent to so far.
+	 */
+	public long getSentCount()
+	{
+		return sent.sum();
+	}
+
+	/**
+	 * @return The number of recipient sets that have been queued again after a failed send.
+	 */
+	public long getRetryCount()
+	{
+		return retried.sum();
+	}
+
+	/**
+	 * @return The number of recipient sets given up on after the maximum number of attempts.
+	 */
+	public long getFailedCount()
+	{
+		return failed.sum();
+	}
+
+	/**
+	 * @return The average number of recipient sets sent per minute since the queue was started.
+	 */
+	public double getSendRate()
+	{
+		long elapsed = System.currentTimeMillis() - started;
+		return elapsed > 0 ? getSentCount() * 60000.0 / elapsed : 0;
+	}
+
+	/**
+	 * Queue the stored messages whose lease has run out, unless this server already holds enough to keep its workers busy.
+	 *
+	 * @param own
+	 *        If true, also queue the messages still claimed by this server, which it left queued when it last stopped.
+	 */
+	private void claim(boolean own) throws SQLException
+	{
+		int max = workers * CLAIM_PER_WORKER - getQueueDepth();
+		if (max <= 0) return;
+
+		long now = System.currentTimeMillis();
+		for (DbOutboundMailStore.StoredMail stored : store.claim(now, now + lease, own, max))
+		{
+			try
+			{
+				OutboundMail mail = new OutboundMail(stored.id, new MimeMessage(session, new ByteArrayInputStream(stored.content)),
+						parseRecipients(stored.recipients), stored.attempts);
+				mail.due = stored.due;
+				queue.add(mail);
+			}
+			catch (MessagingException e)
+			{
+				log.warn("claim(): could not read {}, leaving it stored: {}", stored.id, e.toString());
+			}
+		}
+	}
+
+	/**
+	 * The recipients still to be sent a stored message, one address per line with a blank line after each set.
+	 */
+	private String formatRecipients(List<Address[]> recipientSets)
+	{
+		StringBuilder buf = new StringBuilder();
+		for (Address[] recipients : recipientSets)
+		{
+			for (Address recipient : recipients)
+			{
+				buf.append(recipient).append('\n');
+			}
+			buf.append('\n');
+		}
+		return buf.toString();
+	}
+
+	private List<Address[]> parseRecipients(String stored) throws MessagingException
+	{
+		List<Address[]> recipientSets = new ArrayList<>();
+		List<Address> recipients = new ArrayList<>();
+		for (String line : stored.split("\n", -1))
+		{
+			if (line.isEmpty())
+			{
+				if (!recipients.isEmpty()) recipientSets.add(recipients.toArray(new Address[0]));
+				recipients.clear();
+			}
+			else
+			{
+				recipients.add(new InternetAddress(line));
+			}
+		}
+		if (!recipients.isEmpty()) recipientSets.add(recipients.toArray(new Address[0]));
+		return recipientSets;
+	}
+
+	/**
+	 * Remove a stored message that has been delivered or given up on.
+	 */
+	private void removeFromStore(String id)
+	{
+		try
+		{
+			store.delete(id);
+		}
+		catch (SQLException e)
+		{
+			log.warn("removeFromStore(): could not remove {}, it may be sent again: {}", id, e.toString());
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("depth: %d sent: %d retried: %d failed: %d rate: %.1f/min", getQueueDepth(), getSentCount(), getRetryCount(),
+				getFailedCount(), getSendRate());
+	}
+
+	/**
+	 * A worker delivering queued messages over a connection that is kept open between them.
+	 */
+	private class Worker implements Runnable
+	{
+		private Transport transport;
+
+		private long lastUsed;
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				while (running)
+				{
+					OutboundMail mail = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+					if (mail != null)
+					{
+						deliver(mail);
+					}
+					else if (transport != null && System.currentTimeMillis() - lastUsed > IDLE_MILLIS)
+					{
+						close();
+					}
+				}
+
+				// stopping - deliver whatever is already due, anything waiting on a retry stays queued
+				for (OutboundMail mail = queue.poll(); mail != null; mail = queue.poll())
+				{
+					deliver(mail);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				close();
+			}
+		}
+
+		private void deliver(OutboundMail mail)
+		{
+			inFlight.incrementAndGet();
+			try
+			{
+				if (mail.id != null && !renew(mail))
+				{
+					log.info("deliver: {} has been claimed by another server", mail.id);
+					return;
+				}
+
+				List<Address[]> unsent = new ArrayList<>();
+				for (Address[] recipients : mail.recipientSets)
+				{
+					try
+					{
+						if (transport == null || !transport.isConnected())
+						{
+							transport = connector.connect();
+						}
+						transport.sendMessage(mail.message, recipients);
+						sent.increment();
+					}
+					catch (SendFailedException e)
+					{
+						// invalid addresses won't get any better, but retry any valid ones that weren't sent to
+						if (log.isDebugEnabled()) log.debug("deliver: " + e);
+						Address[] validUnsent = e.getValidUnsentAddresses();
+						if (validUnsent != null && validUnsent.length > 0)
+						{
+							unsent.add(validUnsent);
+						}
+					}
+					catch (MessagingException e)
+					{
+						log.warn("deliver: " + e);
+						unsent.add(recipients);
+						close();
+					}
+					lastUsed = System.currentTimeMillis();
+
+					if (oneMessagePerConnection)
+					{
+						close();
+					}
+				}
+
+				if (!unsent.isEmpty())
+				{
+					retry(mail, unsent);
+				}
+				else if (mail.id != null)
+				{
+					removeFromStore(mail.id);
+				}
+			}
+			finally
+			{
+				inFlight.decrementAndGet();
+			}
+		}
+
+		private void retry(OutboundMail mail, List<Address[]> unsent)
+		{
+			int attempts = mail.attempts + 1;
+			if (attempts >= maxAttempts)
+			{
+				failed.add(unsent.size());
+				log.warn("retry: giving up on {} recipient sets after {} attempts", unsent.size(), attempts);
+				if (mail.id != null) removeFromStore(mail.id);
+				return;
+			}
+
+			retried.add(unsent.size());
+			OutboundMail retry = new OutboundMail(mail.id, mail.message, unsent, attempts);
+			retry.due = System.currentTimeMillis() + (retryDelay << (attempts - 1));
+
+			// only the recipients still unsent are sent to by whichever server delivers it, and this one holds it until it is due
+			if (mail.id != null)
+			{
+				try
+				{
+					store.reschedule(mail.id, formatRecipients(unsent), attempts, retry.due, retry.due + lease);
+				}
+				catch (SQLException e)
+				{
+					log.warn("retry: could not update the stored recipients of {}: {}", mail.id, e.toString());
+				}
+			}
+			queue.add(retry);
+		}
+
+		/**
+		 * Extend this server's claim on a stored message for long enough to deliver it.
+		 *
+		 * @return false if another server has claimed the message, so it should not be delivered here.
+		 */
+		private boolean renew(OutboundMail mail)
+		{
+			try
+			{
+				return store.renew(mail.id, System.currentTimeMillis() + lease);
+			}
+			catch (SQLException e)
+			{
+				// deliver it anyway rather than hold up mail while the database is unavailable
+				log.warn("renew: could not renew the claim on {}: {}", mail.id, e.toString());
+				return true;
+			}
+		}
+
+		private void close()
+		{
+			if (transport == null) return;
+
+			try
+			{
+				transport.close();
+			}
+			catch (MessagingException e)
+			{
+				if (log.isDebugEnabled()) log.debug("close: " + e);
+			}
+			transport = null;
+		}
+	}
+
+	/**
+	 * A message and the recipient sets still to be sent it.
+	 */
+	private static class OutboundMail implements Delayed
+	{
+		/** The id the message is stored under, or null if it isn't. */
+		private final String id;
+
+		private final MimeMessage message;
+
+		private final List<Address[]> recipientSets;
+
+		private final int attempts;
+
+		private long due = System.currentTimeMillis();
+
+		private OutboundMail(String id, MimeMessage message, List<Address[]> recipientSets, int attempts)
+		{
+			this.id = id;
+			this.message = message;
+			this.recipientSets = recipientSets;
+			this.attempts = attempts;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit)
+		{
+			return unit.convert(due - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other)
+		{
+			return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+		}
+	}
+}
@@ -22,6 +22,9 @@
 package org.sakaiproject.event.impl;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -64,6 +67,19 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 
 	/** Transient notifications (NotificationEdit). */
 	protected List m_transients = null;
+
+	/** The stored and transient notifications indexed by function and resource filter, null until (re)built. */
+	protected volatile NotificationIndex m_index = null;
+
+	/** Bumped on every change to the notifications, so an index built from before the change is not kept. */
+	protected final AtomicLong m_indexVersion = new AtomicLong();
+
+	/** Dispatch timing, per event function. */
+	protected final Map<String, DispatchTiming> m_dispatchTimings = new ConcurrentHashMap<>();
+
+	/** Watches for notification changes made on any server in the cluster. */
+	protected Observer m_notificationChangeObserver = null;
+
 	/** Configuration: make the email notifications To: reply-able. */
 	protected boolean m_emailsToReplyable = false;
 
@@ -222,6 +238,16 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 			// start watching the events - only those generated on this server, not those from elsewhere
 			eventTrackingService().addLocalObserver(this);
 
+			// notifications changed on any server invalidate our index
+			m_notificationChangeObserver = (o, arg) ->
+			{
+				if (arg instanceof Event && StringUtils.startsWith(((Event) arg).getEvent(), "notification."))
+				{
+					invalidateNotificationIndex();
+				}
+			};
+			eventTrackingService().addObserver(m_notificationChangeObserver);
+
 			// set these from real sakai config values
 			m_emailsFromReplyable = serverConfigurationService().getBoolean("notify.email.from.replyable", false);
             m_emailsToReplyable = serverConfigurationService().getBoolean("notify.email.to.replyable", false);
@@ -243,6 +269,7 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 		if (!getComponentManager().hasBeenClosed())
 		{
 			eventTrackingService().deleteObserver(this);
+			eventTrackingService().deleteObserver(m_notificationChangeObserver);
 		}
 
 		// clean up storage
@@ -253,6 +280,8 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 		m_transients.clear();
 		m_transients = null;
 
+		invalidateNotificationIndex();
+
 		log.info(this + ".destroy()");
 	}
 
@@ -295,6 +324,7 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 
 		// remember it
 		m_transients.add(notification);
+		invalidateNotificationIndex();
 
 		// no event, no other cluster server knows about it - it's transient and local
 		return notification;
@@ -368,6 +398,7 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 
 		// complete the edit
 		m_storage.commit(notification);
+		invalidateNotificationIndex();
 
 		// track it
 		eventTrackingService().post(
@@ -428,6 +459,7 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 
 		// complete the edit
 		m_storage.remove(notification);
+		invalidateNotificationIndex();
 
 		// track it
 		eventTrackingService().post(eventTrackingService().newEvent(SECURE_REMOVE_NOTIFICATION, notification.getReference(), true));
@@ -537,22 +569,76 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 
 		// check the event function against the functions we have notifications watching for
 		String function = event.getEvent();
+		if (function == null) return;
 
-		// for each notification watching for this event
-		List notifications = getNotifications(function);
-		for (Iterator it = notifications.iterator(); it.hasNext();)
+		long start = System.nanoTime();
+
+		// each notification watching for this event whose resource filter matches the event resource
+		List<Notification> notifications = getNotificationIndex().find(function, event.getResource());
+		for (Notification notification : notifications)
 		{
-			Notification notification = (Notification) it.next();
+			// cause the notification to run
+			notification.notify(event);
+		}
+
+		if (!notifications.isEmpty())
+		{
+			long elapsed = System.nanoTime() - start;
+			m_dispatchTimings.computeIfAbsent(function, f -> new DispatchTiming()).record(elapsed);
+			if (log.isDebugEnabled()) log.debug(this + ".update(): " + function + " dispatched to " + notifications.size() + " notifications in " + elapsed / 1000 + "us");
+		}
+
+	} // update
+
+	/**
+	 * Access the dispatch timing collected so far, per event function.
+	 *
+	 * @return A map of event function to the number of events dispatched, and the total and longest time spent notifying for them.
+	 */
+	public Map<String, DispatchTiming> getDispatchTimings()
+	{
+		return Collections.unmodifiableMap(m_dispatchTimings);
+	}
+
+	/**
+	 * Access the notification index, building it from storage and the transients if it has been invalidated.
+	 *
+	 * @return The current notification index.
+	 */
+	protected NotificationIndex getNotificationIndex()
+	{
+		NotificationIndex index = m_index;
+		if (index != null) return index;
 
-			// if the resource matches the notification's resource filter
-			if (match(notification.getResourceFilter(), event.getResource()))
+		long version = m_indexVersion.get();
+
+		List all = new ArrayList(m_storage.getAll());
+		all.addAll(new ArrayList(m_transients));
+		index = new NotificationIndex(all);
+
+		// don't keep an index that a concurrent change has already made stale
+		synchronized (m_indexVersion)
+		{
+			if (m_indexVersion.get() == version)
 			{
-				// cause the notification to run
-				notification.notify(event);
+				m_index = index;
 			}
 		}
 
-	} // update
+		return index;
+	}
+
+	/**
+	 * Drop the notification index, so it is rebuilt on the next event.
+	 */
+	protected void invalidateNotificationIndex()
+	{
+		synchronized (m_indexVersion)
+		{
+			m_indexVersion.incrementAndGet();
+			m_index = null;
+		}
+	}
 
 	/**
 	 * Construct a new rsource given just an id.
@@ -729,6 +815,152 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 	 * CacheRefresher implementation (no container)
 	 *********************************************************************************************************************************************************************************************************************************************************/
 
+	/**********************************************************************************************************************************************************************************************************************************************************
+	 * Notification index
+	 *********************************************************************************************************************************************************************************************************************************************************/
+
+	/**
+	 * An immutable index of notifications by event function, then by resource filter in a prefix trie, so finding the notifications for an event
+	 * is a walk down the event resource rather than a scan of every notification.
+	 */
+	protected static class NotificationIndex
+	{
+		/** The root of the resource filter trie, per function. */
+		protected final Map<String, FilterNode> m_byFunction = new HashMap<>();
+
+		/**
+		 * Construct.
+		 *
+		 * @param notifications
+		 *        All the notifications (Notification) to index, in dispatch order.
+		 */
+		public NotificationIndex(List notifications)
+		{
+			int order = 0;
+			for (Iterator it = notifications.iterator(); it.hasNext();)
+			{
+				Notification notification = (Notification) it.next();
+				IndexedNotification indexed = new IndexedNotification(notification, order++);
+				String filter = StringUtils.defaultString(notification.getResourceFilter());
+
+				for (Iterator fit = notification.getFunctions().iterator(); fit.hasNext();)
+				{
+					String function = (String) fit.next();
+					if (function == null) continue;
+
+					FilterNode node = m_byFunction.computeIfAbsent(function, f -> new FilterNode());
+					for (int i = 0; i < filter.length(); i++)
+					{
+						node = node.m_children.computeIfAbsent(filter.charAt(i), c -> new FilterNode());
+					}
+					if (!node.m_notifications.contains(indexed))
+					{
+						node.m_notifications.add(indexed);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Find the notifications watching for this function whose resource filter matches the resource.
+		 *
+		 * @param function
+		 *        The event function.
+		 * @param ref
+		 *        The event resource reference (may be null).
+		 * @return The matching notifications, in the order they were indexed.
+		 */
+		public List<Notification> find(String function, String ref)
+		{
+			FilterNode node = m_byFunction.get(function);
+			if (node == null) return Collections.emptyList();
+
+			List<IndexedNotification> found = new ArrayList<>(node.m_notifications);
+			if (ref != null)
+			{
+				for (int i = 0; i < ref.length(); i++)
+				{
+					node = node.m_children.get(ref.charAt(i));
+					if (node == null) break;
+					found.addAll(node.m_notifications);
+				}
+			}
+
+			found.sort(Comparator.comparingInt(n -> n.m_order));
+			List<Notification> rv = new ArrayList<>(found.size());
+			for (IndexedNotification indexed : found)
+			{
+				rv.add(indexed.m_notification);
+			}
+			return rv;
+		}
+	}
+
+	/**
+	 * A node in the resource filter trie, holding the notifications whose filter ends here.
+	 */
+	protected static class FilterNode
+	{
+		protected final Map<Character, FilterNode> m_children = new HashMap<>();
+
+		protected final List<IndexedNotification> m_notifications = new ArrayList<>();
+	}
+
+	/**
+	 * A notification and its position in the dispatch order.
+	 */
+	protected static class IndexedNotification
+	{
+		protected final Notification m_notification;
+
+		protected final int m_order;
+
+		public IndexedNotification(Notification notification, int order)
+		{
+			m_notification = notification;
+			m_order = order;
+		}
+	}
+
+	/**
+	 * The count, total and longest time spent dispatching events for one function.
+	 */
+	public static class DispatchTiming
+	{
+		protected final LongAdder m_count = new LongAdder();
+
+		protected final LongAdder m_totalNanos = new LongAdder();
+
+		protected final AtomicLong m_maxNanos = new AtomicLong();
+
+		protected void record(long nanos)
+		{
+			m_count.increment();
+			m_totalNanos.add(nanos);
+			m_maxNanos.accumulateAndGet(nanos, Math::max);
+		}
+
+		public long getCount()
+		{
+			return m_count.sum();
+		}
+
+		public long getTotalNanos()
+		{
+			return m_totalNanos.sum();
+		}
+
+		public long getMaxNanos()
+		{
+			return m_maxNanos.get();
+		}
+
+		public String toString()
+		{
+			return "count: " + getCount() + " total: " + getTotalNanos() / 1000000 + "ms max: " + getMaxNanos() / 1000 + "us";
+		}
+	}
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Storage
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -1220,6 +1452,7 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 		{
 			m_functions.clear();
 			m_functions.add(function);
+			invalidateNotificationIndex();
 
 		} // setFunction
 
@@ -1232,6 +1465,7 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 		public void addFunction(String function)
 		{
 			m_functions.add(function);
+			invalidateNotificationIndex();
 
 		} // addFunction
 
@@ -1244,6 +1478,7 @@ public abstract class BaseNotificationService implements NotificationService, Ob
 		public void setResourceFilter(String filter)
 		{
 			m_filter = filter;
+			invalidateNotificationIndex();
 
 		} // setResourceFilter
 
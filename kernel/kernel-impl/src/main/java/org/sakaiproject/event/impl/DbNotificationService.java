@@ -152,6 +152,7 @@ public abstract class DbNotificationService extends BaseNotificationService
 		public DbStorage(SingleStorageUser user)
 		{
 			super(m_tableName, "NOTIFICATION_ID", null, m_locksInDb, "notification", user, sqlService());
+			setCompactXml(serverConfigurationService().getBoolean("notification.storage.compact", false));
 		}
 
 		public boolean check(String id)
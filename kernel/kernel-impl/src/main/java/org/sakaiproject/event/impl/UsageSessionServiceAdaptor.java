@@ -21,15 +21,25 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Formatter;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -222,6 +232,14 @@ public abstract class UsageSessionServiceAdaptor implements UsageSessionService
 			log.error("init(): ", t);
 		}
 		setUsageSessionServiceSql(sqlService().getVendor());
+
+		// batch up session writes, keeping this server's open sessions in memory
+		if (serverConfigurationService().getBoolean("session.writebehind.enabled", false))
+		{
+			m_storage = new WriteBehindStorage((ClusterStorage) m_storage, serverConfigurationService().getInt("session.writebehind.interval", 2000),
+					serverConfigurationService().getInt("session.writebehind.batch.size", 100));
+			m_storage.open();
+		}
 		
 		boolean sessionsSizeCheck = serverConfigurationService().getBoolean("sessions.size.check", true);
 		if (sessionsSizeCheck) {
@@ -826,27 +844,8 @@ public abstract class UsageSessionServiceAdaptor implements UsageSessionService
 			// and store it in the db
 			String statement = usageSessionServiceSql.getInsertSakaiSessionSql();
 
-			String userAgent = (session.getUserAgent() != null && session.getUserAgent().length() > 255) ? 
-				session.getUserAgent().substring(0, 255) : session.getUserAgent();
-			
-			String hostName = session.getHostName();
-			
-			if (hostName != null && hostName.length() > 255) {
-				hostName = hostName.substring(0, 255);
-			}
-
 			// process the insert
-			boolean ok = sqlService().dbWrite(statement, new Object[] {
-				session.getId(),
-				session.getServer(),
-				session.getUserId(),
-				session.getIpAddress(),
-				hostName,
-				userAgent,
-				session.getStartInstant(),
-				session.getEndInstant(),
-				session.isClosed() ? null : Boolean.valueOf(true)
-			});
+			boolean ok = sqlService().dbWrite(statement, insertFields(session));
 			if (!ok)
 			{
 				log.warn(".addSession(): dbWrite failed");
@@ -968,11 +967,7 @@ public abstract class UsageSessionServiceAdaptor implements UsageSessionService
 			String statement = usageSessionServiceSql.getUpdateSakaiSessionSql();
 
 			// process the statement
-			boolean ok = sqlService().dbWrite(statement, new Object[]{
-				session.getEnd(),
-				session.isClosed() ? null : Boolean.valueOf(true),
-				session.getId()
-			});
+			boolean ok = sqlService().dbWrite(statement, closeFields(session));
 			if (!ok)
 			{
 				log.warn(".closeSession(): dbWrite failed");
@@ -986,10 +981,7 @@ public abstract class UsageSessionServiceAdaptor implements UsageSessionService
 			String statement = usageSessionServiceSql.getUpdateServerSakaiSessionSql();
 			
 			// execute the statement
-			boolean ok = sqlService().dbWrite(statement, new Object[] {
-					session.getServer(),
-					session.getId()
-			});
+			boolean ok = sqlService().dbWrite(statement, serverFields(session));
 			if (!ok)
 			{
 				log.warn(".updateSessionServer(): dbWrite failed");
@@ -1022,6 +1014,396 @@ public abstract class UsageSessionServiceAdaptor implements UsageSessionService
 
 			return sessions;
 		}
+
+		/**
+		 * @return The values for the session insert statement.
+		 */
+		protected Object[] insertFields(UsageSession session)
+		{
+			String userAgent = (session.getUserAgent() != null && session.getUserAgent().length() > 255) ? 
+				session.getUserAgent().substring(0, 255) : session.getUserAgent();
+			
+			String hostName = session.getHostName();
+			
+			if (hostName != null && hostName.length() > 255) {
+				hostName = hostName.substring(0, 255);
+			}
+
+			return new Object[] {
+				session.getId(),
+				session.getServer(),
+				session.getUserId(),
+				session.getIpAddress(),
+				hostName,
+				userAgent,
+				session.getStartInstant(),
+				session.getEndInstant(),
+				session.isClosed() ? null : Boolean.valueOf(true)
+			};
+		}
+
+		/**
+		 * @return The values for the session close statement.
+		 */
+		protected Object[] closeFields(UsageSession session)
+		{
+			return new Object[] {
+				session.getEnd(),
+				session.isClosed() ? null : Boolean.valueOf(true),
+				session.getId()
+			};
+		}
+
+		/**
+		 * @return The values for the session server update statement.
+		 */
+		protected Object[] serverFields(UsageSession session)
+		{
+			return new Object[] {
+				session.getServer(),
+				session.getId()
+			};
+		}
+	}
+
+	/**
+	 * Storage that keeps the sessions opened on this server in memory and writes them, their closing and server changes to the db in batches,
+	 * on a fixed interval or once enough writes are waiting. Reads of sessions opened here are served from memory; the reads that go to the db
+	 * for open sessions, or by joining to the session table, first write out everything waiting so that they see this server's sessions.
+	 * Other servers see a session once it has been written, which is within the interval.
+	 */
+	protected class WriteBehindStorage implements Storage
+	{
+		/** The db storage the writes are made through. */
+		protected ClusterStorage m_db = null;
+
+		/** How often to write (ms). */
+		protected long m_interval = 0;
+
+		/** How many waiting writes start a write before the interval is up. */
+		protected int m_batchSize = 0;
+
+		/** The sessions opened on this server, until they are closed and written. */
+		protected Map<String, UsageSession> m_live = new ConcurrentHashMap<String, UsageSession>();
+
+		/** The writes waiting, by session id, in the order they were first made. */
+		protected Map<String, PendingWrite> m_pending = new LinkedHashMap<String, PendingWrite>();
+
+		/** Set while a write before the interval is waiting to run. */
+		protected AtomicBoolean m_writeRequested = new AtomicBoolean(false);
+
+		/** Runs the writes. */
+		protected ScheduledExecutorService m_writer = null;
+
+		public WriteBehindStorage(ClusterStorage db, long interval, int batchSize)
+		{
+			m_db = db;
+			m_interval = Math.max(100, interval);
+			m_batchSize = Math.max(1, batchSize);
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		public void open()
+		{
+			m_writer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "Sakai.UsageSessionService.WriteBehind");
+				thread.setDaemon(true);
+				return thread;
+			});
+			m_writer.scheduleWithFixedDelay(this::write, m_interval, m_interval, TimeUnit.MILLISECONDS);
+
+			log.info("WriteBehindStorage: interval: " + m_interval + " batch size: " + m_batchSize);
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		public void close()
+		{
+			if (m_writer != null)
+			{
+				m_writer.shutdown();
+				try
+				{
+					m_writer.awaitTermination(m_interval, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				m_writer = null;
+			}
+
+			// write out whatever is left
+			write();
+			m_db.close();
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		public boolean addSession(UsageSession session)
+		{
+			m_live.put(session.getId(), session);
+			pending(session, w -> w.insert = true);
+			return true;
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		public UsageSession getSession(String id)
+		{
+			UsageSession rv = m_live.get(id);
+			if (rv == null)
+			{
+				rv = m_db.getSession(id);
+			}
+
+			return rv;
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		public List getSessions(List ids)
+		{
+			List rv = new Vector();
+			List others = new ArrayList();
+			for (Iterator i = ids.iterator(); i.hasNext();)
+			{
+				String id = (String) i.next();
+				UsageSession s = m_live.get(id);
+				if (s != null)
+				{
+					rv.add(s);
+				}
+				else
+				{
+					others.add(id);
+				}
+			}
+
+			if (!others.isEmpty())
+			{
+				rv.addAll(m_db.getSessions(others));
+			}
+
+			return rv;
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		public List getSessions(String joinTable, String joinAlias, String joinColumn, String joinCriteria, Object[] values)
+		{
+			write();
+			return m_db.getSessions(joinTable, joinAlias, joinColumn, joinCriteria, values);
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		public void closeSession(UsageSession session)
+		{
+			pending(session, w -> w.close = true);
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		public void updateSessionServer(UsageSession session)
+		{
+			pending(session, w -> w.server = true);
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		public List getOpenSessions()
+		{
+			write();
+			return m_db.getOpenSessions();
+		}
+
+		/**
+		 * Mark what needs writing for this session, starting a write if enough are waiting.
+		 */
+		protected void pending(UsageSession session, Consumer<PendingWrite> mark)
+		{
+			boolean full = false;
+			synchronized (m_pending)
+			{
+				PendingWrite write = m_pending.get(session.getId());
+				if (write == null)
+				{
+					write = new PendingWrite(session);
+					m_pending.put(session.getId(), write);
+				}
+				mark.accept(write);
+				full = m_pending.size() >= m_batchSize;
+			}
+
+			if (full && (m_writer != null) && m_writeRequested.compareAndSet(false, true))
+			{
+				try
+				{
+					m_writer.execute(this::write);
+				}
+				catch (Exception e)
+				{
+					// shutting down, the remaining writes are made on close
+					m_writeRequested.set(false);
+				}
+			}
+		}
+
+		/**
+		 * Write out all the waiting inserts, closes and server changes, each kind in one batch.
+		 */
+		protected synchronized void write()
+		{
+			m_writeRequested.set(false);
+
+			List<PendingWrite> writes = null;
+			synchronized (m_pending)
+			{
+				if (m_pending.isEmpty()) return;
+				writes = new ArrayList<PendingWrite>(m_pending.values());
+				m_pending.clear();
+			}
+
+			long start = System.currentTimeMillis();
+
+			// an insert carries the session as it is now, so covers any close or server change made since
+			List<PendingWrite> inserts = new ArrayList<PendingWrite>();
+			List<PendingWrite> closes = new ArrayList<PendingWrite>();
+			List<PendingWrite> servers = new ArrayList<PendingWrite>();
+			for (PendingWrite write : writes)
+			{
+				if (write.insert)
+				{
+					inserts.add(write);
+				}
+				else
+				{
+					if (write.close) closes.add(write);
+					if (write.server) servers.add(write);
+				}
+			}
+
+			// insert and update in that order, so the updates find their rows
+			writeBatch(usageSessionServiceSql.getInsertSakaiSessionSql(), inserts, m_db::insertFields, m_db::addSession);
+			writeBatch(usageSessionServiceSql.getUpdateServerSakaiSessionSql(), servers, m_db::serverFields, m_db::updateSessionServer);
+			writeBatch(usageSessionServiceSql.getUpdateSakaiSessionSql(), closes, m_db::closeFields, m_db::closeSession);
+
+			// closed sessions are now in the db for anyone who asks
+			for (PendingWrite write : writes)
+			{
+				if (write.session.isClosed())
+				{
+					m_live.remove(write.session.getId());
+				}
+			}
+
+			if (log.isDebugEnabled())
+			{
+				log.debug("write: inserts: " + inserts.size() + " servers: " + servers.size() + " closes: " + closes.size() + " live: " + m_live.size()
+						+ " in: " + (System.currentTimeMillis() - start) + "ms");
+			}
+		}
+
+		/**
+		 * Write a batch of one kind of statement, falling back to writing them one by one if the batch fails.
+		 *
+		 * @param statement
+		 *        The sql statement.
+		 * @param writes
+		 *        The sessions to write.
+		 * @param fields
+		 *        The statement's values for a session.
+		 * @param single
+		 *        Writes one session on its own.
+		 */
+		protected void writeBatch(String statement, List<PendingWrite> writes, Function<UsageSession, Object[]> fields, Consumer<UsageSession> single)
+		{
+			if (writes.isEmpty()) return;
+
+			List<Object[]> fieldsList = new ArrayList<Object[]>();
+			for (PendingWrite write : writes)
+			{
+				fieldsList.add(fields.apply(write.session));
+			}
+
+			boolean ok = false;
+			Connection conn = null;
+			boolean wasCommit = true;
+			try
+			{
+				conn = sqlService().borrowConnection();
+				wasCommit = conn.getAutoCommit();
+				conn.setAutoCommit(false);
+				ok = sqlService().dbWriteBatch(conn, statement, fieldsList);
+				if (ok)
+				{
+					conn.commit();
+				}
+				else
+				{
+					conn.rollback();
+				}
+			}
+			catch (Exception e)
+			{
+				log.warn("writeBatch: " + e);
+				ok = false;
+			}
+			finally
+			{
+				if (conn != null)
+				{
+					try
+					{
+						conn.setAutoCommit(wasCommit);
+					}
+					catch (Exception e)
+					{
+						log.warn("writeBatch: while setting auto commit: " + e);
+					}
+					sqlService().returnConnection(conn);
+				}
+			}
+
+			if (!ok)
+			{
+				log.warn("writeBatch: batch of " + writes.size() + " failed, writing one at a time");
+				for (PendingWrite write : writes)
+				{
+					single.accept(write.session);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The writes waiting to be made for a session.
+	 */
+	protected static class PendingWrite
+	{
+		protected final UsageSession session;
+
+		protected boolean insert = false;
+
+		protected boolean close = false;
+
+		protected boolean server = false;
+
+		protected PendingWrite(UsageSession session)
+		{
+			this.session = session;
+		}
 	}
 
 	/**
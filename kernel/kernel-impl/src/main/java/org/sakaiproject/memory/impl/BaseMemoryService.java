@@ -21,13 +21,16 @@
 
 package org.sakaiproject.memory.impl;
 
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.extern.slf4j.Slf4j;
 
 import net.sf.ehcache.CacheManager;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.ignite.Ignite;
 
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.memory.api.*;
@@ -45,9 +48,12 @@ public class BaseMemoryService implements MemoryService {
 
     ServerConfigurationService serverConfigurationService;
     CacheManager cacheManager;
+    Ignite ignite;
 
     MemoryService memoryService;
 
+    private final Map<String, VersionedCache> versionedCaches = new ConcurrentHashMap<>();
+
     /**
      * Service INIT
      */
@@ -105,6 +111,10 @@ public class BaseMemoryService implements MemoryService {
      * Service SHUTDOWN
      */
     public void destroy() {
+        versionedCaches.values().stream()
+                .filter(IgniteVersionedCache.class::isInstance)
+                .forEach(vc -> ((IgniteVersionedCache) vc).close());
+        versionedCaches.clear();
         if (memoryService != null) {
             if (memoryService instanceof EhcacheMemoryService) {
                 ((EhcacheMemoryService)memoryService).destroy();
@@ -125,6 +135,17 @@ public class BaseMemoryService implements MemoryService {
 
     // COMMON methods
 
+    /**
+     * The caches of this server are told of changes on the others through Ignite. Hazelcast maps are
+     * shared by the cluster already, so the wrapped service's versioned caches are good as they are.
+     */
+    @Override
+    public VersionedCache getVersionedCache(String cacheName) {
+        if (ignite == null || memoryService instanceof HazelcastMemoryService) {
+            return memoryService.getVersionedCache(cacheName);
+        }
+        return versionedCaches.computeIfAbsent(cacheName, name -> new IgniteVersionedCache(getCache(name), ignite));
+    }
 
 
 
@@ -221,6 +242,10 @@ public class BaseMemoryService implements MemoryService {
         this.cacheManager = cacheManager;
     }
 
+    public void setIgnite(Ignite ignite) {
+        this.ignite = ignite;
+    }
+
     // OPTIONAL
     public void setMemoryService(MemoryService memoryService) {
         this.memoryService = memoryService;
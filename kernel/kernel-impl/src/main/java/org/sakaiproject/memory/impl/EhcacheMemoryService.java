@@ -23,8 +23,10 @@ package org.sakaiproject.memory.impl;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -39,9 +41,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.component.cover.ComponentManager;
+import org.sakaiproject.memory.api.BasicVersionedCache;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.CacheRefresher;
 import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.VersionedCache;
 import org.sakaiproject.memory.util.CacheInitializer;
 
 /**
@@ -61,6 +65,8 @@ public class EhcacheMemoryService implements MemoryService {
      * i.e. NEVER use this variable directly, use the #getSecurityService() method instead
      */
     SecurityService securityService;
+    // Versions are kept in the caches of this server, BaseMemoryService tells the other servers of changes
+    private final Map<String, VersionedCache> versionedCaches = new ConcurrentHashMap<>();
     ServerConfigurationService serverConfigurationService;
 
     public EhcacheMemoryService() {}
@@ -196,6 +202,11 @@ public class EhcacheMemoryService implements MemoryService {
         return getCache(cacheName);
     }
 
+    @Override
+    public VersionedCache getVersionedCache(String cacheName) {
+        return versionedCaches.computeIfAbsent(cacheName, name -> new BasicVersionedCache(getCache(name)));
+    }
+
     @Override
     public String getStatus() {
         // MIRRORS the OLD status report
@@ -31,6 +31,7 @@ import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -39,10 +40,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.component.cover.ComponentManager;
+import org.sakaiproject.memory.api.BasicVersionedCache;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.CacheRefresher;
 import org.sakaiproject.memory.api.Configuration;
 import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.VersionedCache;
 
 /**
  * Hazelcast based implementation of the MemoryService API which is automatically distributed by the nature of hazelcast
@@ -55,6 +58,8 @@ import org.sakaiproject.memory.api.MemoryService;
 public class HazelcastMemoryService implements MemoryService {
     ServerConfigurationService serverConfigurationService;
     SecurityService securityService;
+    // Versions are kept in the distributed maps, so every server sees them dropped
+    private final Map<String, VersionedCache> versionedCaches = new ConcurrentHashMap<>();
     HazelcastInstance hcInstance;
 
 
@@ -187,6 +192,11 @@ public class HazelcastMemoryService implements MemoryService {
         return getCache(cacheName);
     }
 
+    @Override
+    public VersionedCache getVersionedCache(String cacheName) {
+        return versionedCaches.computeIfAbsent(cacheName, name -> new BasicVersionedCache(getCache(name)));
+    }
+
     @Override
     public String getStatus() {
         // MIRRORS the OLD status report
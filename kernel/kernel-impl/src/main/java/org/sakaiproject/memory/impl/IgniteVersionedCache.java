@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.memory.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteException;
+import org.apache.ignite.IgniteMessaging;
+import org.apache.ignite.lang.IgniteBiPredicate;
+
+import org.sakaiproject.memory.api.BasicVersionedCache;
+import org.sakaiproject.memory.api.Cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A versioned cache over a cache of this server, which tells the other servers in the cluster of the
+ * paths each transaction changed with an Ignite message, instead of with an event written to the
+ * event table. Messages are sent to the whole cluster, and each server drops what the others changed.
+ */
+@Slf4j
+public class IgniteVersionedCache<V> extends BasicVersionedCache<V> {
+
+    private static final String TOPIC_PREFIX = "org.sakaiproject.memory.api.VersionedCache:";
+
+    private final String topic;
+    private final UUID localNodeId;
+    private final IgniteMessaging messaging;
+    private final IgniteBiPredicate<UUID, Object> listener;
+
+    public IgniteVersionedCache(Cache<String, Object> cache, Ignite ignite) {
+
+        super(cache);
+        topic = TOPIC_PREFIX + cache.getName();
+        localNodeId = ignite.cluster().localNode().id();
+        messaging = ignite.message();
+        listener = (nodeId, message) -> {
+            if (!localNodeId.equals(nodeId) && message instanceof List) {
+                evict((List<List<String>>) message);
+            }
+            return true;
+        };
+        messaging.localListen(topic, listener);
+    }
+
+    @Override
+    protected void publish(List<List<String>> paths) {
+
+        try {
+            messaging.send(topic, new ArrayList<>(paths));
+        } catch (IgniteException e) {
+            log.warn("Could not tell the cluster of the changes to {}: {}", topic, e.toString());
+        }
+    }
+
+    public void close() {
+        messaging.stopLocalListen(topic, listener);
+    }
+}
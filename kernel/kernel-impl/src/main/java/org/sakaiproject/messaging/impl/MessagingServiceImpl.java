@@ -16,12 +16,20 @@
 package org.sakaiproject.messaging.impl;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.annotation.Resource;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.ignite.IgniteMessaging;
+import org.apache.ignite.lang.IgniteBiPredicate;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Restrictions;
 import org.sakaiproject.authz.api.SecurityService;
@@ -36,6 +44,7 @@ import org.sakaiproject.messaging.api.BullhornData;
 import org.sakaiproject.messaging.api.BullhornHandler;
 import org.sakaiproject.messaging.api.MessageListener;
 import org.sakaiproject.messaging.api.MessagingService;
+import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
 import org.sakaiproject.time.api.UserTimeService;
 import org.sakaiproject.user.api.User;
@@ -78,12 +87,38 @@ public class MessagingServiceImpl implements MessagingService, Observer {
 
     private IgniteMessaging messaging;
 
+    private IgniteMessaging clusterMessaging;
+
+    // The listeners registered on this node, by topic. Each topic has a single Ignite listener while it has any.
+    private final Map<String, TopicListeners> topicListeners = new ConcurrentHashMap<>();
+
     private List<BullhornHandler> handlers = new ArrayList<>();
 
     private Map<String, BullhornHandler> handlerMap = new HashMap<>();
 
+    // Alerts for a site are always inserted, and deferred alerts released, by the same executor so a site
+    // publish can't overtake the alerts created just before it.
+    private ExecutorService[] alertExecutors;
+
+    private int alertBatchSize;
+
     public void init() {
 
+        int threads = Math.max(1, serverConfigurationService.getInt("portal.bullhorns.threads", 2));
+        int queueSize = Math.max(1, serverConfigurationService.getInt("portal.bullhorns.queue.size", 1000));
+        alertBatchSize = Math.max(1, serverConfigurationService.getInt("portal.bullhorns.batch.size", 100));
+        alertExecutors = new ExecutorService[threads];
+        for (int i = 0; i < threads; i++) {
+            String name = "bullhorn-alerts-" + i;
+            // When the queue is full the event thread inserts the alerts itself, rather than queueing without bound
+            alertExecutors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueSize),
+                r -> {
+                    Thread thread = new Thread(r, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
         if (serverConfigurationService.getBoolean("portal.bullhorns.enabled", true)) {
             // Site publish is handled specially. It should probably be extracted from the logic below, but for now,
             // we fake it in the list of handled events to get it into the if branch.
@@ -92,6 +127,23 @@ public class MessagingServiceImpl implements MessagingService, Observer {
         }
 
         messaging = ignite.message(ignite.cluster().forLocal());
+        clusterMessaging = ignite.message();
+    }
+
+    public void destroy() {
+
+        if (alertExecutors != null) {
+            for (ExecutorService executor : alertExecutors) {
+                executor.shutdown();
+            }
+            try {
+                for (ExecutorService executor : alertExecutors) {
+                    executor.awaitTermination(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     @Override
@@ -139,30 +191,27 @@ public class MessagingServiceImpl implements MessagingService, Observer {
                     BullhornHandler handler = handlerMap.get(event);
                     if (handler != null) {
                         Optional<List<BullhornData>> result = handler.handleEvent(e);
-                        if (result.isPresent()) {
-                            result.get().forEach(bd -> {
-                                doInsert(from, bd.getTo(), event, ref, bd.getTitle(),
-                                                bd.getSiteId(), e.getEventTime(), bd.getUrl());
+                        if (result.isPresent() && !result.get().isEmpty()) {
+                            Map<String, List<BullhornData>> bySite = result.get().stream()
+                                .collect(Collectors.groupingBy(bd -> StringUtils.defaultString(bd.getSiteId())));
+                            bySite.forEach((siteId, data) -> {
+                                getAlertExecutor(siteId).execute(() -> {
+                                    try {
+                                        doInsert(from, data, event, ref, e.getEventTime());
+                                    } catch (Exception ex) {
+                                        log.error("Failed to insert bullhorn alerts for event {} on {}", event, ref, ex);
+                                    }
+                                });
                             });
                         }
                     } else if (SiteService.EVENT_SITE_PUBLISH.equals(event)) {
                         final String siteId = pathParts[2];
 
-                        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
-
-                        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
-
-                            protected void doInTransactionWithoutResult(TransactionStatus status) {
-
-                                final List<BullhornAlert> deferredAlerts
-                                    = sessionFactory.getCurrentSession().createCriteria(BullhornAlert.class)
-                                        .add(Restrictions.eq("deferred", true))
-                                        .add(Restrictions.eq("siteId", siteId)).list();
-
-                                for (BullhornAlert da : deferredAlerts) {
-                                    da.setDeferred(false);
-                                    sessionFactory.getCurrentSession().update(da);
-                                }
+                        getAlertExecutor(siteId).execute(() -> {
+                            try {
+                                releaseDeferredAlerts(siteId);
+                            } catch (Exception ex) {
+                                log.error("Failed to release deferred bullhorn alerts for site {}", siteId, ex);
                             }
                         });
                     }
@@ -173,8 +222,28 @@ public class MessagingServiceImpl implements MessagingService, Observer {
         }
     }
 
-    private void doInsert(String from, String to, String event, String ref
-                                            , String title, String siteId, Date eventDate, String url) {
+    private ExecutorService getAlertExecutor(String siteId) {
+        return alertExecutors[Math.floorMod(Objects.hashCode(siteId), alertExecutors.length)];
+    }
+
+    /**
+     * Insert the alerts for one event and one site in a single transaction, batching the inserts, then
+     * notify the recipients once the alerts are committed.
+     */
+    private void doInsert(String from, List<BullhornData> data, String event, String ref, Date eventDate) {
+
+        // All the alerts are for the same site, so work out whether they're deferred just the once
+        String siteId = data.get(0).getSiteId();
+        boolean deferred = false;
+        try {
+            Site site = siteService.getSite(siteId);
+            deferred = !site.isPublished();
+        } catch (IdUnusedException iue) {
+            log.warn("Failed to find site with id {} while setting deferred to published", siteId);
+        }
+        final boolean siteDeferred = deferred;
+
+        List<BullhornAlert> alerts = new ArrayList<>(data.size());
 
         TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
 
@@ -182,23 +251,51 @@ public class MessagingServiceImpl implements MessagingService, Observer {
 
             protected void doInTransactionWithoutResult(TransactionStatus status) {
 
-                BullhornAlert ba = new BullhornAlert();
-                ba.setFromUser(from);
-                ba.setToUser(to);
-                ba.setEvent(event);
-                ba.setRef(ref);
-                ba.setTitle(title);
-                ba.setSiteId(siteId);
-                ba.setEventDate(eventDate.toInstant());
-                ba.setUrl(url);
-                try {
-                    ba.setDeferred(!siteService.getSite(siteId).isPublished());
-                } catch (IdUnusedException iue) {
-                    log.warn("Failed to find site with id {} while setting deferred to published", siteId);
+                Session session = sessionFactory.getCurrentSession();
+                session.setJdbcBatchSize(alertBatchSize);
+
+                for (BullhornData bd : data) {
+                    BullhornAlert ba = new BullhornAlert();
+                    ba.setFromUser(from);
+                    ba.setToUser(bd.getTo());
+                    ba.setEvent(event);
+                    ba.setRef(ref);
+                    ba.setTitle(bd.getTitle());
+                    ba.setSiteId(bd.getSiteId());
+                    ba.setEventDate(eventDate.toInstant());
+                    ba.setUrl(bd.getUrl());
+                    ba.setDeferred(siteDeferred);
+
+                    session.persist(ba);
+                    alerts.add(ba);
+
+                    if (alerts.size() % alertBatchSize == 0) {
+                        session.flush();
+                    }
                 }
+            }
+        });
+
+        alerts.forEach(ba -> send("USER#" + ba.getToUser(), ba));
+    }
 
-                sessionFactory.getCurrentSession().persist(ba);
-                send("USER#" + to, ba);
+    private void releaseDeferredAlerts(String siteId) {
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+
+                final List<BullhornAlert> deferredAlerts
+                    = sessionFactory.getCurrentSession().createCriteria(BullhornAlert.class)
+                        .add(Restrictions.eq("deferred", true))
+                        .add(Restrictions.eq("siteId", siteId)).list();
+
+                for (BullhornAlert da : deferredAlerts) {
+                    da.setDeferred(false);
+                    sessionFactory.getCurrentSession().update(da);
+                }
             }
         });
     }
@@ -252,15 +349,60 @@ public class MessagingServiceImpl implements MessagingService, Observer {
 
     public void listen(String topic, MessageListener listener) {
 
-        messaging.localListen(topic, (nodeId, message) -> {
+        topicListeners.compute(topic, (t, current) -> {
 
-            listener.read(decorateAlert((BullhornAlert) message));
-            return true;
+            if (current == null) {
+                current = new TopicListeners();
+                messaging.localListen(t, current);
+            }
+            current.listeners.add(listener);
+            return current;
+        });
+    }
+
+    public void stopListening(String topic, MessageListener listener) {
+
+        topicListeners.computeIfPresent(topic, (t, current) -> {
+
+            current.listeners.remove(listener);
+            if (current.listeners.isEmpty()) {
+                messaging.stopLocalListen(t, current);
+                return null;
+            }
+            return current;
         });
     }
 
+    /**
+     * @return the number of listeners currently registered on this node
+     */
+    public int getListenerCount() {
+        return topicListeners.values().stream().mapToInt(tl -> tl.listeners.size()).sum();
+    }
+
     public void send(String topic, BullhornAlert ba) {
-        messaging.send(topic, ba);
+
+        // Nodes without a listener for the topic just drop it
+        clusterMessaging.send(topic, ba);
+    }
+
+    private class TopicListeners implements IgniteBiPredicate<UUID, Object> {
+
+        private final Set<MessageListener> listeners = new CopyOnWriteArraySet<>();
+
+        @Override
+        public boolean apply(UUID nodeId, Object message) {
+
+            BullhornAlert alert = decorateAlert((BullhornAlert) message);
+            for (MessageListener listener : listeners) {
+                try {
+                    listener.read(alert);
+                } catch (Exception e) {
+                    log.warn("Bullhorn listener failed to read alert {}: {}", alert.getId(), e.toString());
+                }
+            }
+            return true;
+        }
     }
 
 }
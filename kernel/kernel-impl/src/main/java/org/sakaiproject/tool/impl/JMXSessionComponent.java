@@ -84,6 +84,26 @@ public class JMXSessionComponent {
         return sessionManager.getSessions().size();
     }
 
+    @ManagedAttribute(description="Sessions scheduled to be checked for expiration", currencyTimeLimit=0)
+    public int getExpiryScheduledCount() {
+        return sessionComponent != null ? sessionComponent.getExpiryScheduledCount() : 0;
+    }
+
+    @ManagedAttribute(description="Sessions looked at by the last expiration check", currencyTimeLimit=0)
+    public int getLastCheckCount() {
+        return sessionComponent != null ? sessionComponent.getLastCheckCount() : 0;
+    }
+
+    @ManagedAttribute(description="Sessions invalidated by the last expiration check", currencyTimeLimit=0)
+    public int getLastExpiredCount() {
+        return sessionComponent != null ? sessionComponent.getLastExpiredCount() : 0;
+    }
+
+    @ManagedAttribute(description="How long the last expiration check took (ms)", currencyTimeLimit=0)
+    public long getLastCheckDuration() {
+        return sessionComponent != null ? sessionComponent.getLastCheckDuration() : 0;
+    }
+
     @ManagedAttribute(description="Sessions IDs (will match the cookie value)", currencyTimeLimit=0)
     public List<String> getSessionsIds() {
         List<Session> sessions = sessionManager.getSessions();
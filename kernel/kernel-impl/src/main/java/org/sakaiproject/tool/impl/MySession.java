@@ -231,8 +231,15 @@ public class MySession implements Session, HttpSession, Serializable
 	 */
 	public void setMaxInactiveInterval(int interval)
 	{
+		int previous = m_inactiveInterval;
 		m_inactiveInterval = interval;
 		resetExpirationTimeSuggestion(); // added for KNL-1088
+
+		// a shorter interval can expire the session before it is next due to be checked
+		if ((interval < previous) && (sessionStore instanceof SessionComponent))
+		{
+			((SessionComponent) sessionStore).scheduleExpiry(m_id, expirationTimeSuggestion.longValue());
+		}
 	}
 
 	/**
@@ -27,11 +27,15 @@ import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
@@ -78,6 +82,21 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 	 * to determine if a session is invalid or not.
 	 */
 	protected Map<String,MutableLong> expirationTimeSuggestionMap = new ConcurrentHashMap<String, MutableLong>();
+	/**
+	 * The ids of the sessions to check for expiration, grouped by the second in which they are next due to be checked.
+	 * Marking a session active only moves its expiration time suggestion on; the maintenance thread takes just the seconds
+	 * that have passed, and schedules any session still in use again for when it could next have expired. Ids of
+	 * sessions removed in the meantime are dropped when they come due.
+	 */
+	protected final NavigableMap<Long, Set<String>> m_expirySchedule = new TreeMap<Long, Set<String>>();
+	/** The second each scheduled session is due in, so that scheduling it again moves it rather than adding it twice. */
+	protected final Map<String, Long> m_expirySlots = new HashMap<String, Long>();
+	/** The number of sessions the last maintenance check looked at. */
+	protected volatile int m_lastCheckCount = 0;
+	/** The number of sessions the last maintenance check invalidated. */
+	protected volatile int m_lastExpiredCount = 0;
+	/** How long the last maintenance check took (ms). */
+	protected volatile long m_lastCheckDuration = 0;
 	/** The maintenance. */
 	protected Maintenance m_maintenance = null;
 	/** The set of tool ids that represent tools that can be clustered */
@@ -375,6 +394,7 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 
 		// Place an entry in the expirationTimeSuggestionMap that corresponds to the entry in m_sessions
 		expirationTimeSuggestionMap.put(id, currentTime);
+		scheduleExpiry(id, currentTime.longValue());
 
 		// check for id conflict
 		if (old != null)
@@ -390,6 +410,98 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 		return new MutableLong(System.currentTimeMillis());
 	}
 
+	/**
+	 * Schedule a session to be checked for expiration.
+	 *
+	 * @param sessionId
+	 *        The session id.
+	 * @param expires
+	 *        When to check the session (ms).
+	 */
+	protected void scheduleExpiry(String sessionId, long expires)
+	{
+		Long second = expires / 1000L;
+		synchronized (m_expirySchedule)
+		{
+			Long current = m_expirySlots.put(sessionId, second);
+			if (second.equals(current)) return;
+			if (current != null)
+			{
+				Set<String> ids = m_expirySchedule.get(current);
+				if (ids != null && ids.remove(sessionId) && ids.isEmpty())
+				{
+					m_expirySchedule.remove(current);
+				}
+			}
+
+			Set<String> ids = m_expirySchedule.get(second);
+			if (ids == null)
+			{
+				ids = new HashSet<String>();
+				m_expirySchedule.put(second, ids);
+			}
+			ids.add(sessionId);
+		}
+	}
+
+	/**
+	 * Take the sessions due to be checked for expiration off the schedule.
+	 *
+	 * @param now
+	 *        The current time (ms).
+	 * @return The ids of the sessions scheduled for this second or earlier.
+	 */
+	protected Set<String> takeDueExpiries(long now)
+	{
+		Set<String> due = new LinkedHashSet<String>();
+		synchronized (m_expirySchedule)
+		{
+			NavigableMap<Long, Set<String>> passed = m_expirySchedule.headMap(now / 1000L, true);
+			for (Set<String> ids : passed.values())
+			{
+				due.addAll(ids);
+			}
+			passed.clear();
+			m_expirySlots.keySet().removeAll(due);
+		}
+		return due;
+	}
+
+	/**
+	 * @return The number of sessions scheduled to be checked for expiration.
+	 */
+	public int getExpiryScheduledCount()
+	{
+		synchronized (m_expirySchedule)
+		{
+			return m_expirySlots.size();
+		}
+	}
+
+	/**
+	 * @return The number of sessions the last maintenance check looked at.
+	 */
+	public int getLastCheckCount()
+	{
+		return m_lastCheckCount;
+	}
+
+	/**
+	 * @return The number of sessions the last maintenance check invalidated.
+	 */
+	public int getLastExpiredCount()
+	{
+		return m_lastExpiredCount;
+	}
+
+	/**
+	 * @return How long the last maintenance check took (ms).
+	 */
+	public long getLastCheckDuration()
+	{
+		return m_lastCheckDuration;
+	}
+
 	/**
 	 * @inheritDoc
 	 */
@@ -569,23 +681,22 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 			// startup, wait here for a complete component manager
 			ComponentManager.waitTillConfigured();
 
+			// pick up any sessions put in the store before we were started
+			synchronized (m_expirySchedule)
+			{
+				m_expirySchedule.clear();
+				m_expirySlots.clear();
+			}
+			for (Map.Entry<String, MutableLong> entry : expirationTimeSuggestionMap.entrySet())
+			{
+				scheduleExpiry(entry.getKey(), entry.getValue().longValue());
+			}
+
 			while (!m_maintenanceCheckerStop)
 			{
 				try
 				{
-					for (Map.Entry<String, MutableLong> entry: expirationTimeSuggestionMap.entrySet()) {
-						if (entry.getValue().longValue() < System.currentTimeMillis()) {
-							MySession s = (MySession)m_sessions.get(entry.getKey());
-							if (log.isDebugEnabled()) log.debug("checking session " + s.getId());
-							if (s.isInactive())
-							{
-								if (log.isDebugEnabled()) log.debug("invalidating session " + s.getId());
-								synchronized(s) {
-									s.invalidate();
-								}
-							}
-						}
-					}
+					checkExpired();
 				}
 				catch (Exception e)
 				{
@@ -605,6 +716,71 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 				}
 			}
 		}
+
+		/**
+		 * Check the sessions that have come due, invalidating those that are inactive and scheduling the rest to be checked
+		 * again when they could next have expired.
+		 */
+		protected void checkExpired()
+		{
+			long start = System.currentTimeMillis();
+			int checked = 0;
+			int expired = 0;
+
+			for (String id : takeDueExpiries(start))
+			{
+				try
+				{
+					MutableLong suggestion = expirationTimeSuggestionMap.get(id);
+
+					// already invalidated
+					if (suggestion == null) continue;
+
+					long expires = suggestion.longValue();
+					long now = System.currentTimeMillis();
+					if (expires < now)
+					{
+						MySession s = (MySession) m_sessions.get(id);
+						if (s == null)
+						{
+							expirationTimeSuggestionMap.remove(id);
+							continue;
+						}
+
+						checked++;
+						if (log.isDebugEnabled()) log.debug("checking session " + s.getId());
+						if (s.isInactive())
+						{
+							if (log.isDebugEnabled()) log.debug("invalidating session " + s.getId());
+							synchronized(s) {
+								s.invalidate();
+							}
+							expired++;
+							continue;
+						}
+
+						// used since the suggestion was last moved on, or never expires
+						expires = Math.max(s.getLastAccessedTime() + s.getMaxInactiveInterval() * 1000L, now + m_checkEvery * 1000L);
+					}
+
+					scheduleExpiry(id, expires);
+				}
+				catch (Exception e)
+				{
+					log.warn("checkExpired(): session: " + id + " exception: " + e);
+					scheduleExpiry(id, System.currentTimeMillis() + m_checkEvery * 1000L);
+				}
+			}
+
+			m_lastCheckCount = checked;
+			m_lastExpiredCount = expired;
+			m_lastCheckDuration = System.currentTimeMillis() - start;
+			if (log.isDebugEnabled())
+			{
+				log.debug("checkExpired(): sessions: " + m_sessions.size() + " scheduled: " + getExpiryScheduledCount() + " checked: " + checked
+						+ " expired: " + expired + " in: " + m_lastCheckDuration + "ms");
+			}
+		}
 	}
 
 }
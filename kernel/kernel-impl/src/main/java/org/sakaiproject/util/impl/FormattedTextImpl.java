@@ -31,7 +31,11 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.IntStream;
@@ -46,6 +50,7 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.apache.commons.validator.routines.UrlValidator;
@@ -68,6 +73,9 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -89,6 +97,22 @@ public class FormattedTextImpl implements FormattedText
      */
     private AntiSamy antiSamyLow = null;
 
+    /**
+     * Scan results by level and content hash, so content that has not changed since it was last cleaned is not scanned again
+     */
+    private Cache<String, ScanResult> scanCache = null;
+    private int scanCacheSize = 1000;
+    private int scanCacheMaxLength = 100000;
+    /**
+     * Content at least this long is scanned with the streaming SAX scanner rather than building a DOM (0 to always use the DOM)
+     */
+    private int saxScanThreshold = 200000;
+
+    private final LongAdder scanCount = new LongAdder();
+    private final LongAdder scanCacheHitCount = new LongAdder();
+    private final LongAdder plainTextCount = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+
     /* KNL-1075 - content.cleaner.errors.handling = none|logged|return|notify|display
      * - none - errors are completely ignored and not even stored at all
      * - logged - errors are output in the logs only
@@ -154,7 +178,15 @@ public class FormattedTextImpl implements FormattedText
                     "; details to user=" + showDetailedErrorToUser);
 
             referrerPolicy = serverConfigurationService.getString(SAK_PROP_REFERRER_POLICY, SAKAI_REFERRER_POLICY_DEFAULT);
+
+            scanCacheSize = serverConfigurationService.getInt("content.cleaner.cache.size", scanCacheSize);
+            scanCacheMaxLength = serverConfigurationService.getInt("content.cleaner.cache.max.length", scanCacheMaxLength);
+            saxScanThreshold = serverConfigurationService.getInt("content.cleaner.sax.threshold", saxScanThreshold);
+        }
+        if (scanCacheSize > 0) {
+            scanCache = CacheBuilder.newBuilder().maximumSize(scanCacheSize).build();
         }
+        log.info("FormattedText scan cache size: {}, max length: {}; SAX scan threshold: {}", scanCacheSize, scanCacheMaxLength, saxScanThreshold);
         if (useLegacy) {
             log.error(
                      "**************************************************\n"
@@ -400,6 +432,104 @@ public class FormattedTextImpl implements FormattedText
                 replaceWhitespaceTags, useLegacySakaiCleaner);
     }
 
+    /**
+     * Clean the html with the antisamy scanner for the level. Plain text, with no markup or characters the scanner would encode, is
+     * returned as it is; content cleaned before is returned from the cache; very large content is scanned with the SAX scanner.
+     */
+    private ScanResult scan(AntiSamy as, Level level, String html) throws ScanException, PolicyException {
+        long start = System.nanoTime();
+        String how;
+        ScanResult result = null;
+        if (isPlainText(html)) {
+            how = "plain text";
+            result = new ScanResult(html, Collections.<String>emptyList());
+            plainTextCount.increment();
+        } else {
+            String key = null;
+            if (scanCache != null && html.length() <= scanCacheMaxLength) {
+                key = level + ":" + DigestUtils.sha256Hex(html);
+                result = scanCache.getIfPresent(key);
+            }
+            if (result != null) {
+                how = "cached";
+                scanCacheHitCount.increment();
+            } else {
+                boolean sax = saxScanThreshold > 0 && html.length() >= saxScanThreshold;
+                how = sax ? "sax" : "dom";
+                CleanResults cr = sax ? as.scan(html, AntiSamy.SAX) : as.scan(html);
+                result = new ScanResult(cr.getCleanHTML(), new ArrayList<>(cr.getErrorMessages()));
+                scanCount.increment();
+                if (key != null) {
+                    scanCache.put(key, result);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        scanNanos.add(elapsed);
+        log.debug("scan: {} chars, {}, {}us", html.length(), how, elapsed / 1000);
+        return result;
+    }
+
+    /**
+     * @return true if the text has no markup, entities, quotes or characters outside printable ASCII, and does not start or end with
+     * whitespace, so scanning it would leave it as it is
+     */
+    static boolean isPlainText(String text) {
+        int length = text.length();
+        if (length == 0 || Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(length - 1))) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\t') continue;
+            if (c < ' ' || c > '~' || c == '<' || c == '>' || c == '&' || c == '"' || c == '\'') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of times content has been scanned by antisamy
+     */
+    public long getScanCount() {
+        return scanCount.sum();
+    }
+
+    /**
+     * @return the number of times a scan result has been found in the cache
+     */
+    public long getScanCacheHitCount() {
+        return scanCacheHitCount.sum();
+    }
+
+    /**
+     * @return the number of times plain text has skipped the scan
+     */
+    public long getPlainTextCount() {
+        return plainTextCount.sum();
+    }
+
+    /**
+     * @return the total time spent cleaning content, in milliseconds
+     */
+    public long getScanTime() {
+        return scanNanos.sum() / 1000000;
+    }
+
+    /**
+     * The clean html and error messages from a scan
+     */
+    private static class ScanResult {
+        private final String cleanHtml;
+        private final List<String> errorMessages;
+
+        private ScanResult(String cleanHtml, List<String> errorMessages) {
+            this.cleanHtml = cleanHtml;
+            this.errorMessages = errorMessages;
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.sakaiproject.utils.impl.FormattedText#processHtmlDocument(java.lang.String, java.lang.StringBuilder)
      */
@@ -459,15 +589,15 @@ public class FormattedTextImpl implements FormattedText
                     as = antiSamyLow;
                 }
                 try {
-                    CleanResults cr = as.scan(val);
-                    if (cr.getNumberOfErrors() > 0) {
+                    ScanResult cr = scan(as, level, val);
+                    if (!cr.errorMessages.isEmpty()) {
                         // TODO currently no way to get internationalized versions of error messages
-                        for (String errorMsg : cr.getErrorMessages()) {
+                        for (String errorMsg : cr.errorMessages) {
                             String i18nErrorMsg = new String(errorMsg.getBytes("ISO-8859-1"),"UTF8");
                             formattedTextErrors.append(i18nErrorMsg + "<br/>");
                         }
                     }
-                    val = cr.getCleanHTML();
+                    val = cr.cleanHtml;
 
                     // now replace all the A tags WITHOUT a target with _blank (to match the old functionality)
                     if (addBlankTargetToLinks() && StringUtils.isNotBlank(val)) {
@@ -0,0 +1,20 @@
+-----------------------------------------------------------------------------
+-- SAKAI_MAIL_QUEUE
+-----------------------------------------------------------------------------
+
+CREATE TABLE SAKAI_MAIL_QUEUE
+(
+    MESSAGE_ID VARCHAR (36) NOT NULL,
+    CONTENT LONGVARBINARY,
+    RECIPIENTS LONGVARCHAR,
+    ATTEMPTS INT NOT NULL,
+    DUE_AT BIGINT NOT NULL,
+    CLAIMED_BY VARCHAR (255),
+    LEASE_UNTIL BIGINT NOT NULL,
+    CONSTRAINT SAKAI_MAIL_QUEUE_INDEX UNIQUE (MESSAGE_ID)
+);
+
+CREATE INDEX SAKAI_MAIL_QUEUE_LEASE ON SAKAI_MAIL_QUEUE
+(
+	LEASE_UNTIL
+);
@@ -0,0 +1,24 @@
+-----------------------------------------------------------------------------
+-- SAKAI_MAIL_QUEUE
+-----------------------------------------------------------------------------
+
+CREATE TABLE SAKAI_MAIL_QUEUE
+(
+    MESSAGE_ID VARCHAR2 (36) NOT NULL,
+    CONTENT BLOB,
+    RECIPIENTS CLOB,
+    ATTEMPTS NUMBER(10) NOT NULL,
+    DUE_AT NUMBER(20) NOT NULL,
+    CLAIMED_BY VARCHAR2 (255),
+    LEASE_UNTIL NUMBER(20) NOT NULL
+);
+
+CREATE UNIQUE INDEX SAKAI_MAIL_QUEUE_INDEX ON SAKAI_MAIL_QUEUE
+(
+	MESSAGE_ID
+);
+
+CREATE INDEX SAKAI_MAIL_QUEUE_LEASE ON SAKAI_MAIL_QUEUE
+(
+	LEASE_UNTIL
+);
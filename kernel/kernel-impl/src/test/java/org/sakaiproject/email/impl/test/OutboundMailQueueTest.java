@@ -0,0 +1,317 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.email.impl.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Address;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.apache.commons.io.IOUtils;
+import org.subethamail.wiser.Wiser;
+
+import org.sakaiproject.db.api.SqlService;
+import org.sakaiproject.email.impl.DbOutboundMailStore;
+import org.sakaiproject.email.impl.OutboundMailQueue;
+
+public class OutboundMailQueueTest
+{
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	private String url;
+	private Wiser wiser;
+	private Session session;
+	private OutboundMailQueue queue;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		int port;
+		try (ServerSocket socket = new ServerSocket(0))
+		{
+			port = socket.getLocalPort();
+		}
+
+		Properties props = new Properties();
+		props.put("mail.smtp.host", "localhost");
+		props.put("mail.smtp.port", Integer.toString(port));
+		props.put("mail.smtp.connectiontimeout", "2000");
+		props.put("mail.smtp.timeout", "2000");
+		session = Session.getInstance(props);
+
+		wiser = Wiser.port(port);
+		url = "jdbc:hsqldb:mem:mailqueue" + DATABASES.incrementAndGet();
+	}
+
+	@After
+	public void tearDown()
+	{
+		if (queue != null) queue.stop(5000);
+		if (wiser.getServer().isRunning()) wiser.stop();
+	}
+
+	@Test
+	public void testDeliversEveryRecipientSet() throws Exception
+	{
+		wiser.start();
+		queue = new OutboundMailQueue(session, this::connect, 1, 3, 100, false);
+		queue.start();
+
+		List<Address[]> recipientSets = new ArrayList<>();
+		recipientSets.add(InternetAddress.parse("one@example.com, two@example.com"));
+		recipientSets.add(InternetAddress.parse("three@example.com"));
+		Assert.assertTrue(queue.add(message("Queued"), recipientSets));
+
+		waitFor(() -> queue.getSentCount() == 2 && queue.getQueueDepth() == 0);
+
+		Assert.assertEquals(3, wiser.getMessages().size());
+		Assert.assertEquals("Queued", wiser.getMessages().get(0).getMimeMessage().getSubject());
+		Assert.assertEquals(2, queue.getSentCount());
+		Assert.assertEquals(0, queue.getFailedCount());
+		Assert.assertEquals(0, queue.getQueueDepth());
+	}
+
+	@Test
+	public void testRetriesUntilServerIsAvailable() throws Exception
+	{
+		// the server isn't listening yet, so the first attempt fails
+		queue = new OutboundMailQueue(session, this::connect, 1, 5, 200, false);
+		queue.start();
+
+		List<Address[]> recipientSets = new ArrayList<>();
+		recipientSets.add(InternetAddress.parse("retry@example.com"));
+		Assert.assertTrue(queue.add(message("Retried"), recipientSets));
+
+		waitFor(() -> queue.getRetryCount() > 0);
+		wiser.start();
+		waitFor(() -> queue.getSentCount() == 1);
+
+		Assert.assertEquals(1, wiser.getMessages().size());
+		Assert.assertEquals(1, queue.getSentCount());
+		Assert.assertEquals(0, queue.getFailedCount());
+	}
+
+	@Test
+	public void testGivesUpAfterMaxAttempts() throws Exception
+	{
+		queue = new OutboundMailQueue(session, this::connect, 1, 2, 50, false);
+		queue.start();
+
+		List<Address[]> recipientSets = new ArrayList<>();
+		recipientSets.add(InternetAddress.parse("nobody@example.com"));
+		Assert.assertTrue(queue.add(message("Undeliverable"), recipientSets));
+
+		waitFor(() -> queue.getFailedCount() == 1);
+
+		Assert.assertEquals(1, queue.getFailedCount());
+		Assert.assertEquals(1, queue.getRetryCount());
+		Assert.assertEquals(0, queue.getSentCount());
+	}
+
+	@Test
+	public void testNotQueuedWhenStopped() throws Exception
+	{
+		queue = new OutboundMailQueue(session, this::connect, 1, 1, 0, false);
+
+		List<Address[]> recipientSets = new ArrayList<>();
+		recipientSets.add(InternetAddress.parse("stopped@example.com"));
+		Assert.assertFalse(queue.add(message("Stopped"), recipientSets));
+	}
+
+	@Test
+	public void testDeliveredMessagesRemovedFromStore() throws Exception
+	{
+		createTable();
+		wiser.start();
+		queue = new OutboundMailQueue(session, this::connect, 1, 3, 100, false, store("server1"), 60000);
+		queue.start();
+
+		List<Address[]> recipientSets = new ArrayList<>();
+		recipientSets.add(InternetAddress.parse("stored@example.com"));
+		Assert.assertTrue(queue.add(message("Stored"), recipientSets));
+
+		waitFor(() -> queue.getSentCount() == 1 && storedCount() == 0);
+
+		Assert.assertEquals(1, wiser.getMessages().size());
+		Assert.assertEquals(0, storedCount());
+	}
+
+	@Test
+	public void testStoredMessagesDeliveredOnRestart() throws Exception
+	{
+		// the server isn't listening, and the retry isn't due before the queue is stopped
+		createTable();
+		queue = new OutboundMailQueue(session, this::connect, 1, 5, 60000, false, store("server1"), 60000);
+		queue.start();
+
+		List<Address[]> recipientSets = new ArrayList<>();
+		recipientSets.add(InternetAddress.parse("one@example.com, \"Two, Person\" <two@example.com>"));
+		recipientSets.add(InternetAddress.parse("three@example.com"));
+		Assert.assertTrue(queue.add(message("Restarted"), recipientSets));
+
+		waitFor(() -> queue.getRetryCount() > 0);
+		queue.stop(5000);
+		Assert.assertEquals(1, storedCount());
+
+		wiser.start();
+		queue = new OutboundMailQueue(session, this::connect, 1, 5, 60000, false, store("server1"), 60000);
+		queue.start();
+		waitFor(() -> queue.getSentCount() == 2 && storedCount() == 0);
+
+		Assert.assertEquals(3, wiser.getMessages().size());
+		Assert.assertEquals("Restarted", wiser.getMessages().get(0).getMimeMessage().getSubject());
+		Assert.assertTrue(wiser.getMessages().stream().anyMatch(m -> "two@example.com".equals(m.getEnvelopeReceiver())));
+		Assert.assertEquals(0, storedCount());
+	}
+
+	@Test
+	public void testMessagesOfAnotherServerDeliveredOnceTheirLeaseRunsOut() throws Exception
+	{
+		createTable();
+		DbOutboundMailStore otherServer = store("server2");
+		long now = System.currentTimeMillis();
+		otherServer.insert("expired", content("Expired"), "expired@example.com\n\n", now, now - 1000);
+		otherServer.insert("held", content("Held"), "held@example.com\n\n", now, now + 60000);
+
+		wiser.start();
+		queue = new OutboundMailQueue(session, this::connect, 1, 3, 100, false, store("server1"), 60000);
+		queue.start();
+		waitFor(() -> queue.getSentCount() == 1 && storedCount() == 1);
+
+		Assert.assertEquals(1, wiser.getMessages().size());
+		Assert.assertEquals("expired@example.com", wiser.getMessages().get(0).getEnvelopeReceiver());
+		Assert.assertEquals(1, storedCount());
+
+		// the lease of the other server is renewed, so the held message is not claimed again
+		Assert.assertTrue(otherServer.renew("held", now + 60000));
+		Assert.assertFalse(otherServer.renew("expired", now + 60000));
+	}
+
+	@Test
+	public void testNotStartedWithoutTable() throws Exception
+	{
+		queue = new OutboundMailQueue(session, this::connect, 1, 1, 0, false, store("server1"), 60000);
+		queue.start();
+
+		List<Address[]> recipientSets = new ArrayList<>();
+		recipientSets.add(InternetAddress.parse("unstored@example.com"));
+		Assert.assertFalse(queue.isRunning());
+		Assert.assertFalse(queue.add(message("Unstored"), recipientSets));
+	}
+
+	private Transport connect() throws javax.mail.MessagingException
+	{
+		Transport transport = session.getTransport("smtp");
+		transport.connect();
+		return transport;
+	}
+
+	/**
+	 * A store on the test database, as the server with the given id.
+	 */
+	private DbOutboundMailStore store(String serverId) throws Exception
+	{
+		SqlService sqlService = Mockito.mock(SqlService.class);
+		Mockito.when(sqlService.borrowConnection()).thenAnswer(invocation -> {
+			Connection conn = DriverManager.getConnection(url, "sa", "");
+			conn.setAutoCommit(false);
+			return conn;
+		});
+		Mockito.doAnswer(invocation -> {
+			((Connection) invocation.getArgument(0)).close();
+			return null;
+		}).when(sqlService).returnConnection(Mockito.any(Connection.class));
+		return new DbOutboundMailStore(sqlService, serverId);
+	}
+
+	private void createTable() throws Exception
+	{
+		String ddl;
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream("hsqldb/sakai_mail_queue.sql"))
+		{
+			ddl = new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8);
+		}
+		try (Connection conn = DriverManager.getConnection(url, "sa", ""); Statement statement = conn.createStatement())
+		{
+			for (String sql : ddl.replaceAll("(?m)^--.*$", "").split(";"))
+			{
+				if (!sql.trim().isEmpty()) statement.execute(sql);
+			}
+		}
+	}
+
+	private int storedCount() throws Exception
+	{
+		try (Connection conn = DriverManager.getConnection(url, "sa", "");
+				Statement statement = conn.createStatement();
+				ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM SAKAI_MAIL_QUEUE"))
+		{
+			result.next();
+			return result.getInt(1);
+		}
+	}
+
+	private byte[] content(String subject) throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		message(subject).writeTo(out);
+		return out.toByteArray();
+	}
+
+	private MimeMessage message(String subject) throws Exception
+	{
+		MimeMessage msg = new MimeMessage(session);
+		msg.setFrom(new InternetAddress("from@example.com"));
+		msg.setSubject(subject);
+		msg.setText("Queued test content");
+		msg.saveChanges();
+		return msg;
+	}
+
+	private void waitFor(Condition condition) throws Exception
+	{
+		long until = System.currentTimeMillis() + 10000;
+		while (!condition.met() && System.currentTimeMillis() < until)
+		{
+			Thread.sleep(50);
+		}
+	}
+
+	private interface Condition
+	{
+		boolean met() throws Exception;
+	}
+}
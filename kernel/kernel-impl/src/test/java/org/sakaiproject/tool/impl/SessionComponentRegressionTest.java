@@ -535,7 +535,49 @@ public class SessionComponentRegressionTest extends BaseSessionComponentTest {
 			fail("Took too long for the Session.invalidate() to complete");
 		}
 	}
-	
+
+	/**
+	 * Verifies that an expiration check only looks at the sessions that
+	 * have come due, and leaves the others scheduled.
+	 */
+	public void testExpirationCheckSkipsSessionsNotYetDue() {
+		startSessionForUser();
+		startSessionForUser();
+		sessionComponent.new Maintenance().checkExpired();
+		assertEquals(0, sessionComponent.getLastCheckCount());
+		assertEquals(0, sessionComponent.getLastExpiredCount());
+		assertEquals(2, sessionComponent.getExpiryScheduledCount());
+	}
+
+	/**
+	 * Verifies that shortening a session's inactive interval brings its
+	 * expiration check forward, rather than leaving it scheduled for when
+	 * the longer interval would have run out.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void testShortenedInactiveIntervalIsCheckedWhenDue() throws InterruptedException {
+		Session session = startSessionAndExpectItsExpiration();
+		String id = session.getId();
+		session.setMaxInactiveInterval(1);
+		Thread.sleep(2100L); // ensure the shortened interval elapses
+		sessionComponent.new Maintenance().checkExpired();
+		assertEquals(1, sessionComponent.getLastExpiredCount());
+		assertNull(sessionComponent.getSession(id));
+	}
+
+	/**
+	 * Verifies that shortening a session's inactive interval again and again
+	 * moves its expiration check, rather than scheduling it once more each time.
+	 */
+	public void testShortenedInactiveIntervalIsScheduledOnce() {
+		Session session = startSessionForUser();
+		session.setMaxInactiveInterval(300);
+		session.setMaxInactiveInterval(200);
+		session.setMaxInactiveInterval(100);
+		assertEquals(1, sessionComponent.getExpiryScheduledCount());
+	}
+
 	/**
 	 * Tests that sessions can be created while a maintenance sweep is in
 	 * progress. Read on for implementation notes.
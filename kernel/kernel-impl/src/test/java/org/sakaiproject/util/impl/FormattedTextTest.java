@@ -1258,4 +1258,36 @@ public class FormattedTextTest {
     	Assert.assertFalse(result.contains("<html>"));
     }
 
+    @Test
+    public void testPlainTextSkipsScan() {
+        StringBuilder errorMessages = new StringBuilder();
+        String text = "Plain text, with no markup at all.\nSecond line";
+        Assert.assertEquals(text, formattedText.processFormattedText(text, errorMessages));
+        Assert.assertEquals(0, errorMessages.length());
+        Assert.assertEquals(0, formattedText.getScanCount());
+        Assert.assertEquals(1, formattedText.getPlainTextCount());
+
+        Assert.assertTrue(FormattedTextImpl.isPlainText("Nothing to clean here"));
+        Assert.assertFalse(FormattedTextImpl.isPlainText("5 < 6"));
+        Assert.assertFalse(FormattedTextImpl.isPlainText("Fish & chips"));
+        Assert.assertFalse(FormattedTextImpl.isPlainText("caf\u00e9"));
+        Assert.assertFalse(FormattedTextImpl.isPlainText(" leading space"));
+    }
+
+    @Test
+    public void testUnchangedContentIsScannedOnce() {
+        String html = "<p><b>bold</b><script>alert('evil')</script></p>";
+        StringBuilder errorMessages = new StringBuilder();
+        String first = formattedText.processFormattedText(html, errorMessages);
+        Assert.assertTrue(errorMessages.length() > 0);
+        Assert.assertFalse(first.contains("<script"));
+
+        errorMessages = new StringBuilder();
+        String second = formattedText.processFormattedText(html, errorMessages);
+        Assert.assertEquals(first, second);
+        Assert.assertTrue(errorMessages.length() > 0);
+        Assert.assertEquals(1, formattedText.getScanCount());
+        Assert.assertEquals(1, formattedText.getScanCacheHitCount());
+    }
+
 }
@@ -125,6 +125,9 @@ public class BaseDbDoubleStorage
 	/** If true, we do our locks in the remove database using a separate locking table. */
 	protected boolean m_locksAreInTable = true;
 
+	/** If true, containers and resources are written in {@link CompactXml} form rather than as XML. */
+	protected boolean m_compactXml = false;
+
 	/** The StorageUser to callback for new Resource and Edit objects. */
 	protected DoubleStorageUser m_user = null;
 
@@ -407,7 +410,7 @@ public class BaseDbDoubleStorage
 		// form the XML and SQL for the insert
 		Document doc = StorageUtils.createDocument();
 		entry.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		String xml = writeDocument(doc);
 
 		String statement = doubleStorageSql.getInsertSql(m_containerTableName, insertFields(m_containerTableIdField, null, M_containerExtraFields,
 				"XML"));
@@ -536,7 +539,7 @@ public class BaseDbDoubleStorage
 		// form the SQL statement and the var w/ the XML
 		Document doc = StorageUtils.createDocument();
 		edit.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		String xml = writeDocument(doc);
 		String statement = doubleStorageSql.getUpdateSql(m_containerTableName, m_containerTableIdField);
 		Object[] fields = new Object[2];
 		fields[0] = xml;
@@ -745,6 +748,30 @@ public class BaseDbDoubleStorage
 		}
 	}
 
+	/**
+	 * Configure whether containers and resources are written in {@link CompactXml} form rather than as XML. Either
+	 * form is read regardless, so this can be changed at any time.
+	 * 
+	 * @param compactXml
+	 *        true to write the compact form.
+	 */
+	public void setCompactXml(boolean compactXml)
+	{
+		m_compactXml = compactXml;
+	}
+
+	/**
+	 * Form the text stored for a container or resource.
+	 * 
+	 * @param doc
+	 *        The document describing it.
+	 * @return The document as XML, or in {@link CompactXml} form if configured.
+	 */
+	protected String writeDocument(Document doc)
+	{
+		return m_compactXml ? CompactXml.write(doc) : StorageUtils.writeDocumentToString(doc);
+	}
+
 	/**
 	 * Check if a Resource by this id exists.
 	 * 
@@ -1154,7 +1181,7 @@ public class BaseDbDoubleStorage
 		// form the XML and SQL for the insert
 		Document doc = StorageUtils.createDocument();
 		entry.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		String xml = writeDocument(doc);
 
 		String statement = doubleStorageSql.getInsertSql3(m_resourceTableName, insertFields(m_containerTableIdField, m_resourceTableIdField,
 				m_resourceTableOtherFields, "XML"), valuesParams(m_resourceTableOtherFields));
@@ -1295,7 +1322,7 @@ public class BaseDbDoubleStorage
 		// form the SQL statement and the var w/ the XML
 		Document doc = StorageUtils.createDocument();
 		edit.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		String xml = writeDocument(doc);
 		String statement = doubleStorageSql.getUpdate2Sql(m_resourceTableName, m_resourceTableIdField, m_resourceTableContainerIdField,
 				updateSet(m_resourceTableOtherFields));
 
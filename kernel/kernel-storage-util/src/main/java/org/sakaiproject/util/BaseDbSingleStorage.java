@@ -84,6 +84,9 @@ public class BaseDbSingleStorage implements DbSingleStorage
 	/** If true, we do our locks in the remove database using a separate locking table. */
 	protected boolean m_locksAreInTable = true;
 
+	/** If true, resources are written in {@link CompactXml} form rather than as XML. */
+	protected boolean m_compactXml = false;
+
 	/** The StorageUser to callback for new Resource and Edit objects. */
 	protected SingleStorageUser m_user = null;
 
@@ -223,6 +226,30 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		m_locks = null;
 	}
 
+	/**
+	 * Configure whether resources are written in {@link CompactXml} form rather than as XML. Either form is read
+	 * regardless, so this can be changed at any time.
+	 *
+	 * @param compactXml
+	 *        true to write the compact form.
+	 */
+	public void setCompactXml(boolean compactXml)
+	{
+		m_compactXml = compactXml;
+	}
+
+	/**
+	 * Form the text stored for a resource.
+	 *
+	 * @param doc
+	 *        The document describing it.
+	 * @return The document as XML, or in {@link CompactXml} form if configured.
+	 */
+	protected String writeDocument(Document doc)
+	{
+		return m_compactXml ? CompactXml.write(doc) : StorageUtils.writeDocumentToString(doc);
+	}
+
 	/**
 	 * Read one Resource from xml
 	 * 
@@ -578,7 +605,7 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		// form the XML and SQL for the insert
 		Document doc = StorageUtils.createDocument();
 		entry.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		String xml = writeDocument(doc);
 		String statement = // singleStorageSql.
 		"insert into " + m_resourceTableName + insertFields(m_resourceTableIdField, m_resourceTableOtherFields, "XML") + " values ( ?, "
 				+ valuesParams(m_resourceTableOtherFields) + " ? )";
@@ -627,7 +654,7 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		// form the XML and SQL for the insert
 		Document doc = StorageUtils.createDocument();
 		entry.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		String xml = writeDocument(doc);
 		String statement = "insert into " + m_resourceTableName
 				+ insertDeleteFields(m_resourceTableIdField, m_resourceTableOtherFields, "RESOURCE_UUID", "DELETE_DATE", "DELETE_USERID", "XML")
 				+ " values ( ?, " + valuesParams(m_resourceTableOtherFields) + " ? ,? ,? ,?)";
@@ -697,7 +724,7 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		// form the SQL statement and the var w/ the XML
 		Document doc = StorageUtils.createDocument();
 		edit.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		String xml = writeDocument(doc);
 		Object[] flds = m_user.storageFields(edit);
 		if (flds == null) flds = new Object[0];
 		Object[] fields = new Object[flds.length + 2];
@@ -850,7 +877,7 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		// form the SQL statement and the var w/ the XML
 		Document doc = StorageUtils.createDocument();
 		edit.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		String xml = writeDocument(doc);
 		Object[] flds = m_user.storageFields(edit);
 		if (flds == null) flds = new Object[0];
 		Object[] fields = new Object[flds.length + 2];
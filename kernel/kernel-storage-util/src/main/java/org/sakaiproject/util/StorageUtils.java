@@ -149,11 +149,13 @@ public class StorageUtils {
 	 * Read a DOM Document from xml in a string.
 	 * 
 	 * @param in
-	 *        The string containing the XML
+	 *        The string containing the XML, or the document in {@link CompactXml} form
 	 * @return A new DOM Document with the xml contents.
 	 */
 	public static Document readDocumentFromString(String in)
 	{
+		if (CompactXml.isCompact(in)) return CompactXml.read(in);
+
 		try
 		{
 			DocumentBuilder docBuilder = dbFactory.newDocumentBuilder();
@@ -169,13 +171,17 @@ public class StorageUtils {
 	}
 
 	/**
-	 * Process a string of XML using SAX and a default handler
+	 * Process a string of XML, or a document in {@link CompactXml} form, using SAX and a default handler
 	 * @param in
 	 * @param dh
 	 * @throws SAXException
 	 * @throws IOException
 	 */
 	public static void processString( String in, DefaultHandler dh ) throws SAXException, IOException {
+		if (CompactXml.isCompact(in)) {
+			CompactXml.process(in, dh);
+			return;
+		}
 		Reader r = new StringReader(in);
 		processReader(r,dh);
 		r.close();
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util.conversion;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.w3c.dom.Document;
+
+import org.sakaiproject.util.CompactXml;
+import org.sakaiproject.util.Xml;
+
+/**
+ * Converts the XML stored for an entity to the {@link CompactXml} form, in place, for the storages that read either.
+ * The record selected is the XML column, read for update so that it can't change before it is converted, and the update
+ * sets the XML column (1) for the id (2). Records already in the compact form are left as they are.
+ */
+@Slf4j
+public class CompactXmlConversionHandler implements SchemaConversionHandler
+{
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#getSource(java.lang.String, java.sql.ResultSet)
+	 */
+	public Object getSource(String id, ResultSet rs) throws SQLException
+	{
+		String xml = rs.getString(1);
+		if (xml == null || CompactXml.isCompact(xml)) return null;
+		return xml;
+	}
+
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#convertSource(java.lang.String, java.lang.Object, java.sql.PreparedStatement)
+	 */
+	public boolean convertSource(String id, Object source, PreparedStatement updateRecord) throws SQLException
+	{
+		Document doc = Xml.readDocumentFromString((String) source);
+		if (doc == null)
+		{
+			log.warn("Failed to parse {}", id);
+			return false;
+		}
+
+		String compact = CompactXml.write(doc);
+		Document check = CompactXml.read(compact, id);
+		if (!same(doc, check))
+		{
+			log.warn("Compact form of {} doesn't match its XML", id);
+			return false;
+		}
+
+		updateRecord.setString(1, compact);
+		updateRecord.setString(2, id);
+		return true;
+	}
+
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#validate(java.lang.String, java.lang.Object, java.lang.Object)
+	 */
+	public void validate(String id, Object source, Object result) throws Exception
+	{
+		Document sourceDoc = Xml.readDocumentFromString((String) source);
+		Document resultDoc = CompactXml.isCompact((String) result) ? CompactXml.read((String) result, id) : null;
+		if (!same(sourceDoc, resultDoc))
+		{
+			throw new Exception("Validation failed for " + id);
+		}
+	}
+
+	/**
+	 * The documents are the same if they are written out the same.
+	 */
+	private boolean same(Document doc, Document other)
+	{
+		if (doc == null || other == null) return false;
+		String xml = Xml.writeDocumentToString(doc);
+		return xml != null && xml.equals(Xml.writeDocumentToString(other));
+	}
+
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#getValidateSource(java.lang.String, java.sql.ResultSet)
+	 */
+	public Object getValidateSource(String id, ResultSet rs) throws SQLException
+	{
+		return rs.getString(1);
+	}
+}
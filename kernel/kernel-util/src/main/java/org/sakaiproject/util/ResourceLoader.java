@@ -23,6 +23,7 @@ package org.sakaiproject.util;
 
 import java.text.MessageFormat;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Locale;
@@ -41,6 +42,7 @@ import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.i18n.InternationalizedMessages;
 import org.sakaiproject.messagebundle.api.MessageBundleService;
 import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
 import org.sakaiproject.tool.api.SessionManager;
 import org.sakaiproject.user.api.PreferencesService;
 
@@ -69,6 +71,15 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
     // cached set of ResourceBundle objects
 	protected ConcurrentHashMap<Locale, ResourceBundle> bundles = new ConcurrentHashMap<Locale, ResourceBundle>();
 
+	/** The bundles merged with their overrides from the db, by locale and then context. Each is replaced whole when its overrides change. */
+	protected ConcurrentHashMap<Locale, ConcurrentHashMap<String, MessageTable>> messageTables = new ConcurrentHashMap<Locale, ConcurrentHashMap<String, MessageTable>>();
+
+	/** How long a message table is used before checking whether its overrides in the db have changed (ms). */
+	protected static final long MESSAGE_TABLE_CHECK_INTERVAL = 10000L;
+
+	/** Key in the ThreadLocalManager for the locale resolved for the current session in this request. */
+	protected static final String REQUEST_LOCALE_KEY = "org.sakaiproject.util.ResourceLoader.locale";
+
 	// current user id
 	protected String userId = null;
     public String getUserId() {
@@ -85,7 +96,7 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 
 	private final static Object LOCK = new Object();
 
-	private static SessionManager sessionManager;
+	private static volatile SessionManager sessionManager;
 	protected SessionManager getSessionManager() {
         if (sessionManager == null) {
             synchronized (LOCK) {
@@ -95,7 +106,7 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
         return sessionManager;
 	}
 
-	private static PreferencesService preferencesService;
+	private static volatile PreferencesService preferencesService;
 	protected PreferencesService getPreferencesService() {
 	    if (preferencesService == null) {
 	        synchronized (LOCK) {
@@ -105,7 +116,7 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 	    return preferencesService;
 	}
 	
-	private static MessageBundleService messageBundleService;
+	private static volatile MessageBundleService messageBundleService;
     protected MessageBundleService getMessageBundleService() {
         if (messageBundleService == null) {
             synchronized (LOCK) {
@@ -115,7 +126,7 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
         return messageBundleService;
     }
 
-    private static ThreadLocalManager threadLocalManager;
+    private static volatile ThreadLocalManager threadLocalManager;
     protected static ThreadLocalManager getThreadLocalManager() {
         if (threadLocalManager == null) {
             synchronized (LOCK) {
@@ -320,13 +331,22 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 	    if ( this.userId != null ) {
 	        loc = getLocale( this.userId );
 	    } else {
+	        String sessionId = null;
 	        try {
 	        	
 	        	//get current sessionId to use as the key.
 	        	//this allows the anon user to also have locale settings 
-	        	String sessionId = getSessionManager().getCurrentSession().getId();
-	        	log.debug("Retrieving locale for sessionId: " + sessionId);
-	            loc = (Locale) getSessionManager().getCurrentSession().getAttribute(LOCALE_SESSION_KEY+sessionId);
+	        	Session session = getSessionManager().getCurrentSession();
+	        	sessionId = session.getId();
+
+	        	// already resolved for this session in this request
+	        	RequestLocale resolved = getRequestLocale();
+	        	if (resolved != null && resolved.sessionId.equals(sessionId)) {
+	        	    return resolved.locale;
+	        	}
+
+	        	log.debug("Retrieving locale for sessionId: {}", sessionId);
+	            loc = (Locale) session.getAttribute(LOCALE_SESSION_KEY+sessionId);
 	        
 	        } catch (NullPointerException e) {
                 loc = null;
@@ -338,6 +358,8 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
             // The locale is not in the session at all, so set in session
             if (loc == null) {
                 loc = setContextLocale(null);
+            } else if (sessionId != null) {
+                setRequestLocale(sessionId, loc);
             }
 	    }
 
@@ -346,7 +368,7 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 	        loc = Locale.getDefault();
 	    } 
 	    	
-	    log.debug("Locale: " + loc.toString());
+	    log.debug("Locale: {}", loc);
 
 	    return loc;
 	}
@@ -458,6 +480,7 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 			}
 			
 			getSessionManager().getCurrentSession().setAttribute(LOCALE_SESSION_KEY+sessionId,loc);
+			setRequestLocale(sessionId, loc);
 		}
 		catch (Exception e) 
 		{
@@ -470,6 +493,26 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 		return loc;
 	}
 
+	/**
+	 * @return the locale resolved for a session earlier in this request, or null if there is none
+	 */
+	protected RequestLocale getRequestLocale()
+	{
+		ThreadLocalManager tlm = getThreadLocalManager();
+		return tlm == null ? null : (RequestLocale) tlm.get(REQUEST_LOCALE_KEY);
+	}
+
+	/**
+	 * Remember the locale resolved for this session for the rest of this request.
+	 */
+	protected void setRequestLocale(String sessionId, Locale loc)
+	{
+		ThreadLocalManager tlm = getThreadLocalManager();
+		if (tlm != null && sessionId != null && loc != null) {
+			tlm.set(REQUEST_LOCALE_KEY, new RequestLocale(sessionId, loc));
+		}
+	}
+
 	/**
 	 ** Returns true if the given key is defined, otherwise false
 	 **/
@@ -502,16 +545,17 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 	 */
 	public String getString(String key)
 	{
-	    if ( getLocale().toString().equals(DEBUG_LOCALE) ) {
+	    Locale loc = getLocale();
+	    if ( loc.toString().equals(DEBUG_LOCALE) ) {
 	        return formatDebugPropertiesString( key );
 	    }
 
 	    try
 	    {
-	        String value = getBundle().getString(key);
+	        String value = getBundle(loc).getString(key);
 	        if (log.isDebugEnabled()) {
 	            log.debug("getString(key) bundle name=" + this.baseName +
-	                    ", locale=" + getLocale().toString() + ", key=" +
+	                    ", locale=" + loc.toString() + ", key=" +
 	                    key + ", value=" + value);
 	        }
 	        return value;
@@ -545,12 +589,13 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 	 */
 	public String getString(String key, String dflt)
 	{
-	    if ( getLocale().toString().equals(DEBUG_LOCALE) )
+	    Locale loc = getLocale();
+	    if ( loc.toString().equals(DEBUG_LOCALE) )
 	        return formatDebugPropertiesString( key );
 
 	    try
 	    {
-	        return getBundle().getString(key);
+	        return getBundle(loc).getString(key);
 	    }
 	    catch (MissingResourceException e)
 	    {
@@ -624,6 +669,7 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 	public void purgeCache()
 	{
 		this.bundles = new ConcurrentHashMap<Locale, ResourceBundle>();
+		this.messageTables = new ConcurrentHashMap<Locale, ConcurrentHashMap<String, MessageTable>>();
 		log.debug("purge bundle cache");
 	}
 
@@ -666,9 +712,35 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 	 */
 	protected ResourceBundle getBundle()
 	{
-		Locale loc = getLocale();
+		return getBundle(getLocale());
+	}
+
+	/**
+	 * Return the ResourceBundle for the locale, with any overrides from the db for the current context merged in. The merged bundle is kept
+	 * and only checked against the db's overrides every MESSAGE_TABLE_CHECK_INTERVAL, so most lookups don't go further than here.
+	 *
+	 * @param loc
+	 *        The locale.
+	 * @return The ResourceBundle.
+	 */
+	protected ResourceBundle getBundle(Locale loc)
+	{
 		String context = (String) getThreadLocalManager().get(org.sakaiproject.util.RequestFilter.CURRENT_CONTEXT);
 
+		ConcurrentHashMap<String, MessageTable> tables = this.messageTables.get(loc);
+		if (tables == null)
+		{
+			tables = this.messageTables.computeIfAbsent(loc, l -> new ConcurrentHashMap<String, MessageTable>());
+		}
+
+		String contextKey = context == null ? "" : context;
+		MessageTable table = tables.get(contextKey);
+		long now = System.currentTimeMillis();
+		if (table != null && table.checked + MESSAGE_TABLE_CHECK_INTERVAL > now)
+		{
+			return table.bundle;
+		}
+
         if (log.isDebugEnabled()) log.debug("Request for bundle " + baseName + "/" + context + "/" + loc.toString());
 
 		ResourceBundle bundle = this.bundles.get(loc);
@@ -677,18 +749,36 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 			bundle = loadBundle(context, loc);
 		}
 
+		Map<String, String> bundleFromDbMap = Collections.emptyMap();
 		if (!ComponentManager.isTestingMode()) {
-			Map<String, String> bundleFromDbMap = getMessageBundleService().getBundle(baseName, context, loc);
+			bundleFromDbMap = getMessageBundleService().getBundle(baseName, context, loc);
+		}
+
+		if (table != null && table.source == bundle && table.overrides.equals(bundleFromDbMap))
+		{
+			// unchanged, use it for another interval
+			table = new MessageTable(bundle, table.overrides, table.bundle, now);
+		}
+		else
+		{
+			ResourceBundle merged = bundle;
 			if (!bundleFromDbMap.isEmpty()) {
 				// skip if there are no modified bundle data
 				Map<String, Object> bundleMap = getBundleAsMap(bundle);
 				bundleMap.putAll(bundleFromDbMap);
-				bundle = new MapResourceBundle(bundleMap, baseName, loc);
+				merged = new MapResourceBundle(bundleMap, baseName, loc);
 
 				log.debug("Bundle from db added {} properties to [{}|{}|{}]", bundleFromDbMap.size(), baseName, context, loc);
 			}
+			table = new MessageTable(bundle, bundleFromDbMap, merged, now);
+		}
+
+		// a bundle that failed to load is not kept, so it is tried again
+		if (bundle != null)
+		{
+			tables.put(contextKey, table);
 		}
-		return bundle;
+		return table.bundle;
 	}
 
 	/**
@@ -756,6 +846,48 @@ public class ResourceLoader extends DummyMap implements InternationalizedMessage
 		this.bundles.put(loc, bundle);
 	}
 
+	/**
+	 * A bundle with its overrides from the db merged in, never changed once made.
+	 */
+	protected static final class MessageTable
+	{
+		/** The bundle loaded from the properties files. */
+		protected final ResourceBundle source;
+
+		/** The overrides from the db. */
+		protected final Map<String, String> overrides;
+
+		/** The merged bundle. */
+		protected final ResourceBundle bundle;
+
+		/** When the overrides were last checked. */
+		protected final long checked;
+
+		protected MessageTable(ResourceBundle source, Map<String, String> overrides, ResourceBundle bundle, long checked)
+		{
+			this.source = source;
+			this.overrides = overrides;
+			this.bundle = bundle;
+			this.checked = checked;
+		}
+	}
+
+	/**
+	 * The locale resolved for a session.
+	 */
+	protected static final class RequestLocale
+	{
+		protected final String sessionId;
+
+		protected final Locale locale;
+
+		protected RequestLocale(String sessionId, Locale locale)
+		{
+			this.sessionId = sessionId;
+			this.locale = locale;
+		}
+	}
+
     @Override
     public String toString() {
         return "ResourceLoader{" +
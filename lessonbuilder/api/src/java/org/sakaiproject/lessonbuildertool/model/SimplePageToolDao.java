@@ -213,6 +213,12 @@ public interface SimplePageToolDao {
 	 * There should only be one log entry for each combination.
 	 */
 	public SimplePageLogEntry getLogEntry(String userId, long itemId, Long studentPageId);
+
+	/**
+	 * Bulk version of getLogEntry for ordinary (non student page) entries. Used to
+	 * load everything a page needs for availability checks in one query.
+	 */
+	public List<SimplePageLogEntry> getLogEntries(String userId, Collection<Long> itemIds);
 	
     // includes the dummy entries for preauthoized pages, but that's OK
 	public boolean isPageVisited(long pageId, String userId, String owner);
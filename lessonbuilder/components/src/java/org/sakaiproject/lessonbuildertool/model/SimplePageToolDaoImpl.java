@@ -1006,6 +1006,17 @@ public class SimplePageToolDaoImpl extends HibernateDaoSupport implements Simple
 		}
 	}
 	
+	public List<SimplePageLogEntry> getLogEntries(String userId, Collection<Long> itemIds) {
+		if (itemIds == null || itemIds.isEmpty())
+		    return new ArrayList<SimplePageLogEntry>();
+
+		DetachedCriteria d = DetachedCriteria.forClass(SimplePageLogEntry.class).add(Restrictions.eq("userId", userId))
+				.add(Restrictions.in("itemId", itemIds))
+				.add(Restrictions.isNull("studentPageId"));
+
+		return (List<SimplePageLogEntry>) getHibernateTemplate().findByCriteria(d);
+	}
+
 	// owner not currently used. would need group as well
         public boolean isPageVisited(long pageId, String userId, String owner) {
 	    // if this is a student page, it's most likely the top level, so do that query first
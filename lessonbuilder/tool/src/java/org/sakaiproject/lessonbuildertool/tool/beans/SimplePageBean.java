@@ -609,6 +609,10 @@ public class SimplePageBean {
 	private Map<String, SimplePageLogEntry> logCache = new HashMap<>();
 	private Map<Long, Boolean> completeCache = new HashMap<>();
 	private Map<Long, Boolean> visibleCache = new HashMap<>();
+	// pageId => sequence of the first required, visible item the user hasn't completed.
+	// Everything with a prerequisite after that point is unavailable, so one pass over
+	// the page answers isItemAvailable for every item on it.
+	private Map<Long, Integer> blockingSequenceCache = new HashMap<>();
 	// this one needs to be global
 	static MemoryService memoryService = (MemoryService)org.sakaiproject.component.cover.ComponentManager.get("org.sakaiproject.memory.api.MemoryService");
 	private static Cache<String, Object> groupCache = memoryService.getCache("org.sakaiproject.lessonbuildertool.tool.beans.SimplePageBean.groupCache");  // itemId => grouplist
@@ -5351,7 +5355,7 @@ public class SimplePageBean {
 			}
 
 			saveItem(entry);
-			logCache.put(itemId + "-" + studentPageId, entry);
+			cacheLogEntry(itemId, studentPageId, entry);
 		} else {
 			if (path != null && studentPageId == null) {
 				boolean wasComplete = entry.isComplete();
@@ -5379,6 +5383,7 @@ public class SimplePageBean {
 			}
 
 			update(entry);
+			cacheLogEntry(itemId, studentPageId, entry);
 		}
 
 		//SimplePageItem i = findItem(itemId);
@@ -5397,6 +5402,21 @@ public class SimplePageBean {
 		//		}
 	}
 
+    // a log entry was written. Cache it under the key getLogEntry looks for, which replaces
+    // any null cached because there wasn't one, and forget what was worked out from the old one,
+    // including the blocking sequence of the page the item is on
+	private void cacheLogEntry(long itemId, Long studentPageId, SimplePageLogEntry entry) {
+		if (studentPageId == null) {
+			studentPageId = -1L;
+		}
+		logCache.put(itemId + "-" + studentPageId, entry);
+		completeCache.remove(itemId);
+		SimplePageItem item = findItem(itemId);
+		if (item != null) {
+		    blockingSequenceCache.remove(item.getPageId());
+		}
+	}
+
 	public SimplePageLogEntry getLogEntry(long itemId) {
 		return getLogEntry(itemId, null);
 	}
@@ -5407,10 +5427,11 @@ public class SimplePageBean {
 		}
 		
 		String lookup = itemId + "-" + studentPageId;
-		SimplePageLogEntry entry = logCache.get(lookup);
+		// a null entry is cached too, it means we've already looked and there isn't one
+		if (logCache.containsKey(lookup))
+		    return logCache.get(lookup);
 
-		if (entry != null)
-		    return entry;
+		SimplePageLogEntry entry;
 		String userId = getCurrentUserId();
 		if (userId == null)
 		    userId = ".anon";
@@ -5426,6 +5447,31 @@ public class SimplePageBean {
 		return (getLogEntry(itemId) != null);
 	}
 
+    // load the log entries for a whole page in one query, rather than one per item
+    // as isItemComplete and friends ask for them. Items without an entry get a null
+    // in the cache so they aren't looked up again.
+	public void prefetchLogEntries(Collection<SimplePageItem> items) {
+		String userId = getCurrentUserId();
+		if (userId == null)
+		    userId = ".anon";
+
+		Set<Long> itemIds = new HashSet<>();
+		for (SimplePageItem item : items) {
+		    if (!logCache.containsKey(item.getId() + "--1"))
+			itemIds.add(item.getId());
+		}
+		if (itemIds.isEmpty())
+		    return;
+
+		for (SimplePageLogEntry entry : simplePageToolDao.getLogEntries(userId, itemIds)) {
+		    logCache.put(entry.getItemId() + "--1", entry);
+		    itemIds.remove(entry.getItemId());
+		}
+		for (Long itemId : itemIds) {
+		    logCache.put(itemId + "--1", null);
+		}
+	}
+
 	public boolean isItemVisible(SimplePageItem item) {
 	    return isItemVisible(item, null);
 	}
@@ -6047,35 +6093,44 @@ public class SimplePageBean {
 
 	public boolean isItemAvailable(SimplePageItem item, long pageId) {
 		if (item.isPrerequisite()) {
-			List<SimplePageItem> items = getItemsOnPage(pageId);
-
-			for (SimplePageItem i : items) {
-			    // log.info(i.getSequence() + " " + i.isRequired() + " " + isItemVisible(i) + " " + isItemComplete(i));
-				if (i.getSequence() >= item.getSequence()) {
-				    break;
-				} else if (i.isRequired() && isItemVisible(i)) {
-				    if (!isItemComplete(i)) {
-				    	return false;
-				    }
-				} 
-			}
+			return item.getSequence() <= getBlockingSequence(pageId);
 		}
 		return true;
 	}
 
-    // weird variant that works even if current item doesn't have prereq.
-	public boolean wouldItemBeAvailable(SimplePageItem item, long pageId) {
-		List<SimplePageItem> items = getItemsOnPage(pageId);
+    // sequence number of the first required item on the page that is visible to the
+    // user and not complete, or Integer.MAX_VALUE if there isn't one. An item with a
+    // prerequisite is available exactly when nothing before it blocks, so this is
+    // computed once per page and request instead of rescanning the page for each item.
+	private int getBlockingSequence(long pageId) {
+		Integer cached = blockingSequenceCache.get(pageId);
+		if (cached != null)
+		    return cached;
 
+		List<SimplePageItem> items = getItemsOnPage(pageId);
+		List<SimplePageItem> required = new ArrayList<>();
 		for (SimplePageItem i : items) {
-			if (i.getSequence() >= item.getSequence()) {
-				break;
-			} else if (i.isRequired() && isItemVisible(i)) {
-				if (!isItemComplete(i))
-					return false;
-			}
+		    if (i.isRequired())
+			required.add(i);
 		}
-		return true;
+		prefetchLogEntries(required);
+
+		int blocking = Integer.MAX_VALUE;
+		for (SimplePageItem i : required) {
+		    // log.info(i.getSequence() + " " + i.isRequired() + " " + isItemVisible(i) + " " + isItemComplete(i));
+		    if (isItemVisible(i) && !isItemComplete(i)) {
+			blocking = i.getSequence();
+			break;
+		    }
+		}
+
+		blockingSequenceCache.put(pageId, blocking);
+		return blocking;
+	}
+
+    // weird variant that works even if current item doesn't have prereq.
+	public boolean wouldItemBeAvailable(SimplePageItem item, long pageId) {
+		return item.getSequence() <= getBlockingSequence(pageId);
 	}
 
 	public String getNameOfSakaiItem(SimplePageItem i) {
@@ -6266,7 +6321,7 @@ public class SimplePageBean {
 				SimplePageLogEntry entry = simplePageToolDao.makeLogEntry(userId, itemId, null);
 				entry.setDummy(true);
 				saveItem(entry);
-				logCache.put(itemId + "--1", entry);
+				cacheLogEntry(itemId, null, entry);
 			}
 			return;
 		}
@@ -206,6 +206,7 @@ public class DbMailArchiveService extends BaseMailArchiveService
 			super(m_cTableName, "CHANNEL_ID", m_rTableName, "MESSAGE_ID", "CHANNEL_ID", "MESSAGE_DATE", "OWNER", "DRAFT",
 					"PUBVIEW", FIELDS, SEARCH_FIELDS, m_locksInDb, "channel", "message", user, sqlService);
 			m_locksAreInTable = false;
+			setCompactXml(m_serverConfigurationService.getBoolean("mailarchive.storage.compact", false));
 		} // DbStorage
         
 		/* matchXml - Optionaly do a pre-de-serialize match
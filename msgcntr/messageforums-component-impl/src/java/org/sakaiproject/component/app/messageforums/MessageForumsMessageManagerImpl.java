@@ -71,6 +71,8 @@ import org.sakaiproject.content.api.ContentHostingService;
 import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.id.api.IdManager;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.VersionedCache;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
 import org.sakaiproject.tool.api.Placement;
@@ -122,10 +124,59 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
     private SiteService siteService;
     
     private ToolManager toolManager;
-    
+
+    private MemoryService memoryService;
+
+    /*
+     * Per topic and user message counts used by the synoptic tool and the topic listings.
+     * Counts are kept under a version per topic, and one per user within that, so that a change to the
+     * messages in a topic invalidates every user's counts at once, while a change to one user's read
+     * status only drops that user's counts. Keys are taken before the counts are queried, so a count
+     * read while a change is being made is only ever put under a dropped version. The other servers
+     * drop what a transaction changed once it commits, without an event being written for it.
+     */
+    private VersionedCache<Integer> topicCounts;
+
     public void init() {
        log.info("init()");
-        ;
+       topicCounts = memoryService.getVersionedCache("org.sakaiproject.component.app.messageforums.MessageForumsMessageManagerImpl.topicCountCache");
+    }
+
+    public void setMemoryService(MemoryService memoryService) {
+        this.memoryService = memoryService;
+    }
+
+    private String getTopicCountKey(Long topicId, String countType, String userId) {
+        String version = userId == null ? topicCounts.getKey(topicId.toString()) : topicCounts.getKey(topicId.toString(), userId);
+        return version + ":" + countType;
+    }
+
+    private Integer getTopicCount(String key) {
+        return topicCounts.get(key);
+    }
+
+    /**
+     * Messages in the topic were added, removed, approved or moved, so the counts of every user may have changed.
+     */
+    private void invalidateTopicCounts(Long topicId) {
+        if (topicId != null) {
+            topicCounts.invalidate(topicId.toString());
+        }
+    }
+
+    /**
+     * Only the read status of the given user changed, the message totals are still good.
+     */
+    private void invalidateTopicReadCounts(Long topicId, String userId) {
+        if (topicId != null && userId != null) {
+            topicCounts.invalidate(topicId.toString(), userId);
+        }
+    }
+
+    private void invalidateTopicCounts(Message message) {
+        if (message != null && message.getTopic() != null) {
+            invalidateTopicCounts(message.getTopic().getId());
+        }
     }
 
     public EventTrackingService getEventTrackingService() {
@@ -551,6 +602,12 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
         log.debug("findReadMessageCountByTopicIdByUserId executing with topicId: " + topicId + 
         				" and userId: " + userId);
 
+        String key = getTopicCountKey(topicId, QUERY_COUNT_BY_READ, userId);
+        Integer count = getTopicCount(key);
+        if (count != null) {
+            return count;
+        }
+
         HibernateCallback<Number> hcb = session -> {
             Query q = session.getNamedQuery(QUERY_COUNT_BY_READ);
             q.setParameter("topicId", topicId, LongType.INSTANCE);
@@ -558,7 +615,9 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
             return (Number) q.uniqueResult();
         };
 
-        return getHibernateTemplate().execute(hcb).intValue();
+        count = getHibernateTemplate().execute(hcb).intValue();
+        topicCounts.put(key, count);
+        return count;
     }
     
     public int findReadMessageCountForStudent(final String userId) {
@@ -689,6 +748,12 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
 
         log.debug("findViewableMessageCountByTopicIdByUserId with topicId: {}, userId: {}", topicId, userId);
 
+        String key = getTopicCountKey(topicId, QUERY_COUNT_VIEWABLE_BY_TOPIC_ID, userId);
+        Integer count = getTopicCount(key);
+        if (count != null) {
+            return count;
+        }
+
         HibernateCallback<Number> hcb = session -> {
             Query q = session.getNamedQuery(QUERY_COUNT_VIEWABLE_BY_TOPIC_ID);
             q.setParameter("topicId", topicId, LongType.INSTANCE);
@@ -696,7 +761,9 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
             return (Number) q.uniqueResult();
         };
 
-        return getHibernateTemplate().execute(hcb).intValue();
+        count = getHibernateTemplate().execute(hcb).intValue();
+        topicCounts.put(key, count);
+        return count;
     }
 
     /**
@@ -844,6 +911,12 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
         log.debug("findReadViewableMessageCountByTopicIdByUserId executing with topicId: " + topicId + 
         				" and userId: " + userId);
 
+        String key = getTopicCountKey(topicId, QUERY_COUNT_READ_VIEWABLE_BY_TOPIC_ID, userId);
+        Integer count = getTopicCount(key);
+        if (count != null) {
+            return count;
+        }
+
         HibernateCallback<Number> hcb = session -> {
             Query q = session.getNamedQuery(QUERY_COUNT_READ_VIEWABLE_BY_TOPIC_ID);
             q.setParameter("topicId", topicId, LongType.INSTANCE);
@@ -851,7 +924,9 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
             return (Number) q.uniqueResult();
         };
 
-        return getHibernateTemplate().execute(hcb).intValue();
+        count = getHibernateTemplate().execute(hcb).intValue();
+        topicCounts.put(key, count);
+        return count;
     }
     
     /**
@@ -914,13 +989,21 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
 
         log.debug("findMessageCountByTopicId executing with topicId: " + topicId);
 
+        String key = getTopicCountKey(topicId, "findMessageCountByTopicId", null);
+        Integer count = getTopicCount(key);
+        if (count != null) {
+            return count;
+        }
+
         HibernateCallback<Number> hcb = session -> {
             Query q = session.getNamedQuery("findMessageCountByTopicId");
             q.setParameter("topicId", topicId, LongType.INSTANCE);
             return (Number) q.uniqueResult();
         };
 
-        return getHibernateTemplate().execute(hcb).intValue();
+        count = getHibernateTemplate().execute(hcb).intValue();
+        topicCounts.put(key, count);
+        return count;
     }
     
     public List<Object[]> findMessageCountByForumId(final Long forumId) {
@@ -1075,6 +1158,7 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
         UnreadStatus status = findUnreadStatus(topicId, messageId);
         if (status != null) {
             getHibernateTemplate().delete(status);
+            invalidateTopicReadCounts(topicId, status.getUserId());
         }
     }
 
@@ -1145,7 +1229,8 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
             	if (message.getTopic().getBaseForum()==null && message.getTopic().getOpenForum() != null) 	 
                     message.getTopic().setBaseForum((BaseForum) message.getTopic().getOpenForum()); 	 
 	 
-            	message = this.saveOrUpdateMessage(message, false, toolId, userId, context, true);
+            	// only the number of readers changes, so this doesn't touch the topic counts
+            	message = persistMessage(message, false, toolId, userId, context, true);
 
         	if (isMessageFromForums)
         		eventTrackingService.post(eventTrackingService.newEvent(DiscussionForumService.EVENT_FORUMS_READ, getEventMessage(message, toolId, userId, context), false));
@@ -1154,6 +1239,7 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
         }
         	
         getHibernateTemplate().saveOrUpdate(status);
+        invalidateTopicReadCounts(topicId, userId);
        
         
         	
@@ -1360,6 +1446,12 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
     }
 
     public Message saveOrUpdateMessage(Message message, boolean logEvent, String toolId, String userId, String contextId, boolean ignoreLockedTopicForum){
+        Message persistedMessage = persistMessage(message, logEvent, toolId, userId, contextId, ignoreLockedTopicForum);
+        invalidateTopicCounts(persistedMessage);
+        return persistedMessage;
+    }
+
+    private Message persistMessage(Message message, boolean logEvent, String toolId, String userId, String contextId, boolean ignoreLockedTopicForum){
         boolean isNew = message.getId() == null;
 
         if (!ignoreLockedTopicForum && !(message instanceof PrivateMessage) && isForumOrTopicLocked(message.getTopic().getBaseForum().getId(), message.getTopic().getId())) {
@@ -1469,6 +1561,7 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
         manageThreadId(message, logEvent);
 
         final Message messageReturn = (Message) getSessionFactory().getCurrentSession().merge(message);
+        invalidateTopicCounts(messageReturn);
 
         handleEvent(messageReturn, logEvent, toolId, userId, contextId);
 
@@ -1509,6 +1602,7 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
         message.setInReplyTo(null);
         
         getHibernateTemplate().saveOrUpdate(message);
+        invalidateTopicCounts(message);
         
         try {
         	getSessionFactory().getCurrentSession().flush();
@@ -1622,6 +1716,7 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
         message.setApproved(Boolean.valueOf(approved));
         
         getHibernateTemplate().saveOrUpdate(message);
+        invalidateTopicCounts(message);
     }
 
 
@@ -2096,7 +2191,8 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
 		mhist.setModifiedBy(getCurrentUser());
 
 		getHibernateTemplate().saveOrUpdate(mhist);
-
+		invalidateTopicCounts(sourceTopicId);
+		invalidateTopicCounts(desttopicId);
 
 	}
 
@@ -39,6 +39,7 @@ import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.event.api.LearningResourceStoreService;
 import org.sakaiproject.grading.api.GradingService;
 import org.sakaiproject.id.api.IdManager;
+import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.rubrics.api.RubricsService;
 import org.sakaiproject.search.api.SearchIndexBuilder;
@@ -73,7 +74,9 @@ import javax.annotation.Resource;
 import javax.sql.DataSource;
 import java.io.IOException;
 
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * Created by chmaurer on 11/29/20.
@@ -296,7 +299,9 @@ public class MsgcntrTestConfiguration {
 
     @Bean(name = "org.sakaiproject.memory.api.MemoryService")
     public MemoryService memoryService() {
-        return mock(MemoryService.class);
+        MemoryService memoryService = mock(MemoryService.class);
+        when(memoryService.getCache(anyString())).thenReturn(mock(Cache.class));
+        return memoryService;
     }
 
     @Bean(name = "org.sakaiproject.thread_local.api.ThreadLocalManager")
@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2003-2021 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.component.app.messageforums;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.api.app.messageforums.UnreadStatus;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.id.api.IdManager;
+import org.springframework.orm.hibernate5.HibernateCallback;
+import org.springframework.orm.hibernate5.HibernateTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the caching of the per topic and user message counts in {@link MessageForumsMessageManagerImpl},
+ * against named queries that answer with whatever the test has set for them.
+ */
+public class TopicCountCacheTest {
+
+    private static final Long TOPIC_ID = 1L;
+    private static final Long MESSAGE_ID = 10L;
+    private static final String USER_ID = "test-user";
+    private static final String OTHER_USER_ID = "other-user";
+
+    private static final String MESSAGE_COUNT = "findMessageCountByTopicId";
+    private static final String VIEWABLE_COUNT = "findViewableMessageCountByTopicIdByUserId";
+    private static final String READ_COUNT = "findReadMessageCountByTopicId";
+
+    private MessageForumsMessageManagerImpl messageManager;
+    private EventTrackingService eventTrackingService;
+
+    private final Map<String, Object> results = new HashMap<>();
+    private final Map<String, Integer> runs = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        TestUtil.setRunningTests(true);
+
+        eventTrackingService = mock(EventTrackingService.class);
+        IdManager idManager = mock(IdManager.class);
+        when(idManager.createUuid()).thenAnswer(invocation -> UUID.randomUUID().toString());
+
+        Session session = mock(Session.class);
+        when(session.getNamedQuery(anyString())).thenAnswer(invocation -> namedQuery(invocation.getArgument(0)));
+        HibernateTemplate hibernateTemplate = mock(HibernateTemplate.class);
+        when(hibernateTemplate.execute(any())).thenAnswer(invocation -> ((HibernateCallback<?>) invocation.getArgument(0)).doInHibernate(session));
+
+        messageManager = new MessageForumsMessageManagerImpl();
+        messageManager.setHibernateTemplate(hibernateTemplate);
+        messageManager.setMemoryService(new org.sakaiproject.memory.mock.MemoryService());
+        messageManager.setEventTrackingService(eventTrackingService);
+        messageManager.setIdManager(idManager);
+        messageManager.init();
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testCountsAreCached() {
+        results.put(MESSAGE_COUNT, 3L);
+        Assert.assertEquals(3, messageManager.findMessageCountByTopicId(TOPIC_ID));
+
+        results.put(MESSAGE_COUNT, 4L);
+        Assert.assertEquals(3, messageManager.findMessageCountByTopicId(TOPIC_ID));
+        Assert.assertEquals(1, runs(MESSAGE_COUNT));
+
+        // counts of another topic are kept apart
+        Assert.assertEquals(4, messageManager.findMessageCountByTopicId(2L));
+    }
+
+    @Test
+    public void testMovingAMessageChangesEveryUsersCounts() {
+        results.put(VIEWABLE_COUNT, 3L);
+        Assert.assertEquals(3, messageManager.findViewableMessageCountByTopicIdByUserId(TOPIC_ID, USER_ID));
+        Assert.assertEquals(3, messageManager.findViewableMessageCountByTopicIdByUserId(TOPIC_ID, OTHER_USER_ID));
+
+        messageManager.saveMessageMoveHistory(MESSAGE_ID, 2L, TOPIC_ID, false);
+
+        results.put(VIEWABLE_COUNT, 2L);
+        Assert.assertEquals(2, messageManager.findViewableMessageCountByTopicIdByUserId(TOPIC_ID, USER_ID));
+        Assert.assertEquals(2, messageManager.findViewableMessageCountByTopicIdByUserId(TOPIC_ID, OTHER_USER_ID));
+        verify(eventTrackingService, never()).newEvent(anyString(), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void testReadStatusOnlyChangesThatUsersCounts() {
+        results.put(MESSAGE_COUNT, 3L);
+        results.put(READ_COUNT, 1L);
+        Assert.assertEquals(3, messageManager.findMessageCountByTopicId(TOPIC_ID));
+        Assert.assertEquals(1, messageManager.findReadMessageCountByTopicIdByUserId(TOPIC_ID, USER_ID));
+        Assert.assertEquals(1, messageManager.findReadMessageCountByTopicIdByUserId(TOPIC_ID, OTHER_USER_ID));
+
+        UnreadStatus status = mock(UnreadStatus.class);
+        when(status.getUserId()).thenReturn(USER_ID);
+        results.put("findUnreadStatusForMessage", status);
+        messageManager.deleteUnreadStatus(TOPIC_ID, MESSAGE_ID);
+
+        results.put(READ_COUNT, 0L);
+        Assert.assertEquals(0, messageManager.findReadMessageCountByTopicIdByUserId(TOPIC_ID, USER_ID));
+        Assert.assertEquals(1, messageManager.findReadMessageCountByTopicIdByUserId(TOPIC_ID, OTHER_USER_ID));
+        Assert.assertEquals(3, messageManager.findMessageCountByTopicId(TOPIC_ID));
+        Assert.assertEquals(1, runs(MESSAGE_COUNT));
+
+        // reading messages doesn't write an event to tell the other servers
+        verify(eventTrackingService, never()).newEvent(anyString(), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void testCountsAreDroppedAgainAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        results.put(MESSAGE_COUNT, 3L);
+        messageManager.saveMessageMoveHistory(MESSAGE_ID, 2L, TOPIC_ID, false);
+
+        // read while the transaction is still open, so the count could be from before the change
+        Assert.assertEquals(3, messageManager.findMessageCountByTopicId(TOPIC_ID));
+
+        results.put(MESSAGE_COUNT, 2L);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        Assert.assertEquals(2, messageManager.findMessageCountByTopicId(TOPIC_ID));
+    }
+
+    @Test
+    public void testCountsAreDroppedAgainAfterRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        results.put(MESSAGE_COUNT, 3L);
+        messageManager.saveMessageMoveHistory(MESSAGE_ID, 2L, TOPIC_ID, false);
+        Assert.assertEquals(3, messageManager.findMessageCountByTopicId(TOPIC_ID));
+
+        results.put(MESSAGE_COUNT, 4L);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        Assert.assertEquals(4, messageManager.findMessageCountByTopicId(TOPIC_ID));
+    }
+
+    private Query<?> namedQuery(String name) {
+        return mock(Query.class, invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "uniqueResult":
+                    runs.merge(name, 1, Integer::sum);
+                    return results.get(name);
+                case "list":
+                    return new ArrayList<>();
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private int runs(String name) {
+        return runs.getOrDefault(name, 0);
+    }
+
+    private void complete(int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
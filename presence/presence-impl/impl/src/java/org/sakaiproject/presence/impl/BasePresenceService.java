@@ -295,7 +295,7 @@ public abstract class BasePresenceService implements PresenceService
 			if (curSession == null) return;
 
 			// update the storage
-			m_storage.setPresence(curSession.getId(), locationId);
+			m_storage.setPresence(curSession.getId(), locationId, timeout);
 
 			// generate the event
 			Event event = m_eventTrackingService.newEvent(EVENT_PRESENCE, presenceReference(locationId), true);
@@ -309,6 +309,15 @@ public abstract class BasePresenceService implements PresenceService
 			Presence p = new Presence(curSession, locationId, timeout);
 			ts.setAttribute(locationId, p);
 		}
+		else
+		{
+			// let the storage know the presence is still active
+			UsageSession curSession = m_usageSessionService.getSession();
+			if (curSession != null)
+			{
+				m_storage.refreshPresence(curSession.getId(), locationId, timeout);
+			}
+		}
 
 		// retire any expired presence
 		checkPresenceForExpiration();
@@ -574,6 +583,35 @@ public abstract class BasePresenceService implements PresenceService
 		 */
 		void setPresence(String sessionId, String locationId);
 
+		/**
+		 * Add this session id's presence at this location, if not already there.
+		 * 
+		 * @param sessionId
+		 *        The session id.
+		 * @param locationId
+		 *        The location id.
+		 * @param timeout
+		 *        The seconds till the presence times out if not refreshed.
+		 */
+		default void setPresence(String sessionId, String locationId, int timeout)
+		{
+			setPresence(sessionId, locationId);
+		}
+
+		/**
+		 * Note that this session id is still present at this location.
+		 * 
+		 * @param sessionId
+		 *        The session id.
+		 * @param locationId
+		 *        The location id.
+		 * @param timeout
+		 *        The seconds till the presence times out if not refreshed.
+		 */
+		default void refreshPresence(String sessionId, String locationId, int timeout)
+		{
+		}
+
 		/**
 		 * Remove this sessions id's presence at this location.
 		 * 
@@ -0,0 +1,405 @@
+/**********************************************************************************
+ *
+ * Copyright (c) 2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **********************************************************************************/
+
+package org.sakaiproject.presence.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.Cache;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CacheAtomicityMode;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.cache.CacheWriteSynchronizationMode;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.apache.ignite.cache.query.ScanQuery;
+import org.apache.ignite.configuration.CacheConfiguration;
+
+import org.sakaiproject.event.api.UsageSession;
+
+/**
+ * <p>
+ * IgnitePresenceService extends the ClusterPresenceService with a Storage model that keeps presence in a replicated Ignite cache rather than
+ * the SAKAI_PRESENCE table, so each app server can read who is at a location without going to the database. The table is only written when
+ * auditing is turned on, or if the cache can't be started, when presence falls back to the table as in ClusterPresenceService.
+ * </p>
+ * <p>
+ * Each session's presence at a location is an entry of its own, written with a single atomic put and no locks. Entries expire on their own if
+ * a server goes away without removing its sessions' presence. Refreshes of a presence are only written when half its timeout has passed
+ * since the last write. Being replicated, every server holds every entry, so the presence at a location is read from the local copy.
+ * </p>
+ * <p>
+ * Two more replicated caches index the presence entries, by location and by session, so that reading a location or removing a session
+ * only reads the entries it needs. An index lists the sessions or locations there has been presence for, and is changed with compare and set
+ * rather than locks. As presence expires without the indexes being told, a location's index is checked against the presence entries when
+ * it is read, and the sessions that are gone are dropped from it. A session's index expires on its own, like its presence.
+ * </p>
+ */
+@Slf4j
+public class IgnitePresenceService extends ClusterPresenceService
+{
+	/** The name of the cache of session id and location id to the location id of the presence. */
+	protected static final String PRESENCE_CACHE = "org.sakaiproject.presence.impl.IgnitePresenceService.presence";
+
+	/** The name of the cache of location id to the ids of the sessions there has been presence for at the location. */
+	protected static final String LOCATION_INDEX_CACHE = "org.sakaiproject.presence.impl.IgnitePresenceService.locations";
+
+	/** The name of the cache of session id to the ids of the locations there has been presence for by the session. */
+	protected static final String SESSION_INDEX_CACHE = "org.sakaiproject.presence.impl.IgnitePresenceService.sessions";
+
+	/** Separates the session id from the location id in the keys of the cache. Session ids never contain it. */
+	protected static final String KEY_SEPARATOR = "@";
+
+	/** Dependency: Ignite */
+	protected Ignite m_ignite = null;
+
+	/**
+	 * Dependency: Ignite.
+	 *
+	 * @param ignite
+	 *        The Ignite instance.
+	 */
+	public void setIgnite(Ignite ignite)
+	{
+		m_ignite = ignite;
+	}
+
+	/** Configuration: also record presence in the SAKAI_PRESENCE table. */
+	protected boolean m_audit = false;
+
+	/**
+	 * Configuration: also record presence in the SAKAI_PRESENCE table (or not).
+	 *
+	 * @param value
+	 *        the audit value.
+	 */
+	public void setAudit(String value)
+	{
+		m_audit = Boolean.valueOf(value);
+	}
+
+	/** Session id and location id of each presence to its location id. */
+	protected IgniteCache<String, String> m_presence = null;
+
+	/** Location id to the ids of the sessions there has been presence for at the location. */
+	protected IgniteCache<String, HashSet<String>> m_locationIndex = null;
+
+	/** Session id to the ids of the locations there has been presence for by the session. */
+	protected IgniteCache<String, HashSet<String>> m_sessionIndex = null;
+
+	/**
+	 * Allocate a new storage object, the SAKAI_PRESENCE table if the cache could not be started.
+	 *
+	 * @return A new storage object.
+	 */
+	protected Storage newStorage()
+	{
+		if (m_presence == null)
+		{
+			return super.newStorage();
+		}
+
+		return new IgniteStorage();
+	}
+
+	/**********************************************************************************************************************************************************************************************************************************************************
+	 * Init and Destroy
+	 *********************************************************************************************************************************************************************************************************************************************************/
+
+	/**
+	 * Final initialization, once all dependencies are set.
+	 */
+	public void init()
+	{
+		try
+		{
+			m_presence = m_ignite.getOrCreateCache(cacheConfiguration(PRESENCE_CACHE));
+			m_locationIndex = m_ignite.getOrCreateCache(cacheConfiguration(LOCATION_INDEX_CACHE));
+			m_sessionIndex = m_ignite.getOrCreateCache(cacheConfiguration(SESSION_INDEX_CACHE));
+
+			log.info("init(): audit: " + m_audit);
+		}
+		catch (Exception t)
+		{
+			m_presence = null;
+			log.warn("init(): could not start the presence cache, keeping presence in the SAKAI_PRESENCE table instead: ", t);
+		}
+
+		super.init();
+	}
+
+	protected <V> CacheConfiguration<String, V> cacheConfiguration(String name)
+	{
+		CacheConfiguration<String, V> config = new CacheConfiguration<>(name);
+		config.setCacheMode(CacheMode.REPLICATED);
+		config.setAtomicityMode(CacheAtomicityMode.ATOMIC);
+		config.setWriteSynchronizationMode(CacheWriteSynchronizationMode.PRIMARY_SYNC);
+		config.setEagerTtl(true);
+		return config;
+	}
+
+	/**********************************************************************************************************************************************************************************************************************************************************
+	 * Storage
+	 *********************************************************************************************************************************************************************************************************************************************************/
+
+	protected class IgniteStorage implements Storage
+	{
+		/** The SAKAI_PRESENCE table, written to only for auditing. */
+		protected Storage m_auditStorage = new ClusterStorage();
+
+		/** When the presence this server last wrote for each session at each location expires, for coalescing refreshes. */
+		protected Map<String, Long> m_writtenUntil = new ConcurrentHashMap<>();
+
+		/** When m_writtenUntil is next cleared of the presence that has expired. */
+		protected volatile long m_nextPrune = 0;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void setPresence(String sessionId, String locationId)
+		{
+			setPresence(sessionId, locationId, m_timeout);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void setPresence(String sessionId, String locationId, int timeout)
+		{
+			writePresence(sessionId, locationId, timeout);
+
+			if (m_audit)
+			{
+				m_auditStorage.setPresence(sessionId, locationId);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void refreshPresence(String sessionId, String locationId, int timeout)
+		{
+			// written less than half the timeout ago, so more than one and a half timeouts are left of its two
+			Long writtenUntil = m_writtenUntil.get(presenceKey(sessionId, locationId));
+			if (writtenUntil != null && writtenUntil - System.currentTimeMillis() > timeout * 1500L) return;
+
+			writePresence(sessionId, locationId, timeout);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void removePresence(String sessionId, String locationId)
+		{
+			String key = presenceKey(sessionId, locationId);
+			m_presence.remove(key);
+			m_writtenUntil.remove(key);
+			removeFromIndex(m_locationIndex, locationId, Collections.singleton(sessionId));
+			removeFromIndex(m_sessionIndex, sessionId, Collections.singleton(locationId));
+
+			if (m_audit)
+			{
+				m_auditStorage.removePresence(sessionId, locationId);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public List<String> removeSessionPresence(String sessionId)
+		{
+			List<String> locations = new ArrayList<>();
+
+			Set<String> indexed = m_sessionIndex.getAndRemove(sessionId);
+			if (indexed != null)
+			{
+				Set<String> keys = new HashSet<>();
+				for (String locationId : indexed)
+				{
+					keys.add(presenceKey(sessionId, locationId));
+				}
+				locations.addAll(m_presence.getAll(keys).values());
+
+				m_presence.removeAll(keys);
+				m_writtenUntil.keySet().removeAll(keys);
+				for (String locationId : indexed)
+				{
+					removeFromIndex(m_locationIndex, locationId, Collections.singleton(sessionId));
+				}
+			}
+
+			if (m_audit)
+			{
+				m_auditStorage.removeSessionPresence(sessionId);
+			}
+
+			return locations;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public List<UsageSession> getSessions(String locationId)
+		{
+			List<String> sessionIds = getPresentSessions(locationId);
+			if (sessionIds.isEmpty()) return new ArrayList<>();
+
+			return m_usageSessionService.getSessions(sessionIds);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public List<String> getLocations()
+		{
+			// the index holds an entry per location, rather than per session at a location
+			List<String> locationIds = new ArrayList<>();
+			try (QueryCursor<Cache.Entry<String, HashSet<String>>> cursor = m_locationIndex.query(new ScanQuery<String, HashSet<String>>().setLocal(true)))
+			{
+				for (Cache.Entry<String, HashSet<String>> entry : cursor)
+				{
+					locationIds.add(entry.getKey());
+				}
+			}
+
+			locationIds.removeIf(locationId -> getPresentSessions(locationId).isEmpty());
+			return locationIds;
+		}
+
+		protected void writePresence(String sessionId, String locationId, int timeout)
+		{
+			String key = presenceKey(sessionId, locationId);
+
+			// allow for a missed refresh, and for the maintenance thread to get round to removing it
+			long millis = timeout * 2000L;
+			m_presence.withExpiryPolicy(expiryPolicy(millis)).put(key, locationId);
+			addToIndex(m_locationIndex, locationId, sessionId, 0);
+			addToIndex(m_sessionIndex, sessionId, locationId, millis);
+
+			long now = System.currentTimeMillis();
+			m_writtenUntil.put(key, now + millis);
+			if (now >= m_nextPrune)
+			{
+				m_nextPrune = now + m_timeout * 1000L;
+				m_writtenUntil.values().removeIf(writtenUntil -> writtenUntil < now);
+			}
+		}
+
+		/**
+		 * Read the sessions present at a location, from the local copy of the presence, and drop the sessions whose presence has
+		 * expired from the location's index.
+		 */
+		protected List<String> getPresentSessions(String locationId)
+		{
+			Set<String> indexed = m_locationIndex.get(locationId);
+			if (indexed == null) return new ArrayList<>();
+
+			Set<String> keys = new HashSet<>();
+			for (String sessionId : indexed)
+			{
+				keys.add(presenceKey(sessionId, locationId));
+			}
+			Set<String> present = m_presence.getAll(keys).keySet();
+
+			List<String> sessionIds = new ArrayList<>();
+			Set<String> gone = new HashSet<>();
+			for (String sessionId : indexed)
+			{
+				if (present.contains(presenceKey(sessionId, locationId)))
+				{
+					sessionIds.add(sessionId);
+				}
+				else
+				{
+					gone.add(sessionId);
+				}
+			}
+			removeFromIndex(m_locationIndex, locationId, gone);
+
+			return sessionIds;
+		}
+
+		/**
+		 * Add a member to an index entry, with compare and set so concurrent writers from any server are not lost.
+		 *
+		 * @param millis
+		 *        how long till the entry expires if not written again, or 0 for it to be kept
+		 */
+		protected void addToIndex(IgniteCache<String, HashSet<String>> index, String key, String member, long millis)
+		{
+			IgniteCache<String, HashSet<String>> writer = millis > 0 ? index.withExpiryPolicy(expiryPolicy(millis)) : index;
+			while (true)
+			{
+				HashSet<String> members = index.get(key);
+				if (members == null)
+				{
+					if (writer.putIfAbsent(key, new HashSet<>(Collections.singleton(member)))) return;
+				}
+				else
+				{
+					// written even when already there, to keep an expiring entry from expiring
+					if (members.contains(member) && millis == 0) return;
+
+					HashSet<String> updated = new HashSet<>(members);
+					updated.add(member);
+					if (writer.replace(key, members, updated)) return;
+				}
+			}
+		}
+
+		/**
+		 * Remove members from an index entry, and the entry once it has none, with compare and set.
+		 */
+		protected void removeFromIndex(IgniteCache<String, HashSet<String>> index, String key, Set<String> gone)
+		{
+			if (gone.isEmpty()) return;
+
+			while (true)
+			{
+				HashSet<String> members = index.get(key);
+				if (members == null || Collections.disjoint(members, gone)) return;
+
+				HashSet<String> updated = new HashSet<>(members);
+				updated.removeAll(gone);
+				if (updated.isEmpty() ? index.remove(key, members) : index.replace(key, members, updated)) return;
+			}
+		}
+
+		protected ModifiedExpiryPolicy expiryPolicy(long millis)
+		{
+			return new ModifiedExpiryPolicy(new Duration(TimeUnit.MILLISECONDS, Math.max(1, millis)));
+		}
+
+		protected String presenceKey(String sessionId, String locationId)
+		{
+			return sessionId + KEY_SEPARATOR + locationId;
+		}
+	}
+}
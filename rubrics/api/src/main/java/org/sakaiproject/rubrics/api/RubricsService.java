@@ -24,6 +24,7 @@
 package org.sakaiproject.rubrics.api;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -93,6 +94,16 @@ public interface RubricsService {
 
     List<EvaluationTransferBean> getEvaluationsForToolAndItem(String toolId, String itemId, String siteId);
 
+    /**
+     * Get all the evaluations for a tool item in one go, rather than one evaluated item at a time.
+     *
+     * @param toolId the tool id, something like "sakai.assignment"
+     * @param itemId the id of the associated item within the tool
+     * @param siteId the site the evaluations are being viewed in
+     * @return the evaluations the current user can view, by evaluated item id
+     */
+    Map<String, EvaluationTransferBean> getEvaluationsForToolAndItemByEvaluatedItemId(String toolId, String itemId, String siteId);
+
     EvaluationTransferBean saveEvaluation(EvaluationTransferBean evaluationBean, String siteId);
 
     EvaluationTransferBean cancelDraftEvaluation(Long draftEvaluationId);
@@ -101,6 +112,15 @@ public interface RubricsService {
 
     boolean hasAssociatedRubric(String toolId, String associatedToolItemId, String siteId);
 
+    /**
+     * Look up the associations for many of a tool's items in one go, rather than one item at a time.
+     *
+     * @param toolId the tool id, something like "sakai.assignment"
+     * @param associatedToolItemIds the ids of the items within the tool
+     * @return whether each item has an associated rubric, by item id
+     */
+    Map<String, Boolean> hasAssociatedRubrics(String toolId, Collection<String> associatedToolItemIds);
+
     Optional<ToolItemRubricAssociation> getRubricAssociation(String toolId, String associatedToolItemId);
 
     /**
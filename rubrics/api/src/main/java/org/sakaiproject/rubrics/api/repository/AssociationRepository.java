@@ -22,6 +22,7 @@
 
 package org.sakaiproject.rubrics.api.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -31,6 +32,7 @@ import org.sakaiproject.springframework.data.SpringCrudRepository;
 public interface AssociationRepository extends SpringCrudRepository<ToolItemRubricAssociation, Long> {
 
     Optional<ToolItemRubricAssociation> findByToolIdAndItemId(String toolId, String itemId);
+    List<ToolItemRubricAssociation> findByToolIdAndItemIds(String toolId, Collection<String> itemIds);
     Optional<ToolItemRubricAssociation> findByItemIdAndRubricId(String itemId, Long rubricId);
     List<ToolItemRubricAssociation> findByRubricId(Long rubricId);
     List<ToolItemRubricAssociation> findByItemIdPrefix(String toolId, String itemId);
@@ -30,6 +30,7 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.FormatStyle;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -63,6 +64,8 @@ import org.sakaiproject.entity.api.EntityTransferrer;
 import org.sakaiproject.entity.api.Reference;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.VersionedCache;
 import org.sakaiproject.rubrics.api.model.EvaluationStatus;
 import org.sakaiproject.rubrics.api.model.EvaluatedItemOwnerType;
 import org.sakaiproject.rubrics.api.RubricsConstants;
@@ -117,6 +120,7 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
     private EventTrackingService eventTrackingService;
     private FormattedText formattedText;
     private FunctionManager functionManager;
+    private MemoryService memoryService;
     private RatingRepository ratingRepository;
     private ResourceLoader resourceLoader;
     private ReturnedEvaluationRepository returnedEvaluationRepository;
@@ -130,8 +134,13 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
     private UserDirectoryService userDirectoryService;
     private UserTimeService userTimeService;
 
+    // The evaluations for each association, as transfer beans, under a version kept by association id
+    private VersionedCache<List<EvaluationTransferBean>> evaluationCache;
+
     public void init() {
 
+        evaluationCache = memoryService.getVersionedCache("org.sakaiproject.rubrics.api.RubricsService.evaluationCache");
+
         // register as an entity producer
         entityManager.registerEntityProducer(this, REFERENCE_ROOT);
 
@@ -262,6 +271,7 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
         // SAK-42944 removing the soft-deleted associations
         associationRepository.findByRubricId(rubricId).forEach(ass -> {
             evaluationRepository.deleteByToolItemRubricAssociation_Id(ass.getId());
+            evictEvaluations(ass.getId());
         });
 
         associationRepository.deleteByRubricId(rubricId);
@@ -558,15 +568,11 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
         ToolItemRubricAssociation association = associationRepository.findByToolIdAndItemId(toolId, itemId)
             .orElseThrow(() -> new IllegalArgumentException("No association for toolId " + toolId + " and itemId " + itemId));
 
-        return evaluationRepository.findByAssociationIdAndEvaluatedItemId(association.getId(), evaluatedItemId)
-            .map(eval -> {
-
-                if (canViewEvaluation(eval, siteId)) {
-                    return EvaluationTransferBean.of(eval);
-                } else {
-                    return null;
-                }
-            });
+        return getEvaluationsForAssociation(association.getId()).stream()
+            .filter(eval -> StringUtils.equals(eval.evaluatedItemId, evaluatedItemId))
+            .findAny()
+            .filter(eval -> canViewEvaluation(eval.evaluatedItemOwnerType, eval.evaluatedItemOwnerId, siteId))
+            .map(this::copyEvaluation);
     }
 
     @Transactional(readOnly = true)
@@ -575,21 +581,72 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
         ToolItemRubricAssociation association = associationRepository.findByToolIdAndItemId(toolId, itemId)
             .orElseThrow(() -> new IllegalArgumentException("No association for toolId " + toolId + " and itemId " + itemId));
 
-        List<Evaluation> evaluations = evaluationRepository.findByAssociationId(association.getId());
-        List<String> userIds = evaluations.stream().map(e -> e.getEvaluatedItemOwnerId()).collect(Collectors.toList());
+        List<EvaluationTransferBean> evaluations = getEvaluationsForAssociation(association.getId());
+        List<String> userIds = evaluations.stream().map(e -> e.evaluatedItemOwnerId).collect(Collectors.toList());
         Map<String, User> userMap = userDirectoryService.getUsers(userIds).stream().collect(Collectors.toMap(u -> u.getId(), u -> u));
-        return evaluationRepository.findByAssociationId(association.getId())
-            .stream()
-            .filter(eval -> canViewEvaluation(eval, siteId))
+        boolean evaluator = isEvaluator(siteId);
+        return evaluations.stream()
+            .filter(eval -> evaluator || canViewEvaluation(eval.evaluatedItemOwnerType, eval.evaluatedItemOwnerId, siteId))
             .map(e -> {
 
-                EvaluationTransferBean bean = EvaluationTransferBean.of(e);
+                EvaluationTransferBean bean = copyEvaluation(e);
                 bean.sortName = userMap.get(bean.evaluatedItemOwnerId).getSortName();
                 return bean;
             })
             .collect(Collectors.toList());
     }
 
+    @Transactional(readOnly = true)
+    public Map<String, EvaluationTransferBean> getEvaluationsForToolAndItemByEvaluatedItemId(String toolId, String itemId, String siteId) {
+
+        Optional<ToolItemRubricAssociation> optAssociation = associationRepository.findByToolIdAndItemId(toolId, itemId);
+        if (!optAssociation.isPresent()) {
+            return new HashMap<>();
+        }
+
+        // the permissions are checked once, not for each evaluation
+        boolean evaluator = isEvaluator(siteId);
+        boolean evaluee = !evaluator && isEvaluee(siteId);
+        String currentUserId = sessionManager.getCurrentSessionUserId();
+        return getEvaluationsForAssociation(optAssociation.get().getId()).stream()
+            .filter(eval -> evaluator || (evaluee && isEvaluatedItemOwner(eval.evaluatedItemOwnerType, eval.evaluatedItemOwnerId, currentUserId)))
+            .collect(Collectors.toMap(eval -> eval.evaluatedItemId, this::copyEvaluation, (e1, e2) -> e1));
+    }
+
+    /**
+     * The evaluations for an association are read from the cache, and loaded in one query when they
+     * are not there. The cached beans are shared, so only ever hand out copies of them.
+     */
+    private List<EvaluationTransferBean> getEvaluationsForAssociation(Long associationId) {
+
+        // The key is taken before reading, so that evaluations read before a change is committed
+        // are only ever cached under the version the change drops
+        String key = evaluationCache.getKey(associationId.toString()) + ":evaluations";
+        List<EvaluationTransferBean> cached = evaluationCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<EvaluationTransferBean> evaluations = evaluationRepository.findByAssociationId(associationId).stream()
+            .map(EvaluationTransferBean::of).collect(Collectors.toList());
+        evaluationCache.put(key, evaluations);
+        return evaluations;
+    }
+
+    private EvaluationTransferBean copyEvaluation(EvaluationTransferBean bean) {
+        return EvaluationTransferBean.of(bean.toEvaluation());
+    }
+
+    /**
+     * Drop the version the association's evaluations are cached under, here, again once the transaction
+     * completes, and on the other servers once it commits.
+     */
+    private void evictEvaluations(Long associationId) {
+
+        if (associationId != null) {
+            evaluationCache.invalidate(associationId.toString());
+        }
+    }
 
     public EvaluationTransferBean saveEvaluation(EvaluationTransferBean evaluationBean, String siteId) {
 
@@ -605,6 +662,7 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
         evaluationBean.modified = Instant.now();
 
         Evaluation evaluation = evaluationRepository.save(evaluationBean.toEvaluation());
+        evictEvaluations(evaluation.getAssociationId());
 
         // If this evaluation has been returned, back it up.
         if (evaluation.getStatus() == EvaluationStatus.RETURNED) {
@@ -650,6 +708,8 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
             return EvaluationTransferBean.of(evaluation);
         }
 
+        evictEvaluations(evaluation.getAssociationId());
+
         Optional<ReturnedEvaluation> optReturnedEvaluation
             = returnedEvaluationRepository.findByOriginalEvaluationId(draftEvaluationId);
         if (optReturnedEvaluation.isPresent()) {
@@ -678,6 +738,30 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
         return getRubricAssociation(tool, id).isPresent();
     }
 
+    @Transactional(readOnly = true)
+    public Map<String, Boolean> hasAssociatedRubrics(String toolId, Collection<String> associatedToolItemIds) {
+
+        Map<String, Boolean> hasRubrics = new HashMap<>();
+        associatedToolItemIds.forEach(id -> hasRubrics.put(id, Boolean.FALSE));
+
+        List<String> itemIds = associatedToolItemIds.stream()
+            .filter(StringUtils::isNotBlank).distinct().collect(Collectors.toList());
+        if (itemIds.isEmpty()) return hasRubrics;
+
+        String currentUserId = userDirectoryService.getCurrentUser().getId();
+
+        // The same check as getRubricAssociation, made once per rubric owner
+        Map<String, Boolean> editor = new HashMap<>();
+        associationRepository.findByToolIdAndItemIds(toolId, itemIds).forEach(assoc -> {
+
+            if (editor.computeIfAbsent(assoc.getRubric().getOwnerId(), this::isEditor)
+                    || assoc.getCreatorId().equalsIgnoreCase(currentUserId)) {
+                hasRubrics.put(assoc.getItemId(), Boolean.TRUE);
+            }
+        });
+        return hasRubrics;
+    }
+
     public Optional<ToolItemRubricAssociation> saveRubricAssociation(String toolId, String toolItemId, final Map<String, String> params) {
 
         if (params == null || params.isEmpty()) {
@@ -831,13 +915,12 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
         ToolItemRubricAssociation association = associationRepository.findByToolIdAndItemId(toolId, itemId)
             .orElseThrow(() -> new IllegalArgumentException("No association for toolId " + toolId + " and itemId " + itemId));
 
-        Optional<Evaluation> optEvaluation = evaluationRepository.findByAssociationIdAndUserId(association.getId(), userId);
-
-        if (optEvaluation.isPresent() && canViewEvaluation(optEvaluation.get(), siteId)) {
-            return optEvaluation.get().getEvaluatedItemId();
-        } else {
-            return null;
-        }
+        return getEvaluationsForAssociation(association.getId()).stream()
+            .filter(eval -> StringUtils.equals(eval.evaluatedItemOwnerId, userId))
+            .findAny()
+            .filter(eval -> canViewEvaluation(eval.evaluatedItemOwnerType, eval.evaluatedItemOwnerId, siteId))
+            .map(eval -> eval.evaluatedItemId)
+            .orElse(null);
     }
 
     /**
@@ -851,6 +934,7 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
             if (securityService.unlock(RubricsConstants.RBCS_PERMISSIONS_EDITOR, siteService.siteReference(assoc.getRubric().getOwnerId()))) {
                 try {
                     evaluationRepository.deleteByToolItemRubricAssociation_Id(assoc.getId());
+                    evictEvaluations(assoc.getId());
                 } catch (Exception e) {
                     log.warn("Error deleting rubric association for id {} : {}", itemId, e.toString());
                 }
@@ -904,7 +988,9 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
     }
 
     private void deleteRubricEvaluationsForAssociation(Long associationId, String tool) {
+
         evaluationRepository.deleteByToolItemRubricAssociation_Id(associationId);
+        evictEvaluations(associationId);
     }
 
     public void softDeleteRubricAssociation(String toolId, String id) {
@@ -927,6 +1013,7 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
             getRubricAssociation(tool, id).ifPresent(assoc -> {
                 evaluationRepository.deleteByToolItemRubricAssociation_Id(assoc.getId());
                 associationRepository.delete(assoc);
+                evictEvaluations(assoc.getId());
             });
         } catch (Exception e) {
             log.warn("Error deleting rubric association for tool {} and id {} : {}", tool, id, e.toString());
@@ -1277,6 +1364,10 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
     }
 
     private boolean canViewEvaluation(Evaluation eval, String siteId) {
+        return canViewEvaluation(eval.getEvaluatedItemOwnerType(), eval.getEvaluatedItemOwnerId(), siteId);
+    }
+
+    private boolean canViewEvaluation(EvaluatedItemOwnerType ownerType, String ownerId, String siteId) {
 
         String currentUserId = sessionManager.getCurrentSessionUserId();
 
@@ -1284,13 +1375,16 @@ public class RubricsServiceImpl implements RubricsService, EntityProducer, Entit
             return true;
         }
 
-        if (isEvaluee(siteId)) {
-            if (eval.getEvaluatedItemOwnerType() == EvaluatedItemOwnerType.USER && currentUserId.equals(eval.getEvaluatedItemOwnerId())) {
-                return true;
-            }
-            if (eval.getEvaluatedItemOwnerType() == EvaluatedItemOwnerType.GROUP) {
-                return authzGroupService.getUserRole(currentUserId, eval.getEvaluatedItemOwnerId()) != null;
-            }
+        return isEvaluee(siteId) && isEvaluatedItemOwner(ownerType, ownerId, currentUserId);
+    }
+
+    private boolean isEvaluatedItemOwner(EvaluatedItemOwnerType ownerType, String ownerId, String userId) {
+
+        if (ownerType == EvaluatedItemOwnerType.USER && StringUtils.equals(userId, ownerId)) {
+            return true;
+        }
+        if (ownerType == EvaluatedItemOwnerType.GROUP) {
+            return authzGroupService.getUserRole(userId, ownerId) != null;
         }
 
         return false;
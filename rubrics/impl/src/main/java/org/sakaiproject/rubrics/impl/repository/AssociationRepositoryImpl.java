@@ -22,6 +22,8 @@
 
 package org.sakaiproject.rubrics.impl.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,6 +40,9 @@ import org.sakaiproject.springframework.data.SpringCrudRepositoryImpl;
 
 public class AssociationRepositoryImpl extends SpringCrudRepositoryImpl<ToolItemRubricAssociation, Long> implements AssociationRepository {
 
+    // Some databases limit the number of values in an IN clause
+    private static final int MAX_IN_SIZE = 1000;
+
     public Optional<ToolItemRubricAssociation> findByToolIdAndItemId(String toolId, String itemId) {
 
         Session session = sessionFactory.getCurrentSession();
@@ -52,6 +57,28 @@ public class AssociationRepositoryImpl extends SpringCrudRepositoryImpl<ToolItem
         return session.createQuery(query).uniqueResultOptional();
     }
 
+    public List<ToolItemRubricAssociation> findByToolIdAndItemIds(String toolId, Collection<String> itemIds) {
+
+        List<ToolItemRubricAssociation> associations = new ArrayList<>();
+        if (itemIds.isEmpty()) return associations;
+
+        Session session = sessionFactory.getCurrentSession();
+
+        List<String> ids = new ArrayList<>(itemIds);
+        for (int i = 0; i < ids.size(); i += MAX_IN_SIZE) {
+            CriteriaBuilder cb = session.getCriteriaBuilder();
+            CriteriaQuery<ToolItemRubricAssociation> query = cb.createQuery(ToolItemRubricAssociation.class);
+            Root<ToolItemRubricAssociation> ass = query.from(ToolItemRubricAssociation.class);
+            // The callers check permissions against the rubric, so fetch them with the associations
+            ass.fetch("rubric");
+            query.where(cb.and(cb.equal(ass.get("toolId"), toolId),
+                                ass.get("itemId").in(ids.subList(i, Math.min(ids.size(), i + MAX_IN_SIZE))),
+                                cb.equal(ass.get("active"), Boolean.TRUE)));
+            associations.addAll(session.createQuery(query).list());
+        }
+        return associations;
+    }
+
     public Optional<ToolItemRubricAssociation> findByItemIdAndRubricId(String itemId, Long rubricId) {
 
         Session session = sessionFactory.getCurrentSession();
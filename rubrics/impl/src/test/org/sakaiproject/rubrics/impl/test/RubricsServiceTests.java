@@ -18,6 +18,7 @@ package org.sakaiproject.rubrics.impl.test;
 import org.apache.commons.lang3.StringUtils;
 
 import org.sakaiproject.authz.api.SecurityService;
+import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.rubrics.api.RubricsConstants;
 import org.sakaiproject.rubrics.api.RubricsService;
 import org.sakaiproject.rubrics.api.beans.CriterionTransferBean;
@@ -55,6 +56,7 @@ import org.hibernate.SessionFactory;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -86,6 +88,7 @@ public class RubricsServiceTests extends AbstractTransactionalJUnit4SpringContex
 
     @Resource private AssociationRepository associationRepository;
     @Resource private EvaluationRepository evaluationRepository;
+    @Resource private EventTrackingService eventTrackingService;
     @Resource private ReturnedEvaluationRepository returnedEvaluationRepository;
     @Resource private RubricsService rubricsService;
     @Resource private SecurityService securityService;
@@ -557,6 +560,93 @@ public class RubricsServiceTests extends AbstractTransactionalJUnit4SpringContex
         assertEquals(originalComment, etb.overallComment);
     }
 
+    @Test
+    public void bulkRubricLookups() {
+
+        switchToInstructor();
+
+        RubricTransferBean rubricBean = rubricsService.createDefaultRubric(siteId);
+
+        String toolId = "sakai.assignment";
+
+        Map<String, String> rbcsParams = new HashMap<>();
+        rbcsParams.put(RubricsConstants.RBCS_ASSOCIATE, "1");
+        rbcsParams.put(RubricsConstants.RBCS_LIST, rubricBean.id.toString());
+        ToolItemRubricAssociation association
+            = rubricsService.saveRubricAssociation(toolId, "item1", rbcsParams).get();
+        rubricsService.saveRubricAssociation(toolId, "item2", rbcsParams);
+
+        Map<String, Boolean> hasRubrics
+            = rubricsService.hasAssociatedRubrics(toolId, Arrays.asList("item1", "item2", "item3", ""));
+        assertEquals(4, hasRubrics.size());
+        assertTrue(hasRubrics.get("item1"));
+        assertTrue(hasRubrics.get("item2"));
+        assertFalse(hasRubrics.get("item3"));
+        assertFalse(hasRubrics.get(""));
+
+        assertTrue(rubricsService.getEvaluationsForToolAndItemByEvaluatedItemId(toolId, "item3", siteId).isEmpty());
+
+        EvaluationTransferBean etb = buildEvaluation(association.getId(), rubricBean, "submission1");
+        etb.status = EvaluationStatus.DRAFT;
+        etb.isNew = true;
+        etb = rubricsService.saveEvaluation(etb, siteId);
+
+        Map<String, EvaluationTransferBean> evaluations
+            = rubricsService.getEvaluationsForToolAndItemByEvaluatedItemId(toolId, "item1", siteId);
+        assertEquals(1, evaluations.size());
+        assertEquals(EvaluationStatus.DRAFT, evaluations.get("submission1").status);
+
+        // Saving an evaluation replaces the one already read
+        etb.status = EvaluationStatus.RETURNED;
+        rubricsService.saveEvaluation(etb, siteId);
+        evaluations = rubricsService.getEvaluationsForToolAndItemByEvaluatedItemId(toolId, "item1", siteId);
+        assertEquals(EvaluationStatus.RETURNED, evaluations.get("submission1").status);
+
+        // Changing an evaluation that has been handed out does not change the one kept
+        evaluations.get("submission1").overallComment = "Changed";
+        Optional<EvaluationTransferBean> optEtb
+            = rubricsService.getEvaluationForToolAndItemAndEvaluatedItemId(toolId, "item1", "submission1", siteId);
+        assertTrue(optEtb.isPresent());
+        assertNull(optEtb.get().overallComment);
+
+        // Evaluees only get their own evaluations
+        switchToUser1();
+        assertTrue(rubricsService.getEvaluationsForToolAndItemByEvaluatedItemId(toolId, "item1", siteId).isEmpty());
+
+        switchToUser2();
+        assertEquals(1, rubricsService.getEvaluationsForToolAndItemByEvaluatedItemId(toolId, "item1", siteId).size());
+    }
+
+    @Test
+    public void savingEvaluationsWritesNoEvents() {
+
+        switchToInstructor();
+
+        RubricTransferBean rubricBean = rubricsService.createDefaultRubric(siteId);
+
+        String toolId = "sakai.assignment";
+
+        Map<String, String> rbcsParams = new HashMap<>();
+        rbcsParams.put(RubricsConstants.RBCS_ASSOCIATE, "1");
+        rbcsParams.put(RubricsConstants.RBCS_LIST, rubricBean.id.toString());
+        ToolItemRubricAssociation association
+            = rubricsService.saveRubricAssociation(toolId, "item1", rbcsParams).get();
+
+        clearInvocations(eventTrackingService);
+
+        EvaluationTransferBean etb = buildEvaluation(association.getId(), rubricBean, "submission1");
+        etb.isNew = true;
+        etb = rubricsService.saveEvaluation(etb, siteId);
+        assertNull(rubricsService.getEvaluationsForToolAndItemByEvaluatedItemId(toolId, "item1", siteId).get("submission1").overallComment);
+
+        etb.overallComment = "Changed";
+        rubricsService.saveEvaluation(etb, siteId);
+        assertEquals("Changed", rubricsService.getEvaluationsForToolAndItemByEvaluatedItemId(toolId, "item1", siteId).get("submission1").overallComment);
+
+        // the other servers drop their cached evaluations without an event being written for each save
+        verify(eventTrackingService, never()).newEvent(anyString(), anyString(), anyBoolean());
+    }
+
     private EvaluationTransferBean buildEvaluation(Long associationId, RubricTransferBean rubricBean, String toolItemId) {
 
         EvaluationTransferBean etb = new EvaluationTransferBean();
@@ -37,6 +37,7 @@ import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.entity.api.EntityManager;
 import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.rubrics.api.repository.CriterionRepository;
 import org.sakaiproject.rubrics.api.repository.EvaluationRepository;
 import org.sakaiproject.rubrics.api.repository.RatingRepository;
@@ -192,6 +193,11 @@ public class RubricsTestConfiguration {
         return mock(SecurityService.class);
     }
 
+    @Bean(name = "org.sakaiproject.memory.api.MemoryService")
+    public MemoryService memoryService() {
+        return new org.sakaiproject.memory.mock.MemoryService();
+    }
+
     @Bean(name = "org.sakaiproject.component.api.ServerConfigurationService")
     public ServerConfigurationService serverConfigurationService() {
         return mock(ServerConfigurationService.class);
@@ -16,6 +16,8 @@ package org.sakaiproject.webapi;
 import org.sakaiproject.webapi.formatter.EpochMillisFormatter;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableMBeanExport;
+import org.springframework.jmx.support.RegistrationPolicy;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
@@ -26,6 +28,7 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 @EnableWebMvc
 @ComponentScan("org.sakaiproject.webapi")
+@EnableMBeanExport(registration = RegistrationPolicy.REPLACE_EXISTING)
 public class WebMvcConfiguration implements WebMvcConfigurer {
 
     @Override
@@ -0,0 +1,41 @@
+/******************************************************************************
+ * Copyright 2015 sakaiproject.org Licensed under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.sakaiproject.webapi.beans;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sakaiproject.user.api.User;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class StudentGradesRestBean {
+
+    private String userId;
+    private String displayName;
+    private String sortName;
+    private String courseGrade;
+    private String calculatedCourseGrade;
+    private Map<Long, String> grades = new HashMap<>();
+
+    public StudentGradesRestBean(User user) {
+
+        userId = user.getId();
+        displayName = user.getDisplayName();
+        sortName = user.getSortName();
+    }
+}
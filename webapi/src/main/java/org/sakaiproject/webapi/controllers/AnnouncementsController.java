@@ -22,6 +22,7 @@ import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.entity.api.EntityManager;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
+import org.sakaiproject.javax.PagingPosition;
 import org.sakaiproject.site.api.SiteService;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.tool.api.Session;
@@ -32,14 +33,16 @@ import org.springframework.http.MediaType;
 
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
 
-import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -70,25 +73,30 @@ public class AnnouncementsController extends AbstractSakaiApiController {
 	private UserDirectoryService userDirectoryService;
 
 	@GetMapping(value = "/users/{userId}/announcements", produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<AnnouncementRestBean> getUserAnnouncements(@PathVariable String userId) throws UserNotDefinedException {
+    public List<AnnouncementRestBean> getUserAnnouncements(@PathVariable String userId,
+            @RequestParam(required = false) Integer first, @RequestParam(required = false) Integer last) throws UserNotDefinedException {
 
         Session session = checkSakaiSession();
-        return announcementService.getViewableAnnouncementsForCurrentUser(10).entrySet()
+        PagingPosition pager = (first != null && last != null) ? new PagingPosition(first, last) : null;
+        Map<String, Optional<Site>> sites = new HashMap<>();
+        return announcementService.getViewableAnnouncementsForCurrentUser(10, pager)
             .stream()
-            .map(e -> {
-
-                try {
-                    Site site = siteService.getSite(e.getKey());
-                    return e.getValue().stream().map(am -> {
-                        Optional<String> optionalUrl = entityManager.getUrl(am.getReference(), Entity.UrlType.PORTAL);
-                        return new AnnouncementRestBean(site, am, optionalUrl.get());
-                    }).collect(Collectors.toList());
-                } catch (Exception ex) {
-                    return null;
-                }
+            .map(am -> {
+
+                String siteId = entityManager.newReference(am.getReference()).getContext();
+                return sites.computeIfAbsent(siteId, id -> {
+
+                    try {
+                        return Optional.of(siteService.getSite(id));
+                    } catch (IdUnusedException idue) {
+                        return Optional.empty();
+                    }
+                }).map(site -> {
+                    Optional<String> optionalUrl = entityManager.getUrl(am.getReference(), Entity.UrlType.PORTAL);
+                    return new AnnouncementRestBean(site, am, optionalUrl.get());
+                }).orElse(null);
             })
-            .flatMap(Collection::stream)
-            .sorted(Comparator.comparingLong(AnnouncementRestBean::getDate).reversed())
+            .filter(Objects::nonNull)
             .collect(Collectors.toList());
 	}
 
@@ -0,0 +1,56 @@
+/******************************************************************************
+ * Copyright 2026 sakaiproject.org Licensed under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://opensource.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package org.sakaiproject.webapi.controllers;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the server sent event streams {@link EventsController} has open, and the messages it had to
+ * drop for clients too slow to read them, exported over JMX.
+ */
+@Component
+@ManagedResource(objectName = "org.sakaiproject:name=EventStreams", description = "Server sent event streams")
+public class EventStreamStatistics {
+
+    private final AtomicInteger openStreams = new AtomicInteger();
+
+    private final LongAdder droppedMessages = new LongAdder();
+
+    public int streamOpened() {
+        return openStreams.incrementAndGet();
+    }
+
+    public int streamClosed() {
+        return openStreams.decrementAndGet();
+    }
+
+    public void messageDropped() {
+        droppedMessages.increment();
+    }
+
+    @ManagedAttribute(description = "Event streams open on this server")
+    public int getOpenStreams() {
+        return openStreams.get();
+    }
+
+    @ManagedAttribute(description = "Messages dropped because a client's buffer was full, since startup")
+    public long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+}
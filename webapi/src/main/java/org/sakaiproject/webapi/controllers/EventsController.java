@@ -16,6 +16,7 @@ package org.sakaiproject.webapi.controllers;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.messaging.api.MessageListener;
 import org.sakaiproject.messaging.api.MessagingService;
 import org.sakaiproject.site.api.SiteService;
 import org.sakaiproject.tool.api.Session;
@@ -36,7 +37,9 @@ import javax.annotation.Resource;
 
 import lombok.extern.slf4j.Slf4j;
 
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
 
 @Slf4j
 @RestController
@@ -60,6 +63,9 @@ public class EventsController extends AbstractSakaiApiController {
     @Resource
     private MessagingService messagingService;
 
+    @Resource
+    private EventStreamStatistics eventStreamStatistics;
+
     @GetMapping("/users/{userId}/events")
     public ResponseEntity<Flux<ServerSentEvent<String>>> streamEvents() {
 
@@ -74,33 +80,58 @@ public class EventsController extends AbstractSakaiApiController {
             .map(i -> ServerSentEvent.<String>builder().event("ping").build())
             .doFinally(signalType -> log.debug("Ping flux ended with signal {}", signalType));
 
-        return ResponseEntity.ok().header("X-Accel-Buffering", "no")
-                .body(Flux.merge(ping, Flux.<ServerSentEvent<String>>create(emitter -> {
-
-                    messagingService.listen("USER#" + session.getUserId(), message -> {
-
-                        String event = "notifications";
-
-                        try {
-                            emitter.next(ServerSentEvent.<String>builder()
-                            .event(event)
-                            .data(mapper.writeValueAsString(message))
-                            .build());
-                        } catch (Exception e) {
-                            log.error("Failed to emit SSE event", e);
-                        }
-                    });
-
-                    messagingService.listen("GENERAL", message -> {
-
-                        try {
-                            emitter.next(ServerSentEvent.<String> builder()
-                            .data((new ObjectMapper()).writeValueAsString(message))
-                            .build());
-                        } catch (Exception e) {
-                            log.error("Failed to emit SSE event", e);
-                        }
-                    });
-                })));
+        // Messages queue up here when the client is slow to read them, oldest dropped first
+        int bufferSize = serverConfigurationService.getInt("sse.buffer.size", 100);
+
+        String userId = session.getUserId();
+        String userTopic = "USER#" + userId;
+
+        Flux<ServerSentEvent<String>> events = Flux.<ServerSentEvent<String>>create(emitter -> {
+
+            MessageListener userListener = message -> {
+
+                String event = "notifications";
+
+                try {
+                    emitter.next(ServerSentEvent.<String>builder()
+                    .event(event)
+                    .data(mapper.writeValueAsString(message))
+                    .build());
+                } catch (Exception e) {
+                    log.error("Failed to emit SSE event", e);
+                }
+            };
+
+            MessageListener generalListener = message -> {
+
+                try {
+                    emitter.next(ServerSentEvent.<String> builder()
+                    .data(mapper.writeValueAsString(message))
+                    .build());
+                } catch (Exception e) {
+                    log.error("Failed to emit SSE event", e);
+                }
+            };
+
+            messagingService.listen(userTopic, userListener);
+            messagingService.listen("GENERAL", generalListener);
+            log.debug("Opened event stream for {}, {} open", userId, eventStreamStatistics.streamOpened());
+
+            // The client has gone, or the stream has failed. Either way, stop listening for it.
+            emitter.onDispose(() -> {
+
+                messagingService.stopListening(userTopic, userListener);
+                messagingService.stopListening("GENERAL", generalListener);
+                log.debug("Closed event stream for {}, {} open, {} messages dropped in total",
+                    userId, eventStreamStatistics.streamClosed(), eventStreamStatistics.getDroppedMessages());
+            });
+        }, FluxSink.OverflowStrategy.IGNORE)
+        .onBackpressureBuffer(bufferSize, dropped -> {
+
+            eventStreamStatistics.messageDropped();
+            log.debug("Dropped SSE event for {}, buffer of {} is full", userId, bufferSize);
+        }, BufferOverflowStrategy.DROP_OLDEST);
+
+        return ResponseEntity.ok().header("X-Accel-Buffering", "no").body(Flux.merge(ping, events));
     }
 }
@@ -22,20 +22,30 @@ import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.entity.api.EntityManager;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
+import org.sakaiproject.grading.api.AssessmentNotFoundException;
+import org.sakaiproject.grading.api.CourseGradeTransferBean;
 import org.sakaiproject.grading.api.GradeDefinition;
 import org.sakaiproject.grading.api.GradeType;
+import org.sakaiproject.grading.api.GradingSecurityException;
 import org.sakaiproject.site.api.SiteService;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.ToolConfiguration;
 import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
 import org.sakaiproject.tool.assessment.services.GradingService;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
 import org.sakaiproject.user.api.UserNotDefinedException;
+import org.sakaiproject.webapi.beans.GradeMatrixRestBean;
 import org.sakaiproject.webapi.beans.GradeRestBean;
+import org.sakaiproject.webapi.beans.StudentGradesRestBean;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
@@ -43,7 +53,10 @@ import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -68,6 +81,9 @@ public class GradesController extends AbstractSakaiApiController {
     @Resource
     private SiteService siteService;
 
+    @Resource
+    private UserDirectoryService userDirectoryService;
+
     private GradingService samigoGradingService;
 
     private Function<Site, List<GradeRestBean>> convert = (s) -> {
@@ -165,4 +181,81 @@ public class GradesController extends AbstractSakaiApiController {
             return Collections.<GradeRestBean>emptyList();
         }
     }
+
+    /**
+     * One page of a site's students with their grades for every gradebook item, and their course grade. The students are
+     * sorted on an item's score, their course grade or, by default, their sort name, before the page is taken, and the
+     * grades are only looked up for the students on the page.
+     */
+    @GetMapping(value = "/sites/{siteId}/grades/students", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<GradeMatrixRestBean> getSiteStudentGrades(@PathVariable String siteId,
+            @RequestParam(defaultValue = "0") Integer first,
+            @RequestParam(defaultValue = "50") Integer count,
+            @RequestParam(required = false) Long sortItem,
+            @RequestParam(defaultValue = "false") Boolean sortCourseGrade,
+            @RequestParam(defaultValue = "true") Boolean ascending) {
+
+        checkSakaiSession();
+
+        Site site;
+        try {
+            site = siteService.getSite(siteId);
+        } catch (IdUnusedException idue) {
+            return ResponseEntity.notFound().build();
+        }
+
+        try {
+            Comparator<User> byName = Comparator.comparing(User::getSortName, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+            Map<String, User> users = userDirectoryService.getUsers(site.getUsersIsAllowed("section.role.student")).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+            List<String> students = users.values().stream()
+                .sorted(byName).map(User::getId).collect(Collectors.toList());
+
+            List<String> sorted;
+            if (sortItem != null) {
+                sorted = gradingService.sortStudentsByScore(siteId, sortItem, students, ascending);
+            } else if (sortCourseGrade) {
+                sorted = gradingService.sortStudentsByCourseGrade(siteId, students, ascending);
+            } else {
+                sorted = students;
+                if (!ascending) Collections.reverse(sorted);
+            }
+
+            List<String> page = sorted.stream().skip(Math.max(0, first)).limit(Math.max(0, count)).collect(Collectors.toList());
+
+            GradeMatrixRestBean matrix = new GradeMatrixRestBean();
+            matrix.setTotal(students.size());
+            matrix.setFirst(first);
+            if (page.isEmpty()) {
+                return ResponseEntity.ok(matrix);
+            }
+
+            List<Long> itemIds = gradingService.getAssignments(siteId).stream()
+                .map(org.sakaiproject.grading.api.Assignment::getId).collect(Collectors.toList());
+            Map<Long, List<GradeDefinition>> grades = itemIds.isEmpty() ? Collections.emptyMap()
+                : gradingService.getGradesWithoutCommentsForStudentsForItems(siteId, itemIds, page);
+            Map<String, CourseGradeTransferBean> courseGrades = gradingService.getCourseGradeForStudents(siteId, page);
+
+            Map<String, StudentGradesRestBean> rows = new LinkedHashMap<>();
+            for (String userId : page) {
+                StudentGradesRestBean row = new StudentGradesRestBean(users.get(userId));
+                CourseGradeTransferBean courseGrade = courseGrades.get(userId);
+                if (courseGrade != null) {
+                    row.setCourseGrade(courseGrade.getDisplayGrade());
+                    row.setCalculatedCourseGrade(courseGrade.getCalculatedGrade());
+                }
+                rows.put(userId, row);
+            }
+            grades.forEach((itemId, defs) -> defs.forEach(gd -> {
+                StudentGradesRestBean row = rows.get(gd.getStudentUid());
+                if (row != null) row.getGrades().put(itemId, gd.getGrade());
+            }));
+            matrix.getStudents().addAll(rows.values());
+            return ResponseEntity.ok(matrix);
+        } catch (GradingSecurityException gse) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (AssessmentNotFoundException anfe) {
+            return ResponseEntity.notFound().build();
+        }
+    }
 }
@@ -57,6 +57,7 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -270,14 +271,21 @@ public class RubricsRestController extends AbstractSakaiApiController {
 
         checkSakaiSession();
 
-        Optional<EvaluationTransferBean> optBean = rubricsService.getEvaluationForToolAndItemAndEvaluatedItemId(toolId, itemId, evaluatedItemId, siteId);
-        if (optBean.isPresent()) {
-            return ResponseEntity.ok(optBean.get());
+        EvaluationTransferBean bean = rubricsService.getEvaluationsForToolAndItemByEvaluatedItemId(toolId, itemId, siteId).get(evaluatedItemId);
+        if (bean != null) {
+            return ResponseEntity.ok(bean);
         } else {
             return ResponseEntity.notFound().build();
         }
     }
 
+    @GetMapping(value = "/sites/{siteId}/rubric-evaluations/tools/{toolId}/items/{itemId}/evaluations", produces = MediaType.APPLICATION_JSON_VALUE)
+    ResponseEntity<Map<String, EvaluationTransferBean>> getEvaluationsByEvaluatedItem(@PathVariable String siteId, @PathVariable String toolId, @PathVariable String itemId) throws Exception {
+
+        checkSakaiSession();
+        return ResponseEntity.ok(rubricsService.getEvaluationsForToolAndItemByEvaluatedItemId(toolId, itemId, siteId));
+    }
+
     @GetMapping(value = "/sites/{siteId}/rubric-evaluations/tools/{toolId}/items/{itemId}", produces = MediaType.APPLICATION_JSON_VALUE)
     ResponseEntity<List<EvaluationTransferBean>> getEvaluationsForItem(@PathVariable String siteId, @PathVariable String toolId, @PathVariable String itemId) throws Exception {
 
@@ -1,6 +1,9 @@
 import { RubricsElement } from "./rubrics-element.js";
 import { html } from "/webcomponents/assets/lit-element/lit-element.js";
 
+// The buttons for an item's evaluated items all share one request for the item's evaluations
+const evaluationRequests = new Map();
+
 class SakaiRubricGradingButton extends RubricsElement {
 
   constructor() {
@@ -41,8 +44,17 @@ class SakaiRubricGradingButton extends RubricsElement {
 
   setHasEvaluation() {
 
-    const url = `/api/sites/${this.siteId}/rubric-evaluations/tools/${this.toolId}/items/${this.entityId}/evaluations/${this.evaluatedItemId}`;
-    fetch(url, { credentials: "include" }).then(r => this.hasEvaluation = r.status !== 404);
+    const url = `/api/sites/${this.siteId}/rubric-evaluations/tools/${this.toolId}/items/${this.entityId}/evaluations`;
+    if (!evaluationRequests.has(url)) {
+      const request = fetch(url, { credentials: "include" })
+        .then(r => r.ok ? r.json() : {})
+        .catch(() => ({}));
+      evaluationRequests.set(url, request);
+      // Buttons rendered later ask again, so they see evaluations saved since
+      request.finally(() => evaluationRequests.delete(url));
+    }
+
+    evaluationRequests.get(url).then(evaluations => this.hasEvaluation = !!evaluations[this.evaluatedItemId]);
   }
 }
 